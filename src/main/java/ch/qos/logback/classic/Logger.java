@@ -19,11 +19,13 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
 import org.slf4j.spi.LocationAwareLogger;
 
+import ch.qos.logback.classic.spi.CallerData;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.LoggingEvent;
 import ch.qos.logback.classic.util.LoggerNameUtil;
@@ -99,6 +101,14 @@ public final class Logger implements org.slf4j.Logger, LocationAwareLogger, Appe
 
   final transient LoggerContext loggerContext;
 
+  // @CRACK 2026-10-16 只有输出格式中用到了调用者信息（%caller %class %method %file %line等）才提前获取，避免每次打日志都遍历线程堆栈
+  /** 任何logger的appender或additivity变化时加1，让各logger缓存的判断结果失效 */
+  private static final AtomicInteger APPENDER_GENERATION = new AtomicInteger();
+
+  /** 缓存的判断结果，高位为计算时的APPENDER_GENERATION，最低位表示是否需要调用者信息 */
+  transient private volatile int callerDataState = -1;
+  // @CRACK end
+
   Logger(String name, Logger parent, LoggerContext loggerContext) {
     this.name = name;
     this.parent = parent;
@@ -204,6 +214,7 @@ public final class Logger implements org.slf4j.Logger, LocationAwareLogger, Appe
   public void detachAndStopAllAppenders() {
     if (aai != null) {
       aai.detachAndStopAllAppenders();
+      appendersChanged();
     }
   }
 
@@ -211,6 +222,7 @@ public final class Logger implements org.slf4j.Logger, LocationAwareLogger, Appe
     if (aai == null) {
       return false;
     }
+    appendersChanged();
     return aai.detachAppender(name);
   }
 
@@ -221,6 +233,7 @@ public final class Logger implements org.slf4j.Logger, LocationAwareLogger, Appe
       aai = new AppenderAttachableImpl<ILoggingEvent>();
     }
     aai.addAppender(newAppender);
+    appendersChanged();
   }
 
   public boolean isAttached(Appender<ILoggingEvent> appender) {
@@ -280,9 +293,42 @@ public final class Logger implements org.slf4j.Logger, LocationAwareLogger, Appe
     if (aai == null) {
       return false;
     }
+    appendersChanged();
     return aai.detachAppender(appender);
   }
 
+  // @CRACK 2026-10-16 只有输出格式中用到了调用者信息才提前获取
+  /**
+   * 让所有logger缓存的是否需要调用者信息的判断结果失效，logger及AsyncAppender下挂的appender变化时调用
+   */
+  public static void appendersChanged() {
+    APPENDER_GENERATION.incrementAndGet();
+    CallerData.clearCache();
+  }
+
+  /**
+   * 本logger的日志会输出到的appender中，是否有用到调用者信息的，结果会缓存到appender或additivity变化为止
+   */
+  boolean isCallerDataRequired() {
+    int generation = APPENDER_GENERATION.get();
+    int state = callerDataState;
+    if (state >> 1 != generation) {
+      boolean required = false;
+      for (Logger l = this; l != null && !required; l = l.parent) {
+        for (Iterator<Appender<ILoggingEvent>> it = l.iteratorForAppenders(); it.hasNext() && !required; ) {
+          required = CallerData.isRequiredBy(it.next());
+        }
+        if (!l.additive) {
+          break;
+        }
+      }
+      state = generation << 1 | (required ? 1 : 0);
+      callerDataState = state;
+    }
+    return (state & 1) != 0;
+  }
+  // @CRACK end
+
   /**
    * Create a child of this logger by suffix, that is, the part of the name
    * extending this logger. For example, if this logger is named "x.y" and the
@@ -331,6 +377,7 @@ public final class Logger implements org.slf4j.Logger, LocationAwareLogger, Appe
     detachAndStopAllAppenders();
     localLevelReset();
     additive = true;
+    appendersChanged();
     if (childrenList == null) {
       return;
     }
@@ -419,7 +466,10 @@ public final class Logger implements org.slf4j.Logger, LocationAwareLogger, Appe
     LoggingEvent le = new LoggingEvent(localFQCN, this, level, msg, t, params);
     // @CRACK 2016-04-19 自logback-classic-1.1.9中修改，由于在后面的格式化时取方法名
     // 线程堆栈可能保留不了那么多，造成在打日志时方法名显示为?，这里提前建立以防止这种情况
-    le.getCallerData();
+    // 2026-10-16 只有输出格式中用到了调用者信息时才获取，获取时只遍历到调用者所在的帧
+    if (isCallerDataRequired()) {
+      le.setCallerData(CallerData.capture(localFQCN, loggerContext.getMaxCallerDataDepth(), loggerContext.getFrameworkPackages()));
+    }
     // @CRACK end
     le.setMarker(marker);
     callAppenders(le);
@@ -734,6 +784,7 @@ public final class Logger implements org.slf4j.Logger, LocationAwareLogger, Appe
 
   public void setAdditive(boolean additive) {
     this.additive = additive;
+    appendersChanged();
   }
 
   public String toString() {
@@ -13,8 +13,42 @@
  */
 package ch.qos.logback.classic.spi;
 
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.pattern.CallerDataConverter;
+import ch.qos.logback.classic.pattern.ClassOfCallerConverter;
+import ch.qos.logback.classic.pattern.FileOfCallerConverter;
+import ch.qos.logback.classic.pattern.LineOfCallerConverter;
+import ch.qos.logback.classic.pattern.MethodOfCallerConverter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.AsyncAppenderBase;
 import ch.qos.logback.core.CoreConstants;
+import ch.qos.logback.core.Layout;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
+import ch.qos.logback.core.net.SMTPAppenderBase;
+import ch.qos.logback.core.pattern.PatternLayoutBase;
+import ch.qos.logback.core.pattern.PatternLayoutEncoderBase;
+import ch.qos.logback.core.pattern.parser.CompositeNode;
+import ch.qos.logback.core.pattern.parser.Node;
+import ch.qos.logback.core.pattern.parser.Parser;
+import ch.qos.logback.core.pattern.parser.SimpleKeywordNode;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.etnaframework.core.logging.logback.FixNameMemAppender;
+import org.etnaframework.core.logging.logback.FixSizeMemAppender;
 import org.etnaframework.core.util.HttpClientUtils;
 import org.etnaframework.jdbc.JdbcTemplate;
 
@@ -49,6 +83,55 @@ public class CallerData {
    */
   public static final StackTraceElement[] EMPTY_CALLER_DATA_ARRAY = new StackTraceElement[0];
 
+  // @CRACK 2026-10-16 获取调用者信息的优化
+  // 1、Java9以上使用StackWalker逐帧遍历，找到第一个非框架的帧就停止，不再需要new Throwable()生成完整的线程堆栈
+  // 2、每个类是否属于框架的判断结果按类名缓存
+  // 3、提供根据appender的输出格式判断是否需要调用者信息的方法，供Logger决定是否要提前获取
+  /** 输出调用者信息的converter，输出格式中用到了它们时才需要获取调用者信息 */
+  private static final Set<String> CALLER_DATA_CONVERTERS = new HashSet<String>(Arrays.asList(CallerDataConverter.class.getName(),
+      ClassOfCallerConverter.class.getName(), MethodOfCallerConverter.class.getName(), FileOfCallerConverter.class.getName(),
+      LineOfCallerConverter.class.getName()));
+
+  /** 类是否属于框架的判断结果缓存，超过这个数量后不再缓存 */
+  private static final int FRAMEWORK_CLASS_CACHE_SIZE = 4096;
+
+  private static final Map<String, Boolean> FRAMEWORK_CLASS_CACHE = new ConcurrentHashMap<String, Boolean>();
+
+  /** 生成缓存时对应的frameworkPackageList，变化时清空缓存 */
+  private static volatile List<String> frameworkClassCacheFor;
+
+  /** StackWalker.walk(Function)，运行在Java8上时为null，使用new Throwable()的方式 */
+  private static final MethodHandle STACK_WALK;
+
+  /** StackWalker.StackFrame.getClassName() */
+  private static final MethodHandle FRAME_CLASS_NAME;
+
+  /** StackWalker.StackFrame.toStackTraceElement() */
+  private static final MethodHandle FRAME_TO_STACK_TRACE_ELEMENT;
+
+  static {
+    MethodHandle walk = null;
+    MethodHandle className = null;
+    MethodHandle toStackTraceElement = null;
+    try {
+      Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+      Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+      MethodHandles.Lookup lookup = MethodHandles.lookup(); // walk是caller-sensitive方法，不能用publicLookup
+      Object walker = walkerClass.getMethod("getInstance").invoke(null);
+      walk = lookup.findVirtual(walkerClass, "walk", MethodType.methodType(Object.class, Function.class)).bindTo(walker);
+      className = lookup.findVirtual(frameClass, "getClassName", MethodType.methodType(String.class))
+          .asType(MethodType.methodType(String.class, Object.class));
+      toStackTraceElement = lookup.findVirtual(frameClass, "toStackTraceElement", MethodType.methodType(StackTraceElement.class))
+          .asType(MethodType.methodType(StackTraceElement.class, Object.class));
+    } catch (Throwable ignore) {
+      walk = null;
+    }
+    STACK_WALK = walk;
+    FRAME_CLASS_NAME = className;
+    FRAME_TO_STACK_TRACE_ELEMENT = toStackTraceElement;
+  }
+  // @CRACK end
+
   /**
    * Extract caller data information as an array based on a Throwable passed as
    * parameter
@@ -88,13 +171,166 @@ public class CallerData {
     return callerDataArray;
   }
 
+  // @CRACK 2026-10-16 获取调用者信息的优化
+  /**
+   * 获取当前线程的调用者信息，结果和{@link #extract(Throwable, String, int, List)}相同
+   */
+  public static StackTraceElement[] capture(final String fqnOfInvokingClass, final int maxDepth, final List<String> frameworkPackageList) {
+    if (STACK_WALK != null) {
+      try {
+        Function<Stream<Object>, StackTraceElement[]> walker = new Function<Stream<Object>, StackTraceElement[]>() {
+
+          @Override
+          public StackTraceElement[] apply(Stream<Object> frames) {
+            return walk(frames.iterator(), fqnOfInvokingClass, maxDepth, frameworkPackageList);
+          }
+        };
+        Object result = STACK_WALK.invoke(walker);
+        if (result != null) {
+          return (StackTraceElement[]) result;
+        }
+      } catch (Throwable ignore) {
+      }
+    }
+    return extract(new Throwable(), fqnOfInvokingClass, maxDepth, frameworkPackageList);
+  }
+
+  private static StackTraceElement[] walk(Iterator<Object> frames, String fqnOfInvokingClass, int maxDepth, List<String> frameworkPackageList) {
+    try {
+      boolean found = false;
+      while (frames.hasNext()) {
+        Object frame = frames.next();
+        if (isInFrameworkSpace((String) FRAME_CLASS_NAME.invokeExact(frame), fqnOfInvokingClass, frameworkPackageList)) {
+          found = true;
+        } else if (found) {
+          // 找到了调用者，只取需要的深度，后面的帧不再遍历
+          StackTraceElement[] callerDataArray = new StackTraceElement[maxDepth];
+          int depth = 0;
+          callerDataArray[depth++] = (StackTraceElement) FRAME_TO_STACK_TRACE_ELEMENT.invokeExact(frame);
+          while (depth < maxDepth && frames.hasNext()) {
+            callerDataArray[depth++] = (StackTraceElement) FRAME_TO_STACK_TRACE_ELEMENT.invokeExact(frames.next());
+          }
+          return depth == maxDepth ? callerDataArray : Arrays.copyOf(callerDataArray, depth);
+        }
+      }
+      return EMPTY_CALLER_DATA_ARRAY;
+    } catch (Throwable ex) {
+      return null;
+    }
+  }
+
+  /**
+   * 判断appender的输出格式中是否用到了调用者信息，无法判断的appender认为需要
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public static boolean isRequiredBy(Appender<?> appender) {
+    if (appender instanceof AsyncAppenderBase) {
+      if (appender instanceof AsyncAppender && ((AsyncAppender) appender).isIncludeCallerData()) {
+        return true;
+      }
+      for (Iterator<Appender> it = ((AsyncAppenderBase) appender).iteratorForAppenders(); it.hasNext(); ) {
+        if (isRequiredBy(it.next())) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (appender instanceof OutputStreamAppender) {
+      Encoder<?> encoder = ((OutputStreamAppender<?>) appender).getEncoder();
+      if (!(encoder instanceof LayoutWrappingEncoder)) {
+        return encoder != null;
+      }
+      Layout<?> layout = ((LayoutWrappingEncoder<?>) encoder).getLayout();
+      if (layout == null && encoder instanceof PatternLayoutEncoderBase) { // encoder还没有start，layout尚未生成
+        PatternLayout patternLayout = new PatternLayout();
+        patternLayout.setContext(encoder.getContext());
+        patternLayout.setPattern(((PatternLayoutEncoderBase<?>) encoder).getPattern());
+        layout = patternLayout;
+      }
+      return isRequiredBy(layout);
+    }
+    if (appender instanceof SMTPAppenderBase) {
+      return isRequiredBy(((SMTPAppenderBase<?>) appender).getLayout());
+    }
+    if (appender instanceof FixSizeMemAppender) {
+      return isRequiredBy(((FixSizeMemAppender<?>) appender).getLayout());
+    }
+    if (appender instanceof FixNameMemAppender) {
+      return isRequiredBy(((FixNameMemAppender<?>) appender).getLayout());
+    }
+    return true;
+  }
+
+  private static boolean isRequiredBy(Layout<?> layout) {
+    if (layout == null) {
+      return false;
+    }
+    if (!(layout instanceof PatternLayoutBase)) {
+      return true;
+    }
+    PatternLayoutBase<?> patternLayout = (PatternLayoutBase<?>) layout;
+    if (patternLayout.getPattern() == null) {
+      return false;
+    }
+    try {
+      return isRequiredBy(new Parser<Object>(patternLayout.getPattern()).parse(), patternLayout.getEffectiveConverterMap());
+    } catch (Exception ex) {
+      return true;
+    }
+  }
+
+  private static boolean isRequiredBy(Node node, Map<String, String> converterMap) {
+    for (; node != null; node = node.getNext()) {
+      if (!(node instanceof SimpleKeywordNode)) {
+        continue;
+      }
+      String converter = converterMap.get((String) node.getValue());
+      // 自定义的converter不知道是否会用到调用者信息，认为需要
+      if (converter != null && (CALLER_DATA_CONVERTERS.contains(converter) || !converter.startsWith("ch.qos.logback."))) {
+        return true;
+      }
+      if (node instanceof CompositeNode && isRequiredBy(((CompositeNode) node).getChildNode(), converterMap)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 清空类是否属于框架的判断结果缓存，在日志配置变化时调用
+   */
+  public static void clearCache() {
+    FRAMEWORK_CLASS_CACHE.clear();
+  }
+  // @CRACK end
+
   static boolean isInFrameworkSpace(String currentClass,
       String fqnOfInvokingClass, List<String> frameworkPackageList) {
+    // @CRACK 2026-10-16 fqnOfInvokingClass每次调用可能不同，单独判断，其余的判断结果按类名缓存
+    if (currentClass.equals(fqnOfInvokingClass)) {
+      return true;
+    }
+    if (frameworkClassCacheFor != frameworkPackageList) {
+      FRAMEWORK_CLASS_CACHE.clear();
+      frameworkClassCacheFor = frameworkPackageList;
+    }
+    Boolean cached = FRAMEWORK_CLASS_CACHE.get(currentClass);
+    if (cached == null) {
+      cached = isInFrameworkSpace(currentClass, frameworkPackageList);
+      if (FRAMEWORK_CLASS_CACHE.size() < FRAMEWORK_CLASS_CACHE_SIZE) {
+        FRAMEWORK_CLASS_CACHE.put(currentClass, cached);
+      }
+    }
+    return cached;
+    // @CRACK end
+  }
+
+  private static boolean isInFrameworkSpace(String currentClass, List<String> frameworkPackageList) {
     // @CRACK 2015-01-20 将JdbcTemplate的日志屏蔽掉，这样在日志中记录的将是Dao层的，便于查找问题
     // 2016-12-09 加入对HttpClientUtils的屏蔽
     // the check for org.apache.log4j.Category class is intended to support
     // log4j-over-slf4j. it solves http://bugzilla.slf4j.org/show_bug.cgi?id=66
-    if (currentClass.equals(fqnOfInvokingClass) || currentClass.equals(LOG4J_CATEGORY)
+    if (currentClass.equals(LOG4J_CATEGORY)
         || currentClass.startsWith(SLF4J_BOUNDARY)
         || JdbcTemplate.class.getName().equals(currentClass)
         || currentClass.startsWith(HttpClientUtils.class.getName())
@@ -0,0 +1,413 @@
+package org.etnaframework.core.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+
+/**
+ * <pre>
+ * 异步批量写访问日志，代替logback的文件appender（每条日志都要加锁，请求量大时锁竞争严重）
+ *
+ * 1、处理请求的线程只把日志时间和内容放入有界的环形缓冲区（多生产者单消费者，CAS占位，不加锁、不做格式化和IO）
+ * 2、单独的写线程每次取出缓冲区中所有的日志，格式化、编码后合并为一次写入（group commit），请求量越大每次写入的日志越多
+ * 3、缓冲区满时可选择丢弃（计数）或阻塞等待
+ * 4、输出格式和原来logback配置的%date{HH:mm:ss.SSS,GMT+8}|%message%n完全一致，按天滚动为access.yyyy-MM-dd.log，和TimeBasedRollingPolicy一致
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class AsyncAccessLogWriter {
+
+    private static final Logger log = Log.getLogger();
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** 写缓冲区的大小，一次批量写入的数据超过这个大小时会分多次写 */
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+
+    /** 缓冲区为空时写线程的等待时间 */
+    private static final long IDLE_PARK_NANOS = 1000000;
+
+    /** 文件路径，如logs/access.log */
+    private final File file;
+
+    /** 日志中时间的时区，和原来logback配置中的GMT+8一致 */
+    private final TimeZone timeZone;
+
+    /** 缓冲区满时是否阻塞等待，否则丢弃 */
+    private final boolean blockWhenFull;
+
+    /** 保留的历史日志文件天数，0表示不删除 */
+    private final int maxHistory;
+
+    private final Slot[] slots;
+
+    /** 每个位置的序号，等于写入位置表示可以写，等于写入位置+1表示已写入可以读 */
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    /** 下一个写入位置，由生产者CAS占用 */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** 下一个读取位置，只有写线程修改 */
+    private volatile long head;
+
+    private final LongAdder dropCount = new LongAdder();
+
+    private final AtomicLong writeCount = new AtomicLong();
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    private FileChannel channel;
+
+    /** 当前文件对应的日期，用于按天滚动 */
+    private String fileDay;
+
+    /** 当前文件对应日期的下一个0点（按timeZone），日志时间到达这个时间点才需要滚动，0表示还没有初始化 */
+    private long nextRollTime;
+
+    private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+    /** 和logback的encoder一样，没有配置编码时使用系统默认编码 */
+    private final CharsetEncoder encoder = Charset.defaultCharset()
+                                                  .newEncoder()
+                                                  .onMalformedInput(CodingErrorAction.REPLACE)
+                                                  .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /** 时间前缀的缓存，同一秒内只需要改毫秒部分 */
+    private final char[] timePrefix = "00:00:00.000|".toCharArray();
+
+    private long timePrefixSecond = -1;
+
+    /**
+     * @param file 日志文件路径
+     * @param bufferSize 缓冲区能容纳的日志条数，会向上取整为2的幂
+     * @param blockWhenFull 缓冲区满时是否阻塞等待，否则丢弃并计数
+     */
+    public AsyncAccessLogWriter(String file, int bufferSize, boolean blockWhenFull) {
+        this(file, bufferSize, blockWhenFull, TimeZone.getTimeZone("GMT+8"), 32);
+    }
+
+    public AsyncAccessLogWriter(String file, int bufferSize, boolean blockWhenFull, TimeZone timeZone, int maxHistory) {
+        int size = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+        this.file = new File(file).getAbsoluteFile();
+        this.timeZone = timeZone;
+        this.blockWhenFull = blockWhenFull;
+        this.maxHistory = maxHistory;
+        this.dayFormat.setTimeZone(timeZone);
+        this.slots = new Slot[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        writer = new Thread(this::writeLoop, "AccessLog(Writer)");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 提交一条日志，缓冲区满时按配置阻塞或丢弃，返回是否提交成功
+     */
+    public boolean append(String message) {
+        return append(System.currentTimeMillis(), message);
+    }
+
+    /**
+     * 提交一条指定时间的日志，时间用于输出和按天滚动
+     */
+    public boolean append(long time, String message) {
+        while (true) {
+            long pos = tail.get();
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    Slot s = slots[idx];
+                    s.time = time;
+                    s.message = message;
+                    sequences.lazySet(idx, pos + 1);
+                    return true;
+                }
+            } else if (dif < 0) { // 缓冲区满
+                if (!blockWhenFull || !running) {
+                    dropCount.increment();
+                    return false;
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (running || tail.get() != head) {
+            try {
+                int n = drain();
+                if (n == 0) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            } catch (Throwable ex) {
+                log.error("write access log to {} failed", file, ex);
+                closeChannel();
+                buffer.clear();
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS * 1000);
+            }
+        }
+        closeChannel();
+    }
+
+    /**
+     * 取出缓冲区中所有的日志，格式化后批量写入，返回写入的条数
+     */
+    private int drain() throws IOException {
+        int n = 0;
+        while (true) {
+            int idx = (int) (head & mask);
+            if (sequences.get(idx) != head + 1) {
+                break;
+            }
+            Slot s = slots[idx];
+            long time = s.time;
+            String message = s.message;
+            s.message = null;
+            sequences.lazySet(idx, head + slots.length);
+            head++;
+            rollIfNecessary(time);
+            encode(formatTime(time));
+            encode(CharBuffer.wrap(null == message ? "null" : message));
+            encode(CharBuffer.wrap(LINE_SEPARATOR));
+            n++;
+        }
+        if (n > 0) {
+            flush();
+            writeCount.addAndGet(n);
+            batchCount.incrementAndGet();
+        }
+        return n;
+    }
+
+    private CharBuffer formatTime(long time) {
+        long local = time + timeZone.getOffset(time);
+        long second = Math.floorDiv(local, 1000);
+        if (second != timePrefixSecond) {
+            timePrefixSecond = second;
+            int secOfDay = (int) Math.floorMod(second, 86400L);
+            put2(0, secOfDay / 3600);
+            put2(3, secOfDay / 60 % 60);
+            put2(6, secOfDay % 60);
+        }
+        int ms = (int) Math.floorMod(local, 1000L);
+        timePrefix[9] = (char) ('0' + ms / 100);
+        timePrefix[10] = (char) ('0' + ms / 10 % 10);
+        timePrefix[11] = (char) ('0' + ms % 10);
+        return CharBuffer.wrap(timePrefix);
+    }
+
+    private void put2(int offset, int value) {
+        timePrefix[offset] = (char) ('0' + value / 10);
+        timePrefix[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    private void encode(CharBuffer in) throws IOException {
+        while (true) {
+            CoderResult r = encoder.encode(in, buffer, true);
+            if (r.isOverflow()) {
+                flush();
+            } else {
+                break;
+            }
+        }
+        encoder.reset();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        if (buffer.hasRemaining()) {
+            FileChannel ch = openChannel();
+            while (buffer.hasRemaining()) {
+                ch.write(buffer);
+            }
+        }
+        buffer.clear();
+    }
+
+    /**
+     * 日期变化时，把当前文件改名为带日期的历史文件，之后的日志写入新文件
+     */
+    private void rollIfNecessary(long time) throws IOException {
+        if (time < nextRollTime) {
+            return;
+        }
+        if (null == fileDay) {
+            long fileTime = file.exists() ? file.lastModified() : time;
+            fileDay = dayFormat.format(new Date(fileTime));
+            nextRollTime = nextMidnight(fileTime);
+            if (time < nextRollTime) {
+                return;
+            }
+        }
+        flush(); // 之前的日志写入旧文件
+        closeChannel();
+        File rolled = new File(file.getParentFile(), historyName(fileDay));
+        if (file.exists() && !rolled.exists() && !file.renameTo(rolled)) {
+            log.warn("rename {} to {} failed", file, rolled);
+        }
+        fileDay = dayFormat.format(new Date(time));
+        nextRollTime = nextMidnight(time);
+        deleteHistory(time);
+    }
+
+    /**
+     * 指定时间点之后的下一个0点，每天只需要计算一次
+     */
+    private long nextMidnight(long time) {
+        Calendar c = Calendar.getInstance(timeZone);
+        c.setTimeInMillis(time);
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        c.add(Calendar.DATE, 1);
+        return c.getTimeInMillis();
+    }
+
+    private String historyName(String day) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) + "." + day + name.substring(dot) : name + "." + day;
+    }
+
+    private void deleteHistory(long time) {
+        if (maxHistory <= 0) {
+            return;
+        }
+        String expired = dayFormat.format(new Date(time - maxHistory * 86400000L));
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String prefix = (dot > 0 ? name.substring(0, dot) : name) + ".";
+        File[] files = file.getParentFile()
+                           .listFiles();
+        if (null == files) {
+            return;
+        }
+        for (File f : files) {
+            String n = f.getName();
+            if (n.startsWith(prefix) && n.length() >= prefix.length() + 10) {
+                String day = n.substring(prefix.length(), prefix.length() + 10);
+                if (day.matches("\\d{4}-\\d{2}-\\d{2}") && day.compareTo(expired) < 0 && !f.delete()) {
+                    log.warn("delete {} failed", f);
+                }
+            }
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (null == channel) {
+            File dir = file.getParentFile();
+            if (null != dir && !dir.exists() && !dir.mkdirs()) {
+                throw new IOException("cannot create directory " + dir);
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private void closeChannel() {
+        if (null != channel) {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * 停止写线程，缓冲区中剩余的日志会写完
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+    public String getFile() {
+        return file.getPath();
+    }
+
+    /**
+     * 缓冲区满时丢弃的日志条数
+     */
+    public long getDropCount() {
+        return dropCount.sum();
+    }
+
+    /**
+     * 输出统计信息，供/stat/accessLog查看
+     */
+    public String printStat() {
+        return "file=" + file + ", write=" + getWriteCount() + ", batch=" + getBatchCount() + ", pending=" + getPending() + ", drop=" + getDropCount() + ", blockWhenFull=" + blockWhenFull;
+    }
+
+    /**
+     * 已写入的日志条数
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * 批量写入的次数，和{@link #getWriteCount()}相比可以看出平均每次合并了多少条日志
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * 缓冲区中等待写入的日志条数
+     */
+    public int getPending() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * 环形缓冲区中的位置，预先分配好，重复使用
+     */
+    private static final class Slot {
+
+        long time;
+
+        String message;
+    }
+}
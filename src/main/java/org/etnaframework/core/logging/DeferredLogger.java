@@ -0,0 +1,104 @@
+package org.etnaframework.core.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.spi.LocationAwareLogger;
+
+/**
+ * <pre>
+ * 延迟计算参数的日志记录器，只有在对应的日志级别开启时才会计算参数，用于参数需要格式化、拼接等开销较大的场合
+ *
+ * 例如log.debug("{}", DatetimeUtils.format(time))即使debug没有开启也会执行format，改为
+ * dlog.debug("{}", () -> new Object[] { DatetimeUtils.format(time) })后只有开启debug时才会执行
+ *
+ * 注意lambda如果引用了局部变量，每次调用时还是会生成lambda对象，对于每次请求都会执行的代码，仍然建议直接用if (log.isDebugEnabled())判断
+ *
+ * 通过{@link LocationAwareLogger}记录日志，日志中的调用者信息（类名、方法名、行号）仍然是调用本类方法的位置
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public final class DeferredLogger {
+
+    private static final String FQCN = DeferredLogger.class.getName();
+
+    private final Logger log;
+
+    private final LocationAwareLogger locationAwareLog;
+
+    DeferredLogger(Logger log) {
+        this.log = log;
+        this.locationAwareLog = log instanceof LocationAwareLogger ? (LocationAwareLogger) log : null;
+    }
+
+    /**
+     * 包装已有的日志记录器
+     */
+    public static DeferredLogger of(Logger log) {
+        return new DeferredLogger(log);
+    }
+
+    public Logger getLogger() {
+        return log;
+    }
+
+    public boolean isTraceEnabled() {
+        return log.isTraceEnabled();
+    }
+
+    public boolean isDebugEnabled() {
+        return log.isDebugEnabled();
+    }
+
+    public boolean isInfoEnabled() {
+        return log.isInfoEnabled();
+    }
+
+    /**
+     * 开启trace时才计算参数并记录日志，参数最后一个为{@link Throwable}时会输出异常堆栈
+     */
+    public void trace(String format, Args args) {
+        if (log.isTraceEnabled()) {
+            log(LocationAwareLogger.TRACE_INT, format, args.get());
+        }
+    }
+
+    /**
+     * 开启debug时才计算参数并记录日志，参数最后一个为{@link Throwable}时会输出异常堆栈
+     */
+    public void debug(String format, Args args) {
+        if (log.isDebugEnabled()) {
+            log(LocationAwareLogger.DEBUG_INT, format, args.get());
+        }
+    }
+
+    /**
+     * 开启info时才计算参数并记录日志，参数最后一个为{@link Throwable}时会输出异常堆栈
+     */
+    public void info(String format, Args args) {
+        if (log.isInfoEnabled()) {
+            log(LocationAwareLogger.INFO_INT, format, args.get());
+        }
+    }
+
+    private void log(int level, String format, Object[] argArray) {
+        if (null != locationAwareLog) {
+            locationAwareLog.log(null, FQCN, level, format, argArray, null);
+        } else if (level == LocationAwareLogger.TRACE_INT) {
+            log.trace(format, argArray);
+        } else if (level == LocationAwareLogger.DEBUG_INT) {
+            log.debug(format, argArray);
+        } else {
+            log.info(format, argArray);
+        }
+    }
+
+    /**
+     * 延迟计算的日志参数
+     */
+    @FunctionalInterface
+    public interface Args {
+
+        Object[] get();
+    }
+}
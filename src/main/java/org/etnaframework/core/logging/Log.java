@@ -50,6 +50,13 @@ public class Log {
         return _getLoggerWith(null, null);
     }
 
+    /**
+     * 获得延迟计算参数的日志记录器，名称规则和{@link #getLogger()}相同
+     */
+    public static DeferredLogger getDeferredLogger() {
+        return new DeferredLogger(_getLoggerWith(null, null));
+    }
+
     /**
      * 通过前缀来获得log对象
      */
@@ -1,38 +1,29 @@
 package org.etnaframework.core.util;
 
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import org.etnaframework.core.logging.Log;
-import org.slf4j.Logger;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.etnaframework.core.util.RateLimiter.Algorithm;
 
 /**
+ * <pre>
  * 组件：防止客户端Denial of Service攻击 antiDosSpan秒内,防止一个指定类型请求最多响应antiDosCount次
  *
+ * 内部使用{@link RateLimiter}的滑动窗口算法实现，过期的记录在访问时复用，不再需要定时清理，initSweeper系列方法保留只为兼容
+ * </pre>
+ *
  * @author BlackCat
  * @since 2010-8-17
  */
 public class AntiDos {
 
-    private static final Logger log = Log.getLogger();
-
-    private static AtomicInteger sweepSchedulerCount = new AtomicInteger();
+    /** 默认最多记录的key数 */
+    private static final int DEFAULT_CAPACITY = 65536;
 
     private int antiDosCount;
 
     private int antiDosSpanMs;
 
-    private int antiDosWarnCount;
-
-    private ScheduledFuture<?> lastScheduledFuture;
-
-    private ConcurrentHashMap<Object, VisitInfo> visitInfos = new ConcurrentHashMap<Object, AntiDos.VisitInfo>();
+    private volatile RateLimiter limiter;
 
     public AntiDos() {
         this(10, 10);
@@ -52,7 +43,7 @@ public class AntiDos {
     }
 
     public static void main(String[] args) throws InterruptedException {
-        AntiDos dos = new AntiDos("3,10").initSweeper();
+        AntiDos dos = new AntiDos("3,10");
         while (true) {
             if (dos.visit(1l)) {
                 System.out.println(System.currentTimeMillis() + " - true");
@@ -68,7 +59,7 @@ public class AntiDos {
     }
 
     public void setAntiDosCount(int antiDosCount) {
-        this.antiDosCount = antiDosCount;
+        init(antiDosCount, antiDosSpanMs / 1000);
     }
 
     public int getAntiDosSpan() {
@@ -76,19 +67,23 @@ public class AntiDos {
     }
 
     public void setAntiDosSpan(int antiDosSpanSec) {
-        this.antiDosSpanMs = antiDosSpanSec * 1000;
+        init(antiDosCount, antiDosSpanSec);
     }
 
+    /**
+     * 超限的记录不再逐个打印日志，可通过{@link RateLimiter#getRejectCount()}查看被拒绝的次数
+     */
+    @Deprecated
     public int getAntiDosWarnCount() {
-        return antiDosWarnCount;
+        return antiDosCount * 5;
     }
 
+    @Deprecated
     public void setAntiDosWarnCount(int antiDosWarnCount) {
-        this.antiDosWarnCount = antiDosWarnCount;
     }
 
-    public ConcurrentHashMap<Object, VisitInfo> getVisitInfos() {
-        return visitInfos;
+    public RateLimiter getLimiter() {
+        return limiter;
     }
 
     private void init(int antiDosCount_l, int antiDosSpanSec) {
@@ -100,144 +95,38 @@ public class AntiDos {
         }
 
         this.antiDosCount = antiDosCount_l;
-        this.antiDosWarnCount = antiDosCount_l * 5;
         this.antiDosSpanMs = antiDosSpanSec * 1000;
+        this.limiter = new RateLimiter(Algorithm.SLIDING_WINDOW, antiDosCount_l, antiDosSpanMs, DEFAULT_CAPACITY);
     }
 
+    /**
+     * 过期的记录在访问时复用，不再需要定时清理
+     */
+    @Deprecated
     public AntiDos initSweeper() {
-        return initSweeper(0, null);
+        return this;
     }
 
+    @Deprecated
     public AntiDos initSweeper(int sweepSecSpan) {
-        initSweeper(sweepSecSpan, sweepSecSpan, null);
         return this;
     }
 
+    @Deprecated
     public AntiDos initSweeper(int sweepSecSpan, ScheduledExecutorService sweepScheduler) {
-        initSweeper(sweepSecSpan, sweepSecSpan, sweepScheduler);
         return this;
     }
 
+    @Deprecated
     public AntiDos initSweeper(int initialDelay, int sweepSecSpan, ScheduledExecutorService sweepScheduler) {
-        int sweepSecSpan_l = sweepSecSpan < 1 ? 600 : sweepSecSpan;// 默认10分钟清除一次
-        int initialDelay_l = initialDelay < 1 ? 600 : initialDelay;// 默认延迟10分钟
-        ScheduledExecutorService sweepScheduler_l = sweepScheduler == null ? getSweepScheduler() : sweepScheduler;
-
-        if (lastScheduledFuture != null) {
-            lastScheduledFuture.cancel(true);
-        }
-
-        lastScheduledFuture = sweepScheduler_l.scheduleAtFixedRate(new Runnable() {
-
-            @Override
-            public void run() {
-                try {
-                    long now = System.currentTimeMillis();
-                    for (Map.Entry<Object, VisitInfo> e : visitInfos.entrySet()) {
-                        VisitInfo info = e.getValue();
-                        if (info.isStale(now)) {
-                            removeVisitInfo(e.getKey(), info.counter.get());
-                        }
-                    }
-                } catch (Throwable e) {
-                    log.error("", e);
-                }
-            }
-        }, initialDelay_l, sweepSecSpan_l, TimeUnit.SECONDS);
         return this;
     }
 
-    private ScheduledExecutorService getSweepScheduler() {
-        return Executors.newScheduledThreadPool(1, new ThreadFactoryBuilder().setNameFormat("AntiDos-SweepScheduler" + sweepSchedulerCount.getAndIncrement() + "-pool-%d").build());
-    }
-
-    private void removeVisitInfo(Object checkid, int count) {
-        if (count >= antiDosWarnCount) {
-            log.warn("checkid:{} last {} SEC visitCount is {}", new Object[] {
-                checkid,
-                antiDosSpanMs,
-                count
-            });
-        }
-        visitInfos.remove(checkid);
-    }
-
     public boolean visit(Object checkid) {
-        VisitInfo newInfo = new VisitInfo();
-        VisitInfo ori = visitInfos.putIfAbsent(checkid, newInfo);
-        if (ori != null) {
-            newInfo = null;
-            return ori.visit(checkid);
-        }
-        newInfo.init();
-        return true;
+        return limiter.acquire(checkid);
     }
 
     public boolean visit(Object checkid, int count) {
-        VisitInfo newInfo = new VisitInfo();
-        VisitInfo ori = visitInfos.putIfAbsent(checkid, newInfo);
-        if (ori != null) {
-            newInfo = null;
-            return ori.visit(checkid, count);
-        }
-        return newInfo.init(count);
-    }
-
-    private class VisitInfo {
-
-        private volatile AtomicInteger counter;
-
-        private long createTime;
-
-        public void init() {
-            AtomicInteger i = new AtomicInteger(1);
-            counter = i;
-            createTime = System.currentTimeMillis();
-        }
-
-        /**
-         * 首次也有可能会超标，需要对此进行处理
-         */
-        public boolean init(int count) {
-            counter = new AtomicInteger(count);
-            createTime = System.currentTimeMillis();
-            if (count >= antiDosCount) {
-                return false;
-            }
-            return true;
-        }
-
-        public boolean isStale() {
-            return System.currentTimeMillis() - createTime >= antiDosSpanMs;
-        }
-
-        public boolean isStale(long now) {
-            return now - createTime >= antiDosSpanMs;
-        }
-
-        public boolean visit(Object checkid) {
-            if (null == counter) { // 尚未初始化的，直接放过
-                return true;
-            }
-            int count = counter.incrementAndGet();
-            if (isStale()) {
-                removeVisitInfo(checkid, count);
-            }
-            if (count >= antiDosCount) {
-                return false;
-            }
-            return true;
-        }
-
-        public boolean visit(Object checkid, int count) {
-            int c = counter.addAndGet(count);
-            if (isStale()) {
-                removeVisitInfo(checkid, c);
-            }
-            if (c >= antiDosCount) {
-                return false;
-            }
-            return true;
-        }
+        return limiter.acquire(checkid, count);
     }
 }
@@ -78,12 +78,12 @@ public final class CacheManager {
                 nameMaxLen = s.name.length();
             }
         }
-        String fmt = "%-" + nameMaxLen + "s %-10s %-10s %10s %10s %-14s %-14s %-14s %-14s %-14s %-14s\n";
+        String fmt = "%-" + nameMaxLen + "s %-10s %-10s %10s %10s %-14s %-14s %-14s %-14s %-14s %-14s %-14s %-14s\n";
         StringBuilder tmp = new StringBuilder();
-        tmp.append(String.format(fmt, "name", "maxSize", "size", "hitRate", "missRate", "hit", "miss", "access", "load", "loadSucc", "evictionCount"));
+        tmp.append(String.format(fmt, "name", "maxSize", "size", "hitRate", "missRate", "hit", "miss", "access", "load", "loadSucc", "evictionCount", "expireCount", "expireLagMs"));
         for (Statics s : result) {
             String line = String.format(fmt, s.name, s.maxSize, s.size, multiplyDouble(s.hitRate, 100, 2), multiplyDouble(s.missRate, 100, 2), s.hitCount, s.missCount, s.requestCount, s.loadCount,
-                s.loadSuccessCount, s.evictionCount);
+                s.loadSuccessCount, s.evictionCount, s.expireCount, String.format("%.0f/%d", s.averageExpireLagMs, s.maxExpireLagMs));
             tmp.append(line);
         }
         return tmp.toString();
@@ -1,28 +1,41 @@
 package org.etnaframework.core.util;
 
-import java.util.Iterator;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.etnaframework.core.util.TimerWheel.Node;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.Maps;
 
 /**
  * 带指定过期时间的loaderCache
- * (实际过期时间是指定时间后的10秒内的随机时间戳)
+ * (实际过期时间是指定时间后的10秒内的随机时间戳，同一个key的随机量是固定的)
+ *
+ * 每个元素的过期时间记录在元素自身上，读取时发现已过期就当作不存在；过期元素的内存由分层时间轮{@link TimerWheel}每秒回收一次，不需要遍历全部元素
  *
  * @author Daniel
  */
 public class CacheWrapper<K, V> {
 
-    /** 封装的guava cache */
-    LoadingCache<K, V> cache;
+    /** 过期时间的最大随机量，单位毫秒 */
+    private static final int EXPIRE_JITTER_MS = 10000;
+
+    /** 时间轮推进的间隔，单位毫秒 */
+    private static final long ADVANCE_INTERVAL_MS = 1000;
+
+    /** 封装的guava cache，值是带过期时间的时间轮元素 */
+    LoadingCache<K, Node<K, V>> cache;
 
     /** 缓存名 */
     private String name;
@@ -30,15 +43,24 @@ public class CacheWrapper<K, V> {
     /** 缓存数据量的大小 */
     private long maximumSize;
 
-    /** 数据的过期时间戳 key-> expireTimestamp */
-    private Map<K, Long> keyExpireTimestampMap = Maps.newConcurrentMap();
-
-    /** 用于把过期时间戳随机化 */
-    private Random random = new Random();
-
     /** 强制过期时间,单位毫秒 */
     private long expireTimeMS;
 
+    /** 过期时间轮，访问时需要加锁 */
+    private final TimerWheel<K, V> wheel = new TimerWheel<>(System.currentTimeMillis());
+
+    /** 被时间轮回收的过期元素个数 */
+    private final AtomicLong expireCount = new AtomicLong();
+
+    /** 过期元素从到期到被回收的总延迟，单位毫秒 */
+    private final AtomicLong expireLagMs = new AtomicLong();
+
+    /** 过期元素从到期到被回收的最大延迟，单位毫秒 */
+    private final AtomicLong maxExpireLagMs = new AtomicLong();
+
+    /** 以V为值的Map视图 */
+    private ConcurrentMap<K, V> mapView;
+
     /**
      * @param loader 匿名内部类，未命中的时候触发
      * @param listener 移除监听器
@@ -48,36 +70,74 @@ public class CacheWrapper<K, V> {
     CacheWrapper(String cacheName, CacheWrapperLoader<K, V> loader, RemovalListener<K, V> listener, long maximumSize, long expireTimeMS) {
         cache = CacheBuilder.newBuilder().recordStats() // 要记录stat
             .maximumSize(maximumSize <= 0 ? 50 : maximumSize) // 容量大小设置，最大容量默认为50
-            .removalListener(listener) // 不需要异步执行了,因为本来执行就是异步执行,而且没有自动过期,用户线程读取的时候不会有额外影响
-            .build(new CacheLoader<K, V>() {
+            .removalListener((RemovalNotification<K, Node<K, V>> n) -> { // 不需要异步执行了,因为本来执行就是异步执行,而且没有自动过期,用户线程读取的时候不会有额外影响
+                Node<K, V> node = n.getValue();
+                if (null != node) {
+                    deschedule(node);
+                }
+                if (null != listener) {
+                    listener.onRemoval(RemovalNotification.create(n.getKey(), null == node ? null : node.value, n.getCause()));
+                }
+            })
+            .build(new CacheLoader<K, Node<K, V>>() {
 
                 @Override
-                public V load(K key) throws Exception {
-                    keyExpireTimestampMap.put(key, getDecodeExpireTime(getExpireTimeMS()));
-                    return loader.load(key);
+                public Node<K, V> load(K key) throws Exception {
+                    return schedule(key, loader.load(key), getExpireTimeMS());
                 }
             });
 
         this.name = cacheName;
-        long initialDelay = 5000L;
-        long delay = 5000L;
         setExpireTimeMS(expireTimeMS <= 0 ? 5000L : expireTimeMS);
         this.maximumSize = maximumSize;
 
-        ThreadUtils.getCron().scheduleWithFixedDelay(() -> { // 检查缓存过期的后台进程
-            long now = System.currentTimeMillis();
-            Iterator<Map.Entry<K, Long>> it = keyExpireTimestampMap.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<K, Long> e = it.next();
-                K key = e.getKey();
-                Long val = e.getValue();
-                if (val <= now) {
-                    // expire
-                    cache.invalidate(key); // 强制使某个key过期,如果listen不是在这个线程里执行的话,那listen需要异步执行.
-                    it.remove();
-                }
-            }
-        }, initialDelay, delay, TimeUnit.MILLISECONDS);
+        ThreadUtils.getCron().scheduleWithFixedDelay(this::cleanUp, ADVANCE_INTERVAL_MS, ADVANCE_INTERVAL_MS, TimeUnit.MILLISECONDS); // 回收过期元素的后台任务
+    }
+
+    /**
+     * 生成元素并放入时间轮
+     */
+    private Node<K, V> schedule(K key, V val, long expireMS) {
+        Node<K, V> node = new Node<>(key, val, getDecodeExpireTime(key, expireMS));
+        synchronized (wheel) {
+            wheel.schedule(node);
+        }
+        return node;
+    }
+
+    /**
+     * 从时间轮中移除元素
+     */
+    private void deschedule(Node<K, V> node) {
+        synchronized (wheel) {
+            wheel.deschedule(node);
+        }
+    }
+
+    /**
+     * 立即回收已过期的元素，一般不需要调用，后台任务每秒会执行一次
+     */
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        List<Node<K, V>> expired = new ArrayList<>();
+        synchronized (wheel) {
+            wheel.advance(now, expired::add);
+        }
+        // 在锁外移除，防止移除监听器执行太久影响其他线程写入
+        long lag = 0;
+        long maxLag = 0;
+        for (Node<K, V> node : expired) {
+            cache.asMap()
+                 .remove(node.key, node); // 只移除这个元素，已被重新put的不受影响
+            long l = now - node.expireAt;
+            lag += l;
+            maxLag = Math.max(maxLag, l);
+        }
+        if (!expired.isEmpty()) {
+            expireCount.addAndGet(expired.size());
+            expireLagMs.addAndGet(lag);
+            maxExpireLagMs.accumulateAndGet(maxLag, Math::max);
+        }
     }
 
     public Statics getStatics() {
@@ -100,36 +160,53 @@ public class CacheWrapper<K, V> {
         statics.totalLoadTime = stats.totalLoadTime();
         statics.evictionCount = stats.evictionCount();
         statics.hitRate = stats.hitRate();
+        statics.expireCount = expireCount.get();
+        statics.averageExpireLagMs = statics.expireCount == 0 ? 0 : (double) expireLagMs.get() / statics.expireCount;
+        statics.maxExpireLagMs = maxExpireLagMs.get();
         return statics;
     }
 
     public void invaldateAll() {
-        keyExpireTimestampMap.clear();
         cache.invalidateAll();
     }
 
+    /**
+     * 元素是否已过期，已过期但还没被时间轮回收的元素当作不存在
+     */
+    private static boolean isExpired(Node<?, ?> node) {
+        return node.expireAt <= System.currentTimeMillis();
+    }
+
     /**
      * 获取缓存值
      */
     public V get(K key) throws ExecutionException {
-        return cache.get(key);
+        Node<K, V> node = cache.get(key);
+        if (isExpired(node)) { // 已过期但还没被回收，当作不存在重新加载
+            cache.asMap()
+                 .remove(key, node);
+            node = cache.get(key);
+        }
+        return node.value;
     }
 
     /**
      * 获取缓存值
      */
     public V getIfPresent(K key) throws ExecutionException {
-        return cache.getIfPresent(key);
+        Node<K, V> node = cache.getIfPresent(key);
+        if (null == node || isExpired(node)) {
+            return null;
+        }
+        return node.value;
     }
 
     public void put(K key, V val, long expireMS) {
-        cache.put(key, val);
-        keyExpireTimestampMap.put(key, getDecodeExpireTime(expireMS));
+        cache.put(key, schedule(key, val, expireMS));
     }
 
     public void put(K key, V val) {
-        cache.put(key, val);
-        keyExpireTimestampMap.put(key, getDecodeExpireTime(expireTimeMS));
+        cache.put(key, schedule(key, val, expireTimeMS));
     }
 
     /**
@@ -137,14 +214,15 @@ public class CacheWrapper<K, V> {
      */
     public void invalidate(K key) {
         cache.invalidate(key);
-        keyExpireTimestampMap.remove(key);
     }
 
     /**
-     * 获取基于指定过期时间后的随机过期时间戳
+     * 获取基于指定过期时间后的随机过期时间戳，随机量由key的hashCode决定，同一个key每次都相同
      */
-    private long getDecodeExpireTime(long expireTime) {
-        return System.currentTimeMillis() + expireTime + random.nextInt(10000);// demo.
+    private long getDecodeExpireTime(K key, long expireTime) {
+        int h = key.hashCode() * 0x9e3779b9;
+        h ^= h >>> 16;
+        return System.currentTimeMillis() + expireTime + (h & Integer.MAX_VALUE) % EXPIRE_JITTER_MS;
     }
 
     public long getExpireTimeMS() {
@@ -159,7 +237,128 @@ public class CacheWrapper<K, V> {
      * 获取缓存对象Map,以便外部调用缓存中的所有值
      */
     public ConcurrentMap<K, V> asMap() {
-        return cache.asMap();
+        ConcurrentMap<K, V> m = mapView;
+        if (null == m) {
+            mapView = m = new MapView();
+        }
+        return m;
+    }
+
+    /**
+     * 以V为值的Map视图，写入的元素使用默认的过期时间，已过期但还没被回收的元素当作不存在
+     */
+    private class MapView extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+        private final Map<K, V> values = Maps.transformValues(Maps.filterValues(cache.asMap(), n -> !isExpired(n)), n -> n.value);
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return values.entrySet();
+        }
+
+        @Override
+        public int size() {
+            return values.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return values.get(key);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return valueOf(cache.asMap()
+                                .remove(key));
+        }
+
+        @Override
+        public V put(K key, V value) {
+            return valueOf(cache.asMap()
+                                .put(key, schedule(key, value, expireTimeMS)));
+        }
+
+        @Override
+        public V putIfAbsent(K key, V value) {
+            Node<K, V> node = schedule(key, value, expireTimeMS);
+            while (true) {
+                Node<K, V> old = cache.asMap()
+                                      .putIfAbsent(key, node);
+                if (null == old) {
+                    return null;
+                }
+                if (!isExpired(old)) {
+                    deschedule(node);
+                    return old.value;
+                }
+                if (cache.asMap()
+                         .replace(key, old, node)) { // 旧值已过期，当作不存在
+                    return null;
+                }
+            }
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            Node<K, V> old = cache.asMap()
+                                  .get(key);
+            return null != old && !isExpired(old) && equal(old.value, value) && cache.asMap()
+                                                                                     .remove(key, old);
+        }
+
+        @Override
+        public boolean replace(K key, V oldValue, V newValue) {
+            Node<K, V> old = cache.asMap()
+                                  .get(key);
+            if (null == old || isExpired(old) || !equal(old.value, oldValue)) {
+                return false;
+            }
+            Node<K, V> node = schedule(key, newValue, expireTimeMS);
+            if (cache.asMap()
+                     .replace(key, old, node)) {
+                return true;
+            }
+            deschedule(node);
+            return false;
+        }
+
+        @Override
+        public V replace(K key, V value) {
+            Node<K, V> node = null;
+            while (true) {
+                Node<K, V> old = cache.asMap()
+                                      .get(key);
+                if (null == old || isExpired(old)) {
+                    if (null != node) {
+                        deschedule(node);
+                    }
+                    return null;
+                }
+                if (null == node) {
+                    node = schedule(key, value, expireTimeMS);
+                }
+                if (cache.asMap()
+                         .replace(key, old, node)) {
+                    return old.value;
+                }
+            }
+        }
+
+        /**
+         * 取出元素的值，元素已过期时返回null
+         */
+        private V valueOf(Node<K, V> node) {
+            return null == node || isExpired(node) ? null : node.value;
+        }
+
+        private boolean equal(Object a, Object b) {
+            return a == b || (null != a && a.equals(b));
+        }
     }
 
     public static class Statics {
@@ -208,6 +407,15 @@ public class CacheWrapper<K, V> {
 
         /** 缓存中条目被移除的次数 */
         public long evictionCount;
+
+        /** 被后台任务回收的过期条目个数 */
+        public long expireCount;
+
+        /** 过期条目从到期到被回收的平均延迟，单位毫秒 */
+        public double averageExpireLagMs;
+
+        /** 过期条目从到期到被回收的最大延迟，单位毫秒 */
+        public long maxExpireLagMs;
     }
 
     /**
@@ -1,6 +1,7 @@
 package org.etnaframework.core.util;
 
 import java.util.Arrays;
+import org.etnaframework.core.util.HttpClientUtils.HttpClientBuilder;
 import org.etnaframework.core.util.KeyValueGetter.DbMap;
 
 /**
@@ -64,6 +65,13 @@ public class DingTalkRobotUtils {
         if (StringTools.isEmpty(robotUrl)) { // 地址为空时直接忽略
             return;
         }
+        markdown(robotUrl, title, content, at).fetch();
+    }
+
+    /**
+     * 生成发送markdown消息的请求但不发送，调用方可以设置超时时间等参数后再调用{@link HttpClientBuilder#fetch()}，并根据返回结果判断是否发送成功
+     */
+    public static HttpClientBuilder markdown(String robotUrl, String title, CharSequence content, String... at) {
         // {
         //     "msgtype":"markdown",
         //     "markdown":{
@@ -101,10 +109,9 @@ public class DingTalkRobotUtils {
                 });
             }
         };
-        HttpClientUtils.post(robotUrl)
-                       .header("Content-Type", "application/json")
-                       .content(JsonObjectUtils.createJson(data))
-                       .fetch();
+        return HttpClientUtils.post(robotUrl)
+                              .header("Content-Type", "application/json")
+                              .content(JsonObjectUtils.createJson(data));
     }
 
     /**
@@ -113,6 +120,16 @@ public class DingTalkRobotUtils {
      * 如果需要对content内容定制，请使用{@link #sendMarkdown(String, String, CharSequence, String...)}
      */
     public static void sendMarkdownGeneral(String robotUrl, String title, CharSequence content, String... at) {
+        if (StringTools.isEmpty(robotUrl)) { // 地址为空时直接忽略
+            return;
+        }
+        markdownGeneral(robotUrl, title, content, at).fetch();
+    }
+
+    /**
+     * 生成通用格式的markdown消息请求但不发送，参见{@link #markdown(String, String, CharSequence, String...)}
+     */
+    public static HttpClientBuilder markdownGeneral(String robotUrl, String title, CharSequence content, String... at) {
         // 对内容进行markdown标记处理，在钉钉机器人里面显示清晰一些
         String nt = title + "@" + SystemInfo.HOSTNAME;
         StringBuilder c = new StringBuilder("**").append(StringTools.escapeMarkdown(nt))
@@ -143,6 +160,6 @@ public class DingTalkRobotUtils {
                 }
             }
         }
-        sendMarkdown(robotUrl, nt, c.toString(), at);
+        return markdown(robotUrl, nt, c.toString(), at);
     }
 }
@@ -1,5 +1,8 @@
 package org.etnaframework.core.util;
 
+import java.nio.charset.Charset;
+import org.etnaframework.core.util.StringTools.CharsetEnum;
+
 /**
  * <pre>
  * 本类的主要功能是将带有emoji的字符串，格式化成unicode字符串，并且提供可见unicode字符反解成emoji字符
@@ -200,4 +203,53 @@ public class EmojiCharacterUtils {
         }
         return result;
     }
+
+    /**
+     * 判断传入的二进制文本中是否包含emoji符号，UTF-8编码的直接按字节解析，不生成中间的字符串
+     */
+    public static boolean containsEmoji(byte[] src, Charset charset) {
+        if (CollectionTools.isEmpty(src)) {
+            return false;
+        }
+        if (!CharsetEnum.UTF_8.equals(charset)) {
+            return containsEmoji(new String(src, charset));
+        }
+        int i = 0;
+        while (i < src.length) {
+            int b = src[i] & 0xFF;
+            int codepoint;
+            int len;
+            if (b < 0x80) {
+                codepoint = b;
+                len = 1;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                codepoint = b & 0x1F;
+                len = 2;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                codepoint = b & 0x0F;
+                len = 3;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                codepoint = b & 0x07;
+                len = 4;
+            } else { // 非法的UTF-8字节，解码为字符串时会被替换为U+FFFD，不算emoji
+                i++;
+                continue;
+            }
+            int j = 1;
+            for (; j < len && i + j < src.length && (src[i + j] & 0xC0) == 0x80; j++) {
+                codepoint = (codepoint << 6) | (src[i + j] & 0x3F);
+            }
+            if (j < len) { // 不完整的字节序列
+                i += j;
+                continue;
+            }
+            i += len;
+            // 过长编码和代理区的码点在解码为字符串时都会被替换为U+FFFD
+            boolean malformed = (len == 3 && (codepoint < 0x800 || (codepoint >= 0xD800 && codepoint <= 0xDFFF))) || (len == 4 && (codepoint < 0x10000 || codepoint > 0x10FFFF));
+            if (!malformed && isEmojiCharacter(codepoint)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
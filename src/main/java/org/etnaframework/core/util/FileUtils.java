@@ -26,6 +26,7 @@ import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -1151,6 +1152,68 @@ public final class FileUtils {
         return bytes;
     }
 
+    /**
+     * <pre>
+     * 读取流中的全部内容，用于读取HTTP请求/返回的body部分，每次都是批量读取
+     *
+     * 如果给出的预计长度和实际读到的一致（大部分带Content-Length的情况），读到的内容直接返回，不会再复制一次
+     * 长度未知或预计不准确时，分块读取后再拼接到一起
+     * </pre>
+     *
+     * @param lengthHint 预计的长度（如Content-Length），仅用于预先分配空间，小于0表示未知，实际长度以读到的内容为准
+     * @param maxLength 允许读取的最大长度，预计长度或实际读到的超出时抛出{@link ContentTooLargeException}，小于等于0表示不限制
+     */
+    public static byte[] readBytes(InputStream stream, int lengthHint, int maxLength) throws IOException {
+        if (maxLength > 0 && lengthHint > maxLength) { // 还没读就知道超出了，直接拒绝，不分配空间
+            throw new ContentTooLargeException("Content too large, length=" + lengthHint + ", maxLength=" + maxLength);
+        }
+        int initLength = lengthHint < 0 ? 4096 : lengthHint;
+        if (maxLength <= 0) { // 不限制长度时，防止预计长度乱填导致一次性分配过大的空间
+            initLength = Math.min(initLength, 16 * MEGABYTE);
+        }
+        byte[] bytes = new byte[initLength];
+        List<byte[]> buffers = null;
+        int count = 0;
+        int total = 0;
+        while (true) {
+            if (count == bytes.length) { // 当前块写满了，先试探下是否已经读完，避免多分配一个块
+                int b = stream.read();
+                if (b < 0) {
+                    break;
+                }
+                if (buffers == null) {
+                    buffers = new ArrayList<byte[]>();
+                }
+                buffers.add(bytes);
+                bytes = new byte[Math.min(MEGABYTE, Math.max(4096, bytes.length * 2))];
+                bytes[0] = (byte) b;
+                count = 1;
+                total++;
+            } else {
+                int n = stream.read(bytes, count, bytes.length - count);
+                if (n <= 0) {
+                    break;
+                }
+                count += n;
+                total += n;
+            }
+            if (maxLength > 0 && total > maxLength) {
+                throw new ContentTooLargeException("Content too large, read=" + total + ", maxLength=" + maxLength);
+            }
+        }
+        if (buffers == null) {
+            return count == bytes.length ? bytes : Arrays.copyOf(bytes, count);
+        }
+        byte[] result = new byte[total];
+        int pos = 0;
+        for (byte[] buffer : buffers) {
+            System.arraycopy(buffer, 0, result, pos, buffer.length);
+            pos += buffer.length;
+        }
+        System.arraycopy(bytes, 0, result, pos, count);
+        return result;
+    }
+
     public static byte[] readBytesAdaptive(InputStream stream) throws IOException {
         byte[] bytes = new byte[4096];
         List<byte[]> buffers = null;
@@ -2209,6 +2272,18 @@ public final class FileUtils {
     // }
     // }
     // }
+
+    /**
+     * 读取的内容超出了允许的最大长度
+     */
+    public static class ContentTooLargeException extends IOException {
+
+        private static final long serialVersionUID = 2830918237461528530L;
+
+        public ContentTooLargeException(String message) {
+            super(message);
+        }
+    }
 }
 
 /**
@@ -0,0 +1,292 @@
+package org.etnaframework.core.util;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.etnaframework.core.spring.annotation.Config;
+import org.etnaframework.core.util.ThreadUtils.NamedThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * <pre>
+ * {@link HttpClientUtils}的连接管理
+ *
+ * 1、连接复用：HttpURLConnection自带按目标地址（协议+host+端口+代理）区分的keep-alive连接池（sun.net.www.http.KeepAliveCache），
+ *    只要请求不带Connection: close、返回内容完整读完并关闭流、不调用disconnect，连接就会放回池中给下一个请求复用，省去TCP建连和TLS握手
+ *    池的参数只能通过JVM系统属性设置，并且在第一次发起请求之前就要设好，所以这里在类加载时（最晚在第一次请求前）给出默认值（启动参数中已经指定的不会覆盖）：
+ *      http.maxConnections          每个目标地址最多保留的空闲连接数，默认{@link #DEFAULT_MAX_IDLE_PER_ROUTE}
+ *      http.keepAlive.time.server   空闲连接多少秒后关闭（服务端返回了Keep-Alive: timeout=n时以服务端为准，JDK 17.0.5/11.0.17之前的版本固定为5秒），默认{@link #DEFAULT_IDLE_TIMEOUT_SEC}
+ * 2、并发限制：每个目标地址同时进行的请求数不超过{@link #maxPerRoute}，超出的请求排队等待，等待超过连接超时时间就放弃，防止某个下游变慢时占满所有线程
+ * 3、异步请求：{@link HttpClientUtils.HttpClientBuilder#fetchAsync()}在独立的线程池中执行
+ * 4、统计：每个目标地址的请求数、进行中/排队中的请求数、失败数、耗时等，在/stat/httpClient接口可查看
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+public final class HttpClientPool {
+
+    /** 每个目标地址最多保留的空闲连接数（JDK默认为5） */
+    public static final int DEFAULT_MAX_IDLE_PER_ROUTE = 32;
+
+    /** 空闲连接的保留时间，单位秒 */
+    public static final int DEFAULT_IDLE_TIMEOUT_SEC = 30;
+
+    /** 统计的目标地址数量超过这个值时，清理没有进行中请求的目标地址，防止请求大量不同的地址时无限增长 */
+    private static final int MAX_ROUTES = 1024;
+
+    /** 每个目标地址同时进行的请求数上限，修改后只对新出现的目标地址生效 */
+    @Config("etna.httpClient.maxPerRoute")
+    public static int maxPerRoute = 64;
+
+    /** 异步请求线程池的线程数 */
+    @Config(value = "etna.httpClient.asyncThreads", resetable = false)
+    public static int asyncThreads = Math.max(16, SystemInfo.CORE_PROCESSOR_NUM * 4);
+
+    /** 异步请求线程池的排队长度，排满时请求直接失败 */
+    @Config(value = "etna.httpClient.asyncQueueSize", resetable = false)
+    public static int asyncQueueSize = 4096;
+
+    private static final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    private static volatile ThreadPoolExecutor asyncExecutor;
+
+    static {
+        if (null == System.getProperty("http.maxConnections")) {
+            System.setProperty("http.maxConnections", String.valueOf(DEFAULT_MAX_IDLE_PER_ROUTE));
+        }
+        if (null == System.getProperty("http.keepAlive.time.server")) {
+            System.setProperty("http.keepAlive.time.server", String.valueOf(DEFAULT_IDLE_TIMEOUT_SEC));
+        }
+    }
+
+    /**
+     * 获取URL对应的目标地址，第一次请求时创建
+     */
+    static Route getRoute(URL url) {
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        String key = url.getProtocol() + "://" + url.getHost() + ":" + port;
+        Route route = routes.get(key);
+        if (null == route) {
+            if (routes.size() >= MAX_ROUTES) {
+                // 被清理的目标地址如果恰好有请求正在获取许可，会和新创建的各自计数，短时间内并发限制会宽松一些，不影响正确性
+                routes.values()
+                      .removeIf(r -> r.active.get() == 0 && r.waiting.get() == 0);
+            }
+            route = routes.computeIfAbsent(key, Route::new);
+        }
+        return route;
+    }
+
+    /**
+     * 获取异步请求的线程池，第一次使用时创建，并纳入监控，在/stat接口可查看状态
+     */
+    static ThreadPoolExecutor getAsyncExecutor() {
+        if (null == asyncExecutor) {
+            synchronized (HttpClientPool.class) {
+                if (null == asyncExecutor) {
+                    ThreadPoolExecutor e = new ThreadPoolExecutor(asyncThreads, asyncThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(asyncQueueSize),
+                        new NamedThreadFactory("HttpClient(Async)", Thread.NORM_PRIORITY, true));
+                    e.allowCoreThreadTimeOut(true);
+                    ThreadUtils.addThreadPool(e);
+                    asyncExecutor = e;
+                }
+            }
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * 所有目标地址的统计，按请求数从多到少排序
+     */
+    public static List<Route> getRoutes() {
+        List<Route> list = new ArrayList<>(routes.values());
+        list.sort((a, b) -> Long.compare(b.getRequestCount(), a.getRequestCount()));
+        return list;
+    }
+
+    /**
+     * 输出连接池配置和各目标地址的统计
+     */
+    public static String printStat() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("http.keepAlive=")
+          .append(System.getProperty("http.keepAlive", "true"))
+          .append(", http.maxConnections=")
+          .append(System.getProperty("http.maxConnections"))
+          .append(", http.keepAlive.time.server=")
+          .append(System.getProperty("http.keepAlive.time.server"))
+          .append("s, maxPerRoute=")
+          .append(maxPerRoute)
+          .append("\n");
+        if (null != asyncExecutor) {
+            sb.append("async: active=")
+              .append(asyncExecutor.getActiveCount())
+              .append(", queued=")
+              .append(asyncExecutor.getQueue()
+                                   .size())
+              .append(", completed=")
+              .append(asyncExecutor.getCompletedTaskCount())
+              .append("\n");
+        }
+        sb.append("\n");
+        List<Route> list = getRoutes();
+        int nameMaxLen = 10; // 找出最长的名称，用于显示时对齐数据
+        for (Route r : list) {
+            nameMaxLen = Math.max(nameMaxLen, r.getName()
+                                               .length());
+        }
+        String fmt = "%-" + nameMaxLen + "s %10s %8s %8s %8s %8s %8s %10s %10s\n";
+        sb.append(String.format(fmt, "route", "request", "active", "waiting", "peak", "failed", "rejected", "avgMs", "maxMs"));
+        for (Route r : list) {
+            sb.append(String.format(fmt, r.getName(), r.getRequestCount(), r.getActiveCount(), r.getWaitingCount(), r.getPeakActiveCount(), r.getFailedCount(), r.getRejectedCount(),
+                String.format("%.2f", r.getAverageMs()), r.getMaxMs()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 一个目标地址（协议+host+端口）的并发限制和统计
+     */
+    public static final class Route {
+
+        private final String name;
+
+        private final Semaphore permits;
+
+        private final AtomicInteger active = new AtomicInteger();
+
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        private final LongAccumulator peakActive = new LongAccumulator(Math::max, 0);
+
+        private final LongAdder requestCount = new LongAdder();
+
+        private final LongAdder failedCount = new LongAdder();
+
+        private final LongAdder rejectedCount = new LongAdder();
+
+        private final LongAdder totalMs = new LongAdder();
+
+        private final LongAccumulator maxMs = new LongAccumulator(Math::max, 0);
+
+        Route(String name) {
+            this.name = name;
+            this.permits = new Semaphore(Math.max(1, maxPerRoute));
+        }
+
+        /**
+         * 获取发起请求的许可，超过等待时间仍然拿不到时抛出{@link RouteBusyException}
+         */
+        void acquire(long waitMs) throws IOException {
+            if (!permits.tryAcquire()) {
+                waiting.incrementAndGet();
+                try {
+                    if (!permits.tryAcquire(Math.max(0, waitMs), TimeUnit.MILLISECONDS)) {
+                        rejectedCount.increment();
+                        throw new RouteBusyException(name + "的并发请求数已达到上限" + maxPerRoute + "，等待" + waitMs + "ms后仍未轮到");
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread()
+                          .interrupt();
+                    throw new IOException(ex);
+                } finally {
+                    waiting.decrementAndGet();
+                }
+            }
+            peakActive.accumulate(active.incrementAndGet());
+        }
+
+        /**
+         * 请求结束后归还许可并记录统计
+         */
+        void release(long spanMs, boolean failed) {
+            active.decrementAndGet();
+            permits.release();
+            requestCount.increment();
+            totalMs.add(spanMs);
+            maxMs.accumulate(spanMs);
+            if (failed) {
+                failedCount.increment();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 已完成的请求数
+         */
+        public long getRequestCount() {
+            return requestCount.sum();
+        }
+
+        /**
+         * 进行中的请求数
+         */
+        public int getActiveCount() {
+            return active.get();
+        }
+
+        /**
+         * 排队等待许可的请求数
+         */
+        public int getWaitingCount() {
+            return waiting.get();
+        }
+
+        /**
+         * 同时进行的请求数的峰值
+         */
+        public long getPeakActiveCount() {
+            return peakActive.get();
+        }
+
+        /**
+         * 连接/读取失败的请求数（不含HTTP状态码为4xx/5xx的）
+         */
+        public long getFailedCount() {
+            return failedCount.sum();
+        }
+
+        /**
+         * 因为并发请求数达到上限等待超时而放弃的请求数
+         */
+        public long getRejectedCount() {
+            return rejectedCount.sum();
+        }
+
+        public double getAverageMs() {
+            long n = getRequestCount();
+            return n == 0 ? 0 : (double) totalMs.sum() / n;
+        }
+
+        public long getMaxMs() {
+            return maxMs.get();
+        }
+    }
+
+    /**
+     * 目标地址的并发请求数达到上限，等待超时
+     */
+    public static class RouteBusyException extends IOException {
+
+        private static final long serialVersionUID = -4815370982275316204L;
+
+        public RouteBusyException(String message) {
+            super(message);
+        }
+    }
+}
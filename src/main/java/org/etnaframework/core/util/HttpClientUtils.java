@@ -1,8 +1,11 @@
 package org.etnaframework.core.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Authenticator;
@@ -11,6 +14,7 @@ import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.PasswordAuthentication;
 import java.net.Proxy;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.Charset;
@@ -24,7 +28,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -34,6 +42,7 @@ import javax.net.ssl.X509TrustManager;
 import org.etnaframework.core.logging.Log;
 import org.etnaframework.core.spring.annotation.Config;
 import org.etnaframework.core.util.DatetimeUtils.Datetime;
+import org.etnaframework.core.util.HttpClientPool.Route;
 import org.etnaframework.core.util.KeyValueGetter.DbMap;
 import org.etnaframework.core.util.StringTools.CharsetEnum;
 import org.slf4j.Logger;
@@ -44,7 +53,7 @@ import com.alibaba.fastjson.JSONObject;
  * http请求封装，支持http/https
  *
  * 基于jdk自带的{@link URLConnection}包装实现，不依赖第三方库，简化了使用方式
- * 默认支持301/302跳转，内容gzip压缩，multipart文件上传等功能
+ * 默认支持301/302跳转，内容gzip压缩，multipart文件上传，keep-alive连接复用等功能，连接管理参见{@link HttpClientPool}
  *
  * 参考：
  * a:) HttpURLConnection的connect()函数，实际上只是建立了一个与服务器的tcp连接，并没有实际发送http请求。
@@ -114,6 +123,13 @@ public final class HttpClientUtils {
     @Config("etna.httpClient.defaultUserAgent")
     public static String defaultUserAgent = "Mozilla/5.0 (" + SystemInfo.COMMAND_SHORT + "; " + SystemInfo.HOSTNAME + ")";
 
+    /** 默认是否复用连接（keep-alive），连接池的配置参见{@link HttpClientPool} */
+    @Config("etna.httpClient.defaultKeepAlive")
+    public static boolean defaultKeepAlive = true;
+
+    /** 流式读取返回内容时，处理完毕后如果还有剩余的内容，最多读掉多少字节使连接可以复用，超出的直接关闭连接 */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
     /** 记录日志时，记录返回内容的最大长度 */
     @Config("etna.httpClient.defaultResultSize")
     public static int defaultResultSize = 500;
@@ -249,6 +265,18 @@ public final class HttpClientUtils {
         T onFailure(HttpResult hr);
     }
 
+    /**
+     * 以流的方式处理返回内容，参见{@link HttpClientBuilder#fetchStream(HttpStreamHandler)}
+     */
+    public interface HttpStreamHandler<T> {
+
+        /**
+         * @param hr 只有状态码和header，没有内容
+         * @param body 返回内容（4xx/5xx时为错误内容），已按Content-Encoding解压，不需要关闭
+         */
+        T handle(HttpResult hr, InputStream body) throws Throwable;
+    }
+
     public static class HttpClientBuilder {
 
         /** 请求方式，参见HttpMethod的变量定义 */
@@ -269,8 +297,8 @@ public final class HttpClientUtils {
         /** 请求使用的User-Agent */
         private String userAgent = defaultUserAgent;
 
-        /** 默认使用短连接 */
-        private boolean keepAlive = false;
+        /** 是否复用连接，默认为{@link #defaultKeepAlive} */
+        private boolean keepAlive = defaultKeepAlive;
 
         /** 默认开启gzip */
         private boolean gzip = true;
@@ -320,6 +348,9 @@ public final class HttpClientUtils {
         /** 记录访问日志，是否只在出错的时候记录 */
         private boolean logOnErrorOnly = false;
 
+        /** 请求必须在这个时间点（毫秒时间戳）之前完成，0表示不限制 */
+        private long deadline;
+
         private HttpClientBuilder(HttpMethod method, String url) {
             this.method = method;
             this.url = url;
@@ -376,13 +407,21 @@ public final class HttpClientUtils {
         }
 
         /**
-         * 使用系统自带的连接池，能提升性能，但会有连接丢失卡死的问题，请按需斟酌使用
+         * 使用系统自带的连接池复用连接（默认为{@link #defaultKeepAlive}），连接池的配置参见{@link HttpClientPool}
          */
         public HttpClientBuilder keepAlive() {
             this.keepAlive = true;
             return this;
         }
 
+        /**
+         * 不复用连接，请求结束后关闭，用于对方不能正确处理keep-alive的情况
+         */
+        public HttpClientBuilder noKeepAlive() {
+            this.keepAlive = false;
+            return this;
+        }
+
         /**
          * 使用post multipart/form-data上传数据
          */
@@ -457,6 +496,29 @@ public final class HttpClientUtils {
             return this;
         }
 
+        /**
+         * 设置请求必须在多长时间内完成（包括排队等待），连接/读取的超时时间会被限制在剩余时间内，到期还没发出的请求直接失败
+         */
+        public HttpClientBuilder deadline(long timeout, TimeUnit unit) {
+            this.deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * 设置请求必须在这个时间点（毫秒时间戳）之前完成，用于将上游请求剩余的时间传递给下游请求
+         */
+        public HttpClientBuilder deadlineAt(long timeMillis) {
+            this.deadline = timeMillis;
+            return this;
+        }
+
+        /**
+         * 距离deadline还剩多少毫秒，没有设置deadline时返回{@link Long#MAX_VALUE}
+         */
+        private long remainingMs() {
+            return deadline <= 0 ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+        }
+
         /**
          * 设置Basic认证账号密码
          */
@@ -768,198 +830,24 @@ public final class HttpClientUtils {
 
             // 生成URL传参的参数，构成完整的URL
             String fullUrl = StringTools.addParamsToUrl(url, urlParams);
-            StringBuilder cmd = new StringBuilder("curl -X ").append(method.toString())
-                                                             .append(" -v '")
-                                                             .append(fullUrl)
-                                                             .append("'");
+            StringBuilder cmd = newCmd(fullUrl);
 
             HttpResult result = null;
             String code = "ERR";
             long start = System.currentTimeMillis();
+            Route route = null;
+            boolean failed = true;
             try {
-
-                // 构造header，注意，按照http标准，header部分不应当做任何编解码处理
-                if (!headers.containsKey("User-Agent")) {
-                    headers.put("User-Agent", userAgent);
-                }
-                headers.put("Connection", keepAlive ? "keep-alive" : "close");
-                if (gzip) {
-                    headers.put("Accept-Encoding", "gzip");
-                }
-                for (Entry<String, Object> e : headers.entrySet()) {
-                    cmd.append(" -H '")
-                       .append(e.getKey())
-                       .append(":")
-                       .append(e.getValue())
-                       .append("'");
-                }
-                StringBuilder cookieString = new StringBuilder();
-                for (Entry<String, Object> e : cookies.entrySet()) {
-                    cookieString.append(e.getKey())
-                                .append("=")
-                                .append(e.getValue())
-                                .append(";");
-                }
-                String cookie = null;
-                if (cookieString.length() > 1) {
-                    cookieString.deleteCharAt(cookieString.length() - 1);
-                    cookie = cookieString.toString();
-                    cmd.append(" -b '")
-                       .append(cookie)
-                       .append("'");
-                }
-
-                // 构造content部分
-                if (multipart) {
-                    Object ct = headers.get("Content-Type");
-                    if (ct == null || !ct.toString()
-                                         .startsWith("multipart/form-data")) {
-                        throw new HttpClientException("multipart请求的Content-Type不能被覆盖");
-                    }
-                    ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-                    // 正文中的边界线会有--作为前缀
-                    byte[] boundaryBytes = ("--" + this.boundary + "\r\n").getBytes(charset);
-                    // 最后一个边界线以--作为后缀
-                    byte[] boundaryEndBytes = ("--" + this.boundary + "--\r\n").getBytes(charset);
-                    byte[] CRLF = "\r\n".getBytes(charset);
-
-                    // 普通文本字段
-                    for (Entry<String, Object> e : contentParams.entrySet()) {
-                        out.write(boundaryBytes);
-                        out.write(("Content-Disposition: form-data; name=\"" + e.getKey() + "\"").getBytes(charset));
-                        out.write(CRLF);
-                        out.write(CRLF);
-                        out.write(StringTools.encodeURIComponent(String.valueOf(e.getValue()), charset)
-                                             .getBytes(charset));
-                        out.write(CRLF);
-
-                        cmd.append(" -F ")
-                           .append(e.getKey())
-                           .append("=")
-                           .append(StringTools.encodeURIComponent(String.valueOf(e.getValue()), charset));
-                    }
-
-                    // 文件上传
-                    for (UploadFile uploadFile : fileList) {
-                        out.write(boundaryBytes);
-                        out.write(("Content-Disposition: form-data; name=\"" + uploadFile.getName() + "\"").getBytes(charset));
-                        // 必须要有filename，否则会被认为是普通字段
-                        out.write(("; filename=\"" + uploadFile.getFilename() + "\"").getBytes(charset));
-                        out.write(CRLF);
-                        out.write(("Content-Type: " + uploadFile.getContentType()).getBytes(charset));
-                        out.write(CRLF);
-                        out.write(CRLF);
-                        out.write(uploadFile.getBytes());
-                        out.write(CRLF);
-
-                        cmd.append(" -F ")
-                           .append(uploadFile.getName())
-                           .append("=@")
-                           .append(uploadFile.getFilename());
-                    }
-                    // 结束正文
-                    out.write(boundaryEndBytes);
-                    content = out.toByteArray();
-                } else if (!contentParams.isEmpty()) {
-                    StringBuilder cp = new StringBuilder();
-                    for (Entry<String, Object> e : contentParams.entrySet()) {
-                        cp.append(e.getKey())
-                          .append("=")
-                          .append(StringTools.encodeURIComponent(String.valueOf(e.getValue()), charset))
-                          .append("&");
-                    }
-                    if (cp.length() > 0) { // 去除最后的&
-                        cp.deleteCharAt(cp.length() - 1);
-                    }
-                    contentString = cp.toString();
-                    content = contentString.getBytes(charset);
-                    headers.put("Content-Type", "application/x-www-form-urlencoded;charset=" + charset.toString());
-                    cmd.append(" -d '")
-                       .append(contentString)
-                       .append("'");
-                } else if (null != content) {
-                    cmd.append(" -d '")
-                       .append(contentString)
-                       .append("'");
-                }
+                String cookie = prepare(cmd);
 
                 // 2、准备连接配置，开始请求
 
                 start = System.currentTimeMillis();
 
                 URL realUrl = new URL(fullUrl);
-                URLConnection urlConn = proxy == null ? realUrl.openConnection() : realUrl.openConnection(proxy);
+                route = acquireRoute(realUrl);
+                HttpURLConnection conn = connect(realUrl, cookie);
 
-                if (!(urlConn instanceof HttpURLConnection)) { // 只能支持http/https
-                    throw new HttpClientException("不支持的协议类型" + realUrl.getProtocol());
-                }
-                HttpURLConnection conn = (HttpURLConnection) urlConn;
-
-                // 针对https的增强兼容性处理，如果网站使用的证书不合法，忽略报错强行请求，确保最大兼容性
-                if (conn instanceof HttpsURLConnection) {
-                    HttpsURLConnection c = (HttpsURLConnection) conn;
-                    c.setSSLSocketFactory(socketFactory);
-                    c.setHostnameVerifier(defaultHostnameVerifier);
-                }
-
-                // 添加请求头
-                for (Entry<String, Object> e : headers.entrySet()) {
-                    conn.setRequestProperty(e.getKey(), String.valueOf(e.getValue()));
-                }
-                // 添加cookie（实质也是header的一部分，比较特殊单独提出来考虑）
-                // 如果已经通过设置header指定了cookie，那这里为了防止覆盖，报错让使用者自己二选一
-                if (headers.containsKey("Cookie") && !cookies.isEmpty()) {
-                    throw new HttpClientException("已经在header中指定了cookie，请不要再单独传入cookie设置");
-                }
-                if (null != cookie) {
-                    conn.setRequestProperty("Cookie", cookieString.toString());
-                }
-
-                // 设置连接参数
-                conn.setRequestMethod(method.toString());
-                if (HttpMethod.POST == method || HttpMethod.PUT == method) {
-                    // 只能在有outputstream的请求时才能设置为true.
-                    conn.setDoOutput(true);
-                }
-                conn.setDoInput(true);
-                conn.setConnectTimeout(connTimeout);
-                conn.setReadTimeout(soTimeout);
-                conn.setUseCaches(false);
-                conn.setInstanceFollowRedirects(autoRedirect);
-
-                // 在调用此方法前，必需完成conn的各种set配置
-                if (null != socksProxyPassword) {
-                    // 由于java本身的限制，使用带密码的socks代理是全局性的
-                    // 为了能在一定程度上支持并发，这里加锁处理
-                    synchronized (HttpClientUtils.class) {
-                        try {
-                            Authenticator.setDefault(new Authenticator() {
-
-                                @Override
-                                protected PasswordAuthentication getPasswordAuthentication() {
-                                    return socksProxyPassword;
-                                }
-                            });
-                            conn.connect();
-                        } finally {
-                            Authenticator.setDefault(null);
-                        }
-                    }
-                } else {
-                    conn.connect();
-                }
-
-                // 如果是POST/PUT请求，这里提交数据
-                if (HttpMethod.POST == method || HttpMethod.PUT == method) {
-                    OutputStream out = conn.getOutputStream();
-                    if (null != content) {
-                        out.write(content);
-                    }
-                    out.flush();
-                }
-
-                // 读取返回数据，由于采用的短连接方式，直接读到EOF即可
                 code = String.valueOf(conn.getResponseCode());
                 // 提前创建HttpResult，即使404也能返回header内容
                 result = new HttpResult(cmd.toString(), conn.getResponseCode(), conn.getHeaderFields(), charset);
@@ -974,17 +862,14 @@ public final class HttpClientUtils {
                     is = conn.getInputStream();
                 }
                 if (is != null) {
-                    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-                        int r;
-                        while ((r = is.read()) != -1) {
-                            baos.write(r);
-                        }
-                        // 设置接收到的content数据
-                        result.setContent(baos.toByteArray());
+                    try {
+                        // 设置接收到的content数据，需要读到结束并关闭流，连接才能放回连接池复用
+                        result.setContent(FileUtils.readBytes(is, conn.getContentLength(), 0));
                     } finally {
                         is.close();
                     }
                 }
+                failed = false;
                 // 打印日志
                 if (!logOnErrorOnly) { // 如果设置了访问正常不记录日志就不记录
                     long span = System.currentTimeMillis() - start;
@@ -1000,6 +885,10 @@ public final class HttpClientUtils {
                 throw e;
             } catch (Throwable e) {
                 log.info("FAILED/{}/{}ms/{}", code, System.currentTimeMillis() - start, cmd, e);
+            } finally {
+                if (null != route) {
+                    route.release(System.currentTimeMillis() - start, failed);
+                }
             }
             if (null == result) { // 如果请求过程中出现异常，需要保存请求信息备查
                 result = new HttpResult(cmd.toString());
@@ -1007,6 +896,339 @@ public final class HttpClientUtils {
             return result;
         }
 
+        /**
+         * <pre>
+         * 执行HTTP请求，返回内容不读入内存，而是以流的方式交给handler处理，适用于下载大文件、逐行解析等
+         *
+         * 1、handler拿到的{@link HttpResult}只有状态码和header，没有内容，流已经按Content-Encoding解压，不需要调用方关闭
+         * 2、handler处理完后，剩余的内容不多时会读掉，使连接可以复用
+         * 3、和{@link #fetch()}不同，连接/读取失败时会直接抛出异常
+         * </pre>
+         */
+        public <T> T fetchStream(HttpStreamHandler<T> handler) throws Throwable {
+            String fullUrl = StringTools.addParamsToUrl(url, urlParams);
+            StringBuilder cmd = newCmd(fullUrl);
+
+            String code = "ERR";
+            long start = System.currentTimeMillis();
+            Route route = null;
+            boolean failed = true;
+            try {
+                String cookie = prepare(cmd);
+                start = System.currentTimeMillis();
+
+                URL realUrl = new URL(fullUrl);
+                route = acquireRoute(realUrl);
+                HttpURLConnection conn = connect(realUrl, cookie);
+
+                code = String.valueOf(conn.getResponseCode());
+                HttpResult result = new HttpResult(cmd.toString(), conn.getResponseCode(), conn.getHeaderFields(), charset);
+                InputStream is = result.getStatusCode() >= 400 ? conn.getErrorStream() : conn.getInputStream();
+                T t;
+                if (null == is) {
+                    t = handler.handle(result, new ByteArrayInputStream(new byte[0]));
+                } else {
+                    try {
+                        boolean gzipped = HttpMethod.HEAD != method && String.valueOf(result.getHeader("Content-Encoding"))
+                                                                             .contains("gzip");
+                        t = handler.handle(result, gzipped ? new GZIPInputStream(new NonClosingInputStream(is)) : new NonClosingInputStream(is));
+                        drain(is);
+                    } finally {
+                        is.close();
+                    }
+                }
+                failed = false;
+                if (!logOnErrorOnly) {
+                    long span = System.currentTimeMillis() - start;
+                    if (span >= defaultSlowThresholdMS) {
+                        log.warn("OK-SLOW/{}/{}ms/{}/STREAM", result.getStatusCode(), span, cmd);
+                    } else {
+                        log.info("OK/{}/{}ms/{}/STREAM", result.getStatusCode(), span, cmd);
+                    }
+                }
+                return t;
+            } catch (HttpClientException e) {
+                throw e;
+            } catch (Throwable e) {
+                log.info("FAILED/{}/{}ms/{}", code, System.currentTimeMillis() - start, cmd, e);
+                throw e;
+            } finally {
+                if (null != route) {
+                    route.release(System.currentTimeMillis() - start, failed);
+                }
+            }
+        }
+
+        /**
+         * <pre>
+         * 在{@link HttpClientPool}的异步线程池中执行HTTP请求，返回结果和{@link #fetch()}相同，失败时也不会以异常结束
+         *
+         * 设置了{@link #deadline(long, TimeUnit)}时，到期还没有返回的请求会以没有内容的{@link HttpResult}结束，不用等到连接/读取超时
+         * 请求发出后不要再修改本对象
+         * </pre>
+         */
+        public CompletableFuture<HttpResult> fetchAsync() {
+            CompletableFuture<HttpResult> future = new CompletableFuture<>();
+            try {
+                HttpClientPool.getAsyncExecutor()
+                              .execute(() -> {
+                                  try {
+                                      future.complete(fetch());
+                                  } catch (Throwable e) {
+                                      future.completeExceptionally(e);
+                                  }
+                              });
+            } catch (RejectedExecutionException e) {
+                log.info("REJECTED/{}", newCmd(url), e);
+                future.complete(new HttpResult(newCmd(url).toString()));
+                return future;
+            }
+            if (deadline > 0) {
+                ScheduledFuture<?> timer = ThreadUtils.getWatchdog()
+                                                      .schedule(() -> {
+                                                          if (future.complete(new HttpResult(newCmd(url).toString()))) {
+                                                              log.info("DEADLINE/{}ms/{}", remainingMs(), newCmd(url));
+                                                          }
+                                                      }, Math.max(0, remainingMs()), TimeUnit.MILLISECONDS);
+                future.whenComplete((r, e) -> timer.cancel(false));
+            }
+            return future;
+        }
+
+        /**
+         * 流式读取时handler可能没有读完，剩余的内容不多时读掉，连接才能放回连接池复用，超出的关闭流时会直接关闭连接
+         */
+        private void drain(InputStream is) throws IOException {
+            byte[] buf = new byte[4096];
+            for (int total = 0; total < MAX_DRAIN_BYTES; ) {
+                int n = is.read(buf, 0, Math.min(buf.length, MAX_DRAIN_BYTES - total));
+                if (n < 0) {
+                    return;
+                }
+                total += n;
+            }
+        }
+
+        private StringBuilder newCmd(String fullUrl) {
+            return new StringBuilder("curl -X ").append(method.toString())
+                                                .append(" -v '")
+                                                .append(fullUrl)
+                                                .append("'");
+        }
+
+        /**
+         * 构造header和content，同时生成对应的cURL命令，返回cookie字符串（没有cookie时返回null）
+         */
+        private String prepare(StringBuilder cmd) throws Throwable {
+            // 构造header，注意，按照http标准，header部分不应当做任何编解码处理
+            if (!headers.containsKey("User-Agent")) {
+                headers.put("User-Agent", userAgent);
+            }
+            headers.put("Connection", keepAlive ? "keep-alive" : "close");
+            if (gzip) {
+                headers.put("Accept-Encoding", "gzip");
+            }
+            for (Entry<String, Object> e : headers.entrySet()) {
+                cmd.append(" -H '")
+                   .append(e.getKey())
+                   .append(":")
+                   .append(e.getValue())
+                   .append("'");
+            }
+            StringBuilder cookieString = new StringBuilder();
+            for (Entry<String, Object> e : cookies.entrySet()) {
+                cookieString.append(e.getKey())
+                            .append("=")
+                            .append(e.getValue())
+                            .append(";");
+            }
+            String cookie = null;
+            if (cookieString.length() > 1) {
+                cookieString.deleteCharAt(cookieString.length() - 1);
+                cookie = cookieString.toString();
+                cmd.append(" -b '")
+                   .append(cookie)
+                   .append("'");
+            }
+
+            // 构造content部分
+            if (multipart) {
+                Object ct = headers.get("Content-Type");
+                if (ct == null || !ct.toString()
+                                     .startsWith("multipart/form-data")) {
+                    throw new HttpClientException("multipart请求的Content-Type不能被覆盖");
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                // 正文中的边界线会有--作为前缀
+                byte[] boundaryBytes = ("--" + this.boundary + "\r\n").getBytes(charset);
+                // 最后一个边界线以--作为后缀
+                byte[] boundaryEndBytes = ("--" + this.boundary + "--\r\n").getBytes(charset);
+                byte[] CRLF = "\r\n".getBytes(charset);
+
+                // 普通文本字段
+                for (Entry<String, Object> e : contentParams.entrySet()) {
+                    out.write(boundaryBytes);
+                    out.write(("Content-Disposition: form-data; name=\"" + e.getKey() + "\"").getBytes(charset));
+                    out.write(CRLF);
+                    out.write(CRLF);
+                    out.write(StringTools.encodeURIComponent(String.valueOf(e.getValue()), charset)
+                                         .getBytes(charset));
+                    out.write(CRLF);
+
+                    cmd.append(" -F ")
+                       .append(e.getKey())
+                       .append("=")
+                       .append(StringTools.encodeURIComponent(String.valueOf(e.getValue()), charset));
+                }
+
+                // 文件上传
+                for (UploadFile uploadFile : fileList) {
+                    out.write(boundaryBytes);
+                    out.write(("Content-Disposition: form-data; name=\"" + uploadFile.getName() + "\"").getBytes(charset));
+                    // 必须要有filename，否则会被认为是普通字段
+                    out.write(("; filename=\"" + uploadFile.getFilename() + "\"").getBytes(charset));
+                    out.write(CRLF);
+                    out.write(("Content-Type: " + uploadFile.getContentType()).getBytes(charset));
+                    out.write(CRLF);
+                    out.write(CRLF);
+                    out.write(uploadFile.getBytes());
+                    out.write(CRLF);
+
+                    cmd.append(" -F ")
+                       .append(uploadFile.getName())
+                       .append("=@")
+                       .append(uploadFile.getFilename());
+                }
+                // 结束正文
+                out.write(boundaryEndBytes);
+                content = out.toByteArray();
+            } else if (!contentParams.isEmpty()) {
+                StringBuilder cp = new StringBuilder();
+                for (Entry<String, Object> e : contentParams.entrySet()) {
+                    cp.append(e.getKey())
+                      .append("=")
+                      .append(StringTools.encodeURIComponent(String.valueOf(e.getValue()), charset))
+                      .append("&");
+                }
+                if (cp.length() > 0) { // 去除最后的&
+                    cp.deleteCharAt(cp.length() - 1);
+                }
+                contentString = cp.toString();
+                content = contentString.getBytes(charset);
+                headers.put("Content-Type", "application/x-www-form-urlencoded;charset=" + charset.toString());
+                cmd.append(" -d '")
+                   .append(contentString)
+                   .append("'");
+            } else if (null != content) {
+                cmd.append(" -d '")
+                   .append(contentString)
+                   .append("'");
+            }
+            return cookie;
+        }
+
+        /**
+         * 获取目标地址的并发许可，排队等待的时间不超过连接超时时间和deadline的剩余时间
+         */
+        private Route acquireRoute(URL realUrl) throws IOException {
+            long remaining = remainingMs();
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("请求未发出就已经超过deadline " + (-remaining) + "ms");
+            }
+            Route route = HttpClientPool.getRoute(realUrl);
+            route.acquire(connTimeout <= 0 ? remaining : Math.min(connTimeout, remaining));
+            return route;
+        }
+
+        /**
+         * 将超时时间限制在deadline的剩余时间内，没有设置deadline时原样返回（0表示不超时）
+         */
+        private long limitByDeadline(int timeoutMs) {
+            long remaining = remainingMs();
+            if (remaining == Long.MAX_VALUE) {
+                return timeoutMs;
+            }
+            return Math.max(1, Math.min(timeoutMs <= 0 ? Integer.MAX_VALUE : timeoutMs, remaining));
+        }
+
+        /**
+         * 按配置建立连接并发出请求（包括content）
+         */
+        private HttpURLConnection connect(URL realUrl, String cookie) throws Throwable {
+            URLConnection urlConn = proxy == null ? realUrl.openConnection() : realUrl.openConnection(proxy);
+
+            if (!(urlConn instanceof HttpURLConnection)) { // 只能支持http/https
+                throw new HttpClientException("不支持的协议类型" + realUrl.getProtocol());
+            }
+            HttpURLConnection conn = (HttpURLConnection) urlConn;
+
+            // 针对https的增强兼容性处理，如果网站使用的证书不合法，忽略报错强行请求，确保最大兼容性
+            if (conn instanceof HttpsURLConnection) {
+                HttpsURLConnection c = (HttpsURLConnection) conn;
+                c.setSSLSocketFactory(socketFactory);
+                c.setHostnameVerifier(defaultHostnameVerifier);
+            }
+
+            // 添加请求头
+            for (Entry<String, Object> e : headers.entrySet()) {
+                conn.setRequestProperty(e.getKey(), String.valueOf(e.getValue()));
+            }
+            // 添加cookie（实质也是header的一部分，比较特殊单独提出来考虑）
+            // 如果已经通过设置header指定了cookie，那这里为了防止覆盖，报错让使用者自己二选一
+            if (headers.containsKey("Cookie") && !cookies.isEmpty()) {
+                throw new HttpClientException("已经在header中指定了cookie，请不要再单独传入cookie设置");
+            }
+            if (null != cookie) {
+                conn.setRequestProperty("Cookie", cookie);
+            }
+
+            // 设置连接参数
+            conn.setRequestMethod(method.toString());
+            if (HttpMethod.POST == method || HttpMethod.PUT == method) {
+                // 只能在有outputstream的请求时才能设置为true.
+                conn.setDoOutput(true);
+            }
+            conn.setDoInput(true);
+            // 设置了deadline时，连接/读取的超时时间不超过剩余时间
+            conn.setConnectTimeout((int) limitByDeadline(connTimeout));
+            conn.setReadTimeout((int) limitByDeadline(soTimeout));
+            conn.setUseCaches(false);
+            conn.setInstanceFollowRedirects(autoRedirect);
+
+            // 在调用此方法前，必需完成conn的各种set配置
+            if (null != socksProxyPassword) {
+                // 由于java本身的限制，使用带密码的socks代理是全局性的
+                // 为了能在一定程度上支持并发，这里加锁处理
+                synchronized (HttpClientUtils.class) {
+                    try {
+                        Authenticator.setDefault(new Authenticator() {
+
+                            @Override
+                            protected PasswordAuthentication getPasswordAuthentication() {
+                                return socksProxyPassword;
+                            }
+                        });
+                        conn.connect();
+                    } finally {
+                        Authenticator.setDefault(null);
+                    }
+                }
+            } else {
+                conn.connect();
+            }
+
+            // 如果是POST/PUT请求，这里提交数据
+            if (HttpMethod.POST == method || HttpMethod.PUT == method) {
+                OutputStream out = conn.getOutputStream();
+                if (null != content) {
+                    out.write(content);
+                }
+                out.flush();
+            }
+            return conn;
+        }
+
         /**
          * 执行HTTP请求，并获取返回的数据，带内容检查机制
          *
@@ -1385,6 +1607,20 @@ public final class HttpClientUtils {
         }
     }
 
+    /**
+     * 交给{@link HttpStreamHandler}的流，调用方关闭时不关闭底层的流，由框架读完剩余内容后再关闭
+     */
+    private static class NonClosingInputStream extends FilterInputStream {
+
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
     /**
      * HTTP客户端在初始化的时候抛出的异常
      */
@@ -3,25 +3,20 @@ package org.etnaframework.core.util;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Collection;
-import java.util.LinkedHashSet;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.etnaframework.core.logging.Log;
 import org.slf4j.Logger;
 
 /**
- * 判定传入的IP是否在指定的IP段中的工具类，支持完整IP列表、IP段、通配符
+ * 判定传入的IP是否在指定的IP段中的工具类，支持完整IP列表、IP段、通配符、CIDR
  *
  * @author Daniel.Zhan
  */
 public class IPAuthenticator {
 
-    /** IP范围匹配表达式 */
-    private static final Pattern ipPattern_RANGE = Pattern.compile("^(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})\\.\\d{1,3}\\-(\\d{1,3}|(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})){0,1}$");
-
-    /** IP规则名单 */
-    private Set<String> ipList = new LinkedHashSet<String>();
+    /** 编译好的IP规则，规则变化时请重新构造一个新的实例替换 */
+    private final IPMatcher matcher;
 
     /**
      * <pre>
@@ -29,6 +24,8 @@ public class IPAuthenticator {
      *
      * 接受通配符规则1.1.1.*|1.1.*.*|1.*.*.*|*.*.*.*
      *
+     * 接受CIDR规则10.0.0.0/8，以及IPv6地址，以!开头表示拒绝，具体见{@link IPMatcher}
+     *
      * 【不接受】1.*.1.1
      *
      * 配置文件示例：
@@ -36,49 +33,7 @@ public class IPAuthenticator {
      * </pre>
      */
     public IPAuthenticator(Collection<String> ipWhiteList) {
-        if (ipWhiteList != null && ipWhiteList.size() > 0 && !ipWhiteList.contains("*")) {
-
-            for (String ips : ipWhiteList) {
-                if (StringTools.isEmpty(ips)) {
-                    continue;
-                } else if (ipPattern_RANGE.matcher(ips).find()) { // 范围
-                    String[] iprange = ips.split("-");
-                    String beginIP = iprange[0];
-                    String endIP = iprange[1];
-                    if (endIP.indexOf(".") == -1) {
-                        endIP = beginIP.substring(0, beginIP.lastIndexOf(".") + 1) + endIP;
-                    }
-                    if (IPTool.strToLong(beginIP) > -1 && IPTool.strToLong(endIP) > -1 && IPTool.strToLong(beginIP) <= IPTool.strToLong(endIP)) {
-                        ipList.add(mergeIP(beginIP, endIP));
-                    }
-                } else if (ips.split("\\.").length == 4) {// 独立IP或者是通配符
-                    if (ips.equals("*.*.*.*")) {
-                        return;
-                    } else if (ips.contains("*")) {
-                        String[] ipSegment = ips.split("\\.");
-                        String beginIP = "";
-                        String endIP = "";
-                        if (ipSegment[3].trim().equals("*") && ipSegment[2].trim().equals("*") && ipSegment[1].trim().equals("*")) {
-                            beginIP = ipSegment[0].trim() + ".0.0.0";
-                            endIP = ipSegment[0].trim() + ".255.255.255";
-                        } else if (ipSegment[3].trim().equals("*") && ipSegment[2].trim().equals("*")) {
-                            beginIP = ipSegment[0].trim() + "." + ipSegment[1].trim() + ".0.0";
-                            endIP = ipSegment[0].trim() + "." + ipSegment[1].trim() + ".255.255";
-                        } else if (ipSegment[3].trim().equals("*")) {
-                            beginIP = ipSegment[0].trim() + "." + ipSegment[1].trim() + "." + ipSegment[2].trim() + ".0";
-                            endIP = ipSegment[0].trim() + "." + ipSegment[1].trim() + "." + ipSegment[2].trim() + ".255";
-                        } else {
-                            continue;
-                        }
-                        if (IPTool.strToLong(beginIP) != -1 && IPTool.strToLong(endIP) != -1) {
-                            ipList.add(mergeIP(beginIP, endIP));
-                        }
-                    } else if (IPTool.strToLong(ips) != -1) {
-                        ipList.add(mergeIP(ips));
-                    }
-                }
-            }
-        }
+        matcher = IPMatcher.compile(ipWhiteList);
     }
 
     /**
@@ -87,24 +42,11 @@ public class IPAuthenticator {
      * @param ip 客户端传回来的IP字址
      */
     public boolean contains(String ip) {
-        for (String ipRangge : ipList) {
-            String[] ipRangges = ipRangge.split("-");
-            long minip = IPTool.strToLong(ipRangges[0]);
-            long maxip = IPTool.strToLong(ipRangges[1]);
-            long lip = IPTool.strToLong(ip);
-            if (lip >= minip && lip <= maxip) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private String mergeIP(String begin, String end) {
-        return begin + "-" + end;
+        return matcher.contains(ip);
     }
 
-    private String mergeIP(String ip) {
-        return mergeIP(ip, ip);
+    public IPMatcher getMatcher() {
+        return matcher;
     }
 
     public static class IPTool {
@@ -0,0 +1,483 @@
+package org.etnaframework.core.util;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <pre>
+ * 编译好的IP规则匹配器，判断IP是否在规则允许的范围内，支持IPv4和IPv6，构造后不可变，规则变化时重新编译一个新的替换即可
+ *
+ * 支持的规则格式：
+ * 1、单个IP：175.1.1.6、2001:db8::1
+ * 2、CIDR：10.0.0.0/8、2001:db8::/32
+ * 3、范围：192.168.1.1-24、202.23.56.13-222.0.0.1、2001:db8::1-2001:db8::ff
+ * 4、通配符（只能在末尾）：172.*.*.*、173.1.*.*、174.0.0.*，*或*.*.*.*表示所有IPv4地址
+ * 5、以!开头表示拒绝，如!10.1.0.0/16，可以在允许的大范围中排除掉一小段
+ *
+ * 多条规则覆盖同一个IP时，按最长前缀匹配，即范围更小的规则优先，同样大小的范围拒绝优先
+ *
+ * 实现方式：编译时把所有规则拆成CIDR块，按最长前缀匹配的结果展开成互不重叠的有序区间数组，
+ * 匹配时把IP转成数值，二分查找所在的区间即可，不需要分割字符串和正则表达式，IPv4再按高16位分桶，规则再多查找时间也基本不变
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public final class IPMatcher {
+
+    private static final byte NONE = 0;
+
+    private static final byte ALLOW = 1;
+
+    private static final byte DENY = 2;
+
+    private static final BigInteger MAX_V4 = BigInteger.ONE.shiftLeft(32)
+                                                           .subtract(BigInteger.ONE);
+
+    private static final BigInteger MAX_V6 = BigInteger.ONE.shiftLeft(128)
+                                                           .subtract(BigInteger.ONE);
+
+    private static final BigInteger LONG_MASK = BigInteger.ONE.shiftLeft(64)
+                                                              .subtract(BigInteger.ONE);
+
+    /** 不匹配任何IP的匹配器 */
+    public static final IPMatcher EMPTY = compile(null);
+
+    /** IPv4各区间的起点，按升序排列 */
+    private final long[] v4Starts;
+
+    /** IPv4各区间的匹配结果 */
+    private final byte[] v4Values;
+
+    /** IPv4按高16位分桶的索引，v4Index[k]为起点小于k&lt;&lt;16的区间数，查找时只需要在桶内的少数区间中二分，区间再多也不会增加查找次数 */
+    private final int[] v4Index;
+
+    /** IPv6各区间起点的高64位和低64位，按无符号数升序排列 */
+    private final long[] v6Hi;
+
+    private final long[] v6Lo;
+
+    private final byte[] v6Values;
+
+    /** 有效的规则数 */
+    private final int ruleCount;
+
+    private IPMatcher(long[] v4Starts, byte[] v4Values, long[] v6Hi, long[] v6Lo, byte[] v6Values, int ruleCount) {
+        this.v4Starts = v4Starts;
+        this.v4Values = v4Values;
+        this.v4Index = new int[(1 << 16) + 1];
+        for (int k = 0, i = 0; k < v4Index.length; k++) {
+            while (i < v4Starts.length && v4Starts[i] < ((long) k << 16)) {
+                i++;
+            }
+            v4Index[k] = i;
+        }
+        this.v6Hi = v6Hi;
+        this.v6Lo = v6Lo;
+        this.v6Values = v6Values;
+        this.ruleCount = ruleCount;
+    }
+
+    /**
+     * 编译规则，无法识别的规则会被忽略
+     */
+    public static IPMatcher compile(Collection<String> rules) {
+        // (是否IPv6, 起点, 前缀长度) -> 允许/拒绝，同一个块既有允许又有拒绝的，拒绝优先
+        Map<Block, Byte> v4 = new LinkedHashMap<>();
+        Map<Block, Byte> v6 = new LinkedHashMap<>();
+        int count = 0;
+        if (null != rules) {
+            for (String rule : rules) {
+                if (StringTools.isEmpty(rule)) {
+                    continue;
+                }
+                String r = rule.trim();
+                byte value = ALLOW;
+                if (r.startsWith("!")) {
+                    value = DENY;
+                    r = r.substring(1)
+                         .trim();
+                }
+                List<Block> blocks = parseRule(r);
+                if (null == blocks) {
+                    continue;
+                }
+                count++;
+                for (Block b : blocks) {
+                    Map<Block, Byte> m = b.v6 ? v6 : v4;
+                    m.merge(b, value, (x, y) -> (byte) Math.max(x, y));
+                }
+            }
+        }
+        Intervals i4 = flatten(v4, MAX_V4);
+        Intervals i6 = flatten(v6, MAX_V6);
+        long[] v4Starts = new long[i4.starts.size()];
+        for (int i = 0; i < v4Starts.length; i++) {
+            v4Starts[i] = i4.starts.get(i)
+                                   .longValue();
+        }
+        long[] v6Hi = new long[i6.starts.size()];
+        long[] v6Lo = new long[i6.starts.size()];
+        for (int i = 0; i < v6Hi.length; i++) {
+            BigInteger s = i6.starts.get(i);
+            v6Hi[i] = s.shiftRight(64)
+                       .longValue();
+            v6Lo[i] = s.and(LONG_MASK)
+                       .longValue();
+        }
+        return new IPMatcher(v4Starts, i4.values(), v6Hi, v6Lo, i6.values(), count);
+    }
+
+    /**
+     * 判断IP是否被规则允许，IP格式不正确的返回false
+     */
+    public boolean contains(String ip) {
+        if (null == ip) {
+            return false;
+        }
+        long v4 = parseIPv4(ip, 0, ip.length());
+        if (v4 >= 0) {
+            return contains4(v4);
+        }
+        if (ip.indexOf(':') < 0) { // 不是IP的字符串（如主机名）不做解析
+            return false;
+        }
+        byte[] b = parseIPv6(ip);
+        if (null == b) {
+            return false;
+        }
+        if (b.length == 4) { // ::ffff:1.2.3.4这样映射的IPv4地址
+            return contains4(IPTools.byteToLong(b));
+        }
+        return contains6(toLong(b, 0), toLong(b, 8));
+    }
+
+    /**
+     * 判断数值形式的IPv4地址是否被规则允许
+     */
+    public boolean contains(int ipv4) {
+        return contains4(ipv4 & 0xffffffffL);
+    }
+
+    /**
+     * 判断数值形式的IPv6地址是否被规则允许
+     *
+     * @param hi 高64位
+     * @param lo 低64位
+     */
+    public boolean contains(long hi, long lo) {
+        return contains6(hi, lo);
+    }
+
+    private boolean contains4(long ip) {
+        int bucket = (int) (ip >>> 16);
+        // 桶开始之前的最后一个区间覆盖了桶的开头，桶内的区间起点都在[lo, hi]中
+        int found = v4Index[bucket] - 1;
+        int lo = found + 1;
+        int hi = v4Index[bucket + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (v4Starts[mid] <= ip) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found >= 0 && v4Values[found] == ALLOW;
+    }
+
+    private boolean contains6(long ipHi, long ipLo) {
+        int lo = 0;
+        int hi = v6Hi.length - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = Long.compareUnsigned(v6Hi[mid], ipHi);
+            if (c < 0 || (c == 0 && Long.compareUnsigned(v6Lo[mid], ipLo) <= 0)) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found >= 0 && v6Values[found] == ALLOW;
+    }
+
+    /**
+     * 有效的规则数
+     */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * 编译后的区间数
+     */
+    public int getIntervalCount() {
+        return v4Starts.length + v6Hi.length;
+    }
+
+    /**
+     * 解析一条规则，拆成CIDR块，格式不正确的返回null
+     */
+    private static List<Block> parseRule(String r) {
+        if (r.equals("*") || r.equals("*.*.*.*")) {
+            return range(false, BigInteger.ZERO, MAX_V4);
+        }
+        int slash = r.indexOf('/');
+        if (slash > 0) { // CIDR
+            BigInteger ip = parseAddress(r.substring(0, slash));
+            int bits = r.indexOf(':') >= 0 ? 128 : 32;
+            int prefix = StringTools.getInt(r.substring(slash + 1), -1);
+            if (null == ip || prefix < 0 || prefix > bits) {
+                return null;
+            }
+            BigInteger size = BigInteger.ONE.shiftLeft(bits - prefix);
+            BigInteger start = ip.subtract(ip.mod(size));
+            return range(bits == 128, start, start.add(size)
+                                                  .subtract(BigInteger.ONE));
+        }
+        int dash = r.indexOf('-');
+        if (dash > 0) { // 范围
+            String begin = r.substring(0, dash)
+                            .trim();
+            String end = r.substring(dash + 1)
+                          .trim();
+            if (begin.indexOf(':') < 0 && end.indexOf('.') < 0) { // 192.168.1.1-24这样的简写
+                end = begin.substring(0, begin.lastIndexOf('.') + 1) + end;
+            }
+            BigInteger b = parseAddress(begin);
+            BigInteger e = parseAddress(end);
+            if (null == b || null == e || (begin.indexOf(':') >= 0) != (end.indexOf(':') >= 0) || b.compareTo(e) > 0) {
+                return null;
+            }
+            return range(begin.indexOf(':') >= 0, b, e);
+        }
+        if (r.indexOf('*') >= 0) { // 通配符，只支持末尾的连续通配符
+            String[] seg = r.split("\\.");
+            if (seg.length != 4) {
+                return null;
+            }
+            int fixed = 0;
+            while (fixed < 4 && !seg[fixed].trim()
+                                           .equals("*")) {
+                fixed++;
+            }
+            StringBuilder begin = new StringBuilder();
+            StringBuilder end = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                String s = seg[i].trim();
+                if (i >= fixed && !s.equals("*")) {
+                    return null;
+                }
+                begin.append(i > 0 ? "." : "")
+                     .append(i < fixed ? s : "0");
+                end.append(i > 0 ? "." : "")
+                   .append(i < fixed ? s : "255");
+            }
+            BigInteger b = parseAddress(begin.toString());
+            BigInteger e = parseAddress(end.toString());
+            return null == b || null == e ? null : range(false, b, e);
+        }
+        BigInteger ip = parseAddress(r);
+        return null == ip ? null : range(r.indexOf(':') >= 0, ip, ip);
+    }
+
+    private static BigInteger parseAddress(String s) {
+        long v4 = parseIPv4(s, 0, s.length());
+        if (v4 >= 0) {
+            return BigInteger.valueOf(v4);
+        }
+        if (s.indexOf(':') < 0) {
+            return null;
+        }
+        byte[] b = parseIPv6(s);
+        return null == b || b.length != 16 ? null : new BigInteger(1, b);
+    }
+
+    /**
+     * 把[start, end]范围拆成最少的CIDR块
+     */
+    private static List<Block> range(boolean v6, BigInteger start, BigInteger end) {
+        List<Block> list = new ArrayList<>();
+        BigInteger max = v6 ? MAX_V6 : MAX_V4;
+        int bits = v6 ? 128 : 32;
+        while (start.compareTo(end) <= 0) {
+            // 起点对齐的最大的块
+            int size = start.signum() == 0 ? bits : start.getLowestSetBit();
+            while (start.add(BigInteger.ONE.shiftLeft(size))
+                        .subtract(BigInteger.ONE)
+                        .compareTo(end) > 0) {
+                size--;
+            }
+            BigInteger blockEnd = start.add(BigInteger.ONE.shiftLeft(size))
+                                       .subtract(BigInteger.ONE);
+            list.add(new Block(v6, start, blockEnd));
+            if (blockEnd.equals(max)) {
+                break;
+            }
+            start = blockEnd.add(BigInteger.ONE);
+        }
+        return list;
+    }
+
+    /**
+     * 把CIDR块展开成互不重叠的区间，每个区间取覆盖它的最小的块的结果。CIDR块之间要么互相包含要么不相交，所以按起点升序、范围降序排列后用栈处理即可
+     */
+    private static Intervals flatten(Map<Block, Byte> blocks, BigInteger max) {
+        List<Block> sorted = new ArrayList<>(blocks.keySet());
+        sorted.sort(Comparator.comparing((Block b) -> b.start)
+                              .thenComparing(b -> b.end, Comparator.reverseOrder()));
+        Intervals out = new Intervals();
+        List<Block> stack = new ArrayList<>();
+        for (Block b : sorted) {
+            popUntil(stack, blocks, out, b.start, max);
+            out.add(b.start, blocks.get(b));
+            stack.add(b);
+        }
+        popUntil(stack, blocks, out, null, max);
+        return out;
+    }
+
+    /**
+     * 弹出在point之前已经结束的块，point为null时全部弹出
+     */
+    private static void popUntil(List<Block> stack, Map<Block, Byte> blocks, Intervals out, BigInteger point, BigInteger max) {
+        while (!stack.isEmpty()) {
+            Block top = stack.get(stack.size() - 1);
+            if (null != point && top.end.compareTo(point) >= 0) {
+                return;
+            }
+            stack.remove(stack.size() - 1);
+            if (top.end.compareTo(max) < 0) {
+                out.add(top.end.add(BigInteger.ONE), stack.isEmpty() ? NONE : blocks.get(stack.get(stack.size() - 1)));
+            }
+        }
+    }
+
+    /**
+     * 解析IPv4地址为数值，格式不正确返回-1，不使用正则表达式也不分配对象
+     */
+    static long parseIPv4(CharSequence s, int from, int to) {
+        long result = 0;
+        int part = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (++digits > 3 || value > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && digits > 0 && part < 3) {
+                result = result << 8 | value;
+                part++;
+                value = 0;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+        if (part != 3 || digits == 0) {
+            return -1;
+        }
+        return result << 8 | value;
+    }
+
+    /**
+     * 解析IPv6地址，字面量的IP地址不会触发DNS查询，格式不正确返回null，IPv4映射的地址返回4字节
+     */
+    private static byte[] parseIPv6(String s) {
+        try {
+            // 加上[]后只会按IPv6字面量解析，不是合法的IPv6地址时直接抛异常，不会当成主机名去查询DNS
+            return InetAddress.getByName(s.startsWith("[") ? s : "[" + s + "]")
+                              .getAddress();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static long toLong(byte[] b, int offset) {
+        long v = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            v = v << 8 | (b[i] & 0xffL);
+        }
+        return v;
+    }
+
+    /**
+     * CIDR块
+     */
+    private static final class Block {
+
+        final boolean v6;
+
+        final BigInteger start;
+
+        final BigInteger end;
+
+        Block(boolean v6, BigInteger start, BigInteger end) {
+            this.v6 = v6;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int hashCode() {
+            return start.hashCode() * 31 + end.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Block)) {
+                return false;
+            }
+            Block o = (Block) obj;
+            return v6 == o.v6 && start.equals(o.start) && end.equals(o.end);
+        }
+    }
+
+    /**
+     * 展开后的区间，相邻区间结果相同的会合并
+     */
+    private static final class Intervals {
+
+        final List<BigInteger> starts = new ArrayList<>();
+
+        final List<Byte> values = new ArrayList<>();
+
+        void add(BigInteger start, byte value) {
+            int last = starts.size() - 1;
+            if (last >= 0 && starts.get(last)
+                                   .equals(start)) { // 同一个起点，后加入的是更小的块，覆盖掉
+                starts.remove(last);
+                values.remove(last);
+                last--;
+            }
+            if (last >= 0 && values.get(last) == value) {
+                return;
+            }
+            if (last < 0 && value == NONE) {
+                return;
+            }
+            starts.add(start);
+            values.add(value);
+        }
+
+        byte[] values() {
+            byte[] r = new byte[values.size()];
+            for (int i = 0; i < r.length; i++) {
+                r[i] = values.get(i);
+            }
+            return r;
+        }
+    }
+}
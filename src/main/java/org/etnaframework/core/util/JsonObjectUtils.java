@@ -1,9 +1,14 @@
 package org.etnaframework.core.util;
 
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import org.etnaframework.core.logging.DeferredLogger;
 import org.etnaframework.core.logging.Log;
 import org.etnaframework.core.spring.annotation.Config;
 import org.etnaframework.core.util.DatetimeUtils.Datetime;
@@ -18,6 +23,9 @@ import com.alibaba.fastjson.JSONObject;
 import com.alibaba.fastjson.TypeReference;
 import com.alibaba.fastjson.parser.Feature;
 import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializeWriter;
 import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.alibaba.fastjson.serializer.ValueFilter;
 import com.alibaba.fastjson.util.TypeUtils;
@@ -33,6 +41,11 @@ public final class JsonObjectUtils {
 
     private static final Logger log = Log.getLogger();
 
+    /** 转换失败时输出的内容需要序列化，只有开启debug时才执行 */
+    private static final DeferredLogger dlog = DeferredLogger.of(log);
+
+    private static final SerializerFeature[] NO_FEATURES = {};
+
     static {
         // 配置生成json的规则
         int features = 0;
@@ -79,6 +92,23 @@ public final class JsonObjectUtils {
         return "{}";
     }
 
+    /**
+     * 将传入的对象序列化为JSON直接写入writer，不生成中间的完整字符串，生成规则和{@link #createJson(Object)}一致
+     *
+     * 序列化过程中fastjson的缓冲区满了就会写入writer，如果中途出错，之前的内容可能已经写进去了，需要调用方自行处理
+     */
+    public static void writeJson(Writer writer, Object obj) {
+        SerializeWriter out = new SerializeWriter(writer, JSON.DEFAULT_GENERATE_FEATURE, NO_FEATURES);
+        try {
+            JSONSerializer serializer = new JSONSerializer(out, SerializeConfig.globalInstance);
+            serializer.addFilter(LargeNumberFixToStringValueFilter.instance);
+            serializer.write(obj);
+            out.flush();
+        } finally {
+            out.close(); // 归还fastjson内部线程复用的缓冲区
+        }
+    }
+
     /**
      * 将传入的对象生成格式化后的JSON字符串，如果转换失败，或者传入对象空，返回{}
      */
@@ -190,7 +220,11 @@ public final class JsonObjectUtils {
         try {
             return TypeUtils.castToJavaBean(jsonObject, requiredClass);
         } catch (Exception e) {
-            log.debug("parseJson Failed, requiredClass={}, jsonString={}", requiredClass, createJson(jsonObject), e);
+            dlog.debug("parseJson Failed, requiredClass={}, jsonString={}", () -> new Object[] {
+                requiredClass,
+                createJson(jsonObject),
+                e
+            });
         }
         return null;
     }
@@ -206,7 +240,11 @@ public final class JsonObjectUtils {
             }
             return JSON.toJavaObject(new JSONObject(new DbMap(map)), requiredClass);
         } catch (Exception e) {
-            log.debug("parseJson Failed, requiredClass={}, jsonString={}", requiredClass, createJson(map), e);
+            dlog.debug("parseJson Failed, requiredClass={}, jsonString={}", () -> new Object[] {
+                requiredClass,
+                createJson(map),
+                e
+            });
         }
         return null;
     }
@@ -223,6 +261,19 @@ public final class JsonObjectUtils {
         return null;
     }
 
+    /**
+     * 将JSON的二进制内容直接解码转换为JSONObject，不生成中间的字符串，如果转换失败，返回null
+     */
+    public static JSONObject parseJson(byte[] jsonBytes, Charset charset) {
+        try {
+            CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+            return JSON.parseObject(jsonBytes, 0, jsonBytes.length, decoder, JSONObject.class);
+        } catch (Exception e) {
+            log.debug("parseJson Failed, jsonBytes.length={}", jsonBytes.length, e);
+        }
+        return null;
+    }
+
     /**
      * 将json字符串转换为List，如果转换失败，返回null
      */
@@ -0,0 +1,311 @@
+package org.etnaframework.core.util;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * 按key限流的组件，如按IP限制接口的访问频率，spanMs毫秒内每个key最多允许limit次
+ *
+ * 1、支持两种算法：
+ *   {@link Algorithm#SLIDING_WINDOW} 滑动窗口，按上一个窗口的计数和当前窗口已过去的比例估算最近一个窗口时长内的访问次数，不会像固定窗口那样在窗口交界处放过2倍的访问
+ *   {@link Algorithm#TOKEN_BUCKET} 令牌桶，桶容量为limit，每spanMs/limit补充一个令牌，允许突发访问，使用GCRA算法实现，每个key只需要一个long
+ * 2、每个key的状态保存在固定大小的开放寻址表中，读写都是无锁的（CAS），已存在的key访问时不会分配任何对象
+ * 3、不需要定时清理：插入新key时，探测范围内已过期（超过2个窗口没有访问）的位置直接复用；表满时淘汰探测范围内最久没有访问的key（近似LRU），
+ *    即使遭遇大量伪造IP的攻击，内存占用也不会超过capacity个key
+ * 4、并发插入同一个新key时有极小概率占用两个位置，只是该key短时间内的计数被拆开，另一个位置过期后会被复用
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class RateLimiter {
+
+    /**
+     * 限流算法
+     */
+    public enum Algorithm {
+        SLIDING_WINDOW,
+        TOKEN_BUCKET
+    }
+
+    /** 插入新key时最多探测的位置数 */
+    private static final int MAX_PROBE = 8;
+
+    /** 滑动窗口状态中计数占用的位数，状态为：窗口序号（24位）| 上个窗口计数（20位）| 当前窗口计数（20位） */
+    private static final int COUNT_BITS = 20;
+
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private static final long WINDOW_MASK = (1L << (64 - 2 * COUNT_BITS)) - 1;
+
+    /** 滑动窗口算法支持的最大limit */
+    public static final int MAX_SLIDING_WINDOW_LIMIT = (int) COUNT_MASK;
+
+    private static final AtomicLongFieldUpdater<Entry> STATE = AtomicLongFieldUpdater.newUpdater(Entry.class, "state");
+
+    /** 所有时间都相对于这个时间点，保证计算出的窗口序号是非负数 */
+    private final long baseNanos = System.nanoTime();
+
+    private final Algorithm algorithm;
+
+    private final int limit;
+
+    private final long spanNanos;
+
+    /** 令牌桶补充一个令牌的间隔 */
+    private final long intervalNanos;
+
+    /** key超过这个时间没有访问就视为过期，它的位置可以被复用 */
+    private final long staleNanos;
+
+    private final AtomicReferenceArray<Entry> table;
+
+    private final int mask;
+
+    private final LongAdder passCount = new LongAdder();
+
+    private final LongAdder rejectCount = new LongAdder();
+
+    private final LongAdder evictCount = new LongAdder();
+
+    /**
+     * @param limit 每个key在spanMs内最多允许的访问次数（令牌桶的容量）
+     * @param spanMs 时间窗口，单位毫秒
+     * @param capacity 最多保存多少个key的状态，会向上取整为2的幂
+     */
+    public RateLimiter(Algorithm algorithm, int limit, long spanMs, int capacity) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be greater than 0");
+        }
+        if (spanMs < 1) {
+            throw new IllegalArgumentException("spanMs must be greater than 0");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        if (algorithm == Algorithm.SLIDING_WINDOW && limit > MAX_SLIDING_WINDOW_LIMIT) {
+            throw new IllegalArgumentException("limit of " + algorithm + " must not be greater than " + MAX_SLIDING_WINDOW_LIMIT);
+        }
+        this.algorithm = algorithm;
+        this.limit = limit;
+        this.spanNanos = TimeUnit.MILLISECONDS.toNanos(spanMs);
+        this.intervalNanos = Math.max(1, spanNanos / limit);
+        this.staleNanos = spanNanos * 2;
+        int size = Integer.highestOneBit(Math.max(capacity, MAX_PROBE) - 1) << 1;
+        this.table = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 按配置串创建，格式为limit,spanSec[,algorithm[,capacity]]，如10,60或10,60,TOKEN_BUCKET,65536
+     */
+    public static RateLimiter create(String conf) {
+        List<String> list = StringTools.splitAndTrim(conf, ",");
+        if (list.size() < 2 || list.size() > 4) {
+            throw new IllegalArgumentException("conf's pattern should be limit,spanSec[,algorithm[,capacity]]");
+        }
+        Algorithm algorithm = list.size() > 2 ? Algorithm.valueOf(list.get(2)
+                                                                      .toUpperCase()) : Algorithm.SLIDING_WINDOW;
+        int capacity = list.size() > 3 ? StringTools.getInt(list.get(3), -1) : 65536;
+        return new RateLimiter(algorithm, StringTools.getInt(list.get(0), -1), StringTools.getInt(list.get(1), -1) * 1000L, capacity);
+    }
+
+    /**
+     * 访问一次，返回是否允许
+     */
+    public boolean acquire(Object key) {
+        return acquire(key, 1);
+    }
+
+    /**
+     * 一次访问permits次（如一次请求批量发送多条消息），返回是否允许，不允许时不计入次数
+     */
+    public boolean acquire(Object key, int permits) {
+        long now = System.nanoTime() - baseNanos;
+        Entry e = getOrInsert(key, now);
+        boolean pass = algorithm == Algorithm.TOKEN_BUCKET ? acquireToken(e, permits, now) : acquireWindow(e, permits, now);
+        if (e.lastAccess != now) {
+            e.lastAccess = now;
+        }
+        if (pass) {
+            passCount.increment();
+        } else {
+            rejectCount.increment();
+        }
+        return pass;
+    }
+
+    private boolean acquireToken(Entry e, int permits, long now) {
+        long cost = intervalNanos * permits;
+        while (true) {
+            long tat = e.state; // 理论上桶中令牌被补满的时间点
+            long newTat = Math.max(tat, now) + cost;
+            if (newTat - now > spanNanos) {
+                return false;
+            }
+            if (STATE.compareAndSet(e, tat, newTat)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean acquireWindow(Entry e, int permits, long now) {
+        long window = now / spanNanos;
+        long elapsed = now - window * spanNanos;
+        while (true) {
+            long state = e.state;
+            long w = state >>> (2 * COUNT_BITS);
+            long previous;
+            long current;
+            if (w == (window & WINDOW_MASK)) {
+                previous = (state >>> COUNT_BITS) & COUNT_MASK;
+                current = state & COUNT_MASK;
+            } else if (w == ((window - 1) & WINDOW_MASK)) {
+                previous = state & COUNT_MASK;
+                current = 0;
+            } else {
+                previous = 0;
+                current = 0;
+            }
+            // 上个窗口的访问按其在最近一个窗口时长内所占的比例计入
+            double estimated = previous * (double) (spanNanos - elapsed) / spanNanos + current + permits;
+            if (estimated > limit) {
+                return false;
+            }
+            long update = ((window & WINDOW_MASK) << (2 * COUNT_BITS)) | (previous << COUNT_BITS) | (current + permits);
+            if (STATE.compareAndSet(e, state, update)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 在表中查找key，没有就插入，插入位置优先使用空位或已过期的位置，都没有就淘汰最久没有访问的
+     */
+    private Entry getOrInsert(Object key, long now) {
+        int hash = spread(key.hashCode());
+        while (true) {
+            int victim = -1;
+            Entry victimEntry = null;
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < MAX_PROBE; i++) {
+                int idx = (hash + i) & mask;
+                Entry e = table.get(idx);
+                if (null == e) {
+                    if (victim < 0 || null != victimEntry) {
+                        victim = idx;
+                        victimEntry = null;
+                        oldest = Long.MIN_VALUE;
+                    }
+                    continue;
+                }
+                if (e.hash == hash && e.key.equals(key)) {
+                    return e;
+                }
+                long last = e.lastAccess;
+                if (now - last >= staleNanos) {
+                    last = Long.MIN_VALUE + 1; // 过期的位置优先于未过期的，但次于空位
+                }
+                if (last < oldest) {
+                    victim = idx;
+                    victimEntry = e;
+                    oldest = last;
+                }
+            }
+            Entry n = new Entry(key, hash, now, algorithm == Algorithm.TOKEN_BUCKET ? now : 0);
+            if (table.compareAndSet(victim, victimEntry, n)) {
+                if (null != victimEntry && now - victimEntry.lastAccess < staleNanos) {
+                    evictCount.increment();
+                }
+                return n;
+            }
+            // 被其他线程抢先修改了，重新查找，有可能就是其他线程插入了同一个key
+        }
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getSpanMs() {
+        return TimeUnit.NANOSECONDS.toMillis(spanNanos);
+    }
+
+    /**
+     * 最多保存多少个key的状态
+     */
+    public int getCapacity() {
+        return table.length();
+    }
+
+    /**
+     * 当前保存的key数（包括已过期但还没有被复用的）
+     */
+    public int getSize() {
+        int size = 0;
+        for (int i = 0; i < table.length(); i++) {
+            if (null != table.get(i)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public long getPassCount() {
+        return passCount.sum();
+    }
+
+    public long getRejectCount() {
+        return rejectCount.sum();
+    }
+
+    /**
+     * 表满时被淘汰的未过期的key数，持续增长说明capacity设置得太小或正在遭遇大量不同key的攻击
+     */
+    public long getEvictCount() {
+        return evictCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter [algorithm=" + algorithm + ", limit=" + limit + ", spanMs=" + getSpanMs() + ", capacity=" + getCapacity() + "]";
+    }
+
+    /**
+     * 每个key的限流状态
+     */
+    private static final class Entry {
+
+        final Object key;
+
+        final int hash;
+
+        /** 最近一次访问的时间点，用于判断过期和近似LRU淘汰 */
+        volatile long lastAccess;
+
+        /** 令牌桶为GCRA的理论到达时间，滑动窗口为窗口序号和计数 */
+        volatile long state;
+
+        Entry(Object key, int hash, long now, long state) {
+            this.key = key;
+            this.hash = hash;
+            this.lastAccess = now;
+            this.state = state;
+        }
+    }
+}
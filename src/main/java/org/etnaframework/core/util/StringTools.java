@@ -546,7 +546,22 @@ public class StringTools {
         if (null == args) {
             return sql;
         }
-        String[] sqls = (sql + " ").split("\\?");
+        return mergeSqlSegments(splitSql(sql), args);
+    }
+
+    /**
+     * 把sql按?拆分，用于{@link #mergeSqlSegments(String[], Object[])}，同一条sql多次合并参数时可以只拆分一次
+     */
+    public static String[] splitSql(String sql) {
+        return (sql + " ").split("\\?");
+    }
+
+    /**
+     * 把参数值合并到已按?拆分的sql中，参考{@link #mergeSql(String, Object...)}
+     *
+     * @param sqls 通过{@link #splitSql(String)}拆分后的sql
+     */
+    public static String mergeSqlSegments(String[] sqls, Object[] args) {
         if (args.length == sqls.length - 1) {
             StringBuilder exsql = new StringBuilder();
             int i;
@@ -0,0 +1,236 @@
+package org.etnaframework.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <pre>
+ * 耗时分布直方图，用于统计p50/p99/p999等分位数，配合{@link TimeSpanStat}使用
+ *
+ * 1、桶的划分采用对数-线性方式：每个2的幂次区间再等分成8个子桶，相对误差不超过12.5%，单位毫秒，最大可统计约18小时
+ * 2、记录时按线程ID分散到不同的条带上，各条带内存不相邻，避免多线程写同一个计数器的争用，记录过程不分配内存
+ * 3、以分钟为粒度保留最近1小时的数据，可查询最近1分钟/5分钟/1小时等滚动窗口的分位数
+ *
+ * 当前分钟和上一分钟的数据在两个按分钟奇偶轮换的记录器中，分钟切换时由第一个写入的线程把两分钟前的数据归档到历史中
+ * 切换的瞬间可能会有极少数的记录被算到相邻的分钟里，对统计结果没有实质影响
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class TimeSpanHistogram {
+
+    /** 每个2的幂次区间划分的子桶个数为2^SUB_BUCKET_BITS */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** 桶的总数，超出范围的都算在最后一个桶里 */
+    static final int BUCKETS = 192;
+
+    /** 条带数，取不小于CPU核数的2的幂次，最多16个 */
+    private static final int STRIPES = Integer.highestOneBit(Math.max(1, Math.min(SystemInfo.CORE_PROCESSOR_NUM, 16) * 2 - 1));
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+
+    /** 历史数据保留的分钟数 */
+    private static final int HISTORY_MINUTES = 60;
+
+    /** 记录器正在归档时的分钟标记 */
+    private static final long FOLDING = -2;
+
+    /** 按分钟奇偶轮换的两个记录器 */
+    private final Recorder[] recorders = {
+        new Recorder(),
+        new Recorder()
+    };
+
+    /** 已归档的每分钟的数据，按需分配 */
+    private final long[][] history = new long[HISTORY_MINUTES][];
+
+    /** 已归档的每分钟的数据对应的分钟数 */
+    private final AtomicLongArray historyMinute = new AtomicLongArray(HISTORY_MINUTES);
+
+    public TimeSpanHistogram() {
+        for (int i = 0; i < HISTORY_MINUTES; i++) {
+            historyMinute.set(i, -1);
+        }
+    }
+
+    /**
+     * 计算耗时所在的桶的下标
+     */
+    static int bucketIndex(long span) {
+        if (span < SUB_BUCKETS) {
+            return span < 0 ? 0 : (int) span;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(span) - SUB_BUCKET_BITS;
+        int idx = ((shift + 1) << SUB_BUCKET_BITS) + (int) ((span >>> shift) & (SUB_BUCKETS - 1));
+        return idx < BUCKETS ? idx : BUCKETS - 1;
+    }
+
+    /**
+     * 返回桶能表示的最大耗时
+     */
+    static long bucketUpperBound(int idx) {
+        if (idx < SUB_BUCKETS) {
+            return idx;
+        }
+        int shift = (idx >>> SUB_BUCKET_BITS) - 1;
+        long lower = (long) (SUB_BUCKETS + (idx & (SUB_BUCKETS - 1))) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * 记录一次耗时
+     *
+     * @param end 结束时间戳，用于确定记录在哪一分钟
+     * @param span 耗时，单位毫秒
+     */
+    public void record(long end, long span) {
+        record(end, span, 1);
+    }
+
+    /**
+     * 记录count次平均耗时为span的操作
+     */
+    public void record(long end, long span, int count) {
+        long minute = end / MILLIS_PER_MINUTE;
+        Recorder r = recorders[(int) (minute & 1)];
+        long m = r.minute.get();
+        if (m != minute && m != FOLDING) {
+            if (m > minute) { // 线程在分钟切换前取的时间，记录器已经轮换到后面的分钟了，直接丢弃
+                return;
+            }
+            rotate(r, m, minute);
+        }
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        r.cells.addAndGet(stripe * BUCKETS + bucketIndex(span), count);
+    }
+
+    /**
+     * 把记录器中旧的分钟数据归档到历史中，并把记录器切换到新的分钟
+     */
+    private void rotate(Recorder r, long old, long minute) {
+        if (!r.minute.compareAndSet(old, FOLDING)) {
+            return; // 其他线程已经在切换了
+        }
+        if (old >= 0) {
+            int slot = (int) (old % HISTORY_MINUTES);
+            long[] h = history[slot];
+            if (null == h) {
+                h = new long[BUCKETS];
+            } else {
+                historyMinute.set(slot, -1); // 先标记失效再改数据，防止读取到一半新一半旧的数据
+                for (int i = 0; i < BUCKETS; i++) {
+                    h[i] = 0;
+                }
+            }
+            for (int s = 0; s < STRIPES; s++) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    h[i] += r.cells.getAndSet(s * BUCKETS + i, 0);
+                }
+            }
+            history[slot] = h;
+            historyMinute.set(slot, old);
+        }
+        r.minute.set(minute);
+    }
+
+    /**
+     * 获取最近若干分钟的耗时分布快照，除了完整的windowMinutes分钟外，还会包含当前还没结束的这一分钟
+     *
+     * @param windowMinutes 窗口的分钟数，最多60分钟
+     */
+    public Snapshot snapshot(int windowMinutes) {
+        long now = System.currentTimeMillis() / MILLIS_PER_MINUTE;
+        long from = now - Math.min(windowMinutes, HISTORY_MINUTES);
+        long[] counts = new long[BUCKETS];
+        for (Recorder r : recorders) {
+            long m = r.minute.get();
+            if (m >= from && m <= now) {
+                for (int s = 0; s < STRIPES; s++) {
+                    for (int i = 0; i < BUCKETS; i++) {
+                        counts[i] += r.cells.get(s * BUCKETS + i);
+                    }
+                }
+            }
+        }
+        for (int slot = 0; slot < HISTORY_MINUTES; slot++) {
+            long m = historyMinute.get(slot);
+            long[] h = history[slot];
+            if (m >= from && m <= now && null != h) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    counts[i] += h[i];
+                }
+            }
+        }
+        return new Snapshot(counts);
+    }
+
+    /**
+     * 某个时间窗口内的耗时分布
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+
+        private final long total;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+            long t = 0;
+            for (long c : counts) {
+                t += c;
+            }
+            this.total = t;
+        }
+
+        /**
+         * 窗口内的记录次数
+         */
+        public long getCount() {
+            return total;
+        }
+
+        /**
+         * 获取分位数对应的耗时（取所在桶的上界），没有数据时返回0
+         *
+         * @param percentile 分位数，如99.9表示p999
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                sum += counts[i];
+                if (sum >= target) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return bucketUpperBound(counts.length - 1);
+        }
+
+        /**
+         * 返回p50/p99/p999的耗时，如3/25/120ms
+         */
+        @Override
+        public String toString() {
+            if (total == 0) {
+                return "-";
+            }
+            return getValueAtPercentile(50) + "/" + getValueAtPercentile(99) + "/" + getValueAtPercentile(99.9) + "ms";
+        }
+    }
+
+    private static class Recorder {
+
+        /** 当前记录的是哪一分钟的数据 */
+        final AtomicLong minute = new AtomicLong(-1);
+
+        /** 按条带排列的计数器，下标为stripe*BUCKETS+bucket，不同条带的数据在内存上不相邻 */
+        final AtomicLongArray cells = new AtomicLongArray(STRIPES * BUCKETS);
+    }
+}
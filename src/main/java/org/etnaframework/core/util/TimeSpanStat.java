@@ -3,36 +3,45 @@ package org.etnaframework.core.util;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import org.etnaframework.core.web.HttpEvent;
 import org.slf4j.Logger;
 
 /**
+ * <pre>
  * 按时间段进行统计的基类
  *
+ * 计数器使用{@link LongAdder}，多线程同时记录时各自累加到不同的单元中，避免争用同一个CAS
+ * 如需统计p50/p99/p999等分位数，可调用{@link #enableHistogram()}开启耗时分布统计
+ * </pre>
+ *
  * @author BlackCat
  * @since 2015-06-29
  */
 public class TimeSpanStat {
 
     /** 处理总次数 */
-    protected AtomicLong all_num = new AtomicLong();
+    protected LongAdder all_num = new LongAdder();
 
     /** 处理总时长 */
-    protected AtomicLong all_span = new AtomicLong();
+    protected LongAdder all_span = new LongAdder();
 
     protected Logger log;
 
-    /** 改造成统计最近10分钟内最大值 */
-    protected volatile long max_span;
+    /** 最大时长 */
+    protected LongAccumulator max_span = new LongAccumulator(Math::max, 0);
 
     protected String name;
 
     /** 慢的总个数 */
-    protected AtomicLong slow_num = new AtomicLong();
+    protected LongAdder slow_num = new LongAdder();
 
     /** 慢的总时长 */
-    protected AtomicLong slow_span = new AtomicLong();
+    protected LongAdder slow_span = new LongAdder();
+
+    /** 耗时分布统计，默认不开启 */
+    protected TimeSpanHistogram histogram;
 
     protected int slowThreshold;
 
@@ -58,62 +67,91 @@ public class TimeSpanStat {
         this(name, 1000, true, log);
     }
 
+    /**
+     * 开启耗时分布统计，之后可通过{@link #getPercentiles(int)}查看分位数
+     */
+    public TimeSpanStat enableHistogram() {
+        if (null == histogram) {
+            histogram = new TimeSpanHistogram();
+        }
+        return this;
+    }
+
+    /**
+     * 耗时分布统计，未开启时返回null
+     */
+    public TimeSpanHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * 获取最近若干分钟的p50/p99/p999耗时，未开启耗时分布统计时返回-
+     */
+    public String getPercentiles(int windowMinutes) {
+        return null == histogram ? "-" : histogram.snapshot(windowMinutes).toString();
+    }
+
     public long getAllNum() {
-        return all_num.get();
+        return all_num.sum();
     }
 
     /**
      * 重新设置all_num值
      */
     public void setAllNum(long all_num) {
-        this.all_num.set(all_num);
+        this.all_num.reset();
+        this.all_num.add(all_num);
     }
 
     public long getAllSpan() {
-        return all_span.get();
+        return all_span.sum();
     }
 
     /**
      * 重新设置all_span值
      */
     public void setAllSpan(long all_span) {
-        this.all_span.set(all_span);
+        this.all_span.reset();
+        this.all_span.add(all_span);
     }
 
     public long getSlowNum() {
-        return slow_num.get();
+        return slow_num.sum();
     }
 
     /**
      * 重新设置slow_num值
      */
     public void setSlowNum(long slow_num) {
-        this.slow_num.set(slow_num);
+        this.slow_num.reset();
+        this.slow_num.add(slow_num);
     }
 
     public long getSlowSpan() {
-        return slow_span.get();
+        return slow_span.sum();
     }
 
     /**
      * 重新设置slow_span值
      */
     public void setSlowSpan(long slow_span) {
-        this.slow_span.set(slow_span);
+        this.slow_span.reset();
+        this.slow_span.add(slow_span);
     }
 
     /**
      * 提取最大时长
      */
     public long getMaxSpan() {
-        return max_span;
+        return max_span.get();
     }
 
     /**
      * 设置最大时长
      */
     public void setMaxSpan(long max_span) {
-        this.max_span = max_span;
+        this.max_span.reset();
+        this.max_span.accumulate(max_span);
     }
 
     public String getTableHeader() {
@@ -149,18 +187,19 @@ public class TimeSpanStat {
         if (begin <= 0 || end <= 0) {
             return;
         }
-        all_num.incrementAndGet();
+        all_num.increment();
         long span = end - begin;
-        all_span.addAndGet(span);
+        all_span.add(span);
         if (span >= slowThreshold) {
-            slow_num.incrementAndGet();
-            slow_span.addAndGet(span);
+            slow_num.increment();
+            slow_span.add(span);
             if (warn) {
                 warn(end, begin, arg);
             }
         }
-        if (span > max_span) {
-            max_span = span; // 统计最近10分钟间隔内的最大慢时长
+        max_span.accumulate(span);
+        if (null != histogram) {
+            histogram.record(end, span);
         }
     }
 
@@ -168,18 +207,19 @@ public class TimeSpanStat {
         if (begin <= 0 || end <= 0) {
             return;
         }
-        all_num.addAndGet(count);
+        all_num.add(count);
         long span = end - begin;
-        all_span.addAndGet(span);
+        all_span.add(span);
         if (span / count >= slowThreshold) {
-            slow_num.addAndGet(count);
-            slow_span.addAndGet(span);
+            slow_num.add(count);
+            slow_span.add(span);
             if (warn) {
                 warn(end, begin, arg);
             }
         }
-        if (span > max_span) {
-            max_span = span;
+        max_span.accumulate(span);
+        if (null != histogram) {
+            histogram.record(end, span / count, count);
         }
     }
 
@@ -201,14 +241,14 @@ public class TimeSpanStat {
     }
 
     public String toString(String format, String first) {
-        long all_numTMP = all_num.get(); // 请求总次数
-        long all_spanTMP = all_span.get(); // 请求总时长
-        long slow_numTMP = slow_num.get(); // 慢的总个数
-        long slow_spanTMP = slow_span.get(); // 慢的总时长
+        long all_numTMP = all_num.sum(); // 请求总次数
+        long all_spanTMP = all_span.sum(); // 请求总时长
+        long slow_numTMP = slow_num.sum(); // 慢的总个数
+        long slow_spanTMP = slow_span.sum(); // 慢的总时长
         long allAvg = all_numTMP > 0 ? all_spanTMP / all_numTMP : 0; // 请求平均时长
         long slowAvg = slow_numTMP > 0 ? slow_spanTMP / slow_numTMP : 0; // 慢的平均时长
         return String.format(format, first, all_numTMP > 0 ? all_numTMP : "", HumanReadableUtils.timeSpan(allAvg), slow_numTMP > 0 ? slow_numTMP : "", HumanReadableUtils.timeSpan(slowAvg),
-            HumanReadableUtils.timeSpan(max_span), HumanReadableUtils.timeSpan(slow_spanTMP), HumanReadableUtils.timeSpan(all_spanTMP));
+            HumanReadableUtils.timeSpan(max_span.get()), HumanReadableUtils.timeSpan(slow_spanTMP), HumanReadableUtils.timeSpan(all_spanTMP));
     }
 
     protected void warn(long end, long begin, Object arg) {
@@ -220,7 +260,7 @@ public class TimeSpanStat {
     }
 
     public boolean isNeedReset() {
-        return all_num.get() < 0 || all_span.get() < 0;
+        return all_num.sum() < 0 || all_span.sum() < 0;
     }
 
     /**
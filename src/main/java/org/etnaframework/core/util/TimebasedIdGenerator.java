@@ -3,8 +3,9 @@ package org.etnaframework.core.util;
 import java.text.DecimalFormat;
 import java.text.MessageFormat;
 import java.util.Date;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import org.etnaframework.core.logging.Log;
 import org.etnaframework.core.util.DatetimeUtils.Datetime;
 import org.slf4j.Logger;
@@ -32,25 +33,30 @@ import org.slf4j.Logger;
  * 注意:yyMMddHHmmss只能表达到2092年,到了2093年就long溢出了
  *
  * 考虑以下场景：
- * 1.如果使用yyMMddHHmmss,而accuracyLen=0,incrLen=0,也就是只精确到1s,这样在nextLongId() 1秒内只能生成1个
- * 2.提高精度：增加accuracyLen=2 这时精确到1/100 分之一秒,nextLongId()可以在1秒内最多生成100个
- * 3.精度不变：修改incrLen=2     这时是只精确到1秒,nextLongId()也可以在1秒内最多生成100个
- *   在高并发情况下,3跟2不同的是：
- *      2是1秒内生成的100个,每一个请求都是平均分布在1秒内的
- *      3是在1秒的前段时间(几乎不耗时,这里假定耗时为k )生成100个,第101请求进来时会卡住一段时间(1s - k)
- * 4.最高精度：accuracyLen=7 这时,nextLongId()每秒最多生成 10 000 000个id
+ * 1.如果使用yyMMddHHmmss,而accuracyLen=0,incrLen=0,也就是只精确到1s,这样每秒只有1个时间片,超出的请求会借用后面的时间片
+ * 2.提高精度：增加accuracyLen=2 这时精确到1/100 分之一秒,每秒有100个时间片
+ * 3.精度不变：修改incrLen=2     这时是只精确到1秒,每个时间片内可以生成100个
+ * 4.最高精度：accuracyLen=7 这时每秒有 10 000 000个时间片
  *
- * 所以结论是：
- * 精度越高(accuracyLen)在高并发情况下,其生成id内部解决冲突情况就越少,生成速度就越快
- * 内部自增器占用位数incrLen>0时,可以让并发请求生成id尽量挤在 前段时间 生成
+ * 生成方式：
+ * 1.(时间片, 时间片内的序号)打包成一个long,即 时间片*10^incrLen+序号,每次生成只需要一次CAS,不加锁
+ * 2.新值 = max(当前时间片*10^incrLen, 上一个值+1),当前时间片的序号用完时自然进位到下一个时间片(借用),不会sleep等待,
+ *   并发很高时生成的id中的时间会略微超前于实际时间,请求少下来之后会追上;
+ *   持续超出生成能力、超前超过{@link #setMaxLeadMillis(long)}(默认{@link #DEFAULT_MAX_LEAD_MS}毫秒)时才会短暂等待时间追上,防止id中的时间和实际偏离太多
+ * 3.时间取自nanoTime(不受系统时间修改影响,可以精确到毫秒以下),和系统时间偏差超过{@link #MAX_CLOCK_DRIFT_MS}时以系统时间为准重新校准;
+ *   系统时间回拨时因为取了max,会继续从上一个值往后生成,不会重复,等系统时间追上后恢复正常
+ * 4.集群部署时可以指定workerLen位的实例编号(workerId),放在时间和序号之间,不同实例的id不会重复,
+ *   实例编号可以通过配置指定,也可以通过{@link org.etnaframework.jedis.JedisIdWorkerLease}从redis租用
+ *
+ * 整体序列号 = [yy]yyMMddHHmmss + (accuracyLen-incrLen)位的秒以下部分 + workerLen位的实例编号 + incrLen位的序号
  * </pre>
  *
  * <pre>
  * 优点：
  * 该Long型主键生成器不依赖于数据库，相比依赖数据表的PrimaryKey生成器，速度快，而且值可读
  * 缺点：
- * 1.该 PrimaryKey生成器 虽然依赖于时间，但是在运行过程中改变时间不会影响,但是如果将系统时间后调，然后重新启动有可能造成PrimaryKey重复。
- * 2.不同于UUID,不可用于集群
+ * 1.如果将系统时间后调，然后重新启动有可能造成PrimaryKey重复；并发很高借用了后面的时间片时，马上重启也可能重复
+ * 2.集群部署时需要给每个实例分配不同的实例编号，各实例的系统时间需要同步
  * </pre>
  *
  * @author BlackCat
@@ -64,25 +70,22 @@ public class TimebasedIdGenerator {
 
     public static final int LONG_MAX_LEN = ("" + Long.MAX_VALUE).length(); // 注意long型最长19位
 
-    private static final DecimalFormat percentageFormat = new DecimalFormat("#0.00%");
+    /** 内部时间和系统时间的偏差超过这个值时，以系统时间为准重新校准 */
+    public static final long MAX_CLOCK_DRIFT_MS = 20;
 
-    /**
-     * 初始化时的毫秒数，因为该时间会随系统时间的改变而改变， 所以计算方法为该时间加上通过 nanoTime 计算出来的时间差
-     */
-    private static final Long startMilli;
+    /** 默认允许借用后面的时间片超前的毫秒数 */
+    public static final long DEFAULT_MAX_LEAD_MS = 1000;
 
-    /**
-     * 初始化时的纳秒数，用来计量时间差，nanoTime不会随着系统时间的修改而改变
-     */
-    private static final long startNano;
+    /** 系统时间回拨超过这个值时输出警告 */
+    private static final long CLOCK_BACKWARD_WARN_MS = 1000;
+
+    private static final DecimalFormat percentageFormat = new DecimalFormat("#0.00%");
 
     static {
         // 初始化 DECIMAL_SHIFT_BASE,也就是把long型范围内的所有 10的i次方提前计算出来
         for (int i = 0; i < DECIMAL_SHIFT_BASE.length; i++) {
             DECIMAL_SHIFT_BASE[i] = (long) Math.pow(10, i);
         }
-        startNano = System.nanoTime();
-        startMilli = System.currentTimeMillis();
     }
 
     /**
@@ -110,44 +113,60 @@ public class TimebasedIdGenerator {
         return num / DECIMAL_SHIFT_BASE[len];
     }
 
-    private long _accuracyDividend;
+    /** 一个时间片的纳秒数 */
+    private final long _tickNanos;
+
+    /** 每秒的时间片数 */
+    private final long _ticksPerSecond;
 
-    private long _accuracyMod;
+    private final long _incrMod;
 
-    private long _incrMod = 1;
+    private final long _workerMod;
 
     /** 精确秒数后n位 */
-    private int accuracyLen;
+    private final int accuracyLen;
 
     /** 可以扩展使用的长度 */
-    private int canExpandLen = -1;
+    private final int canExpandLen;
 
-    /** 生成id时发生冲撞次数 */
-    private long collides;
+    private final String pattern;
 
-    /** 生成id时发生冲撞后,重试总次数 */
-    private long collideTries;
+    private final int incrLen;
 
-    private final String pattern;
+    private final int workerLen;
 
-    /**
-     * 内部自增器
-     */
-    private long gens;
+    /** 打包的(时间片, 序号)，值为 时间片*10^incrLen+序号，时间片从1970-01-01开始计算 */
+    private final AtomicLong state = new AtomicLong();
 
-    private int incrLen;
+    /** nanoTime加上这个值就是当前时间（自1970-01-01的纳秒数） */
+    private volatile long nanoOffset = System.currentTimeMillis() * 1000000 - System.nanoTime();
 
-    /**
-     * 记录上一次生成 的 id，如果新生成的id和上次相等，则需要再次生成
-     */
-    private volatile long lastId = -1;
+    /** 和{@link #nanoOffset}相同，但系统时间回拨时不跟着回退，用来判断借用超前了多少，防止回拨后要等系统时间追上 */
+    private volatile long monotonicOffset = nanoOffset;
 
-    /**
-     * 生成锁，用来限定同一时刻只有一个线程进入生成计算
-     */
-    private final Lock LOCK = new ReentrantLock();
+    /** 打包后的值最多可以超前当前时间多少 */
+    private volatile long maxLead;
+
+    /** 当前使用的实例编号 */
+    private volatile Worker worker;
+
+    /** 最近一秒的时间前缀，每秒只需要格式化一次 */
+    private volatile Prefix prefix = new Prefix(-1, 0);
 
-    private long sleepWhenCollide = 0;
+    /** 生成id的次数 */
+    private final LongAdder gens = new LongAdder();
+
+    /** 借用了后面的时间片的次数 */
+    private final LongAdder borrows = new LongAdder();
+
+    /** 多个线程同时生成导致CAS失败重试的次数 */
+    private final LongAdder casRetries = new LongAdder();
+
+    /** 系统时间回拨的次数 */
+    private final LongAdder clockBackwards = new LongAdder();
+
+    /** 超前太多等待时间追上的次数 */
+    private final LongAdder waits = new LongAdder();
 
     /**
      * <pre>
@@ -161,7 +180,7 @@ public class TimebasedIdGenerator {
      * 也就是说  1 < accuracyLen < 6时,会默认开启incrLen = 2的自增器
      * </pre>
      *
-     * @param accuracyLen>0 精确秒数后n位(最好不要小于3,否则在高并发下有很大冲突)
+     * @param accuracyLen>0 精确秒数后n位(最好不要小于3,否则在高并发下会大量借用后面的时间片)
      * @param dateFormat 时间表示格式，例如yyyyMMddHHmmss
      */
     public TimebasedIdGenerator(int accuracyLen, String dateFormat) {
@@ -169,54 +188,97 @@ public class TimebasedIdGenerator {
     }
 
     /**
-     * @param accuracyLen>0 精确秒数后n位(最好不要小于3,否则在高并发下有很大冲突)
-     * @param incrLen>0 指定内部使用自增器生成的数字长度(最好是2,这样请求100次时,不会有冲突)
+     * @param accuracyLen>0 精确秒数后n位(最好不要小于3,否则在高并发下会大量借用后面的时间片)
+     * @param incrLen>0 指定内部使用自增器生成的数字长度(最好是2,这样请求100次时,不会借用后面的时间片)
      * @param dateFormat 时间表示格式，例如yyyyMMddHHmmss
      */
     public TimebasedIdGenerator(int accuracyLen, int incrLen, String dateFormat) {
-        int accuracyLen_l = accuracyLen;
-        int incrLen_l = incrLen;
-        if (incrLen_l < 0) {
-            incrLen_l = 0;
-        }
-        if (accuracyLen_l < 0) {
-            accuracyLen_l = 0;
-        }
+        this(accuracyLen, incrLen, 0, 0, dateFormat);
+    }
+
+    /**
+     * 集群部署使用，在时间和序号之间加入workerLen位的实例编号
+     *
+     * @param accuracyLen>0 精确秒数后n位(最好不要小于3,否则在高并发下会大量借用后面的时间片)
+     * @param incrLen>0 指定内部使用自增器生成的数字长度(最好是2,这样请求100次时,不会借用后面的时间片)
+     * @param workerLen 实例编号的位数，例如2位时最多可以部署100个实例
+     * @param workerId 本实例的编号，范围是0~10^workerLen-1，使用{@link org.etnaframework.jedis.JedisIdWorkerLease}租用时会被替换
+     * @param dateFormat 时间表示格式，例如yyyyMMddHHmmss
+     */
+    public TimebasedIdGenerator(int accuracyLen, int incrLen, int workerLen, int workerId, String dateFormat) {
+        int accuracyLen_l = Math.max(0, accuracyLen);
+        int incrLen_l = Math.max(0, incrLen);
         if (incrLen_l > accuracyLen_l) {
             incrLen_l = 0;
         }
         this.pattern = dateFormat;
-        try {
-            this.canExpandLen = LONG_MAX_LEN - pattern.length() - accuracyLen_l;
-            this.accuracyLen = accuracyLen_l;
-            this.incrLen = incrLen_l;
-
-            this._accuracyDividend = DECIMAL_SHIFT_BASE[9 - (accuracyLen_l - incrLen_l)];
-            this._accuracyMod = DECIMAL_SHIFT_BASE[accuracyLen_l - incrLen_l];
-
-            if (_accuracyMod < 1000) { // 精度度比较低,在发生冲撞时,为了节省cpu,这种情况下 sleep()一下
-                sleepWhenCollide = 1000 / _accuracyMod / 4; // 可以去掉这行,跟使用这行,来测试 collide times的区别
-                // 1000 / _accuracyMod / 10;
-                // 第三个参数 可以调的范围是 1~ 10
-                // 1时sleep最长,collide较少,cpu占用较少
-                // 10时sleep最短,collide较多,cpu占用较多
-                // 如果不sleep, cpu占用最多
+        this.accuracyLen = accuracyLen_l;
+        this.incrLen = incrLen_l;
+        this.workerLen = Math.max(0, workerLen);
+        this.canExpandLen = LONG_MAX_LEN - pattern.length() - accuracyLen_l - this.workerLen;
+        if (canExpandLen < 0 || accuracyLen_l > 9) {
+            log.error("CREATE ERROR:{}", pattern);
+            throw new IllegalArgumentException("accuracyLen不能超过9，accuracyLen、workerLen和dateFormat长度之和不能超过" + LONG_MAX_LEN);
+        }
+        this._tickNanos = DECIMAL_SHIFT_BASE[9 - (accuracyLen_l - incrLen_l)];
+        this._ticksPerSecond = DECIMAL_SHIFT_BASE[accuracyLen_l - incrLen_l];
+        this._incrMod = DECIMAL_SHIFT_BASE[incrLen_l];
+        this._workerMod = DECIMAL_SHIFT_BASE[this.workerLen];
+        setWorker(workerId, Long.MAX_VALUE);
+        setMaxLeadMillis(DEFAULT_MAX_LEAD_MS);
+        log.debug("CREATE:{}", this);
+    }
+
+    /**
+     * <pre>
+     * 设置本实例的编号，以及编号的有效期，到期后生成id会抛出{@link IllegalStateException}，防止编号已经被其他实例租用后仍在使用
+     * 一般不需要直接调用，由{@link org.etnaframework.jedis.JedisIdWorkerLease}在租用/续期时设置
+     * </pre>
+     *
+     * @param workerId 范围是0~10^workerLen-1
+     * @param validUntilMs 有效期，只有生成的id的时间早于这个时间才可用，不限时传入Long.MAX_VALUE
+     */
+    public void setWorker(int workerId, long validUntilMs) {
+        if (workerId < 0 || workerId >= _workerMod) {
+            throw new IllegalArgumentException("workerId超出范围[0, " + _workerMod + "): " + workerId);
+        }
+        this.worker = new Worker(workerId, validUntilMs);
+    }
+
+    /**
+     * 设置允许借用后面的时间片超前的毫秒数，超过后等待时间追上，至少可以借用一个时间片
+     */
+    public void setMaxLeadMillis(long maxLeadMs) {
+        long ticks = Math.max(1, maxLeadMs * 1000000 / _tickNanos);
+        this.maxLead = ticks * _incrMod;
+    }
+
+    /**
+     * 当前时间（自1970-01-01的纳秒数），取自nanoTime，和系统时间偏差过大时以系统时间为准
+     */
+    protected long currentTimeNanos() {
+        long nanos = System.nanoTime() + nanoOffset;
+        long wall = System.currentTimeMillis();
+        long drift = wall - nanos / 1000000;
+        if (drift > MAX_CLOCK_DRIFT_MS || drift < -MAX_CLOCK_DRIFT_MS) { // 系统时间被修改，或者nanoTime和系统时间的走速不同，重新校准
+            long offset = wall * 1000000 - System.nanoTime();
+            nanoOffset = offset;
+            nanos = wall * 1000000;
+            if (offset > monotonicOffset) {
+                monotonicOffset = offset;
             }
-            this._incrMod = DECIMAL_SHIFT_BASE[incrLen_l];
-        } catch (Exception e) {
-        } finally {
-            if (canExpandLen < 0) {
-                log.error("CREATE ERROR:{}", this);
-                throw new IllegalArgumentException("accuracyLen和dateFormat长度之和不能超过" + LONG_MAX_LEN);
+            if (drift < 0) {
+                clockBackwards.increment();
+                if (drift < -CLOCK_BACKWARD_WARN_MS) {
+                    log.warn("system clock moved backwards {}ms, continue from last id until clock catches up: {}", -drift, this);
+                }
             }
-            log.debug("CREATE:{}", this);
         }
+        return nanos;
     }
 
     public long currentTimeMillis() {
-        long pastNano = System.nanoTime() - startNano; // 纳秒时间差
-        long pastMilli = pastNano / 1000000; // 取得毫秒差
-        return startMilli + pastMilli;
+        return currentTimeNanos() / 1000000;
     }
 
     public int getAccuracyLen() {
@@ -227,28 +289,75 @@ public class TimebasedIdGenerator {
         return canExpandLen;
     }
 
+    /**
+     * 借用了后面的时间片的次数（原来是发生冲撞的次数，现在不会再等待）
+     */
     public long getCollides() {
-        return collides;
+        return borrows.sum();
     }
 
+    /**
+     * 多个线程同时生成导致CAS失败重试的次数
+     */
     public long getCollideTries() {
-        return collideTries;
+        return casRetries.sum();
+    }
+
+    /**
+     * 超前太多等待时间追上的次数，大于0说明请求量超出了生成能力（每秒10^accuracyLen个）
+     */
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    /**
+     * 检测到系统时间回拨的次数
+     */
+    public long getClockBackwards() {
+        return clockBackwards.sum();
     }
 
     public long getGens() {
-        return gens;
+        return gens.sum();
     }
 
     public int getIncrLen() {
         return incrLen;
     }
 
+    public int getWorkerLen() {
+        return workerLen;
+    }
+
+    public int getWorkerId() {
+        return worker.id;
+    }
+
+    /**
+     * 实例编号的有效期，不限时为Long.MAX_VALUE
+     */
+    public long getWorkerValidUntil() {
+        return worker.validUntilMs;
+    }
+
     public long getLastId() {
-        return lastId;
+        long s = state.get();
+        return s == 0 ? -1 : toId(s, worker.id);
+    }
+
+    /**
+     * 最近生成的id的时间超前于当前时间的毫秒数，并发很高借用了后面的时间片时大于0
+     */
+    public long getLeadMillis() {
+        return Math.max(0, tickToMillis(state.get() / _incrMod) - currentTimeMillis());
     }
 
+    /**
+     * 不再sleep，始终为0
+     */
+    @Deprecated
     public long getSleepWhenCollide() {
-        return sleepWhenCollide;
+        return 0;
     }
 
     public String nextId() {
@@ -270,56 +379,57 @@ public class TimebasedIdGenerator {
     }
 
     public long nextLongId() {
-        LOCK.lock();
-        // long incr = incrCounter.incrementAndGet();// 不处理溢出的情况,外部已经有锁,这里不用 acomicLong
-        gens++;
-        long incr = incrLen > 0 ? gens % _incrMod : 0; // 计算出这一次请求使用的计数
-
-        boolean collide = incr == 0; // 在使用自增器的情况下,计算这一次请求是否有冲突
-        int collideTimes = 0;
-        long newId = 0;
-        try {
-            while (true) {
-                long pastNano = System.nanoTime() - startNano; // 纳秒时间差
-                long pastMilli = pastNano / 1000000; // 取得毫秒差
-                long pastAccuracyTime = (pastNano / _accuracyDividend) % _accuracyMod;
-                newId = Long.parseLong(DatetimeUtils.format(startMilli + pastMilli, Datetime.DF_yyyyMMddHHmmss)) * _accuracyMod * _incrMod + pastAccuracyTime * _incrMod;
-                if (incrLen > 0) {
-                    if (collide && lastId == newId) {
-                        sleepWhenCollide();
-                        collideTimes++;
-                        continue;
-                    }
-                    lastId = newId; // 设置 lastPK
-                    return newId + incr;
-                }
-                if (lastId != newId) {
-                    lastId = newId; // 设置 lastPK
-                    return newId;
-                }
-                sleepWhenCollide();
-                collideTimes++;
+        Worker w = worker;
+        long now = currentTimeNanos() / _tickNanos * _incrMod;
+        long prev;
+        long next;
+        while (true) {
+            prev = state.get();
+            next = now > prev ? now : prev + 1; // 当前时间片已经用过了就在上一个值上+1，序号用完时进位到下一个时间片
+            if (next - now > maxLead && next - (System.nanoTime() + monotonicOffset) / _tickNanos * _incrMod > maxLead) { // 持续超出生成能力（不是系统时间回拨），等待时间追上
+                waits.increment();
+                LockSupport.parkNanos(Math.min(_tickNanos, 1000000));
+                now = currentTimeNanos() / _tickNanos * _incrMod;
+                continue;
             }
-        } finally {
-            LOCK.unlock();
-            if (collideTimes > 0) {
-                collides++;
-                collideTries += collideTimes;
+            if (state.compareAndSet(prev, next)) {
+                break;
             }
+            casRetries.increment();
+        }
+        gens.increment();
+        if (next - now >= _incrMod) {
+            borrows.increment();
         }
+        // 整个时间片都要在有效期内，编号被其他实例租用后，对方使用的时间片一定在本实例的之后
+        if (w.validUntilMs != Long.MAX_VALUE && (next / _incrMod + 1) * _tickNanos > w.validUntilMs * 1000000) {
+            throw new IllegalStateException("实例编号" + w.id + "的有效期已过（" + DatetimeUtils.format(w.validUntilMs, Datetime.DF_yyyy_MM_dd_HHmmss) + "），可能已被其他实例租用");
+        }
+        return toId(next, w.id);
+    }
+
+    private long tickToMillis(long tick) {
+        return tick * _tickNanos / 1000000;
     }
 
-    private void sleepWhenCollide() {
-        try {
-            Thread.sleep(sleepWhenCollide);// sleep(0) 方法内部应该有处理0的情况
-        } catch (InterruptedException e) {
+    /**
+     * 把打包的(时间片, 序号)转换为id
+     */
+    private long toId(long packed, int workerId) {
+        long tick = packed / _incrMod;
+        long second = tick / _ticksPerSecond;
+        Prefix p = prefix;
+        if (p.second != second) {
+            p = new Prefix(second, Long.parseLong(DatetimeUtils.format(second * 1000, pattern)));
+            prefix = p;
         }
+        return ((p.value * _ticksPerSecond + tick % _ticksPerSecond) * _workerMod + workerId) * _incrMod + packed % _incrMod;
     }
 
     /**
      * 计算 当前系统时间 跟 {@link TimebasedIdGenerator}内部维护的时间偏差
      *
-     * @return 正数表明 内部时间跑得慢/较旧,负数表明 内部时间路得快/较新(这种情况可能会有 出现 重复id的危险)
+     * @return 正数表明 内部时间跑得慢/较旧,负数表明 内部时间路得快/较新(超过{@link #MAX_CLOCK_DRIFT_MS}时会重新校准)
      */
     public long timeBias() {
         return System.currentTimeMillis() - currentTimeMillis();
@@ -328,12 +438,44 @@ public class TimebasedIdGenerator {
     @Override
     public String toString() {
         String statInfo = "";
-        if (gens > 0) {
-            long collides_l = this.collides == 0 ? 1 : this.collides;
-            statInfo = MessageFormat.format("[gens:{0},collide(tries/num):{2}/{1}->avg:{3},probability:{4},now:{5},bias:{6}] ", gens, collides_l, collideTries, collideTries / collides_l,
-                percentageFormat.format((double) this.collides / gens), DatetimeUtils.format(currentTimeMillis(), Datetime.DF_yyyy_MM_dd_HHmmss), timeBias());
+        long gens_l = getGens();
+        if (gens_l > 0) {
+            statInfo = MessageFormat.format("[gens:{0},borrows:{1},probability:{2},casRetries:{3},waits:{4},clockBackwards:{5},lead:{6}ms,now:{7},bias:{8}] ", gens_l, getCollides(),
+                percentageFormat.format((double) getCollides() / gens_l), getCollideTries(), getWaits(), getClockBackwards(), getLeadMillis(),
+                DatetimeUtils.format(currentTimeMillis(), Datetime.DF_yyyy_MM_dd_HHmmss), timeBias());
+        }
+        Worker w = worker;
+        return MessageFormat.format("TimebasedIdGenerator {0}[dateFormat={1}, accuracyLen={2}, incrLen={3}, workerLen={4}, workerId={5}, canExpandLen={6}]", statInfo, pattern, accuracyLen,
+            incrLen, workerLen, null == w ? "" : String.valueOf(w.id), canExpandLen);
+    }
+
+    /**
+     * 实例编号和有效期，一起替换防止读到不匹配的组合
+     */
+    private static final class Worker {
+
+        final int id;
+
+        final long validUntilMs;
+
+        Worker(int id, long validUntilMs) {
+            this.id = id;
+            this.validUntilMs = validUntilMs;
+        }
+    }
+
+    /**
+     * 一秒的时间前缀
+     */
+    private static final class Prefix {
+
+        final long second;
+
+        final long value;
+
+        Prefix(long second, long value) {
+            this.second = second;
+            this.value = value;
         }
-        return MessageFormat.format("TimebasedIdGenerator {0}[dateFormat={1}, accuracyLen={2}, incrLen={3}, canExpandLen={4}, sleepWhenCollide={5}]", statInfo, pattern, accuracyLen, incrLen,
-            canExpandLen, sleepWhenCollide);
     }
 }
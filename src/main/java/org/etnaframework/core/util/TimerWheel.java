@@ -0,0 +1,186 @@
+package org.etnaframework.core.util;
+
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * 分层时间轮，用于{@link CacheWrapper}中每个元素单独的过期时间，参考Caffeine的TimerWheel
+ *
+ * 1、按过期时间距当前时间的远近分为5层，每层的格子代表的时间段依次为约1s、1min、1h、1.5d、6d
+ * 2、每个格子是一个双向链表，添加、移除元素都是O(1)的，不需要额外的Map
+ * 3、时间推进时只处理经过的格子，格子里未到期的元素（在较高的层里）会被重新放到更精确的低层格子里，均摊下来每个元素是O(1)的
+ *
+ * 本类不是线程安全的，由调用方加锁
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+final class TimerWheel<K, V> {
+
+    /** 每层的格子数，必须是2的幂 */
+    private static final int[] BUCKETS = {
+        64,
+        64,
+        32,
+        4,
+        1
+    };
+
+    /** 每层一个格子代表的时间跨度（毫秒）为2的SHIFT次方，依次为1.02s、1.09min、1.17h、1.55d、6.2d */
+    private static final int[] SHIFT = {
+        10,
+        16,
+        22,
+        27,
+        29
+    };
+
+    /** 每层格子代表的时间跨度，单位毫秒 */
+    private static final long[] SPANS = {
+        1L << SHIFT[0],
+        1L << SHIFT[1],
+        1L << SHIFT[2],
+        1L << SHIFT[3],
+        1L << SHIFT[4]
+    };
+
+    /** 各层各格子链表的哨兵节点 */
+    private final Node<K, V>[][] wheel;
+
+    /** 最近一次推进到的时间点 */
+    private long time;
+
+    TimerWheel(long now) {
+        this.time = now;
+        @SuppressWarnings("unchecked") // 泛型数组不能直接创建，用通配符类型的数组转换
+        Node<K, V>[][] w = (Node<K, V>[][]) new Node<?, ?>[BUCKETS.length][];
+        for (int i = 0; i < w.length; i++) {
+            w[i] = newBuckets(BUCKETS[i]);
+        }
+        wheel = w;
+    }
+
+    /**
+     * 生成一层的格子，每个格子放一个哨兵节点
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V>[] newBuckets(int length) {
+        Node<K, V>[] buckets = (Node<K, V>[]) new Node<?, ?>[length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Node<>(null, null, 0);
+        }
+        return buckets;
+    }
+
+    /**
+     * 按元素的过期时间放入对应的格子，如果已在时间轮中则先移除
+     */
+    void schedule(Node<K, V> node) {
+        deschedule(node);
+        Node<K, V> sentinel = findBucket(Math.max(node.expireAt, time));
+        node.prev = sentinel.prev;
+        node.next = sentinel;
+        sentinel.prev.next = node;
+        sentinel.prev = node;
+    }
+
+    /**
+     * 从时间轮中移除元素，不在时间轮中时不处理
+     */
+    void deschedule(Node<K, V> node) {
+        if (null != node.next) {
+            node.next.prev = node.prev;
+            node.prev.next = node.next;
+            node.next = null;
+            node.prev = null;
+        }
+    }
+
+    /**
+     * 推进到指定的时间点，经过的格子中已过期的元素从时间轮中移除并交给expired处理，未过期的重新放入对应的格子
+     */
+    void advance(long now, Consumer<Node<K, V>> expired) {
+        long previous = time;
+        if (now <= previous) {
+            return;
+        }
+        time = now;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previous >>> SHIFT[i];
+            long currentTicks = now >>> SHIFT[i];
+            if (currentTicks - previousTicks <= 0) {
+                break;
+            }
+            expire(i, previousTicks, currentTicks, now, expired);
+        }
+    }
+
+    private void expire(int level, long previousTicks, long currentTicks, long now, Consumer<Node<K, V>> expired) {
+        Node<K, V>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        // 经过的格子数，超过一圈时所有格子都要处理
+        int steps = (int) Math.min(1 + currentTicks - previousTicks, buckets.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            Node<K, V> sentinel = buckets[i & mask];
+            Node<K, V> node = sentinel.next;
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            while (node != sentinel) {
+                Node<K, V> next = node.next;
+                node.prev = null;
+                node.next = null;
+                if (node.expireAt <= now) {
+                    expired.accept(node);
+                } else {
+                    schedule(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * 找到过期时间点对应的格子：距离当前时间越远，放在越高的层
+     */
+    private Node<K, V> findBucket(long expireAt) {
+        long duration = expireAt - time;
+        int last = wheel.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = expireAt >>> SHIFT[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+
+    /**
+     * 时间轮中的元素，同时也是缓存中保存的值
+     */
+    static final class Node<K, V> {
+
+        final K key;
+
+        final V value;
+
+        /** 过期时间点 */
+        final long expireAt;
+
+        Node<K, V> prev;
+
+        Node<K, V> next;
+
+        Node(K key, V value, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+            // 哨兵节点自己指向自己
+            if (null == key) {
+                prev = this;
+                next = this;
+            }
+        }
+    }
+}
@@ -10,11 +10,12 @@ import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.etnaframework.core.logging.AsyncAccessLogWriter;
 import org.etnaframework.core.logging.Log;
 import org.etnaframework.core.spring.SpringContext;
 import org.etnaframework.core.util.AntiDos;
 import org.etnaframework.core.util.DatetimeUtils.Datetime;
-import org.etnaframework.core.util.DingTalkRobotUtils;
 import org.etnaframework.core.util.StringTools;
 import org.etnaframework.core.util.StringTools.CharsetEnum;
 import org.etnaframework.core.util.SystemInfo;
@@ -64,6 +65,22 @@ public final class DispatchFilter extends OncePerRequestFilter {
     /** 支持jsonp时,允许跨域调用的域名后缀. */
     static Set<String> jsonpCallbackCredibleDomains;
 
+    /** 是否将JSON直接序列化写到输出流，不生成中间的字符串和字节数组，默认开启 */
+    static boolean jsonStreamingEnable = true;
+
+    /** 流式输出JSON时每个线程复用的缓冲区大小，返回内容不超过这个大小时会带上Content-Length，超过时就使用chunked方式分块发送 */
+    static int jsonStreamingBufferSize = 64 * 1024;
+
+    /**
+     * 读取到内存中的请求body部分的最大长度，默认32MB，可在web.xml中配置，设置为0或负数表示不限制，文件上传(multipart)的请求不受此限制
+     *
+     * 超出时直接返回413，不执行接口：带Content-Length的在读取body之前就拒绝，分块传输（chunked）的读到超出上限时拒绝
+     */
+    static int maxContentLength = 32 * 1024 * 1024;
+
+    /** 访问日志中记录的返回内容的最大长度，超出部分截断，设置为0或负数表示不限制 */
+    static int accessLogContentMaxLength = 2048;
+
     /** 默认的异步模式连接挂起超时时间，单位毫秒，可在web.xml中配置 */
     static int asyncHoldOnTimeoutMs = Datetime.MILLIS_PER_SECOND * 60;
 
@@ -79,6 +96,18 @@ public final class DispatchFilter extends OncePerRequestFilter {
     /** 访问日志记录器 */
     static AccessLogRecorder accessLogRecorder;
 
+    /** 访问日志文件，配置后使用{@link AsyncAccessLogWriter}异步批量写入，不再经过logback */
+    static String accessLogFile;
+
+    /** 异步写访问日志的缓冲区能容纳的日志条数 */
+    static int accessLogBufferSize = 65536;
+
+    /** 异步写访问日志的缓冲区满时是否阻塞等待，默认丢弃并计数 */
+    static boolean accessLogBlockWhenFull = false;
+
+    /** 异步访问日志写入器，没有配置{@link #accessLogFile}时为null */
+    static AsyncAccessLogWriter accessLogWriter;
+
     /** cmd 映射 */
     static CmdMappers cmdMappers;
 
@@ -89,12 +118,36 @@ public final class DispatchFilter extends OncePerRequestFilter {
     static RequestTraceHandler requestTraceHandler = RequestTraceHandler.DEFAULT;
 
     /**
-     * 发送通知邮件
+     * 是否需要记录访问日志
+     */
+    static boolean isAccessLogEnabled() {
+        return null != accessLogWriter || access_log.isInfoEnabled();
+    }
+
+    /**
+     * 记录一条访问日志，配置了异步写入时放入缓冲区，否则直接通过logback输出
+     */
+    static void writeAccessLog(String logPart) {
+        AsyncAccessLogWriter w = accessLogWriter;
+        if (null != w) {
+            w.append(logPart);
+        } else {
+            access_log.info(logPart);
+        }
+    }
+
+    public static AsyncAccessLogWriter getAccessLogWriter() {
+        return accessLogWriter;
+    }
+
+    /**
+     * 发送通知邮件，同时通过{@link SystemMonitor#getAlertDispatcher()}异步发送钉钉告警，不会阻塞当前线程
      */
     public static void sendMail(String title, CharSequence content) {
         MDC.put("mailTitle", SystemInfo.RUN_APP_NAME + title);
         mail_log.error("{}\n{}", title, content);
-        DingTalkRobotUtils.sendMarkdownGeneral(SystemMonitor.getDingTalkRobotUrl(), title, content);
+        SystemMonitor.getAlertDispatcher()
+                     .dispatch(title, content, null);
     }
 
     /**
@@ -110,13 +163,21 @@ public final class DispatchFilter extends OncePerRequestFilter {
         }
         MDC.put("mailTitle", SystemInfo.RUN_APP_NAME + title);
         mail_log.error("{}\n", title, ex);
-        DingTalkRobotUtils.sendMarkdownGeneral(SystemMonitor.getDingTalkRobotUrl(), title, StringTools.printTrace(ex, true, 20, 0));
+        SystemMonitor.getAlertDispatcher()
+                     .dispatch(title, StringTools.printTrace(ex, true, 20, 0), ex);
     }
 
     public static RequestTraceHandler getRequestTraceHandler() {
         return requestTraceHandler;
     }
 
+    /**
+     * 获取默认的请求和返回编码
+     */
+    public static Charset getEncoding() {
+        return encoding;
+    }
+
     /**
      * 发送通知邮件
      */
@@ -137,7 +198,8 @@ public final class DispatchFilter extends OncePerRequestFilter {
          .append('\n')
          .append(StringTools.printTrace(ex, true, 20, 0));
 
-        DingTalkRobotUtils.sendMarkdownGeneral(SystemMonitor.getDingTalkRobotUrl(), title, c);
+        SystemMonitor.getAlertDispatcher()
+                     .dispatch(title, c, ex);
     }
 
     /**
@@ -198,6 +260,9 @@ public final class DispatchFilter extends OncePerRequestFilter {
                     accessLogRecorder = AccessLogRecorder.DEFAULT_NECESSARY;
                 }
             }
+            if (StringTools.isNotEmpty(accessLogFile) && null == accessLogWriter) {
+                accessLogWriter = new AsyncAccessLogWriter(accessLogFile, accessLogBufferSize, accessLogBlockWhenFull);
+            }
         } catch (ServletException se) {
             throw se;
         } catch (Throwable ex) {
@@ -205,6 +270,19 @@ public final class DispatchFilter extends OncePerRequestFilter {
         }
     }
 
+    /**
+     * 停机时先切回logback记录访问日志，再把异步缓冲区中剩余的访问日志写完
+     */
+    @Override
+    public void destroy() {
+        AsyncAccessLogWriter w = accessLogWriter;
+        if (null != w) {
+            accessLogWriter = null;
+            w.close();
+        }
+        super.destroy();
+    }
+
     public void setEncoding(String encoding) {
         DispatchFilter.encoding = Charset.forName(encoding);
     }
@@ -233,6 +311,41 @@ public final class DispatchFilter extends OncePerRequestFilter {
         DispatchFilter.jsonpCallbackEnable = jsonpCallbackEnable;
     }
 
+    public void setJsonStreamingEnable(boolean jsonStreamingEnable) {
+        DispatchFilter.jsonStreamingEnable = jsonStreamingEnable;
+    }
+
+    public void setJsonStreamingBufferSize(int jsonStreamingBufferSize) {
+        if (jsonStreamingBufferSize > 0) {
+            DispatchFilter.jsonStreamingBufferSize = jsonStreamingBufferSize;
+        }
+    }
+
+    /**
+     * 设置读取到内存中的请求body部分的最大长度，参考{@link #maxContentLength}
+     */
+    public void setMaxContentLength(int maxContentLength) {
+        DispatchFilter.maxContentLength = maxContentLength;
+    }
+
+    public void setAccessLogContentMaxLength(int accessLogContentMaxLength) {
+        DispatchFilter.accessLogContentMaxLength = accessLogContentMaxLength;
+    }
+
+    public void setAccessLogFile(String accessLogFile) {
+        DispatchFilter.accessLogFile = accessLogFile;
+    }
+
+    public void setAccessLogBufferSize(int accessLogBufferSize) {
+        if (accessLogBufferSize > 0) {
+            DispatchFilter.accessLogBufferSize = accessLogBufferSize;
+        }
+    }
+
+    public void setAccessLogBlockWhenFull(boolean accessLogBlockWhenFull) {
+        DispatchFilter.accessLogBlockWhenFull = accessLogBlockWhenFull;
+    }
+
     public void setAsyncHoldOnTimeoutMs(int asyncHoldOnTimeoutMs) {
         if (asyncHoldOnTimeoutMs > 0) {
             DispatchFilter.asyncHoldOnTimeoutMs = asyncHoldOnTimeoutMs;
@@ -267,7 +380,7 @@ public final class DispatchFilter extends OncePerRequestFilter {
     }
 
     public void setlogMailLimit(String conf) {
-        logMailLimit = new AntiDos(conf).initSweeper();
+        logMailLimit = new AntiDos(conf);
     }
 
     @Override
@@ -284,9 +397,19 @@ public final class DispatchFilter extends OncePerRequestFilter {
         HttpEvent he = new HttpEvent(startTime, request, response);
         CmdMeta cm = cmdMappers.getCmdMetaByPath(he);
         if (null != cm) {
+            he.cmdMeta = cm;
             try {
                 requestTraceHandler.requestBegin(he); // 请求开始
-                cm.invoke(he);
+                if (!cm.acquire(he)) { // 超过接口访问频率限制的直接拒绝
+                    he.setStatus(HttpStatus.TOO_MANY_REQUESTS);
+                    he.writeText(HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase());
+                } else if (isContentTooLarge(request, he)) {
+                    // body超长的请求在执行接口之前就拒绝掉，防止一次性占用过多内存
+                    he.setStatus(HttpStatus.PAYLOAD_TOO_LARGE);
+                    he.writeText(HttpStatus.PAYLOAD_TOO_LARGE.getReasonPhrase());
+                } else {
+                    cm.invoke(he);
+                }
             } catch (Throwable ex) {
                 try {
                     // 如果是通过反射调用产生的异常，需要把真实的异常剥离出来
@@ -308,10 +431,10 @@ public final class DispatchFilter extends OncePerRequestFilter {
                 }
             } finally {
                 // 记录etna接口的访问日志
-                if (access_log.isInfoEnabled()) {
+                if (isAccessLogEnabled()) {
                     String logPart = accessLogRecorder.getAccessLog(he, false);
                     if (null != logPart) {
-                        access_log.info(logPart);
+                        writeAccessLog(logPart);
                     }
                 }
                 cm.getStat()
@@ -322,12 +445,30 @@ public final class DispatchFilter extends OncePerRequestFilter {
         } else {
             filterChain.doFilter(request, response);
             // 记录非etna接口的访问日志，根据配置的策略决定怎么记录
-            if (access_log.isInfoEnabled()) {
+            if (isAccessLogEnabled()) {
                 String logPart = accessLogRecorder.getAccessLog(startTime, request, response);
                 if (null != logPart) {
-                    access_log.info(logPart);
+                    writeAccessLog(logPart);
                 }
             }
         }
     }
+
+    /**
+     * 请求的body部分是否超出了{@link #maxContentLength}，带Content-Length的不用读取就能判断
+     * 分块传输（chunked）的没有长度，需要先读出来（最多读到上限）才知道；表单提交的body由jetty自己解析参数并限制大小，这里不读取
+     */
+    private static boolean isContentTooLarge(HttpServletRequest request, HttpEvent he) {
+        if (maxContentLength <= 0 || ServletFileUpload.isMultipartContent(request)) {
+            return false;
+        }
+        if (request.getContentLength() > maxContentLength) {
+            return true;
+        }
+        String contentType = he.getContentType();
+        if (request.getContentLength() < 0 && HttpEvent.isChunked(request) && (null == contentType || !contentType.startsWith("application/x-www-form-urlencoded"))) {
+            he.getContentBytes();
+        }
+        return he.isContentTooLarge();
+    }
 }
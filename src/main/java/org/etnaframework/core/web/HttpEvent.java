@@ -1,10 +1,11 @@
 package org.etnaframework.core.web;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -38,9 +39,12 @@ import org.eclipse.jetty.server.AsyncContextState;
 import org.eclipse.jetty.server.HttpChannelState.State;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.util.MultiMap;
+import org.etnaframework.core.logging.Log;
 import org.etnaframework.core.util.CollectionTools;
 import org.etnaframework.core.util.DatetimeUtils;
 import org.etnaframework.core.util.DatetimeUtils.Datetime;
+import org.etnaframework.core.util.FileUtils;
+import org.etnaframework.core.util.FileUtils.ContentTooLargeException;
 import org.etnaframework.core.util.HttlTemplateUtils;
 import org.etnaframework.core.util.JsonObjectUtils;
 import org.etnaframework.core.util.KeyValueGetter;
@@ -52,7 +56,9 @@ import org.etnaframework.core.web.exception.ParamEmptyException;
 import org.etnaframework.core.web.exception.ParamInvalidFormatException;
 import org.etnaframework.core.web.exception.ParamInvalidValueException;
 import org.etnaframework.core.web.exception.SimpleRtnBaseException;
+import org.etnaframework.core.web.mapper.CmdMeta;
 import org.etnaframework.core.web.mapper.ValidatorMappers;
+import org.slf4j.Logger;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
@@ -71,6 +77,8 @@ import httl.Template;
  */
 public class HttpEvent implements KeyValueGetter {
 
+    private static final Logger log = Log.getLogger();
+
     private static final String[] CURL_ESCAPE_LIST;
 
     static {
@@ -93,6 +101,9 @@ public class HttpEvent implements KeyValueGetter {
     /** HTTP请求开始时间 */
     long requestStartTime;
 
+    /** 当前请求对应的接口，出错时用于定位 */
+    CmdMeta cmdMeta;
+
     /** 标记当前请求事件是否在异步业务逻辑处理中，如果不为null表示当前请求中提交了异步事件，正在等待事件完成通知回调 */
     private volatile TimeoutHandler timeoutHandler;
 
@@ -123,6 +134,9 @@ public class HttpEvent implements KeyValueGetter {
     /** 从URL的正则表达式中提取到的匹配结果，用于RESTful风格请求的处理，只有RESTful风格的请求此处才不为null */
     private Matcher matcher;
 
+    /** 多条正则规则合并匹配时，当前规则的分组在{@link #matcher}中的偏移量 */
+    private int matcherGroupOffset;
+
     /** 请求中的cookies，注意这里不会包含addCookie方法加入的内容！ */
     private WrappedMap<String, Cookie> cookies;
 
@@ -141,6 +155,9 @@ public class HttpEvent implements KeyValueGetter {
     /** 当前请求是否有文件上传 */
     private boolean hasFileUpload = false;
 
+    /** 请求的content部分是否超出了{@link DispatchFilter#maxContentLength}，超出时读到的content为空 */
+    private boolean contentTooLarge;
+
     HttpEvent(long requestStartTime, HttpServletRequest request, HttpServletResponse response) {
         this.requestStartTime = requestStartTime;
         this.request = request;
@@ -297,24 +314,31 @@ public class HttpEvent implements KeyValueGetter {
      * 获取浏览器http请求的content部分二进制内容
      */
     private static byte[] _getContentBytes(HttpServletRequest request) {
-        byte[] contentBytes;
+        try {
+            return _readContentBytes(request);
+        } catch (IOException e) { // 读取出现异常或内容超长，认为没有content部分
+            return new byte[0];
+        }
+    }
+
+    /**
+     * 读取浏览器http请求的content部分二进制内容，最多读取{@link DispatchFilter#maxContentLength}，超出时抛出{@link ContentTooLargeException}
+     */
+    private static byte[] _readContentBytes(HttpServletRequest request) throws IOException {
         int len = request.getContentLength(); // 注意，某些客户端请求信息不完整，此处的长度仅供参考，不可以真的相信客户端传入的大小
-        if (len == -1) { // -1表示没有body数据,返回空字符串
-            contentBytes = new byte[0];
-        } else {
-            try {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-                InputStream in = request.getInputStream();
-                int tmp;
-                while ((tmp = in.read()) != -1) {
-                    baos.write(tmp);
-                }
-                contentBytes = baos.toByteArray();
-            } catch (IOException e) { // 读取出现异常，认为没有content部分
-                contentBytes = new byte[0];
-            }
+        if (len == -1 && !isChunked(request)) { // -1表示没有body数据,返回空字符串，分块传输（chunked）的没有长度，需要读到结束为止
+            return new byte[0];
         }
-        return contentBytes;
+        return FileUtils.readBytes(request.getInputStream(), len, DispatchFilter.maxContentLength);
+    }
+
+    /**
+     * 请求的content部分是否是分块传输（chunked）的，这种请求没有Content-Length，读完才知道有多长
+     */
+    static boolean isChunked(HttpServletRequest request) {
+        String te = request.getHeader(HttpHeaders.TRANSFER_ENCODING);
+        return null != te && te.toLowerCase()
+                               .contains("chunked");
     }
 
     /**
@@ -376,8 +400,7 @@ public class HttpEvent implements KeyValueGetter {
             if (CollectionTools.isEmpty(contentBytes)) {
                 return;
             }
-            String content = new String(contentBytes, DispatchFilter.encoding);
-            JSONObject jsonObject = JsonObjectUtils.parseJson(content);
+            JSONObject jsonObject = JsonObjectUtils.parseJson(contentBytes, DispatchFilter.encoding);
 
             if (jsonObject == null) {
                 return;
@@ -447,7 +470,7 @@ public class HttpEvent implements KeyValueGetter {
      */
     public void setAccessLogContent(Object... contents) {
         if (null == this.accessLogContent) {
-            if (DispatchFilter.access_log.isInfoEnabled()) {
+            if (DispatchFilter.isAccessLogEnabled()) {
                 StringBuilder sb = new StringBuilder();
                 for (int i = 0; i < contents.length; i++) {
                     Object obj = contents[i];
@@ -461,6 +484,12 @@ public class HttpEvent implements KeyValueGetter {
                         }
                     }
                 }
+                int max = DispatchFilter.accessLogContentMaxLength;
+                if (max > 0 && sb.length() > max) { // 返回内容太长的只记录开头部分，防止大的返回内容在请求结束前一直被引用着
+                    int total = sb.length();
+                    sb.setLength(max);
+                    sb.append("...(").append(total).append("chars)");
+                }
                 this.accessLogContent = StringTools.escapeWhitespace(sb.toString());
             }
         }
@@ -470,7 +499,7 @@ public class HttpEvent implements KeyValueGetter {
      * 如果POST上来的数据包含二进制内容，为了防止打到access日志乱码，允许业务代码直接指定记录内容
      */
     public void setAccessLogPostContent(String contentString) {
-        if (DispatchFilter.access_log.isInfoEnabled()) {
+        if (DispatchFilter.isAccessLogEnabled()) {
             this.contentString = contentString;
         }
     }
@@ -479,7 +508,17 @@ public class HttpEvent implements KeyValueGetter {
      * 初始化RESTful风格的URL中匹配结果数据
      */
     public void initRESTfulMatcher(Matcher m) {
+        initRESTfulMatcher(m, 0);
+    }
+
+    /**
+     * 初始化RESTful风格的URL中匹配结果数据
+     *
+     * @param groupOffset 多条正则规则合并匹配时，当前规则的第1组在m中的下标为groupOffset+1
+     */
+    public void initRESTfulMatcher(Matcher m, int groupOffset) {
         this.matcher = m;
+        this.matcherGroupOffset = groupOffset;
     }
 
     /**
@@ -519,14 +558,45 @@ public class HttpEvent implements KeyValueGetter {
 
     /**
      * 获取浏览器http请求的content部分二进制内容（有缓存机制）
+     *
+     * 最多读取{@link DispatchFilter#maxContentLength}（默认32MB），超出时返回空内容，并且{@link #isContentTooLarge()}返回true，
+     * 带Content-Length的超长请求和分块传输（chunked）的超长请求，在执行接口之前就已经返回413了
      */
     public byte[] getContentBytes() {
         if (null == contentBytes) {
-            contentBytes = _getContentBytes(request);
+            try {
+                contentBytes = _readContentBytes(request);
+            } catch (ContentTooLargeException e) {
+                contentTooLarge = true;
+                contentBytes = new byte[0];
+            } catch (IOException e) { // 读取出现异常，认为没有content部分
+                contentBytes = new byte[0];
+            }
         }
         return contentBytes;
     }
 
+    /**
+     * 请求的content部分是否超出了{@link DispatchFilter#maxContentLength}，需要先调用过{@link #getContentBytes()}才能判断
+     */
+    public boolean isContentTooLarge() {
+        return contentTooLarge;
+    }
+
+    /**
+     * 获取浏览器http请求的content部分二进制内容的只读视图，可直接交给解析器处理，不需要先转成字符串（有缓存机制）
+     */
+    public ByteBuffer getContentByteBuffer() {
+        return ByteBuffer.wrap(getContentBytes()).asReadOnlyBuffer();
+    }
+
+    /**
+     * 以流的方式读取浏览器http请求的content部分二进制内容，每次调用都会从头开始读取（有缓存机制）
+     */
+    public InputStream getContentInputStream() {
+        return new ByteArrayInputStream(getContentBytes());
+    }
+
     /**
      * 获取浏览器http请求的content部分的字符串，可指定编码
      */
@@ -870,7 +940,7 @@ public class HttpEvent implements KeyValueGetter {
      * @param groupId 组ID，下标从1开始，即URL正则匹配规则里面用括号括起来的部分为一个组，从左到右组ID递增
      */
     public String getUrlString(int groupId) {
-        return matcher.group(groupId);
+        return matcher.group(matcherGroupOffset + groupId);
     }
 
     /**
@@ -1670,16 +1740,85 @@ public class HttpEvent implements KeyValueGetter {
             if (callback.contains("<")) { // 封锁xss漏洞，特殊处理<符号
                 writeText("FORBIDDEN");
             } else {
-                String text = JsonObjectUtils.createJson(obj);
-                String t = callback + "(" + text + ")";
-                byte[] bytes = t.getBytes(DispatchFilter.encoding);
-                _write(bytes, ContentTypes.JSON, t);
+                _writeJson(obj, callback);
             }
             return;
         }
-        String t = JsonObjectUtils.createJson(obj);
-        byte[] bytes = t.getBytes(DispatchFilter.encoding);
-        _write(bytes, ContentTypes.JSON, t);
+        _writeJson(obj, null);
+    }
+
+    /**
+     * 返回JSON到前端，如果开启了流式输出，序列化的结果将直接编码写到输出流，不再生成中间的字符串和字节数组
+     *
+     * @param callback JSONP的回调函数名，不需要时传null
+     */
+    private void _writeJson(Object obj, String callback) throws Throwable {
+        if (!DispatchFilter.jsonStreamingEnable) {
+            String text = JsonObjectUtils.createJson(obj);
+            String t = null == callback ? text : callback + "(" + text + ")";
+            byte[] bytes = t.getBytes(DispatchFilter.encoding);
+            _write(bytes, ContentTypes.JSON, t);
+            return;
+        }
+        synchronized (this) { // 当异步超时处理和回写操作同时触发时，只允许先来的操作
+            if (isCommitted()) {
+                _checkCommittedOps();
+            }
+            ResponseBodyWriter writer = null;
+            try {
+                response.setHeader(HttpHeaders.CONTENT_TYPE, ContentTypes.JSON);
+                // 访问日志只保留返回内容的开头部分，不记录访问日志时就不用保留了
+                int prefixMaxLength = 0;
+                if (null == accessLogContent && DispatchFilter.isAccessLogEnabled()) {
+                    prefixMaxLength = DispatchFilter.accessLogContentMaxLength > 0 ? DispatchFilter.accessLogContentMaxLength : -1;
+                }
+                writer = new ResponseBodyWriter(response, DispatchFilter.encoding, DispatchFilter.jsonStreamingBufferSize, prefixMaxLength);
+                if (null != callback) {
+                    writer.write(callback);
+                    writer.write('(');
+                }
+                try {
+                    JsonObjectUtils.writeJson(writer, obj);
+                } catch (RuntimeException ex) {
+                    if (writer.isStreaming() || ex.getCause() instanceof IOException) {
+                        throw ex;
+                    }
+                    // 还没有发送任何内容，和createJson一样改为返回{}，先记下异常和出错的接口，否则只能看到返回了空内容
+                    String location = null == cmdMeta ? getRequestURI() : cmdMeta.getName();
+                    log.warn("writeJson failed in {}, type={}, return {} instead", location, null == obj ? null : obj.getClass(), "{}", ex);
+                    writer.discard();
+                    if (null != callback) {
+                        writer.write(callback);
+                        writer.write('(');
+                    }
+                    writer.write("{}");
+                }
+                if (null != callback) {
+                    writer.write(')');
+                }
+                writer.finish();
+                String prefix = writer.getPrefix();
+                if (null != prefix) {
+                    accessLogContent = StringTools.escapeWhitespace(prefix);
+                }
+            } catch (Throwable ex) {
+                Throwable cause = ex instanceof IOException ? ex : ex.getCause();
+                if (cause instanceof IOException) { // 回写IO类异常全部不需要报出来，这些都是客户端断开连接所致的，客户端不会收到返回的数据，记录该情况到access日志里面就可以了
+                    Throwable c = null == cause.getCause() ? cause : cause.getCause();
+                    String msg = c.getMessage();
+                    accessLogContent = "[DISCONNECTED]" + c.getClass().getName() + (null == msg ? "" : ":" + msg);
+                } else if (null != writer && writer.isStreaming()) { // 已经有部分内容发送出去了，无法再返回错误信息，只能报告异常
+                    accessLogContent = "[ABORTED]" + ex.getClass().getName() + " after " + writer.getByteCount() + "bytes";
+                    DispatchFilter.recordThrowable(this, ex);
+                } else {
+                    throw ex;
+                }
+            } finally {
+                if (null != timeoutHandler) { // 有回写动作，就标记异步事件完成
+                    timeoutHandler.complete();
+                }
+            }
+        }
     }
 
     /**
@@ -1797,10 +1936,10 @@ public class HttpEvent implements KeyValueGetter {
                 @Override
                 public void onComplete(AsyncEvent event) {
                     // 记录etna接口异步返回内容的日志
-                    if (DispatchFilter.access_log.isInfoEnabled()) {
+                    if (DispatchFilter.isAccessLogEnabled()) {
                         String logPart = DispatchFilter.accessLogRecorder.getAccessLog(HttpEvent.this, true);
                         if (null != logPart) {
-                            DispatchFilter.access_log.info(logPart);
+                            DispatchFilter.writeAccessLog(logPart);
                         }
                     }
                 }
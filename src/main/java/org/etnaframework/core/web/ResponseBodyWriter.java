@@ -0,0 +1,228 @@
+package org.etnaframework.core.web;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * <pre>
+ * 把文本直接编码写到response输出流的Writer，用于大的返回内容（如列表接口的JSON）不生成中间的字符串和字节数组
+ *
+ * 1、编码后的字节先写到线程复用的缓冲区里，整个内容都能放进缓冲区时，结束时带上Content-Length一次性写出
+ * 2、超出缓冲区大小时，不再设置Content-Length，缓冲区每写满一次就发送一次，由容器使用chunked方式分块传输
+ * 3、可以只保留返回内容开头的一部分，用于记录访问日志
+ *
+ * 本类不是线程安全的，只能在一次请求的回写过程中使用
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+final class ResponseBodyWriter extends Writer {
+
+    /** 每个线程复用的编码缓冲区 */
+    private static final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>();
+
+    private final HttpServletResponse response;
+
+    private final Buffer buf;
+
+    private final ByteBuffer bytes;
+
+    private final CharsetEncoder encoder;
+
+    /** 要保留的返回内容开头部分，不需要保留时为null */
+    private final StringBuilder prefix;
+
+    private final int prefixMaxLength;
+
+    /** 上次写入时末尾落单的高位代理字符，需要和下次写入的第一个字符一起编码 */
+    private char pendingHighSurrogate;
+
+    private boolean hasPending;
+
+    /** 是否已经开始分块发送 */
+    private boolean streaming;
+
+    /** 已写入的总字节数 */
+    private long byteCount;
+
+    /**
+     * @param prefixMaxLength 需要保留的返回内容开头部分的最大长度，为0表示不保留，小于0表示全部保留
+     */
+    ResponseBodyWriter(HttpServletResponse response, Charset charset, int bufferSize, int prefixMaxLength) {
+        this.response = response;
+        Buffer b = buffers.get();
+        if (null == b || b.bytes.capacity() != bufferSize || !b.charset.equals(charset)) {
+            b = new Buffer(charset, bufferSize);
+            buffers.set(b);
+        }
+        this.buf = b;
+        this.bytes = b.bytes;
+        this.encoder = b.encoder;
+        this.bytes.clear();
+        this.encoder.reset();
+        this.prefixMaxLength = prefixMaxLength;
+        this.prefix = prefixMaxLength == 0 ? null : new StringBuilder(prefixMaxLength > 0 ? Math.min(prefixMaxLength, 256) : 256);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        write(CharBuffer.wrap(cbuf, off, len));
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        write(CharBuffer.wrap(str, off, off + len));
+    }
+
+    private void write(CharBuffer in) throws IOException {
+        if (!in.hasRemaining()) {
+            return;
+        }
+        if (null != prefix) {
+            int n = prefixMaxLength < 0 ? in.remaining() : Math.min(in.remaining(), prefixMaxLength - prefix.length());
+            if (n > 0) {
+                prefix.append(in, 0, n);
+            }
+        }
+        if (hasPending) { // 先把上次落单的代理字符和本次的第一个字符拼到一起编码
+            hasPending = false;
+            CharBuffer pair = CharBuffer.wrap(new char[] {
+                pendingHighSurrogate,
+                in.get(in.position())
+            });
+            encode(pair, false);
+            if (!pair.hasRemaining()) {
+                in.position(in.position() + 1);
+            }
+        }
+        encode(in, false);
+        if (in.hasRemaining()) { // 编码器只会因为末尾是落单的高位代理字符而剩下
+            pendingHighSurrogate = in.get();
+            hasPending = true;
+        }
+    }
+
+    private void encode(CharBuffer in, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult cr = encoder.encode(in, bytes, endOfInput);
+            if (cr.isOverflow()) {
+                sendBuffer();
+            } else if (cr.isUnderflow()) {
+                return;
+            } else {
+                cr.throwException();
+            }
+        }
+    }
+
+    /**
+     * 缓冲区满了，开始分块发送
+     */
+    private void sendBuffer() throws IOException {
+        streaming = true;
+        bytes.flip();
+        byteCount += bytes.remaining();
+        response.getOutputStream().write(buf.array, 0, bytes.remaining());
+        bytes.clear();
+    }
+
+    /**
+     * 是否已经有内容发送给前端了，如果没有，出错时还可以丢弃已写入的内容改为返回其他内容
+     */
+    boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * 丢弃还没有发送出去的内容
+     */
+    void discard() {
+        bytes.clear();
+        encoder.reset();
+        hasPending = false;
+        if (null != prefix) {
+            prefix.setLength(0);
+        }
+    }
+
+    /**
+     * 写完所有内容后调用，把剩下的内容发送出去，如果没有开始分块发送就带上Content-Length
+     */
+    void finish() throws IOException {
+        CharBuffer in = hasPending ? CharBuffer.wrap(new char[] {
+            pendingHighSurrogate
+        }) : CharBuffer.allocate(0);
+        hasPending = false;
+        encode(in, true);
+        while (encoder.flush(bytes).isOverflow()) {
+            sendBuffer();
+        }
+        bytes.flip();
+        int remaining = bytes.remaining();
+        byteCount += remaining;
+        if (!streaming) {
+            response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(remaining));
+        }
+        response.getOutputStream().write(buf.array, 0, remaining);
+        bytes.clear();
+        response.flushBuffer();
+    }
+
+    /**
+     * 已写入的总字节数，调用{@link #finish()}后才准确
+     */
+    long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * 保留的返回内容开头部分，如果内容被截断了会在后面注明总字节数
+     */
+    String getPrefix() {
+        if (null == prefix) {
+            return null;
+        }
+        if (prefixMaxLength > 0 && prefix.length() >= prefixMaxLength) {
+            return prefix + "...(" + byteCount + "bytes)";
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * fastjson的SerializeWriter每次写满内部缓冲区时都会调用，这里不能发送，否则就无法在结束时判断是否可以带上Content-Length了
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static final class Buffer {
+
+        final Charset charset;
+
+        final byte[] array;
+
+        final ByteBuffer bytes;
+
+        final CharsetEncoder encoder;
+
+        Buffer(Charset charset, int size) {
+            this.charset = charset;
+            this.array = new byte[size];
+            this.bytes = ByteBuffer.wrap(array);
+            this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+    }
+}
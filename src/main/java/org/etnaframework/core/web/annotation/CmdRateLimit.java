@@ -0,0 +1,72 @@
+package org.etnaframework.core.web.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.etnaframework.core.util.RateLimiter;
+import org.etnaframework.core.util.RateLimiter.Algorithm;
+
+/**
+ * <pre>
+ * 接口访问频率限制，超过限制的请求直接返回429 Too Many Requests，不会执行接口方法
+ *
+ * 可以用在cmd类上，对类中所有接口生效（每个接口单独计数），也可以用在方法上，方法上的配置优先
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ * @see RateLimiter
+ */
+@Inherited
+@Target({
+    ElementType.TYPE,
+    ElementType.METHOD
+})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CmdRateLimit {
+
+    /**
+     * spanSec秒内最多允许访问的次数
+     */
+    int value();
+
+    /**
+     * 时间窗口，单位秒
+     */
+    int spanSec() default 1;
+
+    /**
+     * 限流算法，默认为滑动窗口
+     */
+    Algorithm algorithm() default Algorithm.SLIDING_WINDOW;
+
+    /**
+     * 按什么计数，默认按客户端IP
+     */
+    LimitBy by() default LimitBy.IP;
+
+    /**
+     * 最多记录多少个IP的访问状态，超过后淘汰最久没有访问的
+     */
+    int capacity() default 65536;
+
+    public static enum LimitBy {
+
+        IP("按客户端IP分别限制"),
+
+        ALL("所有请求共用一个限制");
+
+        private String detail;
+
+        private LimitBy(String detail) {
+            this.detail = detail;
+        }
+
+        @Override
+        public String toString() {
+            return detail;
+        }
+    }
+}
@@ -14,13 +14,16 @@ import java.util.regex.Pattern;
 import org.etnaframework.core.logging.Log;
 import org.etnaframework.core.spring.SpringContext;
 import org.etnaframework.core.spring.SpringContext.ByNameFrameworkPriorComparator;
+import org.etnaframework.core.spring.annotation.Config;
 import org.etnaframework.core.spring.annotation.OnContextInited;
 import org.etnaframework.core.util.ReflectionTools;
 import org.etnaframework.core.util.StringTools;
 import org.etnaframework.core.util.TimeSpanStat;
 import org.etnaframework.core.web.HttpEvent;
 import org.etnaframework.core.web.annotation.CmdPath;
+import org.etnaframework.core.web.annotation.CmdRateLimit;
 import org.etnaframework.core.web.cmd.HttpCmd;
+import org.etnaframework.core.web.mapper.RegexRouteTrie.RouteMatch;
 import org.etnaframework.plugin.websocket.WebsocketCmd;
 import org.slf4j.Logger;
 import org.springframework.aop.framework.Advised;
@@ -39,7 +42,7 @@ import javassist.CtMethod;
  * @since 2014-7-23
  */
 @Service
-public class CmdMappers {
+public final class CmdMappers {
 
     protected Logger log = Log.getLogger();
 
@@ -49,6 +52,17 @@ public class CmdMappers {
     /** 正则表达式匹配规则的映射 */
     private static List<CmdMeta> reMappers = Collections.emptyList();
 
+    /** 接口请求过慢的阈值，单位毫秒，超过该值的请求会计入slow统计 */
+    @Config(value = "etna.cmdSlowThresholdMS", resetable = false)
+    private static int cmdSlowThresholdMS = 1000;
+
+    /** 是否开启接口耗时分布统计，开启后可在/stat/cmd和/stat/latency中查看p50/p99/p999，每个接口会多占用几十KB内存 */
+    @Config(value = "etna.cmdLatencyHistogram", resetable = false)
+    private static boolean cmdLatencyHistogram = false;
+
+    /** 正则表达式匹配规则的路由树，在{@link #initMappers()}时根据{@link #reMappers}生成 */
+    private static RegexRouteTrie<CmdMeta> reRouter = new RegexRouteTrie<CmdMeta>().build();
+
     /**
      * 放置URL->cmdName.methodName关系的映射
      */
@@ -166,6 +180,13 @@ public class CmdMappers {
 
                     // 添加到映射关系中去
                     CmdMeta cm = CmdMeta.create(new ArrayList<String>(pathInfo), new ArrayList<Pattern>(rePattern), bean, m);
+                    CmdRateLimit rl = (CmdRateLimit) m.getAnnotation(CmdRateLimit.class);
+                    if (null == rl) {
+                        rl = beanClass.getAnnotation(CmdRateLimit.class);
+                    }
+                    if (null != rl) {
+                        cm.setRateLimit(rl);
+                    }
                     for (String url : pathInfo) {
                         CmdMeta old = directMappers.get(url);
                         if (null != old) {
@@ -179,6 +200,11 @@ public class CmdMappers {
                 }
             }
         }
+        RegexRouteTrie<CmdMeta> router = new RegexRouteTrie<CmdMeta>();
+        for (CmdMeta cm : reMappers) {
+            router.add(cm, cm.getPatterns());
+        }
+        reRouter = router.build();
     }
 
     private Pattern compile(CtClass cc, CtMethod m, String pattern) {
@@ -209,10 +235,10 @@ public class CmdMappers {
     public CmdMeta getCmdMetaByPath(HttpEvent he) {
         CmdMeta cm = directMappers.get(he.getRequestURI());
         if (null == cm) {
-            for (CmdMeta c : reMappers) {
-                if (c.matches(he)) {
-                    return c;
-                }
+            RouteMatch<CmdMeta> m = reRouter.match(he.getRequestURI());
+            if (null != m) {
+                he.initRESTfulMatcher(m.getMatcher(), m.getGroupOffset());
+                return m.getTarget();
             }
         }
         return cm;
@@ -258,8 +284,11 @@ public class CmdMappers {
     public static class StageTimeSpanStat extends TimeSpanStat {
 
         public StageTimeSpanStat(String name) {
-            super(name, 1000, false, null);
+            super(name, cmdSlowThresholdMS, false, null);
             this.initFormat(40, 1);
+            if (cmdLatencyHistogram) {
+                enableHistogram();
+            }
         }
     }
 }
@@ -8,8 +8,11 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.etnaframework.core.logging.Log;
+import org.etnaframework.core.util.RateLimiter;
 import org.etnaframework.core.util.ReflectionTools;
 import org.etnaframework.core.web.HttpEvent;
+import org.etnaframework.core.web.annotation.CmdRateLimit;
+import org.etnaframework.core.web.annotation.CmdRateLimit.LimitBy;
 import org.etnaframework.core.web.cmd.HttpCmd;
 import org.etnaframework.core.web.mapper.CmdMappers.StageTimeSpanStat;
 import org.slf4j.Logger;
@@ -65,6 +68,12 @@ public abstract class CmdMeta {
      */
     private int timeout;
 
+    /** 接口访问频率限制，没有配置{@link CmdRateLimit}时为null */
+    @JSONField(serialize = false, deserialize = false)
+    private RateLimiter rateLimiter;
+
+    private LimitBy limitBy;
+
     /**
      * 执行URL对应的cmdName.methodName并处理结果
      */
@@ -131,6 +140,13 @@ public abstract class CmdMeta {
         return false;
     }
 
+    /**
+     * 返回全部的正则表达式URL匹配规则
+     */
+    List<Pattern> getPatterns() {
+        return patterns;
+    }
+
     /**
      * 返回全部的正则表达式URL匹配规则信息
      */
@@ -177,6 +193,28 @@ public abstract class CmdMeta {
         return timeout;
     }
 
+    /**
+     * 设置接口访问频率限制
+     */
+    void setRateLimit(CmdRateLimit rl) {
+        rateLimiter = new RateLimiter(rl.algorithm(), rl.value(), rl.spanSec() * 1000L, rl.capacity());
+        limitBy = rl.by();
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * 按{@link CmdRateLimit}的配置计数一次，返回是否允许访问
+     */
+    public boolean acquire(HttpEvent he) {
+        if (null == rateLimiter) {
+            return true;
+        }
+        return rateLimiter.acquire(limitBy == LimitBy.ALL ? name : he.getRemoteIP());
+    }
+
     /**
      * 重置计数器
      */
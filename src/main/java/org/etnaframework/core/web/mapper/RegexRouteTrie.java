@@ -0,0 +1,290 @@
+package org.etnaframework.core.web.mapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <pre>
+ * 正则表达式URL映射规则的路由树，用于替代逐个遍历正则规则去匹配URL的做法
+ *
+ * 1、每条正则规则开头的纯文本部分（到第一个正则元字符为止）按/切分成完整的路径段，挂到路由树对应的节点上
+ * 2、每个节点上保存【从根到该节点】所有可能匹配的规则，按注册顺序合并成一个大的正则表达式 (?:(规则1)|(规则2)|...)
+ * 3、查找时按URL的路径段往下走到最深的节点，只需要执行一次合并后的正则即可得出结果，规则数量增加时查找成本基本不变
+ *
+ * 合并后的正则保持了原来的优先顺序（左边的分支优先匹配），和逐个遍历的结果一致
+ * 含有反向引用、命名分组、内嵌标记(?i)等无法安全合并的规则，会保留原样并按顺序单独匹配
+ *
+ * 本类在构建完成后只读，可以被多线程同时使用
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class RegexRouteTrie<T> {
+
+    /** 无法安全合并到一起的正则规则：反向引用、命名分组、内嵌标记等 */
+    private static final Pattern UNSAFE_TO_MERGE = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]|\\(\\?[a-zA-Z-]+[:)]");
+
+    /** 正则表达式的元字符，遇到这些字符说明纯文本前缀部分结束了 */
+    private static final String META_CHARS = "\\[](){}.*+?^$|";
+
+    /** 正则表达式的数量词，遇到它们说明前一个字符不是必须出现的 */
+    private static final String QUANTIFIERS = "*+?{";
+
+    private final Node<T> root = new Node<T>();
+
+    /** 按注册顺序记录所有规则，构建时使用 */
+    private List<Route<T>> routes = new ArrayList<Route<T>>();
+
+    private boolean built = false;
+
+    /**
+     * 按优先级顺序添加一个目标对应的正则规则，先添加的规则优先匹配
+     */
+    public void add(T target, List<Pattern> patterns) {
+        if (built) {
+            throw new IllegalStateException(getClass().getSimpleName() + "已经构建完毕，不允许再添加规则");
+        }
+        for (Pattern p : patterns) {
+            routes.add(new Route<T>(target, p, routes.size()));
+        }
+    }
+
+    /**
+     * 所有的规则添加完毕后，调用本方法生成路由树
+     */
+    public RegexRouteTrie<T> build() {
+        for (Route<T> r : routes) {
+            Node<T> node = root;
+            for (String seg : literalSegments(r.pattern.pattern())) {
+                Node<T> child = node.children.get(seg);
+                if (null == child) {
+                    child = new Node<T>();
+                    node.children.put(seg, child);
+                }
+                node = child;
+            }
+            node.own.add(r);
+        }
+        compile(root, Collections.<Route<T>>emptyList());
+        routes = null;
+        built = true;
+        return this;
+    }
+
+    /**
+     * 从根节点开始，把祖先节点上的规则合并到子节点上，并生成每个节点的匹配器
+     */
+    private void compile(Node<T> node, List<Route<T>> inherited) {
+        List<Route<T>> all = new ArrayList<Route<T>>(inherited.size() + node.own.size());
+        all.addAll(inherited);
+        all.addAll(node.own);
+        Collections.sort(all);
+        node.dispatchers = createDispatchers(all);
+        node.own = null;
+        for (Node<T> child : node.children.values()) {
+            compile(child, all);
+        }
+    }
+
+    /**
+     * 把有序的规则列表中能够合并的连续规则合并为一个正则表达式
+     */
+    private static <T> List<Dispatcher<T>> createDispatchers(List<Route<T>> all) {
+        ArrayList<Dispatcher<T>> list = new ArrayList<Dispatcher<T>>();
+        List<Route<T>> batch = new ArrayList<Route<T>>();
+        for (Route<T> r : all) {
+            if (UNSAFE_TO_MERGE.matcher(r.pattern.pattern()).find()) {
+                if (!batch.isEmpty()) {
+                    list.add(new Dispatcher<T>(batch));
+                    batch = new ArrayList<Route<T>>();
+                }
+                list.add(new Dispatcher<T>(Collections.singletonList(r)));
+            } else {
+                batch.add(r);
+            }
+        }
+        if (!batch.isEmpty()) {
+            list.add(new Dispatcher<T>(batch));
+        }
+        list.trimToSize();
+        return list;
+    }
+
+    /**
+     * 提取正则规则开头的纯文本部分中完整的路径段，例如^/api/user/(\d+)$将返回[api, user]
+     */
+    static List<String> literalSegments(String regex) {
+        if (regex.indexOf('|') >= 0) { // 有多选分支的，开头的纯文本不一定是所有分支共有的，只能挂在根节点上
+            return Collections.emptyList();
+        }
+        int start = regex.startsWith("^") ? 1 : 0;
+        int end = start;
+        while (end < regex.length() && META_CHARS.indexOf(regex.charAt(end)) < 0) {
+            end++;
+        }
+        if (end < regex.length() && QUANTIFIERS.indexOf(regex.charAt(end)) >= 0 && end > start) {
+            end--; // 数量词前面的那个字符不一定会出现，不能算在前缀里面
+        }
+        String literal = regex.substring(start, end);
+        if (literal.isEmpty() || literal.charAt(0) != '/') {
+            return Collections.emptyList();
+        }
+        List<String> segs = new ArrayList<String>();
+        int from = 1;
+        int idx;
+        while ((idx = literal.indexOf('/', from)) >= 0) { // 只有后面跟着/的才是完整的路径段
+            segs.add(literal.substring(from, idx));
+            from = idx + 1;
+        }
+        return segs;
+    }
+
+    /**
+     * 根据URI查找匹配的规则，找不到就返回null
+     */
+    public RouteMatch<T> match(String uri) {
+        Node<T> node = root;
+        int from = 1;
+        int idx;
+        while ((idx = uri.indexOf('/', from)) >= 0 && !node.children.isEmpty()) {
+            Node<T> child = node.children.get(uri.substring(from, idx));
+            if (null == child) {
+                break;
+            }
+            node = child;
+            from = idx + 1;
+        }
+        for (Dispatcher<T> d : node.dispatchers) {
+            RouteMatch<T> m = d.match(uri);
+            if (null != m) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 匹配结果，如果是合并后的正则匹配上的，取分组时需要加上偏移量
+     */
+    public static class RouteMatch<T> {
+
+        private final T target;
+
+        private final Matcher matcher;
+
+        private final int groupOffset;
+
+        RouteMatch(T target, Matcher matcher, int groupOffset) {
+            this.target = target;
+            this.matcher = matcher;
+            this.groupOffset = groupOffset;
+        }
+
+        public T getTarget() {
+            return target;
+        }
+
+        public Matcher getMatcher() {
+            return matcher;
+        }
+
+        /**
+         * 原始规则里面的第1组，在合并后的正则里面的下标为groupOffset+1
+         */
+        public int getGroupOffset() {
+            return groupOffset;
+        }
+    }
+
+    private static class Node<T> {
+
+        final Map<String, Node<T>> children = new LinkedHashMap<String, Node<T>>();
+
+        /** 纯文本前缀刚好落在本节点的规则，构建时使用 */
+        List<Route<T>> own = new ArrayList<Route<T>>();
+
+        List<Dispatcher<T>> dispatchers;
+    }
+
+    private static class Route<T> implements Comparable<Route<T>> {
+
+        final T target;
+
+        final Pattern pattern;
+
+        /** 注册顺序，越小越优先 */
+        final int order;
+
+        Route(T target, Pattern pattern, int order) {
+            this.target = target;
+            this.pattern = pattern;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Route<T> o) {
+            return Integer.compare(order, o.order);
+        }
+    }
+
+    /**
+     * 一组合并在一起的规则，只有一条规则时直接使用原始的正则
+     */
+    private static class Dispatcher<T> {
+
+        final Pattern pattern;
+
+        final List<T> targets;
+
+        /** 每条规则外层包裹的分组在合并后的正则里面的下标 */
+        final int[] wrapperGroups;
+
+        Dispatcher(List<Route<T>> routes) {
+            this.targets = new ArrayList<T>(routes.size());
+            if (routes.size() == 1) {
+                Route<T> r = routes.get(0);
+                this.pattern = r.pattern;
+                this.targets.add(r.target);
+                this.wrapperGroups = null;
+                return;
+            }
+            this.wrapperGroups = new int[routes.size()];
+            StringBuilder sb = new StringBuilder("(?:");
+            int group = 1;
+            for (int i = 0; i < routes.size(); i++) {
+                Route<T> r = routes.get(i);
+                if (i > 0) {
+                    sb.append('|');
+                }
+                sb.append('(').append(r.pattern.pattern()).append(')');
+                wrapperGroups[i] = group;
+                group += 1 + r.pattern.matcher("").groupCount();
+                targets.add(r.target);
+            }
+            sb.append(')');
+            this.pattern = Pattern.compile(sb.toString());
+        }
+
+        RouteMatch<T> match(String uri) {
+            Matcher m = pattern.matcher(uri);
+            if (!m.matches()) {
+                return null;
+            }
+            if (null == wrapperGroups) {
+                return new RouteMatch<T>(targets.get(0), m, 0);
+            }
+            for (int i = 0; i < wrapperGroups.length; i++) {
+                if (m.start(wrapperGroups[i]) >= 0) {
+                    return new RouteMatch<T>(targets.get(i), m, wrapperGroups[i]);
+                }
+            }
+            return null;
+        }
+    }
+}
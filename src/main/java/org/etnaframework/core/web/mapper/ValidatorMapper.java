@@ -1,39 +1,349 @@
 package org.etnaframework.core.web.mapper;
 
 import java.lang.reflect.Field;
-import java.util.ArrayList;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.etnaframework.core.logging.Log;
 import org.etnaframework.core.util.BeanTools;
-import org.etnaframework.core.util.CollectionTools;
 import org.etnaframework.core.util.DatetimeUtils;
-import org.etnaframework.core.util.EmojiCharacterUtils;
-import org.etnaframework.core.util.JsonObjectUtils;
+import org.etnaframework.core.util.DatetimeUtils.Datetime;
 import org.etnaframework.core.util.ReflectionTools;
-import org.etnaframework.core.util.ReflectionTools.BeanFieldValueGetter;
 import org.etnaframework.core.util.ReflectionTools.BeanFieldValueSetter;
 import org.etnaframework.core.util.StringTools;
-import org.etnaframework.core.web.HttpEvent;
 import org.etnaframework.core.web.annotation.CmdReqParam;
+import org.etnaframework.core.web.exception.ParamInvalidValueException;
 import org.etnaframework.jdbc.exception.BeanProcessException;
+import org.slf4j.Logger;
+import org.springframework.util.ReflectionUtils;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
 
 /**
- * 根据bean的字段生成JavaBean包装辅助类{@link ValidatorMapper}
+ * <pre>
+ * 根据bean的字段生成JavaBean包装辅助类{@link ValidatorMapper}，由{@link ValidatorMappers}按bean的class缓存，每个请求直接使用
+ *
+ * 1、字段列表、参数名（含别名）、{@link CmdReqParam}注解、赋值工具类都在生成时准备好，每个请求不再需要遍历字段和读取注解
+ * 2、使用javassist为每个bean类生成专门的子类，按字段类型直接调用Integer.parseInt等方法转换，并直接给public字段赋值或调用public的setter方法
+ * 3、无法直接访问的字段（如private字段又没有public的setter方法）或日期等类型，仍然通过反射赋值，校验失败时抛出的异常和提示信息与反射方式完全一致
+ *
+ * 本类需要是public的，供生成的子类继承，业务代码不需要直接使用
+ * </pre>
  *
  * @author dragon
  * @since 2015.07.14 14:11
  */
-abstract class ValidatorMapper<T> {
+public abstract class ValidatorMapper<T> {
+
+    protected static final Logger log = Log.getLogger();
+
+    /** 生成的类名序号 */
+    private static final AtomicInteger seq = new AtomicInteger();
 
     /** 目标bean对应的class */
     protected Class<T> clazz;
 
+    /** 每个字段对应的请求参数名，有别名时为别名 */
+    protected String[] keys;
 
-}
+    /** 每个字段上的注解，没有注解时为null */
+    protected CmdReqParam[] params;
+
+    /** 以下为注解中的各项配置，和字段一一对应，每个请求直接读取数组，不需要再通过注解的代理对象取值 */
+    protected boolean[] requireds;
+
+    protected String[] defaultValues;
+
+    protected String[] errmsgs;
+
+    protected int[] minLengths;
+
+    protected int[] maxLengths;
+
+    /** 每个字段对应的赋值工具类 */
+    protected BeanFieldValueSetter[] setters;
+
+    /** 每个字段是否需要做长度/范围校验，字符串类型又没有设置长度限制的不需要 */
+    protected boolean[] checks;
+
+    /**
+     * 把请求参数赋值到bean的各字段上
+     *
+     * @param isCheck 是否需要按{@link CmdReqParam}进行校验
+     */
+    public abstract void bind(Object bean, Map<String, Object> map, boolean isCheck);
+
+    /**
+     * 有注解的字段赋值前的处理：必填校验、使用默认值、长度/范围校验，返回null表示不需要赋值
+     */
+    protected Object prepare(int k, Object value, boolean isCheck) {
+        boolean isEmpty = (value == null || StringTools.isEmpty(value.toString())) && requireds[k] && isCheck;
+        if (isEmpty) {
+            throw new ParamInvalidValueException(keys[k], errmsgs[k]);
+        }
+        if (value == null && StringTools.isNotEmpty(defaultValues[k])) {
+            value = defaultValues[k];
+        }
+        if (value != null && isCheck && checks[k]) {
+            checkReqParam(keys[k], setters[k], errmsgs[k], value, minLengths[k], maxLengths[k]);
+        }
+        return value;
+    }
+
+    /**
+     * 通过反射的方式为第k个字段赋值
+     */
+    protected void bindField(int k, Object bean, Map<String, Object> map, boolean isCheck) {
+        Object value = map.get(keys[k]);
+        if (null != params[k]) {
+            value = prepare(k, value, isCheck);
+        }
+        if (value != null) {
+            setValue(bean, setters[k], value);
+        }
+    }
 
+    private static void checkReqParam(String key, BeanFieldValueSetter setter, String errmsg, Object value, int minlength, int maxLength) {
+        double length;
+
+        if (isNumber(setter.getType())) {
+            length = Double.valueOf(value.toString());
+        } else if (BeanTools.isDateWrapperType(setter.getType())) {
+            Datetime datetime = DatetimeUtils.parse(value.toString());
+
+            length = datetime.toString().length();
+        } else {
+            String valueStr = value.toString();
+            length = valueStr.length();
+        }
+        if (length < minlength || length > maxLength) {
+            throw new ParamInvalidValueException(key, errmsg);
+        }
+    }
+
+    private static void setValue(Object bean, BeanFieldValueSetter setter, Object value) {
+        if (StringTools.isEmpty(value.toString())) {
+            return;
+        }
+        if (BeanTools.isBoolean(setter.getType())) {
+            String valueStr = value.toString();
+            if (valueStr.equalsIgnoreCase("on") || valueStr.equalsIgnoreCase("1")) {
+                setter.setValue(bean, true);
+            } else {
+                setter.setValue(bean, false);
+            }
+        } else if (BeanTools.isInteger(setter.getType())) {
+            setter.setValue(bean, Integer.parseInt(value.toString()));
+        } else if (BeanTools.isLong(setter.getType())) {
+            setter.setValue(bean, Long.valueOf(value.toString()));
+        } else if (BeanTools.isByte(setter.getType())) {
+            setter.setValue(bean, Byte.valueOf(value.toString()));
+        } else if (BeanTools.isDouble(setter.getType())) {
+            setter.setValue(bean, Double.valueOf(value.toString()));
+        } else if (BeanTools.isFloat(setter.getType())) {
+            setter.setValue(bean, Float.valueOf(value.toString()));
+        } else if (BeanTools.isShort(setter.getType())) {
+            setter.setValue(bean, Short.valueOf(value.toString()));
+        } else if (BeanTools.isDateWrapperType(setter.getType())) {
+            setter.setValue(bean, DatetimeUtils.parse(value.toString()));
+        } else {
+            setter.setValue(bean, value.toString());
+        }
+    }
+
+    /**
+     * 校验时按数值大小而不是字符串长度判断的类型（注意byte是按字符串长度判断的）
+     */
+    private static boolean isNumber(Class<?> type) {
+        return BeanTools.isInteger(type) || BeanTools.isLong(type) || BeanTools.isDouble(type) || BeanTools.isFloat(type) || BeanTools.isShort(type);
+    }
+
+    /**
+     * 生成bean对应的包装器，空类（即没有任何字段的类）是不允许的，会抛出异常
+     */
+    static <T> ValidatorMapper<T> create(Class<T> clazz) {
+        Collection<Field> fields = ReflectionTools.getAllFieldsInSourceCodeOrder(clazz, null);
+        if (fields.isEmpty()) {
+            throw new BeanProcessException("类" + clazz.getName() + "不能是空的，必须至少要有一个field");
+        }
+        int n = fields.size();
+        String[] keys = new String[n];
+        CmdReqParam[] params = new CmdReqParam[n];
+        BeanFieldValueSetter[] setters = new BeanFieldValueSetter[n];
+        boolean[] checks = new boolean[n];
+        Member[] targets = new Member[n];
+        int k = 0;
+        for (Field f : fields) {
+            CmdReqParam p = f.getAnnotation(CmdReqParam.class);
+            keys[k] = null != p && StringTools.isNotEmpty(p.alias()) ? p.alias() : f.getName();
+            params[k] = p;
+            setters[k] = BeanFieldValueSetter.create(clazz, f.getName(), f.getType());
+            checks[k] = null != p && (isNumber(f.getType()) || BeanTools.isDateWrapperType(f.getType()) || p.minLength() > 0 || p.maxLength() < Integer.MAX_VALUE);
+            Method m = ReflectionUtils.findMethod(clazz, "set" + StringTools.headLetterToUpperCase(f.getName()), f.getType());
+            targets[k] = null != m ? m : f;
+            k++;
+        }
+        ValidatorMapper<T> mapper = null;
+        if (Modifier.isPublic(clazz.getModifiers())) {
+            try {
+                mapper = generate(clazz, keys, params, targets);
+            } catch (Throwable ex) { // 无法使用javassist方式生成类时（例如bean的classloader看不到本类），这个bean使用反射方式来实现，不影响其他bean
+                log.error("javassist cannot create validator mapper for {}, use reflection instead", clazz.getName(), ex);
+            }
+        }
+        if (null == mapper) {
+            mapper = new ReflectValidatorMapper<T>();
+        }
+        mapper.clazz = clazz;
+        mapper.keys = keys;
+        mapper.params = params;
+        mapper.setters = setters;
+        mapper.checks = checks;
+        mapper.requireds = new boolean[n];
+        mapper.defaultValues = new String[n];
+        mapper.errmsgs = new String[n];
+        mapper.minLengths = new int[n];
+        mapper.maxLengths = new int[n];
+        for (int i = 0; i < n; i++) {
+            CmdReqParam p = params[i];
+            if (null != p) {
+                mapper.requireds[i] = p.required();
+                mapper.defaultValues[i] = p.defaultValue();
+                mapper.errmsgs[i] = p.errmsg();
+                mapper.minLengths[i] = p.minLength();
+                mapper.maxLengths[i] = p.maxLength();
+            }
+        }
+        return mapper;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ValidatorMapper<T> generate(Class<T> clazz, String[] keys, CmdReqParam[] params, Member[] targets) throws Exception {
+        String beanName = clazz.getName();
+        StringBuilder src = new StringBuilder();
+        src.append("public void bind(Object bean, java.util.Map map, boolean isCheck) {");
+        src.append(beanName).append(" b = (").append(beanName).append(") bean;");
+        for (int k = 0; k < keys.length; k++) {
+            String code = convertAndSet(clazz, targets[k]);
+            if (null == code) {
+                src.append("bindField(").append(k).append(", b, map, isCheck);");
+                continue;
+            }
+            src.append("{Object v = map.get(keys[").append(k).append("]);");
+            if (null != params[k]) {
+                src.append("v = prepare(").append(k).append(", v, isCheck);");
+            }
+            src.append("if (v != null) {String s = v.toString(); if (s.length() > 0) {").append(code).append("}}}");
+        }
+        src.append("}");
+
+        ClassPool pool = ReflectionTools.getCtClass(ValidatorMapper.class).getClassPool();
+        ReflectionTools.getCtClass(clazz); // 确保bean的class能被javassist找到
+        CtClass mc = pool.makeClass(beanName + "$$" + ValidatorMapper.class.getSimpleName() + seq.incrementAndGet());
+        try {
+            mc.setSuperclass(pool.get(ValidatorMapper.class.getName()));
+            mc.addMethod(CtNewMethod.make(src.toString(), mc));
+            byte[] bytecode = mc.toBytecode();
+            // 使用bean所在的classloader作为父加载器，这样生成的类可以访问bean以及本类
+            ClassLoader parent = clazz.getClassLoader();
+            if (null == parent || Class.forName(ValidatorMapper.class.getName(), false, parent) != ValidatorMapper.class) {
+                parent = ValidatorMapper.class.getClassLoader();
+            }
+            Class<?> c = new GeneratedClassLoader(parent).define(mc.getName(), bytecode);
+            return (ValidatorMapper<T>) c.getDeclaredConstructor()
+                                         .newInstance();
+        } finally {
+            mc.detach();
+        }
+    }
+
+    /**
+     * 生成第k个字段按类型转换并直接赋值的代码（参数值的字符串为s），如果不能直接生成就返回null
+     */
+    private static String convertAndSet(Class<?> clazz, Member target) {
+        int mod = target.getModifiers();
+        if (!Modifier.isPublic(mod) || Modifier.isStatic(mod) || !Modifier.isPublic(target.getDeclaringClass().getModifiers())) {
+            return null;
+        }
+        Class<?> type;
+        if (target instanceof Field) {
+            if (Modifier.isFinal(mod) || !isVisible(clazz, (Field) target)) {
+                return null;
+            }
+            type = ((Field) target).getType();
+        } else {
+            type = ((Method) target).getParameterTypes()[0];
+        }
+        String value;
+        if (String.class.equals(type)) {
+            value = "s";
+        } else if (boolean.class.equals(type)) {
+            value = "(s.equalsIgnoreCase(\"on\") || s.equalsIgnoreCase(\"1\"))";
+        } else if (Boolean.class.equals(type)) {
+            value = "Boolean.valueOf(s.equalsIgnoreCase(\"on\") || s.equalsIgnoreCase(\"1\"))";
+        } else if (int.class.equals(type)) {
+            value = "Integer.parseInt(s)";
+        } else if (long.class.equals(type)) {
+            value = "Long.parseLong(s)";
+        } else if (byte.class.equals(type)) {
+            value = "Byte.parseByte(s)";
+        } else if (short.class.equals(type)) {
+            value = "Short.parseShort(s)";
+        } else if (double.class.equals(type)) {
+            value = "Double.parseDouble(s)";
+        } else if (float.class.equals(type)) {
+            value = "Float.parseFloat(s)";
+        } else if (Integer.class.equals(type) || Long.class.equals(type) || Byte.class.equals(type) || Short.class.equals(type) || Double.class.equals(type) || Float.class
+            .equals(type)) {
+            value = type.getName() + ".valueOf(s)";
+        } else {
+            return null;
+        }
+        if (target instanceof Field) {
+            return "b." + target.getName() + " = " + value + ";";
+        }
+        return "b." + target.getName() + "(" + value + ");";
+    }
+
+    /**
+     * 子类和父类有同名字段时，b.name访问的是子类的字段，需要确认就是要赋值的那个字段
+     */
+    private static boolean isVisible(Class<?> clazz, Field f) {
+        try {
+            return f.equals(clazz.getField(f.getName()));
+        } catch (NoSuchFieldException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 用于加载生成的类，不使用javassist默认的toClass，因为它需要通过反射调用ClassLoader.defineClass，在新版本的JDK上会被拒绝
+     */
+    private static class GeneratedClassLoader extends ClassLoader {
+
+        GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+
+    /**
+     * 无法生成代码时使用的包装器，逐个字段通过反射赋值
+     */
+    static class ReflectValidatorMapper<T> extends ValidatorMapper<T> {
+
+        @Override
+        public void bind(Object bean, Map<String, Object> map, boolean isCheck) {
+            for (int k = 0; k < keys.length; k++) {
+                bindField(k, bean, map, isCheck);
+            }
+        }
+    }
+}
@@ -23,6 +23,9 @@ import org.etnaframework.jdbc.exception.BeanProcessException;
  */
 class BeanSqlMeta {
 
+    /** 在{@link #getInsertValues(Object)}中标记不参与生成sql的字段 */
+    private static final Object SKIP = new Object();
+
     /** 目标bean对应的class */
     protected Class<?> clazz;
 
@@ -194,6 +197,68 @@ class BeanSqlMeta {
         }
     }
 
+    /**
+     * 提取bean中参与生成insert语句的字段值，不参与生成的字段（值为null且没有设置writeNullToDb）会被标记出来
+     */
+    Object[] getInsertValues(Object bean) {
+        Object[] values = new Object[getters.size()];
+        for (int i = 0; i < values.length; i++) {
+            Getter g = getters.get(i);
+            Object value = g.get(bean);
+            values[i] = null != value || g.writeNullToDb ? value : SKIP;
+        }
+        return values;
+    }
+
+    /**
+     * 判断两行由{@link #getInsertValues(Object)}提取的数据参与生成sql的字段是否一致，一致的才能合并到同一条insert语句里
+     */
+    static boolean isSameInsertFields(Object[] a, Object[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] == SKIP) != (b[i] == SKIP)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 将多行由{@link #getInsertValues(Object)}提取的数据按照(XX, YY) values (aa, bb), (cc, dd)的方式添加到sql中去，各行参与生成的字段必须一致
+     */
+    void addInsertRowsSql(String prefix, String suffix, SqlBuilder sql, List<Object[]> rows) {
+        Object[] first = rows.get(0);
+        StringBuilder mid = new StringBuilder();
+        for (int i = 0; i < first.length; i++) {
+            if (first[i] != SKIP) {
+                mid.append(prefix).append(getters.get(i).name).append(suffix).append(", ");
+            }
+        }
+        if (mid.length() == 0) {
+            return;
+        }
+        mid.setLength(mid.length() - 2);
+        StringBuilder tail = new StringBuilder();
+        for (Object[] row : rows) {
+            tail.append("(");
+            for (int i = 0; i < row.length; i++) {
+                if (row[i] == SKIP) {
+                    continue;
+                }
+                if (getters.get(i).preparedStatementArg) {
+                    tail.append("?, ");
+                    sql.addArg(row[i]);
+                } else {
+                    tail.append(StringTools.mergeSql("?, ", row[i]));
+                }
+            }
+            tail.setLength(tail.length() - 2);
+            tail.append("), ");
+        }
+        tail.setLength(tail.length() - 2);
+        sql.add("(" + mid + ")");
+        sql.add("values").add(tail);
+    }
+
     /**
      * 从对象构造sql时预先提取的信息
      */
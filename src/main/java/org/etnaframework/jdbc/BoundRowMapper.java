@@ -0,0 +1,287 @@
+package org.etnaframework.jdbc;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.etnaframework.core.logging.Log;
+import org.etnaframework.core.util.DatetimeUtils.Datetime;
+import org.etnaframework.core.util.ReflectionTools;
+import org.etnaframework.core.util.ReflectionTools.BeanFieldValueSetter;
+import org.slf4j.Logger;
+import org.springframework.beans.BeanUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+
+/**
+ * <pre>
+ * 绑定到某一种结果集列顺序的bean包装器，由{@link JdbcRowMapper.SimpleBeanRowMapper}在每次查询开始时按结果集的列取得，同一次查询的每一行都直接使用
+ *
+ * 1、列和bean字段的对应关系在生成时就确定了，每一行不再需要读取ResultSetMetaData和查找列名
+ * 2、使用javassist为每种(bean类, 列顺序)生成专门的子类，直接调用rs.getLong(i)/rs.getString(i)等方法取值，并直接给public字段赋值或调用public的setter方法
+ * 3、无法直接访问的字段（如private字段又没有public的setter方法）或不常见的字段类型，仍然通过反射赋值
+ *
+ * 本类需要是public的，供生成的子类继承，业务代码不需要直接使用
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public abstract class BoundRowMapper<T> {
+
+    protected static final Logger log = Log.getLogger();
+
+    /**
+     * 无法使用javassist方式生成类的bean（例如bean的classloader看不到本类），这些bean使用反射方式来实现，不影响其他bean，也不再重复尝试生成
+     */
+    private static final Set<Class<?>> reflectClasses = ConcurrentHashMap.newKeySet();
+
+    /** 生成的类名序号，防止同一个bean的不同列顺序生成的类重名 */
+    private static final AtomicInteger seq = new AtomicInteger();
+
+    /** 可以生成直接取值代码的字段类型及对应的ResultSet取值方法 */
+    private static final Map<Class<?>, String> getters = new HashMap<>();
+
+    static {
+        getters.put(String.class, "getString");
+        getters.put(boolean.class, "getBoolean");
+        getters.put(Boolean.class, "getBoolean");
+        getters.put(byte.class, "getByte");
+        getters.put(Byte.class, "getByte");
+        getters.put(short.class, "getShort");
+        getters.put(Short.class, "getShort");
+        getters.put(int.class, "getInt");
+        getters.put(Integer.class, "getInt");
+        getters.put(long.class, "getLong");
+        getters.put(Long.class, "getLong");
+        getters.put(float.class, "getFloat");
+        getters.put(Float.class, "getFloat");
+        getters.put(double.class, "getDouble");
+        getters.put(Double.class, "getDouble");
+        getters.put(BigDecimal.class, "getBigDecimal");
+        getters.put(byte[].class, "getBytes");
+        getters.put(java.sql.Date.class, "getDate");
+        getters.put(Time.class, "getTime");
+        getters.put(Timestamp.class, "getTimestamp");
+        getters.put(Date.class, "getTimestamp");
+        getters.put(Datetime.class, "getTimestamp");
+    }
+
+    /** 目标bean对应的class */
+    protected Class<T> clazz;
+
+    /** 每个需要赋值的列在结果集中的位置，从1开始 */
+    protected int[] indexes;
+
+    /** 每个需要赋值的列对应的赋值工具类，和indexes一一对应 */
+    protected BeanFieldValueSetter[] setters;
+
+    /**
+     * 从结果集当前行构造bean
+     */
+    public abstract T mapRow(ResultSet rs) throws SQLException;
+
+    /**
+     * 实例化目标bean
+     */
+    protected T newBean() {
+        return BeanUtils.instantiateClass(clazz);
+    }
+
+    /**
+     * 通过反射的方式为第k个列赋值，取值出现问题时不处理，保持字段的默认值
+     */
+    protected void setValue(int k, Object bean, ResultSet rs) {
+        BeanFieldValueSetter setter = setters[k];
+        Object value = null;
+        try {
+            value = JdbcUtils.getResultSetValue(rs, indexes[k], setter.getType());
+        } catch (SQLException ex) { // 取值出现问题时，不处理，赋给null
+        }
+        if (null != value) {
+            if (Datetime.class.equals(setter.getType())) { // 对新的Datetime封装类型的支持
+                value = new Datetime((Date) value);
+            }
+            setter.setValue(bean, value);
+        }
+    }
+
+    /**
+     * 生成绑定到指定列顺序的包装器
+     *
+     * @param columns 结果集的各列名，不需要赋值的列为null
+     * @param setters 列名对应的赋值工具类
+     * @param members 列名对应的赋值方式，为setter方法或字段
+     */
+    static <T> BoundRowMapper<T> create(Class<T> clazz, String[] columns, Map<String, BeanFieldValueSetter> setters, Map<String, Member> members) {
+        int n = 0;
+        for (String c : columns) {
+            if (null != c) {
+                n++;
+            }
+        }
+        int[] indexes = new int[n];
+        BeanFieldValueSetter[] bound = new BeanFieldValueSetter[n];
+        Member[] targets = new Member[n];
+        for (int i = 0, k = 0; i < columns.length; i++) {
+            if (null != columns[i]) {
+                indexes[k] = i + 1;
+                bound[k] = setters.get(columns[i]);
+                targets[k] = members.get(columns[i]);
+                k++;
+            }
+        }
+        BoundRowMapper<T> mapper = null;
+        if (Modifier.isPublic(clazz.getModifiers()) && !reflectClasses.contains(clazz)) {
+            try {
+                mapper = generate(clazz, indexes, bound, targets);
+            } catch (Throwable ex) {
+                if (reflectClasses.add(clazz)) {
+                    log.error("javassist cannot create row mapper for {}, use reflection instead", clazz.getName(), ex);
+                }
+            }
+        }
+        if (null == mapper) {
+            mapper = new ReflectRowMapper<T>();
+        }
+        mapper.clazz = clazz;
+        mapper.indexes = indexes;
+        mapper.setters = bound;
+        return mapper;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> BoundRowMapper<T> generate(Class<T> clazz, int[] indexes, BeanFieldValueSetter[] setters, Member[] targets) throws Exception {
+        String beanName = clazz.getName();
+        StringBuilder src = new StringBuilder();
+        src.append("public Object mapRow(java.sql.ResultSet rs) throws java.sql.SQLException {");
+        boolean hasPublicConstructor = false;
+        try {
+            hasPublicConstructor = Modifier.isPublic(clazz.getConstructor().getModifiers()) && !Modifier.isAbstract(clazz.getModifiers());
+        } catch (NoSuchMethodException ignore) {
+        }
+        if (hasPublicConstructor) {
+            src.append(beanName).append(" b = new ").append(beanName).append("();");
+        } else {
+            src.append(beanName).append(" b = (").append(beanName).append(") newBean();");
+        }
+        for (int k = 0; k < indexes.length; k++) {
+            String code = null == setters[k] ? null : readAndSet(k, indexes[k], setters[k].getType(), targets[k]);
+            if (null != code) {
+                src.append(code);
+            } else if (null != setters[k]) {
+                src.append("setValue(").append(k).append(", b, rs);");
+            }
+        }
+        src.append("return b;}");
+
+        ClassPool pool = ReflectionTools.getCtClass(BoundRowMapper.class).getClassPool();
+        ReflectionTools.getCtClass(clazz); // 确保bean的class能被javassist找到
+        CtClass mc = pool.makeClass(beanName + "$$" + BoundRowMapper.class.getSimpleName() + seq.incrementAndGet());
+        try {
+            mc.setSuperclass(pool.get(BoundRowMapper.class.getName()));
+            mc.addMethod(CtNewMethod.make(src.toString(), mc));
+            byte[] bytecode = mc.toBytecode();
+            // 使用bean所在的classloader作为父加载器，这样生成的类可以访问bean以及本类
+            ClassLoader parent = clazz.getClassLoader();
+            if (null == parent || Class.forName(BoundRowMapper.class.getName(), false, parent) != BoundRowMapper.class) {
+                parent = BoundRowMapper.class.getClassLoader();
+            }
+            Class<?> c = new GeneratedClassLoader(parent).define(mc.getName(), bytecode);
+            return (BoundRowMapper<T>) c.getDeclaredConstructor()
+                                        .newInstance();
+        } finally {
+            mc.detach();
+        }
+    }
+
+    /**
+     * 生成第k列直接取值并赋值的代码，如果不能直接生成就返回null
+     */
+    private static String readAndSet(int k, int index, Class<?> type, Member target) {
+        String getter = getters.get(type);
+        if (null == getter || null == target || !Modifier.isPublic(target.getModifiers()) || !Modifier.isPublic(target.getDeclaringClass().getModifiers())) {
+            return null;
+        }
+        String v = "v" + k;
+        Class<?> local;
+        String value;
+        String notNull;
+        if (type.isPrimitive() || isPrimitiveWrapper(type)) {
+            local = primitiveOf(type);
+            value = type.isPrimitive() ? v : type.getName() + ".valueOf(" + v + ")";
+            notNull = "!rs.wasNull()";
+        } else {
+            local = Datetime.class.equals(type) || Date.class.equals(type) ? Timestamp.class : type;
+            value = Datetime.class.equals(type) ? "new " + Datetime.class.getName() + "(" + v + ")" : v;
+            notNull = v + " != null";
+        }
+        String set;
+        if (target instanceof Field) {
+            set = "b." + target.getName() + " = " + value + ";";
+        } else {
+            set = "b." + target.getName() + "(" + value + ");";
+        }
+        // 取值出现问题时，不处理，保持字段的默认值
+        return "try {" + local.getCanonicalName() + " " + v + " = rs." + getter + "(" + index + "); if (" + notNull + ") {" + set + "}} catch (java.sql.SQLException e) {}";
+    }
+
+    private static boolean isPrimitiveWrapper(Class<?> type) {
+        return Boolean.class.equals(type) || Byte.class.equals(type) || Short.class.equals(type) || Integer.class.equals(type) || Long.class.equals(type) || Float.class
+            .equals(type) || Double.class.equals(type);
+    }
+
+    private static Class<?> primitiveOf(Class<?> type) {
+        if (type.isPrimitive()) {
+            return type;
+        }
+        try {
+            return (Class<?>) type.getField("TYPE").get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(type.getName(), e);
+        }
+    }
+
+    /**
+     * 用于加载生成的类，不使用javassist默认的toClass，因为它需要通过反射调用ClassLoader.defineClass，在新版本的JDK上会被拒绝
+     */
+    private static class GeneratedClassLoader extends ClassLoader {
+
+        GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+
+    /**
+     * 无法生成代码时使用的包装器，逐个列通过反射赋值
+     */
+    static class ReflectRowMapper<T> extends BoundRowMapper<T> {
+
+        @Override
+        public T mapRow(ResultSet rs) throws SQLException {
+            T result = newBean();
+            for (int k = 0; k < indexes.length; k++) {
+                if (null != setters[k]) {
+                    setValue(k, result, rs);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package org.etnaframework.jdbc;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.sql.ResultSet;
@@ -18,7 +20,6 @@ import org.etnaframework.core.util.ReflectionTools.BeanFieldValueSetter;
 import org.etnaframework.core.util.StringTools;
 import org.etnaframework.jdbc.annotation.DbField;
 import org.etnaframework.jdbc.exception.BeanProcessException;
-import org.springframework.beans.BeanUtils;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.util.ReflectionUtils;
@@ -42,6 +43,9 @@ abstract class JdbcRowMapper<T> implements RowMapper<T> {
     /** 从结果集构造对象时需要的字段（表字段名->类字段） */
     protected Map<String, BeanFieldValueSetter> setters;
 
+    /** 表字段名对应的赋值方式，为setter方法或字段，用于生成{@link BoundRowMapper} */
+    protected Map<String, Member> members;
+
     private JdbcRowMapper() {
     }
 
@@ -59,6 +63,7 @@ abstract class JdbcRowMapper<T> implements RowMapper<T> {
             throw new BeanProcessException("类" + clazz.getName() + "不能是空的，必须至少要有一个field");
         }
         Map<String, BeanFieldValueSetter> setters = new HashMap<>(fields.size());
+        Map<String, Member> members = new HashMap<>(fields.size());
         for (Field field : fields) {
             if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
                 continue; // 不考虑static的或final的
@@ -84,6 +89,7 @@ abstract class JdbcRowMapper<T> implements RowMapper<T> {
             }
 
             BeanFieldValueSetter setter;
+            Method m = ReflectionUtils.findMethod(clazz, "set" + StringTools.headLetterToUpperCase(field.getName()), fieldClass);
             if (!fieldClass.equals(field.getType())) {
                 // 如果使用了自定义setter,字段类型跟数据库储存类型不一致，在setter里做预处理的,直接获取setter注入
                 setter = BeanFieldValueSetter.createBySetter(clazz, field.getName(), fieldClass);
@@ -91,6 +97,7 @@ abstract class JdbcRowMapper<T> implements RowMapper<T> {
                 setter = BeanFieldValueSetter.create(clazz, field.getName(), field.getType());
             }
             setters.put(name, setter);
+            members.put(name, null == m && fieldClass.equals(field.getType()) ? field : m);
         }
 
         // 把所有setter方法当字段注入
@@ -115,9 +122,10 @@ abstract class JdbcRowMapper<T> implements RowMapper<T> {
                 }
             };
             setters.put(name, setter);
+            members.put(name, method);
         }
 
-        return new SimpleBeanRowMapper<T>(clazz, setters);
+        return new SimpleBeanRowMapper<T>(clazz, setters, members);
     }
 
     /**
@@ -146,38 +154,62 @@ abstract class JdbcRowMapper<T> implements RowMapper<T> {
     }
 
     /**
+     * <pre>
      * 一个简单的从结果集包装javaBean的包装器类
+     *
+     * 每次查询开始时根据结果集的列顺序取得对应的{@link BoundRowMapper}（按列顺序缓存在{@link JdbcRowMappers}中），之后每一行都直接使用
+     * 当前线程正在处理的结果集和对应的包装器记录在ThreadLocal中，通过判断是否为同一个ResultSet对象来识别是否为同一次查询，
+     * 结果集只保留弱引用，查询结束后不会因为ThreadLocal而让结果集（以及它引用的statement、连接和行缓冲）一直无法回收
+     * </pre>
      */
     static class SimpleBeanRowMapper<T> extends JdbcRowMapper<T> {
 
-        public SimpleBeanRowMapper(Class<T> clazz, Map<String, BeanFieldValueSetter> setters) {
+        /** 当前线程最近一次查询的结果集以及对应的包装器 */
+        private static final ThreadLocal<Bound> current = ThreadLocal.withInitial(Bound::new);
+
+        public SimpleBeanRowMapper(Class<T> clazz, Map<String, BeanFieldValueSetter> setters, Map<String, Member> members) {
             this.clazz = clazz;
             this.setters = setters;
+            this.members = members;
         }
 
         @Override
+        @SuppressWarnings("unchecked")
         public T mapRow(ResultSet rs, int rowNum) throws SQLException {
-            T result = BeanUtils.instantiate(clazz);
-            ResultSetMetaData rsmd = rs.getMetaData();
+            Bound b = current.get();
+            if (rowNum == 0 || b.rs.get() != rs || b.owner != this) {
+                b.mapper = bind(rs.getMetaData());
+                b.rs = new WeakReference<>(rs);
+                b.owner = this;
+            }
+            return (T) b.mapper.mapRow(rs);
+        }
+
+        /**
+         * 根据结果集的列顺序取得对应的包装器
+         */
+        BoundRowMapper<T> bind(ResultSetMetaData rsmd) throws SQLException {
             int columnCount = rsmd.getColumnCount();
+            String[] columns = new String[columnCount];
+            StringBuilder signature = new StringBuilder(clazz.getName());
             for (int i = 1; i <= columnCount; i++) {
                 String columnName = JdbcUtils.lookupColumnName(rsmd, i);
-                BeanFieldValueSetter setter = setters.get(columnName);
-                if (null != setter) { // 由于是从结果集反推到JavaBean的，为了提高性能，建议如果不是完全表对应的话就没有必要用select *来取结果
-                    Object value = null;
-                    try {
-                        value = JdbcUtils.getResultSetValue(rs, i, setter.getType());
-                    } catch (SQLException ex) { // 取值出现问题时，不处理，赋给null
-                    }
-                    if (null != value) {
-                        if (Datetime.class.equals(setter.getType())) { // 对新的Datetime封装类型的支持
-                            value = new Datetime((Date) value);
-                        }
-                        setter.setValue(result, value);
-                    }
+                signature.append(',').append(columnName);
+                // 由于是从结果集反推到JavaBean的，为了提高性能，建议如果不是完全表对应的话就没有必要用select *来取结果
+                if (null != setters.get(columnName)) {
+                    columns[i - 1] = columnName;
                 }
             }
-            return result;
+            return JdbcRowMappers.getBoundMapper(signature.toString(), () -> BoundRowMapper.create(clazz, columns, setters, members));
+        }
+
+        private static class Bound {
+
+            WeakReference<ResultSet> rs = new WeakReference<>(null);
+
+            SimpleBeanRowMapper<?> owner;
+
+            BoundRowMapper<?> mapper;
         }
     }
 
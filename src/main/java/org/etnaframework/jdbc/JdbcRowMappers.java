@@ -2,10 +2,11 @@ package org.etnaframework.jdbc;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import org.springframework.jdbc.core.RowMapper;
 
 /**
- * 保存class与{@link JdbcRowMapper}的对应关系
+ * 保存class与{@link JdbcRowMapper}的对应关系，以及按结果集列顺序生成的{@link BoundRowMapper}
  *
  * @author BlackCat
  * @since 2013-3-6
@@ -14,6 +15,9 @@ public class JdbcRowMappers {
 
     private static Map<Class<?>, RowMapper<?>> map = new ConcurrentHashMap<Class<?>, RowMapper<?>>();
 
+    /** 按bean类和结果集的列顺序缓存的包装器，key为bean类名加上各列名 */
+    private static Map<String, BoundRowMapper<?>> boundMap = new ConcurrentHashMap<String, BoundRowMapper<?>>();
+
     private JdbcRowMappers() {
     }
 
@@ -30,4 +34,18 @@ public class JdbcRowMappers {
         }
         return processor;
     }
+
+    /**
+     * 获取绑定到指定列顺序的包装器，如果还没有就生成
+     *
+     * @param signature bean类名加上结果集的各列名
+     */
+    @SuppressWarnings("unchecked")
+    static <T> BoundRowMapper<T> getBoundMapper(String signature, Supplier<BoundRowMapper<T>> creator) {
+        BoundRowMapper<T> mapper = (BoundRowMapper<T>) boundMap.get(signature);
+        if (null == mapper) {
+            mapper = (BoundRowMapper<T>) boundMap.computeIfAbsent(signature, k -> creator.get());
+        }
+        return mapper;
+    }
 }
@@ -6,11 +6,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import javax.sql.DataSource;
 import org.etnaframework.core.logging.Log;
 import org.etnaframework.core.util.BeanTools;
@@ -27,6 +31,7 @@ import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.TransientDataAccessResourceException;
 import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowMapper;
@@ -60,6 +65,15 @@ public class JdbcTemplate {
     /** 当网络不稳定时，执行重试的次数 */
     private int retryTimes = 1;
 
+    /** 批量执行sql时，每一批提交的行数 */
+    private int batchSize = 1000;
+
+    /** 流式查询时，postgresql使用游标每次读取的行数，mysql固定为逐行读取 */
+    private int streamFetchSize = 1000;
+
+    /** 按连接缓存的PreparedStatement，为null表示不缓存 */
+    private StatementCache statementCache;
+
     public JdbcTemplate(DataSource dataSource) {
         this.jdbcTemplate = new org.springframework.jdbc.core.JdbcTemplate(dataSource);
         this.dataSource = dataSource;
@@ -86,6 +100,45 @@ public class JdbcTemplate {
         this.retryTimes = retryTimes;
     }
 
+    public void setBatchSize(int batchSize) {
+        if (batchSize > 0) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    public void setStreamFetchSize(int streamFetchSize) {
+        if (streamFetchSize > 0) {
+            this.streamFetchSize = streamFetchSize;
+        }
+    }
+
+    /**
+     * <pre>
+     * 设置每个数据库连接最多缓存的PreparedStatement数量，默认为0即不缓存，请参考{@link StatementCache}
+     *
+     * 如果连接池或驱动已开启了语句缓存（如druid的poolPreparedStatements，mysql的useServerPrepStmts=true&cachePrepStmts=true），就不需要再开启
+     * </pre>
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        StatementCache old = this.statementCache;
+        this.statementCache = statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null;
+        if (null != old) {
+            old.clear();
+        }
+    }
+
+    private SqlCreator creator(String sql, Object[] args) {
+        SqlCreator creator = new SqlCreator(sql, args);
+        creator.statementCache = statementCache;
+        return creator;
+    }
+
+    private SqlCreator creatorForInsert(String sql, Object[] args) {
+        SqlCreator creator = new SqlCreatorForInsert(sql, args);
+        creator.statementCache = statementCache;
+        return creator;
+    }
+
     /**
      * 执行insert操作，并获取到自增主键的值（如果想返回影响的行数，请使用update）
      *
@@ -102,7 +155,7 @@ public class JdbcTemplate {
         try {
             for (int i = 0; i <= retryTimes; i++) { // 为了应对网络不稳定的情况，当执行SQL失败时，重试一下
                 try {
-                    id = jdbcTemplate.execute(new SqlCreatorForInsert(sql, args), new PreparedStatementCallback<Long>() {
+                    id = jdbcTemplate.execute(creatorForInsert(sql, args), new PreparedStatementCallback<Long>() {
 
                         @Override
                         public Long doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
@@ -127,12 +180,12 @@ public class JdbcTemplate {
             return id;
         } catch (Throwable e) {
             ex = e;
-            logString = StringTools.mergeSql(sql, args);
+            logString = SqlMeta.of(sql).merge(args);
             throw new SqlExecuteException(logString, e);
         } finally {
             if (log.isDebugEnabled()) {
                 if (null == ex) {
-                    logString = StringTools.mergeSql(sql, args) + " -- " + (System.currentTimeMillis() - start) + "ms|result: " + id;
+                    logString = SqlMeta.of(sql).merge(args) + " -- " + (System.currentTimeMillis() - start) + "ms|result: " + id;
                     log.debug(logString);
                 } else {
                     logString += " -- " + StringTools.printThrowable(ex);
@@ -262,7 +315,7 @@ public class JdbcTemplate {
         try {
             for (int i = 0; i <= retryTimes; i++) { // 为了应对网络不稳定的情况，当执行SQL失败时，重试一下
                 try {
-                    affected = jdbcTemplate.update(new SqlCreator(sql, args));
+                    affected = jdbcTemplate.update(creator(sql, args));
                     break;
                 } catch (CannotGetJdbcConnectionException | TransientDataAccessResourceException | ConcurrencyFailureException ext) {
                     if (i == retryTimes) {
@@ -273,12 +326,12 @@ public class JdbcTemplate {
             return affected;
         } catch (Throwable e) {
             ex = e;
-            logString = StringTools.mergeSql(sql, args);
+            logString = SqlMeta.of(sql).merge(args);
             throw new SqlExecuteException(logString, e);
         } finally {
             if (log.isDebugEnabled()) {
                 if (null == ex) {
-                    logString = StringTools.mergeSql(sql, args) + " -- " + (System.currentTimeMillis() - start) + "ms|affected: " + affected;
+                    logString = SqlMeta.of(sql).merge(args) + " -- " + (System.currentTimeMillis() - start) + "ms|affected: " + affected;
                     log.debug(logString);
                 } else {
                     logString += " -- " + StringTools.printThrowable(ex);
@@ -304,20 +357,208 @@ public class JdbcTemplate {
     }
 
     /**
-     * 用于批量执行delete/update操作（目前仍是一条条执行，稍候要修改成真正的批量更新）
+     * <pre>
+     * 用于批量执行insert/delete/update操作，使用{@link PreparedStatement#addBatch()}每{@link #setBatchSize(int)}行提交一次
+     *
+     * 如果是mysql，建议在连接串上加rewriteBatchedStatements=true，驱动会把一批insert改写成一条多行的insert语句，大幅减少网络往返
+     * </pre>
+     *
+     * @return 每一行影响的数据行数，如果驱动无法给出具体的行数，对应的值为{@link Statement#SUCCESS_NO_INFO}
      */
-    public void batchUpdate(String sql, List<Object[]> args) {
-        for (Object[] objs : args) {
-            update(sql, objs);
-        }
+    public int[] batchUpdate(String sql, List<Object[]> args) {
+        int[] affected = new int[args.size()];
+        _batch(sql, args, affected, null);
+        return affected;
     }
 
     /**
-     * 用于批量执行delete/update操作
+     * 用于批量执行delete/update操作，相邻的sql语句相同的会合并到一起批量执行
      */
     public void batchUpdate(List<SqlBuilder> list) {
-        for (SqlBuilder sql : list) {
-            update(sql);
+        int from = 0;
+        while (from < list.size()) {
+            String sql = list.get(from).sql.toString();
+            List<Object[]> args = new ArrayList<>();
+            int to = from;
+            for (; to < list.size() && sql.contentEquals(list.get(to).sql); to++) {
+                args.add(list.get(to).args.toArray());
+            }
+            if (args.size() == 1) {
+                update(sql, args.get(0));
+            } else {
+                batchUpdate(sql, args);
+            }
+            from = to;
+        }
+    }
+
+    /**
+     * 用于批量执行insert操作，并获取到每一行的自增主键的值，使用{@link PreparedStatement#addBatch()}每{@link #setBatchSize(int)}行提交一次
+     *
+     * @return 每一行的自增主键的值，获取不到的为-1
+     */
+    public long[] insertBatch(String sql, List<Object[]> args) {
+        long[] ids = new long[args.size()];
+        Arrays.fill(ids, -1L);
+        _batch(sql, args, new int[args.size()], ids);
+        return ids;
+    }
+
+    /**
+     * 批量执行sql，整批只记录一次统计，每一块都按{@link #retryTimes}重试
+     *
+     * @param affected 用于存放每一行影响的数据行数
+     * @param ids 用于存放每一行的自增主键的值，传null表示不需要获取
+     */
+    private void _batch(String sql, List<Object[]> args, int[] affected, long[] ids) {
+        if (args.isEmpty()) {
+            return;
+        }
+        Throwable ex = null;
+        String logString = null;
+        long start = System.currentTimeMillis();
+        try {
+            for (int from = 0; from < args.size(); from += batchSize) {
+                final List<Object[]> chunk = args.subList(from, Math.min(from + batchSize, args.size()));
+                final int offset = from;
+                PreparedStatementCreator creator = null == ids ? creator(sql, null) : creatorForInsert(sql, null);
+                for (int i = 0; i <= retryTimes; i++) { // 为了应对网络不稳定的情况，当执行SQL失败时，重试一下
+                    try {
+                        jdbcTemplate.execute(creator, new PreparedStatementCallback<Void>() {
+
+                            @Override
+                            public Void doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
+                                for (Object[] row : chunk) {
+                                    SqlCreator.setArgs(ps, row);
+                                    ps.addBatch();
+                                }
+                                int[] result = ps.executeBatch();
+                                System.arraycopy(result, 0, affected, offset, Math.min(result.length, chunk.size()));
+                                if (null != ids) {
+                                    _fetchGeneratedKeys(ps, ids, offset, chunk.size());
+                                }
+                                return null;
+                            }
+                        });
+                        break;
+                    } catch (CannotGetJdbcConnectionException | TransientDataAccessResourceException | ConcurrencyFailureException ext) {
+                        if (i == retryTimes) {
+                            throw ext;
+                        }
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            ex = e;
+            logString = "[BATCH " + args.size() + " rows] " + SqlMeta.of(sql).merge(args.get(0)) + " ...";
+            throw new SqlExecuteException(logString, e);
+        } finally {
+            if (log.isDebugEnabled()) {
+                if (null == ex) {
+                    logString = "[BATCH " + args.size() + " rows] " + SqlMeta.of(sql).merge(args.get(0)) + " ... -- " + (System.currentTimeMillis() - start) + "ms";
+                    log.debug(logString);
+                } else {
+                    logString += " -- " + StringTools.printThrowable(ex);
+                    log.error(logString);
+                }
+            }
+            StatJdbcUtils.record(sql, args.size(), start);
+        }
+    }
+
+    /**
+     * 读取批量插入后生成的自增主键，没有自增主键的表获取时可能会抛出异常，此时保持-1并记录日志，插入本身已经成功了，不影响返回
+     */
+    private void _fetchGeneratedKeys(PreparedStatement ps, long[] ids, int offset, int rows) {
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+            for (int i = 0; i < rows && rs.next(); i++) {
+                ids[offset + i] = rs.getLong(1);
+            }
+        } catch (SQLException e) {
+            log.warn("fetch generated keys of rows [{}, {}) failed, ids are left as -1", offset, offset + rows, e);
+        }
+    }
+
+    /**
+     * <pre>
+     * 将一批javabean生成多行的insert into tablename (XX, YY) values (aa, bb), (cc, dd)语句插入到数据库，通过反射获取到bean的所有非空字段自动生成sql
+     *
+     * 每{@link #setBatchSize(int)}个bean生成一条sql，相邻的bean中参与生成sql的字段不一致时（例如某个字段有的是null有的不是），会分开生成
+     * 这样和逐个调用{@link #insertOne(String, Object)}插入的结果是一致的，但只需要很少的网络往返
+     * </pre>
+     *
+     * @param prefixSql sql的前半部分，如insert into tablename，后面的字段列表和values部分将由程序自动生成
+     * @param beans 预备插入的javabean列表，其中只要是非null的字段，都会参与到sql的生成，如果不想某个字段参与生成，请在字段上加@{@link DbField}设置
+     *
+     * @return 每个bean对应的自增主键的值，获取不到的为-1
+     */
+    public long[] insertList(String prefixSql, List<?> beans) {
+        long[] ids = new long[beans.size()];
+        Arrays.fill(ids, -1L);
+        if (beans.isEmpty()) {
+            return ids;
+        }
+        Throwable ex = null;
+        String logString = null;
+        long start = System.currentTimeMillis();
+        try {
+            int from = 0;
+            while (from < beans.size()) {
+                BeanSqlMeta meta = BeanSqlMetas.getMeta(beans.get(from).getClass());
+                List<Object[]> rows = new ArrayList<>();
+                rows.add(meta.getInsertValues(beans.get(from)));
+                int to = from + 1;
+                for (; to < beans.size() && rows.size() < batchSize && beans.get(to).getClass() == meta.clazz; to++) {
+                    Object[] values = meta.getInsertValues(beans.get(to));
+                    if (!BeanSqlMeta.isSameInsertFields(rows.get(0), values)) {
+                        break;
+                    }
+                    rows.add(values);
+                }
+                SqlBuilder sql = new SqlBuilder(prefixSql).setDialect(dialect).addInsertRows(meta, rows);
+                _insertRows(sql, ids, from, rows.size());
+                from = to;
+            }
+            return ids;
+        } catch (Throwable e) {
+            ex = e;
+            logString = "[BATCH " + beans.size() + " rows] " + prefixSql;
+            throw new SqlExecuteException(logString, e);
+        } finally {
+            if (log.isDebugEnabled()) {
+                if (null == ex) {
+                    logString = "[BATCH " + beans.size() + " rows] " + prefixSql + " -- " + (System.currentTimeMillis() - start) + "ms";
+                    log.debug(logString);
+                } else {
+                    logString += " -- " + StringTools.printThrowable(ex);
+                    log.error(logString);
+                }
+            }
+            StatJdbcUtils.record(prefixSql, beans.size(), start);
+        }
+    }
+
+    /**
+     * 执行一条多行的insert语句，并把生成的自增主键按顺序放到ids中
+     */
+    private void _insertRows(SqlBuilder sql, final long[] ids, final int offset, final int rows) {
+        for (int i = 0; i <= retryTimes; i++) { // 为了应对网络不稳定的情况，当执行SQL失败时，重试一下
+            try {
+                jdbcTemplate.execute(creatorForInsert(sql.sql.toString(), sql.args.toArray()), new PreparedStatementCallback<Void>() {
+
+                    @Override
+                    public Void doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
+                        ps.execute();
+                        _fetchGeneratedKeys(ps, ids, offset, rows);
+                        return null;
+                    }
+                });
+                break;
+            } catch (CannotGetJdbcConnectionException | TransientDataAccessResourceException | ConcurrencyFailureException ext) {
+                if (i == retryTimes) {
+                    throw ext;
+                }
+            }
         }
     }
 
@@ -1311,7 +1552,7 @@ public class JdbcTemplate {
             List<T> list = Collections.emptyList();
             for (int i = 0; i <= retryTimes; i++) { // 为了应对网络不稳定的情况，当执行SQL失败时，重试一下
                 try {
-                    list = jdbcTemplate.query(new SqlCreator(sql, args), rowMapper);
+                    list = jdbcTemplate.query(creator(sql, args), rowMapper);
                     break;
                 } catch (CannotGetJdbcConnectionException | TransientDataAccessResourceException | ConcurrencyFailureException ext) {
                     if (i == retryTimes) {
@@ -1330,15 +1571,15 @@ public class JdbcTemplate {
             return list;
         } catch (Throwable e) {
             ex = e;
-            logString = StringTools.mergeSql(sql, args);
+            logString = SqlMeta.of(sql).merge(args);
             throw new SqlExecuteException(logString, e);
         } finally {
             if (log.isDebugEnabled()) {
                 if (null == ex) {
                     if (rows == 1 && null != result) {
-                        logString = StringTools.mergeSql(sql, args) + " -- " + (System.currentTimeMillis() - start) + "ms|result: " + result;
+                        logString = SqlMeta.of(sql).merge(args) + " -- " + (System.currentTimeMillis() - start) + "ms|result: " + result;
                     } else {
-                        logString = StringTools.mergeSql(sql, args) + " -- " + (System.currentTimeMillis() - start) + "ms|rows: " + rows;
+                        logString = SqlMeta.of(sql).merge(args) + " -- " + (System.currentTimeMillis() - start) + "ms|rows: " + rows;
                     }
                     log.debug(logString);
                 } else {
@@ -1391,7 +1632,7 @@ public class JdbcTemplate {
         try {
             for (int i = 0; i <= retryTimes; i++) { // 为了应对网络不稳定的情况，当执行SQL失败时，重试一下
                 try {
-                    return jdbcTemplate.query(new SqlCreator(sql, args), new RowMapperResultSetExtractor<>(new ColumnDbMapRowMapper()));
+                    return jdbcTemplate.query(creator(sql, args), new RowMapperResultSetExtractor<>(new ColumnDbMapRowMapper()));
                 } catch (CannotGetJdbcConnectionException | TransientDataAccessResourceException | ConcurrencyFailureException ext) {
                     if (i == retryTimes) {
                         throw ext;
@@ -1400,12 +1641,12 @@ public class JdbcTemplate {
             }
         } catch (Throwable e) {
             ex = e;
-            logString = StringTools.mergeSql(sql, args);
+            logString = SqlMeta.of(sql).merge(args);
             throw new SqlExecuteException(logString, e);
         } finally {
             if (log.isDebugEnabled()) {
                 if (null == ex) {
-                    logString = StringTools.mergeSql(sql, args) + " -- " + (System.currentTimeMillis() - start) + "ms|rows: " + rows;
+                    logString = SqlMeta.of(sql).merge(args) + " -- " + (System.currentTimeMillis() - start) + "ms|rows: " + rows;
                     log.debug(logString);
                 } else {
                     logString += " -- " + StringTools.printThrowable(ex);
@@ -1576,15 +1817,15 @@ public class JdbcTemplate {
         String logString = null;
         long start = System.currentTimeMillis();
         try {
-            return jdbcTemplate.query(new SqlCreator(sql, args), new KeyValueMapResultSetExtractor());
+            return jdbcTemplate.query(creator(sql, args), new KeyValueMapResultSetExtractor());
         } catch (Throwable e) {
             ex = e;
-            logString = StringTools.mergeSql(sql, args);
+            logString = SqlMeta.of(sql).merge(args);
             throw new SqlExecuteException(logString, e);
         } finally {
             if (log.isDebugEnabled()) {
                 if (null == ex) {
-                    logString = StringTools.mergeSql(sql, args) + " -- " + (System.currentTimeMillis() - start) + "ms|rows: " + rows;
+                    logString = SqlMeta.of(sql).merge(args) + " -- " + (System.currentTimeMillis() - start) + "ms|rows: " + rows;
                     log.debug(logString);
                 } else {
                     logString += " -- " + StringTools.printThrowable(ex);
@@ -1612,15 +1853,15 @@ public class JdbcTemplate {
         String logString = null;
         long start = System.currentTimeMillis();
         try {
-            return jdbcTemplate.query(new SqlCreator(sql, args), new KeyValueMultimapResultSetExtractor<T>(valueClassType));
+            return jdbcTemplate.query(creator(sql, args), new KeyValueMultimapResultSetExtractor<T>(valueClassType));
         } catch (Throwable e) {
             ex = e;
-            logString = StringTools.mergeSql(sql, args);
+            logString = SqlMeta.of(sql).merge(args);
             throw new SqlExecuteException(logString, e);
         } finally {
             if (log.isDebugEnabled()) {
                 if (null == ex) {
-                    logString = StringTools.mergeSql(sql, args) + " -- " + (System.currentTimeMillis() - start) + "ms|rows: " + rows;
+                    logString = SqlMeta.of(sql).merge(args) + " -- " + (System.currentTimeMillis() - start) + "ms|rows: " + rows;
                     log.debug(logString);
                 } else {
                     logString += " -- " + StringTools.printThrowable(ex);
@@ -1680,6 +1921,198 @@ public class JdbcTemplate {
         return queryPage(clazz, pageNo, pageSize, sql.sql.toString(), sql.args);
     }
 
+    /**
+     * <pre>
+     * 按键值分页（keyset分页）查询一页的内容，用于替代{@link #queryPage}，翻到很后面的页时也不会变慢
+     *
+     * 程序会在sql后面自动加上keyColumn>lastKey的条件（如果sql最外层已经有where就用and连接，子查询和引号中的where不算）和order by keyColumn limit pageSize
+     * 因此传入的sql不能带order by/limit/group by等where之后的子句，已有的where条件中如果有or，需要自己用()括起来
+     * </pre>
+     *
+     * @param keyColumn 用于分页的字段，必须是唯一且有索引的，一般为自增主键
+     * @param lastKey 上一页最后一条记录的keyColumn的值，查询第一页时传null
+     * @param sql 查询sql以及其参数，传入的对象不会被修改
+     *
+     * @return 如果没有查到对应的记录将返回空的List
+     */
+    public <T> List<T> queryPageAfter(Class<T> clazz, String keyColumn, Object lastKey, int pageSize, SqlBuilder sql) {
+        SqlBuilder query = new SqlBuilder(sql.sql.toString(), sql.args);
+        if (null != lastKey) {
+            boolean hasWhere = sql.addWhere || hasOuterWhere(sql.sql.toString());
+            query.add((hasWhere ? "and " : "where ") + keyColumn + ">?", lastKey);
+        }
+        query.add("order by " + keyColumn + " limit " + pageSize);
+        return queryList(clazz, query);
+    }
+
+    /**
+     * 判断sql的最外层是否已经有where，括号中的子查询和引号中的内容都不算，where前后可以是任意空白字符
+     */
+    static boolean hasOuterWhere(String sql) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == '\\' && quote != '`') {
+                    i++; // 跳过转义的字符
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && sql.regionMatches(true, i, "where", 0, 5)) {
+                boolean start = i == 0 || !isSqlIdentifierPart(sql.charAt(i - 1));
+                boolean end = i + 5 == sql.length() || !isSqlIdentifierPart(sql.charAt(i + 5));
+                if (start && end) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSqlIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * <pre>
+     * 按键值分页（keyset分页）遍历全部的查询结果，每查到一页就交给handler处理，适用于不方便长时间占用数据库连接的大批量数据处理
+     *
+     * 对sql的要求请参考{@link #queryPageAfter(Class, String, Object, int, SqlBuilder)}
+     * </pre>
+     *
+     * @param keyColumn 用于分页的字段，必须是唯一且有索引的，一般为自增主键
+     * @param keyGetter 获取记录中keyColumn对应的值，用于查询下一页
+     *
+     * @return 总共处理的记录数
+     */
+    public <T> long queryEachPage(Class<T> clazz, String keyColumn, Function<T, ?> keyGetter, int pageSize, Consumer<List<T>> handler, SqlBuilder sql) {
+        long total = 0;
+        Object lastKey = null;
+        while (true) {
+            List<T> page = queryPageAfter(clazz, keyColumn, lastKey, pageSize, sql);
+            if (page.isEmpty()) {
+                return total;
+            }
+            handler.accept(page);
+            total += page.size();
+            if (page.size() < pageSize) {
+                return total;
+            }
+            lastKey = keyGetter.apply(page.get(page.size() - 1));
+        }
+    }
+
+    /**
+     * <pre>
+     * 流式查询，每读取到一条记录就交给handler处理，不会把整个结果集加载到内存中，适用于导出报表等大结果集的场景
+     *
+     * mysql会使用逐行读取的方式（fetchSize=Integer.MIN_VALUE），postgresql会使用游标每次读取{@link #setStreamFetchSize(int)}行
+     * 注意：在handler中不能使用同一个数据库连接执行其他sql（例如在同一个事务中），mysql在流式读取结束前不允许执行其他语句
+     * </pre>
+     *
+     * @param clazz 目标bean的class
+     * @param handler 处理每一条记录
+     * @param sql 查询sql
+     * @param args 查询sql语句中的?参数的值
+     *
+     * @return 总共处理的记录数
+     */
+    public <T> long queryEach(Class<T> clazz, Consumer<? super T> handler, String sql, Object... args) {
+        return _queryEach(JdbcRowMappers.getMapper(clazz), handler, sql, args);
+    }
+
+    /**
+     * 流式查询，每读取到一条记录就交给handler处理，不会把整个结果集加载到内存中，请参考{@link #queryEach(Class, Consumer, String, Object...)}
+     */
+    public <T> long queryEach(Class<T> clazz, Consumer<? super T> handler, SqlBuilder sql) {
+        return queryEach(clazz, handler, sql.sql.toString(), sql.args.toArray());
+    }
+
+    /**
+     * 流式查询，每读取到一条记录就转换为包含各字段名和值的{@link DbMap}交给handler处理，请参考{@link #queryEach(Class, Consumer, String, Object...)}
+     */
+    public long queryEach(Consumer<? super DbMap> handler, String sql, Object... args) {
+        return _queryEach(new ColumnDbMapRowMapper(), handler, sql, args);
+    }
+
+    /**
+     * 流式查询，每读取到一条记录就转换为包含各字段名和值的{@link DbMap}交给handler处理，请参考{@link #queryEach(Class, Consumer, String, Object...)}
+     */
+    public long queryEach(Consumer<? super DbMap> handler, SqlBuilder sql) {
+        return queryEach(handler, sql.sql.toString(), sql.args.toArray());
+    }
+
+    private <T> long _queryEach(final RowMapper<T> rowMapper, final Consumer<? super T> handler, final String sql, final Object[] args) {
+        final long[] rows = {
+            0
+        };
+        Throwable ex = null;
+        String logString = null;
+        long start = System.currentTimeMillis();
+        try {
+            for (int i = 0; i <= retryTimes; i++) { // 为了应对网络不稳定的情况，当执行SQL失败时，重试一下
+                try {
+                    jdbcTemplate.execute(new ConnectionCallback<Void>() {
+
+                        @Override
+                        public Void doInConnection(Connection con) throws SQLException, DataAccessException {
+                            // postgresql只有在事务中才会使用游标分批读取，否则还是会一次性读取全部结果
+                            boolean resetAutoCommit = !isMySql && con.getAutoCommit();
+                            if (resetAutoCommit) {
+                                con.setAutoCommit(false);
+                            }
+                            try (PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                                ps.setFetchSize(isMySql ? Integer.MIN_VALUE : streamFetchSize);
+                                if (null != args) {
+                                    SqlCreator.setArgs(ps, args);
+                                }
+                                try (ResultSet rs = ps.executeQuery()) {
+                                    while (rs.next()) {
+                                        handler.accept(rowMapper.mapRow(rs, (int) rows[0]));
+                                        rows[0]++;
+                                    }
+                                }
+                            } finally {
+                                if (resetAutoCommit) {
+                                    con.setAutoCommit(true);
+                                }
+                            }
+                            return null;
+                        }
+                    });
+                    break;
+                } catch (CannotGetJdbcConnectionException | TransientDataAccessResourceException | ConcurrencyFailureException ext) {
+                    if (i == retryTimes || rows[0] > 0) { // 已经处理过的记录无法撤回，不能再重试
+                        throw ext;
+                    }
+                }
+            }
+            return rows[0];
+        } catch (Throwable e) {
+            ex = e;
+            logString = SqlMeta.of(sql).merge(args);
+            throw new SqlExecuteException(logString, e);
+        } finally {
+            if (log.isDebugEnabled()) {
+                if (null == ex) {
+                    logString = SqlMeta.of(sql).merge(args) + " -- " + (System.currentTimeMillis() - start) + "ms|rows: " + rows[0];
+                    log.debug(logString);
+                } else {
+                    logString += " -- " + StringTools.printThrowable(ex);
+                    log.error(logString);
+                }
+            }
+            StatJdbcUtils.record(sql, 1, start);
+        }
+    }
+
     /**
      * 显示mysq当前正在执行的sql（仅支持mysql）
      */
@@ -1696,12 +2129,18 @@ public class JdbcTemplate {
 
         protected Object[] args;
 
+        /** 按连接缓存的PreparedStatement，为null表示不缓存 */
+        StatementCache statementCache;
+
         public SqlCreator(String sql, Object[] args) {
             this.sql = sql;
             this.args = args;
         }
 
         protected PreparedStatement create(Connection con) throws SQLException {
+            if (null != statementCache) {
+                return statementCache.prepare(con, sql, false);
+            }
             return con.prepareStatement(sql);
         }
 
@@ -1709,21 +2148,59 @@ public class JdbcTemplate {
         public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
             PreparedStatement ps = create(con);
             if (args != null) {
-                int i = 1;
-                for (Object arg : args) {
-                    if (arg instanceof Timestamp) {
-                        ps.setTimestamp(i++, (Timestamp) arg);
-                    } else if (arg instanceof Date) {
-                        ps.setTimestamp(i++, new Timestamp(((Date) arg).getTime()));
-                    } else if (arg instanceof Enum) {
-                        ps.setString(i++, arg.toString());
-                    } else {
-                        ps.setObject(i++, arg);
-                    }
-                }
+                setArgs(ps, args);
             }
             return ps;
         }
+
+        /**
+         * 按顺序设置sql语句中的?参数的值
+         */
+        static void setArgs(PreparedStatement ps, Object[] args) throws SQLException {
+            int i = 1;
+            for (Object arg : args) {
+                if (null == arg) {
+                    ps.setObject(i++, null);
+                } else {
+                    binders.get(arg.getClass()).bind(ps, i++, arg);
+                }
+            }
+        }
+
+        /**
+         * 为?参数赋值的方法
+         */
+        interface ArgBinder {
+
+            void bind(PreparedStatement ps, int index, Object arg) throws SQLException;
+        }
+
+        /** 按参数的类型缓存对应的赋值方法，不需要每个参数都逐个判断类型 */
+        private static final ClassValue<ArgBinder> binders = new ClassValue<ArgBinder>() {
+
+            @Override
+            protected ArgBinder computeValue(Class<?> type) {
+                if (String.class.equals(type)) {
+                    return (ps, i, arg) -> ps.setString(i, (String) arg);
+                }
+                if (Long.class.equals(type)) {
+                    return (ps, i, arg) -> ps.setLong(i, (Long) arg);
+                }
+                if (Integer.class.equals(type)) {
+                    return (ps, i, arg) -> ps.setInt(i, (Integer) arg);
+                }
+                if (Timestamp.class.isAssignableFrom(type)) {
+                    return (ps, i, arg) -> ps.setTimestamp(i, (Timestamp) arg);
+                }
+                if (Date.class.isAssignableFrom(type)) {
+                    return (ps, i, arg) -> ps.setTimestamp(i, new Timestamp(((Date) arg).getTime()));
+                }
+                if (Enum.class.isAssignableFrom(type)) {
+                    return (ps, i, arg) -> ps.setString(i, arg.toString());
+                }
+                return PreparedStatement::setObject;
+            }
+        };
     }
 
     public static class SqlCreatorForInsert extends SqlCreator {
@@ -1734,6 +2211,9 @@ public class JdbcTemplate {
 
         @Override
         protected PreparedStatement create(Connection con) throws SQLException {
+            if (null != statementCache) {
+                return statementCache.prepare(con, sql, true);
+            }
             return con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
         }
     }
@@ -432,6 +432,16 @@ public class SqlBuilder {
         return this;
     }
 
+    /**
+     * 将多行数据按照(XX, YY) values (aa, bb), (cc, dd)的方式添加到sql中去，供批量插入使用
+     *
+     * @param rows 由{@link BeanSqlMeta#getInsertValues(Object)}提取的数据，各行参与生成的字段必须一致
+     */
+    SqlBuilder addInsertRows(BeanSqlMeta meta, List<Object[]> rows) {
+        meta.addInsertRowsSql(prefix, suffix, this, rows);
+        return this;
+    }
+
     /**
      * 禁止null传入，否则sql生成肯定不正确，到了jdbc层抛出的异常很难看出问题来
      */
@@ -0,0 +1,81 @@
+package org.etnaframework.jdbc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import org.etnaframework.core.util.StringTools;
+import org.etnaframework.plugin.stat.jdbc.StatJdbcUtils;
+
+/**
+ * <pre>
+ * 按SQL文本缓存的元数据，同一条SQL多次执行时不需要重复解析
+ *
+ * 1、按?拆分后的各段，用于在日志中生成带参数值的SQL
+ * 2、SQL指纹，用于按SQL指纹统计
+ *
+ * 缓存的条数有上限，超过后清空重来，防止拼接了常量的SQL太多导致内存泄漏
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public final class SqlMeta {
+
+    /** 最多缓存的SQL条数 */
+    private static final int MAX_SIZE = 10000;
+
+    private static final ConcurrentHashMap<String, SqlMeta> cache = new ConcurrentHashMap<>();
+
+    private final String sql;
+
+    /** 按?拆分后的各段，第一次使用时才生成 */
+    private volatile String[] segments;
+
+    /** SQL指纹，第一次使用时才生成 */
+    private volatile String fingerprint;
+
+    private SqlMeta(String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * 获取SQL对应的元数据
+     */
+    public static SqlMeta of(String sql) {
+        SqlMeta meta = cache.get(sql);
+        if (null == meta) {
+            if (cache.size() >= MAX_SIZE) {
+                cache.clear();
+            }
+            meta = cache.computeIfAbsent(sql, SqlMeta::new);
+        }
+        return meta;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * 把参数值合并到SQL中，用于记录日志，参考{@link StringTools#mergeSql(String, Object...)}
+     */
+    public String merge(Object[] args) {
+        if (null == args) {
+            return sql;
+        }
+        String[] s = segments;
+        if (null == s) {
+            segments = s = StringTools.splitSql(sql);
+        }
+        return StringTools.mergeSqlSegments(s, args);
+    }
+
+    /**
+     * 获取SQL指纹，参考{@link StatJdbcUtils#fingerprint(String)}
+     */
+    public String getFingerprint() {
+        String fp = fingerprint;
+        if (null == fp) {
+            fingerprint = fp = StatJdbcUtils.fingerprint(sql);
+        }
+        return fp;
+    }
+}
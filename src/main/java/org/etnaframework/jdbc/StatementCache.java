@@ -0,0 +1,287 @@
+package org.etnaframework.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * <pre>
+ * 按数据库连接缓存的PreparedStatement，同一个连接上再次执行相同的SQL时直接复用，省去每次prepareStatement的开销（使用服务端预编译时还可以省去一次网络往返）
+ *
+ * 1、缓存按底层的物理连接区分（通过Connection.unwrap获取连接池包装的底层连接，连接池每次借出时返回的包装对象可能不同），每个连接按LRU最多保留指定数量的语句，超出时关闭最久未使用的
+ * 2、返回给调用方的是代理对象，调用close时不会真正关闭，而是清空参数后放回缓存，
+ *    调用方修改过的语句设置（如Spring按事务超时设置的queryTimeout，以及fetchSize、maxRows等）也恢复为原来的值，不会影响下一个使用者
+ * 3、同一条语句还没有放回缓存时（如流式读取的过程中又执行同一条SQL），会另外生成一个不缓存的语句
+ * 4、出现新的连接时会清理已关闭的连接对应的缓存
+ *
+ * 很多连接池（如druid的poolPreparedStatements）和驱动（如mysql的cachePrepStmts）已经提供了同样的功能，如已开启就不需要再使用本缓存
+ * 连接池必须支持通过unwrap获取底层连接，否则每次借出连接都会是新的缓存，起不到作用
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+final class StatementCache {
+
+    /** 放回缓存时需要恢复的语句设置，setter方法名->对应的getter方法 */
+    private static final Map<String, Method> settings = new HashMap<>();
+
+    static {
+        for (String name : new String[] {
+            "QueryTimeout",
+            "FetchSize",
+            "FetchDirection",
+            "MaxRows",
+            "LargeMaxRows",
+            "MaxFieldSize"
+        }) {
+            try {
+                settings.put("set" + name, PreparedStatement.class.getMethod("get" + name));
+            } catch (NoSuchMethodException ignore) {
+            }
+        }
+    }
+
+    /** 每个连接最多缓存的语句数 */
+    private final int maxSize;
+
+    /** 物理连接对应的语句缓存 */
+    private final Map<Connection, Statements> caches = new ConcurrentHashMap<>();
+
+    StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 从缓存中取出语句，如果没有就生成一个，使用完后直接调用close即可放回缓存
+     *
+     * @param returnKeys 是否需要返回自增主键
+     */
+    PreparedStatement prepare(Connection con, String sql, boolean returnKeys) throws SQLException {
+        Connection physical = unwrap(con);
+        Statements statements = caches.get(physical);
+        if (null == statements) {
+            sweep();
+            statements = caches.computeIfAbsent(physical, k -> new Statements());
+        }
+        return statements.checkout(physical, sql, returnKeys);
+    }
+
+    /**
+     * 获取连接池包装的底层连接，获取不到就使用传入的连接
+     */
+    private static Connection unwrap(Connection con) {
+        try {
+            if (con.isWrapperFor(Connection.class)) {
+                Connection physical = con.unwrap(Connection.class);
+                if (null != physical) {
+                    return physical;
+                }
+            }
+        } catch (SQLException | AbstractMethodError ignore) { // 老版本的驱动没有实现unwrap
+        }
+        return con;
+    }
+
+    /**
+     * 清理已关闭的连接对应的缓存
+     */
+    private void sweep() {
+        Iterator<Map.Entry<Connection, Statements>> it = caches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Connection, Statements> e = it.next();
+            boolean closed;
+            try {
+                closed = e.getKey().isClosed();
+            } catch (SQLException ex) {
+                closed = true;
+            }
+            if (closed) {
+                it.remove();
+                e.getValue().closeAll();
+            }
+        }
+    }
+
+    /**
+     * 清空缓存并关闭所有语句
+     */
+    void clear() {
+        for (Statements s : caches.values()) {
+            s.closeAll();
+        }
+        caches.clear();
+    }
+
+    /**
+     * 一个连接上缓存的语句，按最近使用的顺序排列
+     */
+    private final class Statements extends LinkedHashMap<String, CachedStatement> {
+
+        private static final long serialVersionUID = 1L;
+
+        Statements() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+            if (size() > maxSize) {
+                eldest.getValue().evict();
+            }
+            return size() > maxSize;
+        }
+
+        synchronized PreparedStatement checkout(Connection con, String sql, boolean returnKeys) throws SQLException {
+            String key = returnKeys ? sql + "\u0000" : sql; // 返回自增主键的语句和普通语句分开缓存
+            CachedStatement cs = get(key);
+            if (null != cs) {
+                if (cs.inUse) { // 还没有放回缓存，只能另外生成一个
+                    return returnKeys ? con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : con.prepareStatement(sql);
+                }
+                if (!cs.target.isClosed()) {
+                    cs.inUse = true;
+                    return cs.proxy;
+                }
+                remove(key);
+            }
+            PreparedStatement ps = returnKeys ? con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : con.prepareStatement(sql);
+            cs = new CachedStatement(this, key, ps);
+            cs.inUse = true;
+            put(key, cs);
+            return cs.proxy;
+        }
+
+        synchronized void release(CachedStatement cs) {
+            cs.inUse = false;
+            if (cs.evicted) {
+                JdbcUtils.closeStatement(cs.target);
+                return;
+            }
+            try {
+                cs.target.clearParameters();
+                if (cs.batched) {
+                    cs.batched = false;
+                    cs.target.clearBatch();
+                }
+                cs.restoreSettings();
+            } catch (SQLException ex) { // 语句已不可用，不再缓存
+                remove(cs.key);
+                JdbcUtils.closeStatement(cs.target);
+            }
+        }
+
+        synchronized void closeAll() {
+            for (CachedStatement cs : values()) {
+                cs.evict();
+            }
+            clear();
+        }
+    }
+
+    /**
+     * 缓存的语句，调用方拿到的是代理对象，调用close时放回缓存
+     */
+    private static final class CachedStatement implements InvocationHandler {
+
+        final Statements owner;
+
+        final String key;
+
+        final PreparedStatement target;
+
+        final PreparedStatement proxy;
+
+        /** 是否已被调用方取出还没有放回 */
+        boolean inUse;
+
+        /** 是否已从缓存中移除，放回时需要真正关闭 */
+        boolean evicted;
+
+        /** 是否调用过addBatch，放回时需要清空 */
+        boolean batched;
+
+        /** 调用方修改过的设置，setter方法->修改前的值，放回时恢复 */
+        final Map<Method, Object> changed = new HashMap<>(4);
+
+        CachedStatement(Statements owner, String key, PreparedStatement target) {
+            this.owner = owner;
+            this.key = key;
+            this.target = target;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(), new Class<?>[] {
+                PreparedStatement.class
+            }, this);
+        }
+
+        /**
+         * 把调用方修改过的设置恢复为修改前的值
+         */
+        void restoreSettings() throws SQLException {
+            if (changed.isEmpty()) {
+                return;
+            }
+            try {
+                for (Map.Entry<Method, Object> e : changed.entrySet()) {
+                    e.getKey()
+                     .invoke(target, e.getValue());
+                }
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException() instanceof SQLException ? (SQLException) e.getTargetException() : new SQLException(e.getTargetException());
+            } catch (IllegalAccessException e) {
+                throw new SQLException(e);
+            } finally {
+                changed.clear();
+            }
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                JdbcUtils.closeStatement(target);
+            }
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name) && null == args) {
+                if (inUse) {
+                    owner.release(this);
+                }
+                return null;
+            }
+            if ("equals".equals(name)) {
+                return p == args[0];
+            }
+            if ("hashCode".equals(name) && null == args) {
+                return System.identityHashCode(p);
+            }
+            if ("isClosed".equals(name) && null == args) {
+                return !inUse || target.isClosed();
+            }
+            if ("addBatch".equals(name)) {
+                batched = true;
+            }
+            try {
+                Method getter = settings.get(name);
+                if (null != getter && !changed.containsKey(method)) { // 第一次修改时记下原来的值
+                    changed.put(method, getter.invoke(target));
+                }
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.etnaframework.jedis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * <pre>
+ * 以pipeline方式批量发送redis命令并获取结果，通过{@link JedisTemplate#batch(JedisBatchContent)}使用
+ *
+ * 1、每个命令都返回{@link Response}，在批量执行结束后（或自动发送后）通过Response.get()获取结果
+ * 2、每累积{@link JedisTemplate#setBatchSize(int)}个命令就自动发送一次并读取回包，避免命令太多时回包在内存中无限堆积
+ * 3、常用命令提供了和JedisOps*同名的方法，其他命令可通过{@link #add(Function)}直接使用pipeline的对应方法
+ *
+ * 使用示例：
+ *
+ *         List&lt;Response&lt;String&gt;&gt; values = new ArrayList&lt;&gt;();
+ *         jedisTemplate.batch(b -&gt; {
+ *             for (String key : keys) {
+ *                 values.add(b.get(key));
+ *             }
+ *         });
+ *         values.get(0).get();
+ *
+ * 本类不是线程安全的，只能在批量执行的回调中使用
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class JedisBatch {
+
+    private final Pipeline pipeline;
+
+    /** 每多少个命令自动发送一次 */
+    private final int batchSize;
+
+    /** 需要返回全部结果时，保存已发送的命令的结果，不需要时为null */
+    private final List<Object> results;
+
+    /** 还没有发送的命令数 */
+    private int pending;
+
+    JedisBatch(Pipeline pipeline, int batchSize, boolean returnAll) {
+        this.pipeline = pipeline;
+        this.batchSize = batchSize;
+        this.results = returnAll ? new ArrayList<>() : null;
+    }
+
+    /**
+     * 添加一个命令，可使用pipeline中的任意命令，例如b.add(p -&gt; p.zrevrangeWithScores(key, 0, 9))
+     */
+    public <T> Response<T> add(Function<Pipeline, Response<T>> command) {
+        Response<T> r = command.apply(pipeline);
+        if (++pending >= batchSize) {
+            flush();
+        }
+        return r;
+    }
+
+    /**
+     * 立即发送所有还没有发送的命令并读取回包，之后这些命令的Response就可以获取结果了
+     */
+    public void flush() {
+        if (pending > 0) {
+            pending = 0;
+            if (null == results) {
+                pipeline.sync();
+            } else {
+                results.addAll(pipeline.syncAndReturnAll());
+            }
+        }
+    }
+
+    /**
+     * 所有命令按顺序的结果，执行出错的命令对应的是异常对象
+     */
+    List<Object> getResults() {
+        return results;
+    }
+
+    public Response<String> get(String key) {
+        return add(p -> p.get(key));
+    }
+
+    public Response<List<String>> mget(String... keys) {
+        return add(p -> p.mget(keys));
+    }
+
+    public Response<String> set(String key, String value) {
+        return add(p -> p.set(key, value));
+    }
+
+    public Response<String> setex(String key, int seconds, String value) {
+        return add(p -> p.setex(key, seconds, value));
+    }
+
+    public Response<Long> incr(String key) {
+        return add(p -> p.incr(key));
+    }
+
+    public Response<Long> incrBy(String key, long increment) {
+        return add(p -> p.incrBy(key, increment));
+    }
+
+    public Response<Long> del(String... keys) {
+        return add(p -> p.del(keys));
+    }
+
+    public Response<Boolean> exists(String key) {
+        return add(p -> p.exists(key));
+    }
+
+    public Response<Long> expire(String key, int seconds) {
+        return add(p -> p.expire(key, seconds));
+    }
+
+    public Response<String> hget(String key, String field) {
+        return add(p -> p.hget(key, field));
+    }
+
+    public Response<Long> hset(String key, String field, String value) {
+        return add(p -> p.hset(key, field, value));
+    }
+
+    public Response<String> hmset(String key, Map<String, String> hash) {
+        return add(p -> p.hmset(key, hash));
+    }
+
+    public Response<Map<String, String>> hgetAll(String key) {
+        return add(p -> p.hgetAll(key));
+    }
+
+    public Response<Long> hincrBy(String key, String field, long value) {
+        return add(p -> p.hincrBy(key, field, value));
+    }
+
+    public Response<Long> hdel(String key, String... fields) {
+        return add(p -> p.hdel(key, fields));
+    }
+
+    public Response<Long> lpush(String key, String... values) {
+        return add(p -> p.lpush(key, values));
+    }
+
+    public Response<Long> rpush(String key, String... values) {
+        return add(p -> p.rpush(key, values));
+    }
+
+    public Response<Long> sadd(String key, String... members) {
+        return add(p -> p.sadd(key, members));
+    }
+
+    public Response<Long> srem(String key, String... members) {
+        return add(p -> p.srem(key, members));
+    }
+
+    public Response<Boolean> sismember(String key, String member) {
+        return add(p -> p.sismember(key, member));
+    }
+
+    public Response<Set<String>> smembers(String key) {
+        return add(p -> p.smembers(key));
+    }
+
+    public Response<Long> zadd(String key, double score, String member) {
+        return add(p -> p.zadd(key, score, member));
+    }
+
+    public Response<Long> zadd(String key, Map<String, Double> scoreMembers) {
+        return add(p -> p.zadd(key, scoreMembers));
+    }
+
+    public Response<Double> zincrby(String key, double score, String member) {
+        return add(p -> p.zincrby(key, score, member));
+    }
+
+    public Response<Double> zscore(String key, String member) {
+        return add(p -> p.zscore(key, member));
+    }
+
+    public Response<Long> zrem(String key, String... members) {
+        return add(p -> p.zrem(key, members));
+    }
+
+    /**
+     * 使用批量执行接口(接口可用lamba表达式)
+     */
+    public interface JedisBatchContent {
+
+        void batch(JedisBatch b);
+    }
+}
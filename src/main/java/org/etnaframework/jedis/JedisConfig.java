@@ -4,6 +4,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.etnaframework.core.logging.Log;
+import org.etnaframework.core.spring.annotation.OnJvmShutdown;
 import org.etnaframework.core.util.HumanReadableUtils;
 import org.etnaframework.core.util.ThreadUtils;
 import org.slf4j.Logger;
@@ -168,6 +169,21 @@ public class JedisConfig implements InitializingBean {
         log.info("JedisConfig for " + host + ":" + port + " inited [" + HumanReadableUtils.timeSpan(System.currentTimeMillis() - start) + "]");
     }
 
+    /**
+     * 停机时停止各库的分布式锁解锁广播订阅
+     */
+    @OnJvmShutdown
+    protected void closeLockSubscribers() {
+        if (null == jedisTemplates) {
+            return;
+        }
+        for (JedisTemplate jt : jedisTemplates) {
+            if (null != jt) {
+                jt.closeLockSubscriber();
+            }
+        }
+    }
+
     /**
      * 获取下标对应库的{@link JedisTemplate}，不检查下标，请调用方自行确保不会越界
      */
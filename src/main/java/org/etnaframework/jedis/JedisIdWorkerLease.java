@@ -0,0 +1,203 @@
+package org.etnaframework.jedis;
+
+import java.io.Closeable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.etnaframework.core.logging.Log;
+import org.etnaframework.core.util.NetUtils;
+import org.etnaframework.core.util.SystemInfo;
+import org.etnaframework.core.util.TimebasedIdGenerator;
+import org.slf4j.Logger;
+
+/**
+ * <pre>
+ * 从redis租用{@link TimebasedIdGenerator}的实例编号，集群部署时不需要给每个实例单独配置编号
+ *
+ * 1、每个编号对应一个key（idWorker:名称:编号），值为租用的实例，通过SET NX PX租用，从随机的编号开始找第一个空闲的
+ * 2、每隔租期的1/3续期一次，续期成功后把有效期（发出续期请求的时间+租期）设置给生成器，生成器只生成时间早于有效期的id，
+ *    redis上的key不会比有效期更早过期，所以编号被其他实例租用之前，本实例已经不再使用它
+ * 3、续期时发现编号已被其他实例租用（如长时间GC、网络断开导致过期），马上重新租用一个新的编号；redis出错时保留原来的有效期，到期后生成id会抛出异常
+ * 4、和{@link org.etnaframework.plugin.cron.CronCluster}一样，依赖各实例的时间同步
+ *
+ * 使用示例：
+ *
+ *         TimebasedIdGenerator gen = new TimebasedIdGenerator(3, 2, 2, 0, "yyyyMMddHHmmss"); // 精确到0.1秒，每个时间片100个序号，最多100个实例
+ *         JedisIdWorkerLease lease = new JedisIdWorkerLease(jedisConfig, "order", gen, 30000);
+ *         lease.start(ThreadUtils.getWatchdog());
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class JedisIdWorkerLease implements Closeable {
+
+    private static final Logger log = Log.getLogger();
+
+    /** key的前缀 */
+    public static final String KEY_PREFIX = "idWorker:";
+
+    // @formatter:off
+    /** 续期，编号仍是本实例的才续 */
+    private static final JedisScript RENEW_SCRIPT = new JedisScript(
+        "if (redis.call('get', KEYS[1]) == ARGV[1]) then " +
+        "   redis.call('pexpire', KEYS[1], ARGV[2]); " +
+        "   return 1; " +
+        "end; " +
+        "return 0;");
+
+    /** 归还，编号仍是本实例的才删除 */
+    private static final JedisScript RELEASE_SCRIPT = new JedisScript(
+        "if (redis.call('get', KEYS[1]) == ARGV[1]) then " +
+        "   return redis.call('del', KEYS[1]); " +
+        "end; " +
+        "return 0;");
+    // @formatter:on
+
+    private final JedisTemplate jedisTemplate;
+
+    private final String keyPrefix;
+
+    private final TimebasedIdGenerator generator;
+
+    private final long leaseMs;
+
+    /** 本实例的标识 */
+    private final String owner;
+
+    /** 当前租用的编号，没有时为-1 */
+    private volatile int workerId = -1;
+
+    private ScheduledFuture<?> renewFuture;
+
+    /**
+     * @param name 名称，不同用途的id生成器使用不同的名称，编号各自独立
+     * @param generator 租到的编号设置给这个生成器，编号的范围由生成器的workerLen决定
+     * @param leaseMs 租期，redis或网络出问题超过这个时间后生成器将不可用
+     */
+    public JedisIdWorkerLease(JedisConfig jedisConfig, String name, TimebasedIdGenerator generator, long leaseMs) {
+        if (generator.getWorkerLen() <= 0) {
+            throw new IllegalArgumentException("生成器没有实例编号（workerLen=0）: " + generator);
+        }
+        this.keyPrefix = KEY_PREFIX + name + ":";
+        this.jedisTemplate = jedisConfig.getTemplateByKey(keyPrefix); // 同一个名称的所有编号放在同一个redis上
+        this.generator = generator;
+        this.leaseMs = leaseMs;
+        this.owner = NetUtils.getLocalSampleIP() + ":" + SystemInfo.PID + ":" + Integer.toHexString(System.identityHashCode(this));
+    }
+
+    /**
+     * 租用编号，然后定时续期，没有空闲的编号时抛出{@link IllegalStateException}
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        if (null != renewFuture) {
+            return;
+        }
+        if (!acquire()) {
+            throw new IllegalStateException(keyPrefix + "没有空闲的实例编号，共" + maxWorkers() + "个");
+        }
+        long period = Math.max(1, leaseMs / 3);
+        renewFuture = scheduler.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private int maxWorkers() {
+        return (int) TimebasedIdGenerator.DECIMAL_SHIFT_BASE[generator.getWorkerLen()];
+    }
+
+    private String keyOf(int id) {
+        return keyPrefix + id;
+    }
+
+    /**
+     * 从随机的编号开始找第一个空闲的编号租用
+     */
+    private boolean acquire() {
+        int max = maxWorkers();
+        int start = ThreadLocalRandom.current()
+                                     .nextInt(max);
+        long begin = System.currentTimeMillis();
+        int id = jedisTemplate.execute(jedis -> {
+            for (int i = 0; i < max; i++) {
+                int candidate = (start + i) % max;
+                if ("OK".equals(jedis.set(keyOf(candidate), owner, "NX", "PX", leaseMs))) {
+                    return candidate;
+                }
+            }
+            return -1;
+        });
+        if (id < 0) {
+            return false;
+        }
+        workerId = id;
+        generator.setWorker(id, begin + leaseMs);
+        log.info("{} acquired id worker {}{}", owner, keyPrefix, id);
+        return true;
+    }
+
+    /**
+     * 续期，编号已被其他实例租用时重新租用，和{@link #close()}互斥，防止归还后又被续期
+     */
+    synchronized void renew() {
+        int id = workerId;
+        if (id < 0) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        try {
+            long r = jedisTemplate.execute(jedis -> {
+                return (Long) RENEW_SCRIPT.eval(jedis, 1, keyOf(id), owner, String.valueOf(leaseMs));
+            });
+            if (r == 1) {
+                generator.setWorker(id, begin + leaseMs);
+                return;
+            }
+            log.warn("{} lost id worker {}{}, acquire another one", owner, keyPrefix, id);
+            if (!acquire()) {
+                log.error("{} no free id worker for {}, generator will stop at {}", owner, keyPrefix, generator.getWorkerValidUntil());
+            }
+        } catch (Throwable ex) {
+            log.warn("{} renew id worker {}{} failed", owner, keyPrefix, id, ex);
+        }
+    }
+
+    /**
+     * 当前租用的编号，没有时为-1
+     */
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * 停止续期并归还编号，之后生成器将不可用
+     */
+    @Override
+    public synchronized void close() {
+        if (null != renewFuture) {
+            renewFuture.cancel(false);
+            renewFuture = null;
+        }
+        int id = workerId;
+        if (id < 0) {
+            return;
+        }
+        generator.setWorker(id, System.currentTimeMillis());
+        workerId = -1;
+        try {
+            jedisTemplate.execute(jedis -> {
+                RELEASE_SCRIPT.eval(jedis, 1, keyOf(id), owner);
+            });
+        } catch (Throwable ex) {
+            log.warn("{} release id worker {}{} failed", owner, keyPrefix, id, ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JedisIdWorkerLease[key=" + keyPrefix + workerId + ", owner=" + owner + ", validUntil=" + generator.getWorkerValidUntil() + "]";
+    }
+}
@@ -4,13 +4,11 @@ import java.io.Closeable;
 import java.io.Serializable;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import org.etnaframework.core.util.DatetimeUtils.Datetime;
@@ -19,7 +17,6 @@ import org.etnaframework.core.util.SystemInfo;
 import org.etnaframework.core.util.ThreadUtils;
 import org.etnaframework.core.util.ThreadUtils.NamedThreadFactory;
 import com.google.common.collect.Maps;
-import redis.clients.jedis.JedisPubSub;
 
 /**
  * 分布式同步锁(可重入锁Reentrant Lock)
@@ -28,11 +25,13 @@ import redis.clients.jedis.JedisPubSub;
  * 获取锁后，如果没有指定自动释放时间，则默认自动释放时间是3秒，
  * 如果该线程超过自动释放时间还活着，则会自动给释放时间续时，达到长期占有锁
  *
- * 利用redis执行lua脚本的原子性进行锁的判断
+ * 利用redis执行lua脚本的原子性进行锁的判断，脚本通过EVALSHA执行，参考{@link JedisScript}
+ *
+ * 等待锁的线程不再各自订阅解锁广播，而是共用{@link JedisTemplate}的一个模式订阅，参考{@link JedisLockSubscriber}
  *
  * Tips:
  * 1.该实例不能跨线程使用！
- * 2.redis的连接池数量需要足够大，否则连接池会被订阅线程占满，如果并发度足够高的话
+ * 2.每个JedisTemplate会固定占用连接池的一个连接用于订阅解锁广播（第一次有线程等待锁时才开始占用）
  *
  * @see <a href="https://github.com/redisson/redisson/blob/master/redisson/src/main/java/org/redisson/RedissonLock.java">RedissonLock</a>
  *
@@ -45,21 +44,69 @@ public class JedisLock implements Lock, Serializable, Closeable {
     /** 默认的释放锁时间 */
     static final long DEFAULT_LOCK_LEASE_MS = Datetime.MILLIS_PER_SECOND * 3;
 
-    private static final String unlockMessage = "0";
+    private static final String unlockMessage = JedisLockSubscriber.UNLOCK_MESSAGE;
+
+    // @formatter:off
+    /** 给锁续时间的脚本 */
+    private static final JedisScript RENEW_SCRIPT = new JedisScript(
+        "if (redis.call('hexists', KEYS[1], ARGV[2]) == 1) then " + // 如果锁是该线程的，就续时间
+        "   redis.call('pexpire', KEYS[1], ARGV[1]); " +
+        "   return 1; " +
+        "end; " +
+        "return 0;");
+
+    /** 尝试获得锁的脚本 */
+    private static final JedisScript LOCK_SCRIPT = new JedisScript(
+        "if (redis.call('exists', KEYS[1]) == 0) then " +             // 如果锁不存在，则获得锁
+        "   redis.call('hset', KEYS[1], ARGV[2], 1); " +
+        "   redis.call('pexpire', KEYS[1], ARGV[1]); " +
+        "   return nil; " +
+        "end; " +
+        "if (redis.call('hexists', KEYS[1], ARGV[2]) == 1) then " +   // 如果锁存在，而且是同线程请求的锁，可以获取锁
+        "   redis.call('hincrby', KEYS[1], ARGV[2], 1); " +           // 锁获得+1
+        "   redis.call('pexpire', KEYS[1], ARGV[1]); " +
+        "   return nil; " +
+        "end; " +
+        "return redis.call('pttl', KEYS[1]);");                       // 如果锁存在，则返回过期时间，单位毫秒
+
+    /** 释放锁的脚本 */
+    private static final JedisScript UNLOCK_SCRIPT = new JedisScript(
+        "if (redis.call('exists', KEYS[1]) == 0) then " +                 // 如果锁不存在，解锁成功
+        "   redis.call('publish', KEYS[2], ARGV[1]); " +                  // 广播解锁成功
+        "   return 1; " +                                                 // 返回解锁成功
+        "end;" +
+        "if (redis.call('hexists', KEYS[1], ARGV[3]) == 0) then " +       // 如果锁存在，本线程获得锁数为0，则返回null，该线程未获得锁
+        "   return nil;" +
+        "end; " +
+        "local counter = redis.call('hincrby', KEYS[1], ARGV[3], -1); " + // 该线程获得锁-1
+        "if (counter > 0) then " +
+        "   redis.call('pexpire', KEYS[1], ARGV[2]); " +                  // 如果该线程还获得锁，重置过期时间
+        "return 0; " +                                                    // 返回解锁失败，锁还在
+        "else " +
+        "   redis.call('del', KEYS[1]); " +                               // 如果该线程已全部释放锁，删除锁key
+        "   redis.call('publish', KEYS[2], ARGV[1]); " +                  // 广播解锁成功
+        "   return 1; "+                                                  // 返回解锁成功
+        "end; " +
+        "return nil;");                                                   // 否则肯定不是该线程上的锁，不给解
+
+    /** 强行解锁的脚本 */
+    private static final JedisScript FORCE_UNLOCK_SCRIPT = new JedisScript(
+        "if (redis.call('del', KEYS[1]) == 1) then " +
+        "   redis.call('publish', KEYS[2], ARGV[1]); " +
+        "   return 1 " +
+        "else " +
+        "   return 0 " +
+        "end");
+    // @formatter:on
 
     /** 锁的定时刷新Map，如果没有指定自动释放时间的锁，只要线程还活着，就要让锁一直持有，直到解锁。 */
     private static final ConcurrentMap<String, ScheduledFuture> expirationRenewalMap = Maps.newConcurrentMap();
 
-    /** 订阅线程池 */
-    private static final Executor executor = Executors.newCachedThreadPool(
-        new NamedThreadFactory("JedisLock(Sub)", Thread.NORM_PRIORITY));
-
     /** 刷新锁时间线程池 */
     private static ScheduledExecutorService cron = Executors.newScheduledThreadPool(SystemInfo.CORE_PROCESSOR_NUM,
         new NamedThreadFactory("JedisLock(Sche)", Thread.MAX_PRIORITY, true));
 
     static {
-        ThreadUtils.addThreadPool(executor);
         ThreadUtils.addThreadPool(cron);
     }
 
@@ -74,17 +121,10 @@ public class JedisLock implements Lock, Serializable, Closeable {
     /** 锁名 */
     private String name;
 
-    /** 是否在订阅广播 */
-    private AtomicBoolean isSubscribed = new AtomicBoolean(false);
-
-    /** 广播消息处理器 */
-    private PubSub pubSub;
-
     public JedisLock(String name, JedisTemplate jedisTemplate) {
         this.name = name;
         this.internalLockLeaseTime = DEFAULT_LOCK_LEASE_MS;
         this.id = jedisTemplate.id;
-        this.pubSub = new PubSub();
         this.jedisTemplate = jedisTemplate;
     }
 
@@ -99,7 +139,7 @@ public class JedisLock implements Lock, Serializable, Closeable {
      * 锁的广播频道名
      */
     private String getChannelName() {
-        return "jedis_lock__channel:" + getLockName();
+        return JedisLockSubscriber.CHANNEL_PREFIX + getLockName();
     }
 
     /**
@@ -209,20 +249,10 @@ public class JedisLock implements Lock, Serializable, Closeable {
 
         // 否则未获得锁，尝试获得锁
 
-        // 创建了另一个线程进行广播监听
-        executor.execute(() -> {
-            do {
-                try {
-                    subscribe();
-                } catch (Exception ignore) {
-                }
-                // 持续订阅，直到取消订阅
-            } while (isSubscribed.get());
-        });
-
-        // 等订阅成功后再往下走, 预防错过了消息广播
-        pubSub.getSubscribeLatch()
-              .tryAcquire(DEFAULT_LOCK_LEASE_MS, TimeUnit.MILLISECONDS);
+        // 登记到共用的订阅器，等订阅成功后再往下走, 预防错过了消息广播
+        JedisLockSubscriber subscriber = jedisTemplate.getLockSubscriber();
+        String channel = getChannelName();
+        Semaphore latch = subscriber.register(channel, DEFAULT_LOCK_LEASE_MS);
         // 这里会阻塞本线程
         try {
             while (true) {
@@ -236,36 +266,14 @@ public class JedisLock implements Lock, Serializable, Closeable {
                     // 等待获得锁方法一：订阅广播，等待解锁
                     // 等待获得锁方法二：等待超时，自行尝试获取锁，万一取到了呢
                     // 防止获得锁的线程挂了没有广播释放锁
-                    pubSub.getLatch()
-                          .tryAcquire(ttl, TimeUnit.MILLISECONDS);
+                    subscriber.await(latch, ttl);
                 } else {
-                    pubSub.getLatch()
-                          .acquire();
+                    subscriber.await(latch, -1);
                 }
             }
         } finally {
-            // 获得锁后，取消订阅
-            unsubscribe();
-        }
-    }
-
-    /**
-     * 订阅广播
-     */
-    private void subscribe() {
-        jedisTemplate.execute(jedis -> {
-            isSubscribed.set(true);
-            jedis.subscribe(pubSub, getChannelName());
-        });
-    }
-
-    /**
-     * 取消广播
-     */
-    private void unsubscribe() {
-        if (isSubscribed.get()) {
-            isSubscribed.set(false);
-            this.pubSub.unsubscribe();
+            // 获得锁后，取消登记
+            subscriber.unregister(channel);
         }
     }
 
@@ -293,19 +301,9 @@ public class JedisLock implements Lock, Serializable, Closeable {
         }
 
         ScheduledFuture schedule = cron.schedule(() -> {
-
-            // @formatter:off
-            String script=
-                "if (redis.call('hexists', KEYS[1], ARGV[2]) == 1) then " + // 如果锁是该线程的，就续时间
-                "   redis.call('pexpire', KEYS[1], ARGV[1]); " +
-                "   return 1; " +
-                "end; " +
-                "return 0;";
-            // @formatter:on
             jedisTemplate.execute(jedis -> {
                 expirationRenewalMap.remove(getEntryName());
-                Object r = jedis.eval(script, 1, getLockName(), "" + internalLockLeaseTime,
-                    getLockThreadName(threadId));
+                Object r = RENEW_SCRIPT.eval(jedis, 1, getLockName(), "" + internalLockLeaseTime, getLockThreadName(threadId));
                 if (StringTools.getBool(r, false)) {
                     // 如果续时间成功，则继续续下去。
                     scheduleExpirationRenewal(threadId);
@@ -336,24 +334,8 @@ public class JedisLock implements Lock, Serializable, Closeable {
      */
     private Long tryLockInner(long leaseTime, TimeUnit unit, long threadId) {
         internalLockLeaseTime = unit.toMillis(leaseTime);
-
-        // @formatter:off
-        String script=
-            "if (redis.call('exists', KEYS[1]) == 0) then " +             // 如果锁不存在，则获得锁
-            "   redis.call('hset', KEYS[1], ARGV[2], 1); " +
-            "   redis.call('pexpire', KEYS[1], ARGV[1]); " +
-            "   return nil; " +
-            "end; " +
-            "if (redis.call('hexists', KEYS[1], ARGV[2]) == 1) then " +   // 如果锁存在，而且是同线程请求的锁，可以获取锁
-            "   redis.call('hincrby', KEYS[1], ARGV[2], 1); " +           // 锁获得+1
-            "   redis.call('pexpire', KEYS[1], ARGV[1]); " +
-            "   return nil; " +
-            "end; " +
-            "return redis.call('pttl', KEYS[1]);";                        // 如果锁存在，则返回过期时间，单位毫秒
-        // @formatter:on
-
         return jedisTemplate.execute(jedis -> {
-            Object r = jedis.eval(script, 1, getLockName(), "" + internalLockLeaseTime, getLockThreadName(threadId));
+            Object r = LOCK_SCRIPT.eval(jedis, 1, getLockName(), "" + internalLockLeaseTime, getLockThreadName(threadId));
             return StringTools.getLong(r, null);
         });
     }
@@ -364,29 +346,8 @@ public class JedisLock implements Lock, Serializable, Closeable {
      * @return null:该线程未获得此锁
      */
     private Boolean unlockInner(long threadId) {
-        // @formatter:off
-       String script=
-            "if (redis.call('exists', KEYS[1]) == 0) then " +                 // 如果锁不存在，解锁成功
-            "   redis.call('publish', KEYS[2], ARGV[1]); " +                  // 广播解锁成功
-            "   return 1; " +                                                 // 返回解锁成功
-            "end;" +
-            "if (redis.call('hexists', KEYS[1], ARGV[3]) == 0) then " +       // 如果锁存在，本线程获得锁数为0，则返回null，该线程未获得锁
-            "   return nil;" +
-            "end; " +
-            "local counter = redis.call('hincrby', KEYS[1], ARGV[3], -1); " + // 该线程获得锁-1
-            "if (counter > 0) then " +
-            "   redis.call('pexpire', KEYS[1], ARGV[2]); " +                  // 如果该线程还获得锁，重置过期时间
-            "return 0; " +                                                    // 返回解锁失败，锁还在
-            "else " +
-            "   redis.call('del', KEYS[1]); " +                               // 如果该线程已全部释放锁，删除锁key
-            "   redis.call('publish', KEYS[2], ARGV[1]); " +                  // 广播解锁成功
-            "   return 1; "+                                                  // 返回解锁成功
-            "end; " +
-            "return nil;";                                                    // 否则肯定不是该线程上的锁，不给解
-       // @formatter:on
-
         return jedisTemplate.execute(jedis -> {
-            Object r = jedis.eval(script, 2, getLockName(), getChannelName(), unlockMessage, "" + internalLockLeaseTime,
+            Object r = UNLOCK_SCRIPT.eval(jedis, 2, getLockName(), getChannelName(), unlockMessage, "" + internalLockLeaseTime,
                 getLockThreadName(threadId));
             return StringTools.getBool(r, null);
         });
@@ -397,17 +358,8 @@ public class JedisLock implements Lock, Serializable, Closeable {
      */
     public boolean forceUnlock() {
         cancelExpirationRenewal();
-        // @formatter:off
-        String script=
-            "if (redis.call('del', KEYS[1]) == 1) then " +
-            "   redis.call('publish', KEYS[2], ARGV[1]); " +
-            "   return 1 " +
-            "else " +
-            "   return 0 " +
-            "end";
-        // @formatter:on
         return jedisTemplate.execute(jedis -> {
-            Object r = jedis.eval(script, 2, getLockName(), getChannelName(), unlockMessage);
+            Object r = FORCE_UNLOCK_SCRIPT.eval(jedis, 2, getLockName(), getChannelName(), unlockMessage);
             return StringTools.getBool(r, false);
         });
     }
@@ -439,20 +391,10 @@ public class JedisLock implements Lock, Serializable, Closeable {
         }
 
         current = System.currentTimeMillis();
-        // 创建了另一个线程进行广播监听
-        executor.execute(() -> {
-            do {
-                try {
-                    subscribe();
-                } catch (Exception ignore) {
-                }
-                // 持续订阅，直到取消订阅
-            } while (isSubscribed.get());
-        });
-
-        // 等订阅成功后再往下走, 预防错过了消息广播
-        pubSub.getSubscribeLatch()
-              .tryAcquire(DEFAULT_LOCK_LEASE_MS, TimeUnit.MILLISECONDS);
+        // 登记到共用的订阅器，等订阅成功后再往下走, 预防错过了消息广播
+        JedisLockSubscriber subscriber = jedisTemplate.getLockSubscriber();
+        String channel = getChannelName();
+        Semaphore latch = subscriber.register(channel, Math.min(time, DEFAULT_LOCK_LEASE_MS));
         // 这里会阻塞本线程
         try {
             time -= (System.currentTimeMillis() - current);
@@ -482,12 +424,10 @@ public class JedisLock implements Lock, Serializable, Closeable {
                 currentTime = System.currentTimeMillis();
                 if (ttl >= 0 && ttl < time) {
                     // 按锁的超时时间等待
-                    pubSub.getLatch()
-                          .tryAcquire(ttl, TimeUnit.MILLISECONDS);
+                    subscriber.await(latch, ttl);
                 } else {
                     // 按等待剩余时间等待
-                    pubSub.getLatch()
-                          .tryAcquire(time, TimeUnit.MILLISECONDS);
+                    subscriber.await(latch, time);
                 }
 
                 // 检测是否等待超时
@@ -497,7 +437,7 @@ public class JedisLock implements Lock, Serializable, Closeable {
                 }
             }
         } finally {
-            unsubscribe();
+            subscriber.unregister(channel);
         }
     }
 
@@ -549,41 +489,4 @@ public class JedisLock implements Lock, Serializable, Closeable {
         } catch (Exception ignore) {
         }
     }
-
-    /**
-     * 订阅广播
-     */
-    private class PubSub extends JedisPubSub {
-
-        /** 是否可以尝试获取锁的信号量，跨线程使用 */
-        private final Semaphore latch = new Semaphore(0);
-
-        /** 是否已订阅成功 */
-        private final Semaphore subscribeLatch = new Semaphore(0);
-
-        // 当接收到消息
-        @Override
-        public void onMessage(String channel, String message) {
-
-            if (!unlockMessage.equals(message)) {
-                // 不是释放锁消息，不管
-                return;
-            }
-            // 接收到一个释放锁的消息，释放一个信号量，让锁的线程尝试获取
-            latch.release();
-        }
-
-        @Override
-        public void onSubscribe(String channel, int subscribedChannels) {
-            subscribeLatch.release();
-        }
-
-        public Semaphore getLatch() {
-            return latch;
-        }
-
-        public Semaphore getSubscribeLatch() {
-            return subscribeLatch;
-        }
-    }
 }
@@ -0,0 +1,213 @@
+package org.etnaframework.jedis;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.etnaframework.core.logging.Log;
+import org.etnaframework.core.util.ThreadUtils;
+import org.etnaframework.core.util.ThreadUtils.NamedThreadFactory;
+import org.slf4j.Logger;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * <pre>
+ * 分布式锁的解锁广播订阅器，每个{@link JedisTemplate}只有一个，由本JVM中所有等待锁的线程共用
+ *
+ * 1、只用一个线程和一个连接，通过模式订阅（PSUBSCRIBE）收听所有锁的解锁广播，等待锁的线程数再多也不会占满线程池和redis连接池
+ * 2、等待锁的线程在等待表中按广播频道登记，收到某个频道的解锁广播时，唤醒一个等待该频道的线程去尝试获取锁
+ * 3、订阅连接断开时会唤醒所有等待的线程自行尝试获取锁（断开期间可能错过了解锁广播），然后自动重新订阅，重新订阅成功前等待的线程改为定时轮询
+ * 4、停机时调用{@link #close()}退订并关闭订阅线程，之后等待锁的线程都改为定时轮询
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+final class JedisLockSubscriber extends JedisPubSub {
+
+    private static final Logger log = Log.getLogger();
+
+    /** 锁的广播频道名前缀 */
+    static final String CHANNEL_PREFIX = "jedis_lock__channel:";
+
+    /** 解锁广播的消息内容 */
+    static final String UNLOCK_MESSAGE = "0";
+
+    /** 订阅连接断开后，重新订阅前的等待时间 */
+    private static final long RESUBSCRIBE_INTERVAL_MS = 1000;
+
+    /** 没有订阅成功时，等待锁的线程自行尝试获取锁的间隔 */
+    static final long POLL_INTERVAL_MS = 200;
+
+    private final JedisTemplate jedisTemplate;
+
+    /** 等待表，广播频道 -&gt; 等待该频道的线程 */
+    private final ConcurrentHashMap<String, Waiters> waiters = new ConcurrentHashMap<>();
+
+    /** 订阅线程，第一次有线程等待锁时才启动 */
+    private ExecutorService executor;
+
+    /** 是否已订阅成功 */
+    private volatile boolean subscribed;
+
+    /** 是否已关闭 */
+    private volatile boolean closed;
+
+    JedisLockSubscriber(JedisTemplate jedisTemplate) {
+        this.jedisTemplate = jedisTemplate;
+    }
+
+    /**
+     * 登记等待某个频道的解锁广播，返回时已确保订阅成功（或已超时），之后再尝试获取锁就不会错过广播了，等待结束后必须调用{@link #unregister(String)}
+     */
+    Semaphore register(String channel, long timeoutMs) throws InterruptedException {
+        Waiters w = waiters.compute(channel, (k, v) -> {
+            if (null == v) {
+                v = new Waiters();
+            }
+            v.count++;
+            return v;
+        });
+        if (!subscribed) {
+            try {
+                awaitSubscribed(timeoutMs);
+            } catch (InterruptedException e) {
+                unregister(channel);
+                throw e;
+            }
+        }
+        return w.latch;
+    }
+
+    /**
+     * 取消登记，该频道没有等待的线程时从等待表中移除
+     */
+    void unregister(String channel) {
+        waiters.computeIfPresent(channel, (k, v) -> --v.count > 0 ? v : null);
+    }
+
+    /**
+     * 等待解锁广播，最多等待waitMs毫秒，小于0表示一直等待；没有订阅成功时收不到广播，最多等待{@link #POLL_INTERVAL_MS}后就返回，由调用方再尝试获取锁
+     */
+    void await(Semaphore latch, long waitMs) throws InterruptedException {
+        if (!subscribed) {
+            waitMs = waitMs < 0 ? POLL_INTERVAL_MS : Math.min(waitMs, POLL_INTERVAL_MS);
+        }
+        if (waitMs < 0) {
+            latch.acquire();
+        } else {
+            latch.tryAcquire(waitMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 退订并关闭订阅线程，释放占用的redis连接，之后等待锁的线程都改为定时轮询
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (subscribed) {
+            try {
+                punsubscribe();
+            } catch (Exception ex) {
+                log.warn("JedisLock unsubscribe failed", ex);
+            }
+        }
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+        notifyAll();
+    }
+
+    /**
+     * 当前等待锁的频道数
+     */
+    int getWaitingChannels() {
+        return waiters.size();
+    }
+
+    private synchronized void awaitSubscribed(long timeoutMs) throws InterruptedException {
+        if (closed) {
+            return;
+        }
+        if (null == executor) {
+            executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("JedisLock(Sub)", Thread.NORM_PRIORITY, true));
+            ThreadUtils.addThreadPool(executor);
+            executor.execute(this::subscribeLoop);
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long remain = timeoutMs;
+        while (!subscribed && !closed && remain > 0) {
+            wait(remain);
+            remain = deadline - System.currentTimeMillis();
+        }
+    }
+
+    private void subscribeLoop() {
+        while (!closed && !Thread.currentThread()
+                                 .isInterrupted()) {
+            try {
+                jedisTemplate.execute(jedis -> {
+                    jedis.psubscribe(this, CHANNEL_PREFIX + "*");
+                });
+            } catch (Exception ex) {
+                if (!closed) {
+                    log.warn("JedisLock subscription lost, resubscribe in {}ms", RESUBSCRIBE_INTERVAL_MS, ex);
+                }
+            }
+            subscribed = false;
+            // 断开期间可能错过了解锁广播，唤醒所有等待的线程自行尝试获取锁
+            for (Waiters w : waiters.values()) {
+                w.latch.release(w.count);
+            }
+            if (closed) {
+                return;
+            }
+            try {
+                Thread.sleep(RESUBSCRIBE_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onPSubscribe(String pattern, int subscribedChannels) {
+        synchronized (this) {
+            if (closed) { // 订阅成功前已关闭，close()时没有退订
+                punsubscribe();
+                return;
+            }
+            subscribed = true;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void onPMessage(String pattern, String channel, String message) {
+        if (!UNLOCK_MESSAGE.equals(message)) {
+            // 不是释放锁消息，不管
+            return;
+        }
+        Waiters w = waiters.get(channel);
+        if (null != w) {
+            // 接收到一个释放锁的消息，释放一个信号量，让一个等待的线程尝试获取，没获取到的话它会继续等待
+            w.latch.release();
+        }
+    }
+
+    /**
+     * 等待同一个频道的线程
+     */
+    private static final class Waiters {
+
+        /** 是否可以尝试获取锁的信号量 */
+        final Semaphore latch = new Semaphore(0);
+
+        /** 等待的线程数，只在ConcurrentHashMap.compute中修改 */
+        int count;
+    }
+}
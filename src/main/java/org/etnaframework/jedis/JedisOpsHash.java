@@ -1,10 +1,13 @@
 package org.etnaframework.jedis;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
 
@@ -116,6 +119,29 @@ public class JedisOpsHash extends JedisOps {
         }
     }
 
+    /**
+     * <pre>
+     * 获取多个哈希表的所有域和值，每个key一个HGETALL命令，以pipeline方式发送，每{@link JedisTemplate#setBatchSize(int)}个命令一次网络往返
+     *
+     * 返回的map按传入的key的顺序排列，不存在的key对应的是空的map
+     * </pre>
+     *
+     * @see #hgetAll(String)
+     */
+    public Map<String, Map<String, String>> hgetAllMulti(Collection<String> keys) {
+        Map<String, Response<Map<String, String>>> responses = new LinkedHashMap<>(keys.size() * 4 / 3 + 1);
+        jedisTemplate.batch(b -> {
+            for (String key : keys) {
+                responses.put(key, b.hgetAll(key));
+            }
+        });
+        Map<String, Map<String, String>> result = new LinkedHashMap<>(responses.size() * 4 / 3 + 1);
+        for (Entry<String, Response<Map<String, String>>> e : responses.entrySet()) {
+            result.put(e.getKey(), e.getValue().get());
+        }
+        return result;
+    }
+
     /**
      * <pre>
      * INCRBY key increment
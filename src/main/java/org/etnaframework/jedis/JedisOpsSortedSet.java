@@ -1,8 +1,13 @@
 package org.etnaframework.jedis;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.Tuple;
@@ -120,6 +125,43 @@ public class JedisOpsSortedSet extends JedisOps {
         }
     }
 
+    /**
+     * <pre>
+     * 向有序集中添加大量成员，按{@link JedisTemplate#setBatchSize(int)}把成员分成多组，每组一个ZADD命令，以pipeline方式一次发送
+     *
+     * 避免一个ZADD命令包含太多成员导致redis长时间阻塞
+     * </pre>
+     *
+     * @return 被成功添加的新成员的数量，不包括那些被更新的、已经存在的成员
+     *
+     * @see #zadd(String, Map)
+     */
+    public long zaddBatch(String key, Map<String, Double> scoreMembers) {
+        if (scoreMembers.isEmpty()) {
+            return 0;
+        }
+        int size = jedisTemplate.getBatchSize();
+        List<Response<Long>> responses = new ArrayList<>();
+        jedisTemplate.batch(b -> {
+            Map<String, Double> chunk = new HashMap<>(Math.min(size, scoreMembers.size()) * 4 / 3 + 1);
+            for (Entry<String, Double> e : scoreMembers.entrySet()) {
+                chunk.put(e.getKey(), e.getValue());
+                if (chunk.size() >= size) {
+                    responses.add(b.zadd(key, chunk));
+                    chunk = new HashMap<>(size * 4 / 3 + 1);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                responses.add(b.zadd(key, chunk));
+            }
+        });
+        long added = 0;
+        for (Response<Long> r : responses) {
+            added += r.get();
+        }
+        return added;
+    }
+
     /**
      * <pre>
      * ZADD key score member [[score member] [score member] ...]
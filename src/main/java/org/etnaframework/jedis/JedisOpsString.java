@@ -1,13 +1,17 @@
 package org.etnaframework.jedis;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.etnaframework.core.util.JsonObjectUtils;
 import org.etnaframework.core.util.KeyValueGetter.DbMap;
 import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Iterables;
 import redis.clients.jedis.BitOP;
 import redis.clients.jedis.BitPosParams;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
 
 /**
  * redis字符串操作集合
@@ -478,6 +482,32 @@ public class JedisOpsString extends JedisOps {
         }
     }
 
+    /**
+     * <pre>
+     * 获取大量key的值，按{@link JedisTemplate#setBatchSize(int)}把key分成多组，每组一个MGET命令，以pipeline方式一次发送
+     *
+     * 不存在的key对应的值为null，返回的列表和传入的key一一对应
+     * </pre>
+     *
+     * @see #mget(String...)
+     */
+    public List<String> mgetAll(Collection<String> keys) {
+        List<String> result = new ArrayList<>(keys.size());
+        if (keys.isEmpty()) {
+            return result;
+        }
+        List<Response<List<String>>> responses = new ArrayList<>();
+        jedisTemplate.batch(b -> {
+            for (List<String> chunk : Iterables.partition(keys, jedisTemplate.getBatchSize())) {
+                responses.add(b.mget(chunk.toArray(new String[chunk.size()])));
+            }
+        });
+        for (Response<List<String>> r : responses) {
+            result.addAll(r.get());
+        }
+        return result;
+    }
+
     /**
      * MSET key value [key value ...]
      *
@@ -20,7 +20,7 @@ public class JedisOpsTransaction extends JedisOps {
      * <pre>
      * 以pipeline方式发送命令
      * 当有大量数据需要插入的时候，使用pipeline的效率会非常高！
-     * 此方法只提供命令发送，不对redis回包返回或处理。
+     * 此方法只提供命令发送，不对redis回包返回或处理。如需获取结果，或命令数量很多需要分批发送，请使用{@link JedisTemplate#batch}
      *
      * 使用示例：
      *
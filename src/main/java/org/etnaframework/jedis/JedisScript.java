@@ -0,0 +1,58 @@
+package org.etnaframework.jedis;
+
+import org.etnaframework.core.util.StringTools;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * <pre>
+ * 通过EVALSHA执行的lua脚本，脚本内容只在redis节点第一次执行时发送一次
+ *
+ * 1、SHA1在本地计算好，每次执行只发送40字节的SHA1，不用每次都把整个脚本发送给redis再由redis重新计算SHA1
+ * 2、redis返回NOSCRIPT时（如redis重启、主从切换或执行了SCRIPT FLUSH），通过SCRIPT LOAD加载脚本后再执行一次
+ *
+ * 使用示例：
+ *
+ *         static final JedisScript INCR_IF_EXISTS = new JedisScript("if (redis.call('exists', KEYS[1]) == 1) then return redis.call('incr', KEYS[1]) end; return nil;");
+ *
+ *         jedisTemplate.execute(jedis -&gt; INCR_IF_EXISTS.eval(jedis, 1, key));
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public final class JedisScript {
+
+    private final String script;
+
+    private final String sha1;
+
+    public JedisScript(String script) {
+        this.script = script;
+        this.sha1 = StringTools.sha1AsHex(script);
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * 执行脚本，参数和{@link Jedis#eval(String, int, String...)}相同
+     */
+    public Object eval(Jedis jedis, int keyCount, String... params) {
+        try {
+            return jedis.evalsha(sha1, keyCount, params);
+        } catch (JedisDataException ex) {
+            if (null == ex.getMessage() || !ex.getMessage()
+                                              .startsWith("NOSCRIPT")) {
+                throw ex;
+            }
+        }
+        jedis.scriptLoad(script);
+        return jedis.evalsha(sha1, keyCount, params);
+    }
+}
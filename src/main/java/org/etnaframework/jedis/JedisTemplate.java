@@ -1,9 +1,12 @@
 package org.etnaframework.jedis;
 
+import java.util.List;
 import java.util.UUID;
+import org.etnaframework.jedis.JedisBatch.JedisBatchContent;
 import org.etnaframework.core.util.ThreadUtils;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
 /**
@@ -48,6 +51,9 @@ public class JedisTemplate {
     /** Jedis连接池 */
     protected JedisPool jedisPool;
 
+    /** 以pipeline方式批量执行时，每多少个命令（或批量操作时每个命令最多包含多少个key/成员）发送一次 */
+    private int batchSize = 1000;
+
     private JedisOpsKey key = new JedisOpsKey(this);
 
     private JedisOpsString string = new JedisOpsString(this);
@@ -74,10 +80,23 @@ public class JedisTemplate {
 
     private JedisOpsServer server = new JedisOpsServer(this);
 
+    /** 分布式锁的解锁广播订阅器，所有等待锁的线程共用 */
+    private final JedisLockSubscriber lockSubscriber = new JedisLockSubscriber(this);
+
     public JedisTemplate(JedisPool jedisPool) {
         this.jedisPool = jedisPool;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize > 0) {
+            this.batchSize = batchSize;
+        }
+    }
+
     /**
      * 带重试获取Jedis连接,提供完整的jedis功能。
      * 需要使用 try with resource 来进行自动归还连接池，例如：
@@ -140,6 +159,39 @@ public class JedisTemplate {
         }
     }
 
+    /**
+     * 以pipeline方式批量执行命令，只占用一次连接，每{@link #setBatchSize(int)}个命令才有一次网络往返，各命令的结果通过返回的{@link Response}获取
+     *
+     * 用法
+     * <pre>
+     *       List&lt;Response&lt;String&gt;&gt; values = new ArrayList&lt;&gt;();
+     *       jedisTemplate.batch(b -&gt; {
+     *           b.set("aa", "bb");
+     *           values.add(b.get("aa"));
+     *       });
+     *       values.get(0).get();
+     * </pre>
+     */
+    public void batch(final JedisBatchContent content) {
+        _batch(content, false);
+    }
+
+    /**
+     * 以pipeline方式批量执行命令，并按命令的顺序返回所有的结果，执行出错的命令对应的是异常对象，请参考{@link #batch(JedisBatchContent)}
+     */
+    public List<Object> batchAndReturnAll(final JedisBatchContent content) {
+        return _batch(content, true);
+    }
+
+    private List<Object> _batch(JedisBatchContent content, boolean returnAll) {
+        try (Jedis jedis = getJedis()) {
+            JedisBatch b = new JedisBatch(jedis.pipelined(), batchSize, returnAll);
+            content.batch(b);
+            b.flush();
+            return b.getResults();
+        }
+    }
+
     /**
      * 获取可重入锁
      *
@@ -177,6 +229,17 @@ public class JedisTemplate {
         return lock;
     }
 
+    JedisLockSubscriber getLockSubscriber() {
+        return lockSubscriber;
+    }
+
+    /**
+     * 停止分布式锁的解锁广播订阅，释放订阅占用的线程和连接，之后等待锁的线程改为定时轮询；连接池由创建方自行关闭
+     */
+    public void closeLockSubscriber() {
+        lockSubscriber.close();
+    }
+
     public JedisOpsKey key() {
         return key;
     }
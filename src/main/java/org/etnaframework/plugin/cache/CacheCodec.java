@@ -0,0 +1,19 @@
+package org.etnaframework.plugin.cache;
+
+import java.lang.reflect.Type;
+
+/**
+ * {@link LocalCacheRedisTier}中缓存值的编解码方式，需要能处理null
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public interface CacheCodec {
+
+    String encode(Object value);
+
+    /**
+     * @param type 缓存方法的返回值类型（含泛型信息）
+     */
+    Object decode(String data, Type type);
+}
@@ -0,0 +1,24 @@
+package org.etnaframework.plugin.cache;
+
+import java.lang.reflect.Type;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+
+/**
+ * 默认的缓存值编解码方式，使用fastjson按方法的返回值类型进行转换
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class DefaultCacheCodec implements CacheCodec {
+
+    @Override
+    public String encode(Object value) {
+        return JSON.toJSONString(value, SerializerFeature.DisableCircularReferenceDetect);
+    }
+
+    @Override
+    public Object decode(String data, Type type) {
+        return JSON.parseObject(data, type);
+    }
+}
@@ -15,10 +15,13 @@ public class DefaultCacheKeyMaker implements CacheKeyMaker {
 
     @Override
     public String generate(Object[] args) {
-        StringBuilder sb = new StringBuilder();
         if (null == args || args.length == 0) {
             return "";
         }
+        if (args.length == 1) { // 单个参数时不需要拼接，参数是字符串时直接使用，缓存命中时不产生新对象
+            return String.valueOf(args[0]);
+        }
+        StringBuilder sb = new StringBuilder();
         sb.append(args[0]);
         for (int i = 1; i < args.length; i++) {
             sb.append(joiner)
@@ -7,7 +7,11 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
@@ -17,6 +21,7 @@ import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.etnaframework.core.logging.Log;
 import org.etnaframework.core.spring.IgnoredPackages;
 import org.etnaframework.core.spring.SpringContext;
+import org.etnaframework.core.spring.annotation.Config;
 import org.etnaframework.core.spring.annotation.OnContextInited;
 import org.etnaframework.core.util.DatetimeUtils;
 import org.etnaframework.core.util.DatetimeUtils.Datetime;
@@ -25,19 +30,24 @@ import org.etnaframework.core.util.ReflectionTools;
 import org.etnaframework.core.util.StringTools;
 import org.etnaframework.core.util.SystemInfo;
 import org.etnaframework.core.util.SystemInfo.RunEnv;
+import org.etnaframework.core.util.ThreadUtils;
+import org.etnaframework.core.util.ThreadUtils.NamedThreadFactory;
 import org.etnaframework.jedis.BaseJedisLock;
 import org.etnaframework.plugin.cache.annotation.LocalCache;
 import org.etnaframework.plugin.cron.CronTaskMeta;
 import org.etnaframework.plugin.cron.CronTaskProcessor;
+import org.etnaframework.plugin.cron.MisfirePolicy;
 import org.slf4j.Logger;
 import org.springframework.aop.framework.Advised;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
+import org.springframework.util.SerializationUtils;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Interners;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 /**
  * {@link LocalCache}注解的处理业务，注意为适应多机部署时的数据统一，采取了相同key过期时间对齐的机制
@@ -46,6 +56,8 @@ import com.google.common.collect.Interners;
  * 而在服务器上部署时，运行环境不是{@link RunEnv#dev}则执行【定时加载策略】，即以{@link LocalCache#expire()}为周期执行更新操作
  * 此时访问缓存不会等待最新的结果，而是直接返回最近一次定时任务执行的结果，这样可减少懒加载方式缓存过期时重新加载的停顿时间
  *
+ * 懒加载策略可通过{@link LocalCache#refreshAheadPercent()}和{@link LocalCache#staleWhileRevalidate()}开启异步刷新，在有限大小的后台线程池中重新加载，访问的请求不需要等待
+ *
  * @author BlackCat
  * @author Anur
  * @since 2018-03-05
@@ -58,7 +70,14 @@ public final class LocalCacheAspect {
     /** 单个方法上默认缓存元素个数限制 */
     public static final int DEFAULT_MAX_CACHE_SIZE = 1024;
 
-    private static final Interner<String> internerPool = Interners.newWeakInterner();
+    /** 定时加载型缓存的定时任务所在的分组 */
+    public static final String CRON_GROUP = "localCache";
+
+    /** 异步刷新缓存的任务队列长度，队列满时不再提交异步刷新 */
+    private static final int REFRESH_QUEUE_SIZE = 1024;
+
+    /** 异步刷新失败后再次尝试的最小间隔，errorExpireMs小于它时按它等待，避免每个请求都触发一次刷新 */
+    static final long MIN_REFRESH_RETRY_MS = 1000;
 
     private static final Logger log = Log.getLogger();
 
@@ -73,10 +92,63 @@ public final class LocalCacheAspect {
     @Autowired
     private CronTaskProcessor cronTaskProcessor;
 
+    /** 异步刷新缓存的线程数 */
+    private int refreshThreads = SystemInfo.CORE_PROCESSOR_NUM;
+
+    /** 异步刷新缓存的线程池，第一次需要异步刷新时才创建 */
+    private volatile ThreadPoolExecutor refreshExecutor;
+
     public Map<Method, CacheContainer> getData() {
         return data;
     }
 
+    /**
+     * 清除{@link LocalCache}方法的缓存，如果方法配置了{@link LocalCache#redisTier()}，还会删除redis中的值并通知所有机器清除本地缓存
+     *
+     * 只对懒加载策略有效，定时加载的无参数方法会在下一次定时任务执行时更新
+     *
+     * @param beanClass 方法所在的类
+     * @param methodName 方法名，如有重载，参数个数相同的都会清除
+     * @param args 调用方法时的参数值，用于计算缓存key
+     */
+    public void invalidate(Class<?> beanClass, String methodName, Object... args) {
+        CacheContainer[] containers;
+        synchronized (data) {
+            containers = data.values()
+                             .toArray(new CacheContainer[0]);
+        }
+        for (CacheContainer c : containers) {
+            if (c instanceof LazyCacheContainer && c.method.getName()
+                                                           .equals(methodName) && c.method.getParameterCount() == args.length && c.method.getDeclaringClass()
+                                                                                                                                        .isAssignableFrom(beanClass)) {
+                ((LazyCacheContainer) c).invalidate(args);
+            }
+        }
+    }
+
+    @Config("etna.localCacheRefreshThreads")
+    public void setRefreshThreads(int refreshThreads) {
+        if (refreshThreads > 0) {
+            this.refreshThreads = refreshThreads;
+        }
+    }
+
+    private ThreadPoolExecutor getRefreshExecutor() {
+        ThreadPoolExecutor executor = refreshExecutor;
+        if (null == executor) {
+            synchronized (this) {
+                if (null == (executor = refreshExecutor)) {
+                    executor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(REFRESH_QUEUE_SIZE),
+                        new NamedThreadFactory("LocalCache(Refresh)", Thread.NORM_PRIORITY, true));
+                    executor.allowCoreThreadTimeOut(true);
+                    ThreadUtils.addThreadPool(executor);
+                    refreshExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
     /**
      * 列举所有的Spring托管bean，将所有标注了{@link LocalCache}的方法列举出来，初始化缓存注解
      */
@@ -184,11 +256,46 @@ public final class LocalCacheAspect {
 
         long expire;
 
+        /** 方法抛出的异常，不为null时表示缓存的是异常 */
+        Throwable error;
+
+        /** 异常序列化后的内容，每次抛出时反序列化出新的异常对象，为null表示异常不能序列化 */
+        private byte[] errorBytes;
+
+        /** 是否正在异步刷新，保证同一时间只有一个请求触发刷新 */
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        /** 异步刷新失败后，到这个时间点之前不再尝试 */
+        volatile long retryAfter;
+
         CachedElement(Object val, long expire) {
             this.val = val;
             this.expire = expire;
         }
 
+        CachedElement(Throwable error, long expire) {
+            this.error = error;
+            this.expire = expire;
+            try {
+                this.errorBytes = SerializationUtils.serialize(error);
+            } catch (RuntimeException ignore) { // 异常中有不能序列化的内容
+            }
+        }
+
+        /**
+         * 复制缓存的异常用于抛出，多个线程不能共用同一个异常对象（调用方addSuppressed等会修改异常对象）
+         * 复制出的异常保留原来的类型、内容和堆栈，不能序列化的异常包装后抛出，原来的异常作为cause
+         */
+        Throwable copyError() {
+            if (null != errorBytes) {
+                try {
+                    return (Throwable) SerializationUtils.deserialize(errorBytes);
+                } catch (RuntimeException ignore) {
+                }
+            }
+            return new UncheckedExecutionException(error);
+        }
+
         @Override
         public String toString() {
             return "[" + DatetimeUtils.format(expire) + "]";
@@ -211,6 +318,24 @@ public final class LocalCacheAspect {
         /** 缓存的有效周期，单位毫秒 */
         protected long periodMs;
 
+        /** 方法标识，用于二级缓存的key和广播消息 */
+        protected final String identity;
+
+        /** 方法标识的hash值，用于计算过期时间点，预先算好避免每次都生成方法签名 */
+        private final int identityHash;
+
+        /** 执行原方法的次数 */
+        protected final AtomicLong loadCount = new AtomicLong();
+
+        /** 执行原方法出错的次数 */
+        protected final AtomicLong loadErrorCount = new AtomicLong();
+
+        /** 执行原方法的总耗时，单位纳秒 */
+        protected final AtomicLong loadNanos = new AtomicLong();
+
+        /** 执行原方法的最大耗时，单位纳秒 */
+        protected final AtomicLong maxLoadNanos = new AtomicLong();
+
         CacheContainer(Object bean, Method method) {
             this.bean = bean;
             this.method = method;
@@ -227,6 +352,10 @@ public final class LocalCacheAspect {
             this.anno = method.getAnnotation(LocalCache.class);
             this.periodMs = anno.timeUnit()
                                 .toMillis(anno.expire());
+            this.identity = method.getDeclaringClass()
+                                  .getName() + "." + method.getName() + "/" + method.getParameterCount();
+            this.identityHash = method.toString()
+                                      .hashCode();
         }
 
         /**
@@ -241,14 +370,26 @@ public final class LocalCacheAspect {
          * 执行原始方法，获得返回值
          */
         Object invoke(Object... args) throws Throwable {
+            long start = System.nanoTime();
+            boolean ok = false;
             try {
-                return this.method.invoke(this.bean, args); // 注意这里必须取真实对象this.bean，否则直接调用会AOP死循环
+                Object result = this.method.invoke(this.bean, args); // 注意这里必须取真实对象this.bean，否则直接调用会AOP死循环
+                ok = true;
+                return result;
             } catch (InvocationTargetException ex) {
                 // 如果是执行方法内容时抛出异常，需要【提取到原始的异常】然后再抛出，这样才能在后续的异常流程中得到处理
                 if (null != ex.getCause()) {
                     throw ex.getCause();
                 }
                 throw ex;
+            } finally {
+                long cost = System.nanoTime() - start;
+                loadCount.incrementAndGet();
+                loadNanos.addAndGet(cost);
+                maxLoadNanos.accumulateAndGet(cost, Math::max);
+                if (!ok) {
+                    loadErrorCount.incrementAndGet();
+                }
             }
         }
 
@@ -258,12 +399,24 @@ public final class LocalCacheAspect {
          * 为了防止集中一个固定的时间点过期对后端服务压力太大，这里是根据key来计算不同的过期时间点，寻找【距当前时间最近的未来过期时间点】
          * 例如有效周期为1min，则key=A计算得出的过期时间点是每分钟的第2s，key=B计算得出是每分钟第7s过期，如此把key错开
          * 对齐时间，是以毫秒0为开始时间点，计算当前时间下一次执行的时间点，每个key算出的时间点是固定的，即相同的key同时过期，多机部署时能保持一致
+         * 这里的hash只依赖方法签名和key的String.hashCode，不同的JVM上算出的结果是相同的
          */
-        long calcExpire(String str) {
-            int hash = Math.abs((StringTools.md5AsHex(str)).hashCode());
-            long periodMs = anno.timeUnit()
-                                .toMillis(anno.expire());
-            long now = System.currentTimeMillis();
+        long calcExpire(String key) {
+            return calcExpire(key, System.currentTimeMillis());
+        }
+
+        /**
+         * 计算指定时间点之后最近的过期时间点，参考{@link #calcExpire(String)}
+         */
+        long calcExpire(String key, long now) {
+            int h = identityHash * 31 + key.hashCode();
+            // 把各位打散，避免相近的key算出相近的时间点
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            int hash = h & Integer.MAX_VALUE;
             double offsetPercent = (hash % 997) / 997f; // 偏移整点的百分比，范围0-1之间，为了尽量分散用质数来除
             long lastPeriod = now - (now % periodMs); // 上一个整点周期时间点
             long expire = lastPeriod + (long) (periodMs * (1 + offsetPercent)); // 下一个过期时间 = 上一个整点时间 + 周期 * (1 + 偏移百分比)
@@ -285,6 +438,33 @@ public final class LocalCacheAspect {
         public LocalCache getAnno() {
             return anno;
         }
+
+        public String getIdentity() {
+            return identity;
+        }
+
+        public long getLoadCount() {
+            return loadCount.get();
+        }
+
+        public long getLoadErrorCount() {
+            return loadErrorCount.get();
+        }
+
+        /**
+         * 执行原方法的平均耗时，单位毫秒
+         */
+        public double getAverageLoadMs() {
+            long count = loadCount.get();
+            return count == 0 ? 0 : loadNanos.get() / 1e6 / count;
+        }
+
+        /**
+         * 执行原方法的最大耗时，单位毫秒
+         */
+        public double getMaxLoadMs() {
+            return maxLoadNanos.get() / 1e6;
+        }
     }
 
     /**
@@ -294,13 +474,53 @@ public final class LocalCacheAspect {
 
         protected Cache<String, CachedElement> cache;
 
+        /** 加载时的同步锁，同一个key同时只有一个线程在加载 */
+        private final Interner<String> locks = Interners.newWeakInterner();
+
+        /** 过期前多少毫秒开始异步刷新，0表示不提前刷新 */
+        private final long refreshAheadMs;
+
+        /** 异步刷新的次数 */
+        private final AtomicLong refreshCount = new AtomicLong();
+
+        /** 返回过期的值的次数 */
+        private final AtomicLong staleHitCount = new AtomicLong();
+
+        /** 访问次数 */
+        private final AtomicLong requestCount = new AtomicLong();
+
+        /** 本地缓存未命中需要同步加载的次数 */
+        private final AtomicLong l1MissCount = new AtomicLong();
+
+        /** 二级缓存命中的次数 */
+        final AtomicLong l2HitCount = new AtomicLong();
+
+        /** 二级缓存未命中需要执行方法的次数 */
+        final AtomicLong l2MissCount = new AtomicLong();
+
+        /** 清除本地缓存的次数，加载前后不一致说明加载期间有清除，加载的结果可能是旧值，不能放入缓存 */
+        private final AtomicLong invalidateCount = new AtomicLong();
+
+        /** redis二级缓存，没有配置时为null */
+        private final LocalCacheRedisTier redisTier;
+
         public LazyCacheContainer(Object bean, Method method) {
             super(bean, method);
+            int percent = Math.max(0, Math.min(99, anno.refreshAheadPercent()));
+            this.refreshAheadMs = periodMs * percent / 100;
+            // 开启staleWhileRevalidate时，过期的值需要再保留一个周期
+            long keepMs = anno.staleWhileRevalidate() ? periodMs * 2 : periodMs;
             this.cache = CacheBuilder.newBuilder()
                                      .maximumSize(anno.maxSize())
                                      .recordStats()
-                                     .expireAfterWrite(periodMs, TimeUnit.MILLISECONDS)
+                                     .expireAfterWrite(keepMs, TimeUnit.MILLISECONDS)
                                      .build();
+            if (LocalCacheRedisTier.class.equals(anno.redisTier())) {
+                this.redisTier = null;
+            } else {
+                this.redisTier = SpringContext.getBean(anno.redisTier());
+                redisTier.register(identity, this);
+            }
         }
 
         @Override
@@ -311,20 +531,52 @@ public final class LocalCacheAspect {
 
             String status = "ReadFromCache";
             long expire = 0;
+            requestCount.incrementAndGet();
 
             try {
-                String lock = method + key;
                 // 由于采用了同一个key对齐过期时间的机制，故实际的缓存有效期一般是会小于配置的公共expire的
                 // 故这里不能直接使用guava的过期时间，需要针对每个key来定制过期时间
                 CachedElement e = cache.getIfPresent(key);
-                if (null == e || System.currentTimeMillis() > e.expire) {
-                    synchronized (internerPool.intern(lock)) { // 防止缓存过期时加载方法被重复执行
+                long now = System.currentTimeMillis();
+                if (null != e && null == e.error) {
+                    if (now <= e.expire) {
+                        if (refreshAheadMs > 0 && now > e.expire - refreshAheadMs && refreshAsync(key, methodArgs, e, now)) {
+                            status = "RefreshAhead";
+                        }
+                        expire = e.expire;
+                        return e.val;
+                    }
+                    if (anno.staleWhileRevalidate()) {
+                        // 先返回过期的值，在后台刷新，如果后台线程池已满就同步加载
+                        if (refreshAsync(key, methodArgs, e, now) || e.refreshing.get()) {
+                            status = "ReadStale";
+                            staleHitCount.incrementAndGet();
+                            expire = e.expire;
+                            return e.val;
+                        }
+                    }
+                }
+                if (null == e || now > e.expire) {
+                    synchronized (locks.intern(key)) { // 防止缓存过期时加载方法被重复执行
                         e = cache.getIfPresent(key);
                         if (null == e || System.currentTimeMillis() > e.expire) {
                             status = "EncounterError"; // 防止下面调用原方法出错，预备写到日志
-
-                            // 调用原方法获得返回值
-                            Object result = invoke(methodArgs);
+                            l1MissCount.incrementAndGet();
+
+                            // 根据key计算过期时间点，确保多机部署时同一个key能在同一个时间点过期
+                            long newExpire = calcExpire(key);
+                            long invalidated = invalidateCount.get();
+
+                            // 调用原方法（或从二级缓存）获得返回值
+                            Object result;
+                            try {
+                                result = load(key, methodArgs, newExpire);
+                            } catch (Throwable ex) {
+                                if (anno.errorExpireMs() > 0) { // 把异常缓存起来，一段时间内不再执行方法
+                                    cache.put(key, new CachedElement(ex, System.currentTimeMillis() + anno.errorExpireMs()));
+                                }
+                                throw ex;
+                            }
 
                             // 特殊处理：如果设定不保存null，返回值就不加入到缓存中去
                             if (null == result && !anno.cacheNull()) {
@@ -332,29 +584,135 @@ public final class LocalCacheAspect {
                                 return null;
                             }
 
-                            // 根据lock计算过期时间点，确保多机部署时同一个key能在同一个时间点过期
-                            e = new CachedElement(result, calcExpire(lock));
+                            e = new CachedElement(result, newExpire);
+                            if (invalidated != invalidateCount.get()) {
+                                status = "InvalidatedWhileLoading";
+                                return result;
+                            }
                             cache.put(key, e);
                             status = "WriteToCache";
                         }
                     }
                 }
                 expire = e.expire;
+                if (null != e.error) {
+                    status = "ReadErrorFromCache";
+                    throw e.copyError();
+                }
                 return e.val;
             } finally {
-                log.debug("{}/{}ms/Expire@{}/{}/{}", new Object[] {
-                    status,
-                    System.currentTimeMillis() - start,
-                    expire > 0 ? DatetimeUtils.format(expire, Datetime.DF_HH_mm_ss_S) : "N/A",
-                    location,
-                    key
+                if (log.isDebugEnabled()) { // 每次访问都会执行，未开启debug时不要生成参数数组和格式化时间
+                    log.debug("{}/{}ms/Expire@{}/{}/{}", new Object[] {
+                        status,
+                        System.currentTimeMillis() - start,
+                        expire > 0 ? DatetimeUtils.format(expire, Datetime.DF_HH_mm_ss_S) : "N/A",
+                        location,
+                        key
+                    });
+                }
+            }
+        }
+
+        /**
+         * 在后台线程池中异步重新加载，同一个缓存元素只有第一个请求能提交成功
+         *
+         * @return 是否由本次调用提交了刷新任务
+         */
+        private boolean refreshAsync(String key, Object[] methodArgs, CachedElement old, long now) {
+            if (now < old.retryAfter || !old.refreshing.compareAndSet(false, true)) {
+                return false;
+            }
+            try {
+                getRefreshExecutor().execute(() -> {
+                    try {
+                        // 提前刷新时旧值还没过期，需要从旧值的过期时间点往后算，否则算出的还是旧值的过期时间点
+                        long newExpire = calcExpire(key, Math.max(System.currentTimeMillis(), old.expire));
+                        long invalidated = invalidateCount.get();
+                        Object result = load(key, methodArgs, newExpire);
+                        if (invalidated != invalidateCount.get() || null == result && !anno.cacheNull()) {
+                            cache.invalidate(key);
+                        } else {
+                            cache.put(key, new CachedElement(result, newExpire));
+                        }
+                    } catch (Throwable ex) { // 刷新失败时保留旧值，到过期后再按原来的方式处理
+                        log.warn("{} refresh failed, key={}", location, key, ex);
+                        old.retryAfter = System.currentTimeMillis() + Math.max(anno.errorExpireMs(), MIN_REFRESH_RETRY_MS);
+                        old.refreshing.set(false);
+                    }
                 });
+            } catch (RejectedExecutionException ex) {
+                old.refreshing.set(false);
+                return false;
             }
+            refreshCount.incrementAndGet();
+            return true;
+        }
+
+        /**
+         * 获取方法的返回值，配置了二级缓存时先从二级缓存中获取
+         */
+        private Object load(String key, Object[] methodArgs, long expire) throws Throwable {
+            if (null == redisTier) {
+                return invoke(methodArgs);
+            }
+            return redisTier.load(this, key, methodArgs, expire);
+        }
+
+        /**
+         * 清除参数值对应的缓存，配置了二级缓存时还会通知所有机器清除
+         */
+        void invalidate(Object[] methodArgs) {
+            String key = calcKey(methodArgs);
+            invalidateLocal(key);
+            if (null != redisTier) {
+                redisTier.invalidate(identity, key);
+            }
+        }
+
+        /**
+         * 清除本地缓存
+         */
+        void invalidateLocal(String key) {
+            invalidateCount.incrementAndGet();
+            cache.invalidate(key);
         }
 
         public Cache<String, CachedElement> getCache() {
             return cache;
         }
+
+        public boolean hasRedisTier() {
+            return null != redisTier;
+        }
+
+        public long getRequestCount() {
+            return requestCount.get();
+        }
+
+        /**
+         * 本地缓存命中率，范围0-1
+         */
+        public double getL1HitRate() {
+            long request = requestCount.get();
+            return request == 0 ? 0 : 1 - (double) l1MissCount.get() / request;
+        }
+
+        /**
+         * 二级缓存命中率，范围0-1
+         */
+        public double getL2HitRate() {
+            long hit = l2HitCount.get();
+            long total = hit + l2MissCount.get();
+            return total == 0 ? 0 : (double) hit / total;
+        }
+
+        public long getRefreshCount() {
+            return refreshCount.get();
+        }
+
+        public long getStaleHitCount() {
+            return staleHitCount.get();
+        }
     }
 
     /**
@@ -406,7 +764,9 @@ public final class LocalCacheAspect {
                 break;
             }
             // 提交定时任务，并在执行完毕后将结果保存到valInCache
+            // 定时加载放在单独的分组，加载慢时不影响业务定时任务；错过的加载合并为一次，只需要拿到最新的值
             CronTaskMeta meta = cronTaskProcessor.addCronTask(bean, method, cron, "@" + LocalCache.class.getSimpleName() + "定时加载 " + anno.descr(), BaseJedisLock.class, true,
+                CRON_GROUP, MisfirePolicy.COALESCE,
 
                 // 此处的赋值操作在CronTaskMeta.run方法执行定时任务后执行
                 result -> {
@@ -440,11 +800,13 @@ public final class LocalCacheAspect {
                 hitCount.incrementAndGet();
                 return valInCache;
             } finally {
-                log.debug("{}/1ms/Reload@{}/{}", new Object[] {
-                    "ReadFromCache",
-                    DatetimeUtils.format(expireTime, Datetime.DF_HH_mm_ss_S),
-                    location
-                });
+                if (log.isDebugEnabled()) {
+                    log.debug("{}/1ms/Reload@{}/{}", new Object[] {
+                        "ReadFromCache",
+                        DatetimeUtils.format(expireTime, Datetime.DF_HH_mm_ss_S),
+                        location
+                    });
+                }
             }
         }
     }
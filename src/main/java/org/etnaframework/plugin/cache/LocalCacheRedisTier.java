@@ -0,0 +1,265 @@
+package org.etnaframework.plugin.cache;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.etnaframework.core.logging.Log;
+import org.etnaframework.core.spring.annotation.OnJvmShutdown;
+import org.etnaframework.core.util.ThreadUtils;
+import org.etnaframework.core.util.ThreadUtils.NamedThreadFactory;
+import org.etnaframework.jedis.JedisConfig;
+import org.etnaframework.jedis.JedisScript;
+import org.etnaframework.jedis.JedisTemplate;
+import org.etnaframework.plugin.cache.LocalCacheAspect.LazyCacheContainer;
+import org.etnaframework.plugin.cache.annotation.LocalCache;
+import org.slf4j.Logger;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * <pre>
+ * {@link LocalCache}的redis二级缓存，本地缓存（一级）未命中时先到redis中查找，多机部署时同一个key只需要由一台机器执行方法
+ *
+ * 1、值通过{@link #codec()}编码后保存到redis，过期时间和本地缓存的过期时间点相同（由于有时间对齐机制，各台机器算出的过期时间点是一样的）
+ * 2、redis中也没有时，先抢一个短期的租约，抢到的机器执行方法并把结果写入redis，其他机器等待结果写入后直接读取，等待超过租约时间就自己执行方法（不写入redis）
+ * 3、调用{@link LocalCacheAspect#invalidate(Class, String, Object...)}时，删除redis中的值和租约，并通过广播通知所有机器清除本地缓存
+ *   每次抢到的租约都有唯一的令牌，写入redis时令牌必须还是当前的租约，这样清除之前就开始执行的方法，执行完后不会把旧值写回redis
+ * 4、redis出现问题时，直接执行方法，不影响业务
+ *
+ * 使用方法：继承本类并注册为spring bean，在注解中指定{@link LocalCache#redisTier()}
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public abstract class LocalCacheRedisTier {
+
+    protected final Logger log = Log.getLogger(getClass());
+
+    /** redis中缓存值的key前缀 */
+    public static final String KEY_PREFIX = "local_cache:";
+
+    /** 加载租约的key前缀 */
+    public static final String LEASE_PREFIX = "local_cache__lease:";
+
+    /** 清除本地缓存的广播频道 */
+    public static final String INVALIDATE_CHANNEL = "local_cache__invalidate";
+
+    /** 等待其他机器加载时，每次检查的间隔 */
+    private static final long POLL_INTERVAL_MS = 20;
+
+    /** 订阅连接断开后，重新订阅前的等待时间 */
+    private static final long RESUBSCRIBE_INTERVAL_MS = 1000;
+
+    // @formatter:off
+    /** 写入缓存值，租约仍是本次加载的才写，KEYS[1]为缓存值的key，KEYS[2]为租约的key */
+    private static final JedisScript WRITE_SCRIPT = new JedisScript(
+        "if (redis.call('get', KEYS[2]) == ARGV[1]) then " +
+        "   redis.call('psetex', KEYS[1], ARGV[2], ARGV[3]); " +
+        "   return 1; " +
+        "end; " +
+        "return 0;");
+
+    /** 释放租约，租约仍是本次加载的才删除 */
+    private static final JedisScript RELEASE_SCRIPT = new JedisScript(
+        "if (redis.call('get', KEYS[1]) == ARGV[1]) then " +
+        "   return redis.call('del', KEYS[1]); " +
+        "end; " +
+        "return 0;");
+    // @formatter:on
+
+    private static final CacheCodec defaultCodec = new DefaultCacheCodec();
+
+    /** 本机的唯一标识，和加载序号一起作为租约的令牌 */
+    private final String nodeId = UUID.randomUUID()
+                                      .toString();
+
+    /** 加载序号，保证本机每次抢到的租约令牌都不同 */
+    private final AtomicLong leaseSeq = new AtomicLong();
+
+    /** 使用本二级缓存的方法，方法标识 -&gt; 缓存容器 */
+    private final Map<String, LazyCacheContainer> containers = new ConcurrentHashMap<>();
+
+    /** 订阅线程，第一次登记方法时才启动 */
+    private ExecutorService executor;
+
+    /** 清除本地缓存的广播订阅 */
+    private final JedisPubSub pubSub = new JedisPubSub() {
+
+        @Override
+        public void onMessage(String channel, String message) {
+            int split = message.indexOf('\n');
+            if (split > 0) {
+                LazyCacheContainer c = containers.get(message.substring(0, split));
+                if (null != c) {
+                    c.invalidateLocal(message.substring(split + 1));
+                }
+            }
+        }
+    };
+
+    /** 是否已停止订阅 */
+    private volatile boolean stopped;
+
+    /**
+     * redis连接配置
+     */
+    public abstract JedisConfig jedisConfig();
+
+    /**
+     * 缓存值的编解码方式，默认使用fastjson
+     */
+    public CacheCodec codec() {
+        return defaultCodec;
+    }
+
+    /**
+     * 加载租约的时长，单位毫秒，也是其他机器等待加载结果的最长时间，应大于方法的正常执行时间
+     */
+    public long leaseMs() {
+        return 3000;
+    }
+
+    /**
+     * 广播使用的redis连接，广播和订阅是不区分库的，固定使用第0个库
+     */
+    protected JedisTemplate pubsubTemplate() {
+        return jedisConfig().db(0);
+    }
+
+    /**
+     * 登记使用本二级缓存的方法，并开始订阅清除本地缓存的广播
+     */
+    void register(String identity, LazyCacheContainer container) {
+        containers.put(identity, container);
+        synchronized (this) {
+            if (null == executor && !stopped) {
+                executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("LocalCache(Sub)", Thread.NORM_PRIORITY, true));
+                ThreadUtils.addThreadPool(executor);
+                executor.execute(this::subscribeLoop);
+            }
+        }
+    }
+
+    /**
+     * 停机时取消订阅，释放订阅占用的连接并结束订阅线程
+     */
+    @OnJvmShutdown
+    protected void stopSubscribe() {
+        synchronized (this) {
+            stopped = true;
+            if (null == executor) {
+                return;
+            }
+        }
+        try {
+            if (pubSub.isSubscribed()) {
+                pubSub.unsubscribe();
+            }
+        } catch (Exception ex) { // 订阅连接已断开
+            log.warn("LocalCache unsubscribe failed", ex);
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * 从redis中读取，没有就抢租约后执行方法并写入redis
+     *
+     * @param expire 期望的过期时间点，redis中的值过期时间点早于它的都视为旧值（例如提前刷新时redis中还是旧值）
+     */
+    Object load(LazyCacheContainer container, String key, Object[] args, long expire) throws Throwable {
+        String redisKey = KEY_PREFIX + container.getIdentity() + ":" + key;
+        String leaseKey = LEASE_PREFIX + container.getIdentity() + ":" + key;
+        JedisTemplate jt;
+        String token = nodeId + ":" + leaseSeq.incrementAndGet();
+        long deadline = System.currentTimeMillis() + leaseMs();
+        boolean leased = false;
+        try {
+            jt = jedisConfig().getTemplateByKey(redisKey);
+            while (true) {
+                String data = jt.string()
+                                .get(redisKey);
+                if (null != data) {
+                    int split = data.indexOf(':');
+                    if (split > 0 && Long.parseLong(data.substring(0, split)) >= expire) {
+                        container.l2HitCount.incrementAndGet();
+                        return codec().decode(data.substring(split + 1), container.method.getGenericReturnType());
+                    }
+                }
+                if ("OK".equals(jt.string()
+                                  .set(leaseKey, token, "NX", "PX", leaseMs()))) {
+                    leased = true;
+                    break;
+                }
+                if (System.currentTimeMillis() >= deadline) { // 等待其他机器加载超时，自己执行，没有租约不能写入redis
+                    break;
+                }
+                ThreadUtils.sleep(POLL_INTERVAL_MS);
+            }
+        } catch (Exception ex) { // redis出现问题，直接执行方法
+            log.warn("{} read from redis failed, key={}", container.getLocation(), redisKey, ex);
+            return container.invoke(args);
+        }
+
+        container.l2MissCount.incrementAndGet();
+        try {
+            Object result = container.invoke(args);
+            long ttl = expire - System.currentTimeMillis();
+            if (leased && ttl > 0 && (null != result || container.getAnno()
+                                                                .cacheNull())) {
+                String data = expire + ":" + codec().encode(result);
+                try {
+                    jt.execute(jedis -> {
+                        return WRITE_SCRIPT.eval(jedis, 2, redisKey, leaseKey, token, String.valueOf(ttl), data);
+                    });
+                } catch (Exception ex) {
+                    log.warn("{} write to redis failed, key={}", container.getLocation(), redisKey, ex);
+                }
+            }
+            return result;
+        } finally {
+            if (leased) {
+                try {
+                    jt.execute(jedis -> {
+                        return RELEASE_SCRIPT.eval(jedis, 1, leaseKey, token);
+                    });
+                } catch (Exception ignore) { // 租约到期会自动释放
+                }
+            }
+        }
+    }
+
+    /**
+     * 删除redis中的值和租约，并广播通知所有机器清除本地缓存，删除租约后正在加载的机器就不能再把结果写入redis了
+     */
+    void invalidate(String identity, String key) {
+        String redisKey = KEY_PREFIX + identity + ":" + key;
+        jedisConfig().getTemplateByKey(redisKey)
+                     .key()
+                     .del(redisKey, LEASE_PREFIX + identity + ":" + key);
+        pubsubTemplate().pubsub()
+                        .publish(INVALIDATE_CHANNEL, identity + "\n" + key);
+    }
+
+    private void subscribeLoop() {
+        while (!stopped) {
+            try {
+                pubsubTemplate().execute(jedis -> {
+                    jedis.subscribe(pubSub, INVALIDATE_CHANNEL);
+                });
+            } catch (Exception ex) {
+                if (stopped) {
+                    return;
+                }
+                log.warn("LocalCache invalidate subscription lost, resubscribe in {}ms", RESUBSCRIBE_INTERVAL_MS, ex);
+            }
+            try {
+                Thread.sleep(RESUBSCRIBE_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
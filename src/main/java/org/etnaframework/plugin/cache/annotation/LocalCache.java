@@ -9,6 +9,7 @@ import java.util.concurrent.TimeUnit;
 import org.etnaframework.plugin.cache.CacheKeyMaker;
 import org.etnaframework.plugin.cache.DefaultCacheKeyMaker;
 import org.etnaframework.plugin.cache.LocalCacheAspect;
+import org.etnaframework.plugin.cache.LocalCacheRedisTier;
 import org.etnaframework.core.util.SystemInfo.RunEnv;
 
 /**
@@ -64,6 +65,35 @@ public @interface LocalCache {
      */
     boolean cacheNull() default true;
 
+    /**
+     * 提前刷新的时间窗口，为有效周期的百分比，范围0-99，默认0不提前刷新（只对懒加载策略有效）
+     *
+     * 例如有效周期为1min，配置为20，则在过期前12s内第一个访问的请求会在后台线程池中异步重新加载，该请求及其他请求仍直接返回当前缓存的值，不会等待加载
+     * 后台线程池满时不会提前刷新，到期后仍按原来的方式同步加载
+     */
+    int refreshAheadPercent() default 0;
+
+    /**
+     * 缓存过期后是否先返回过期的值，同时在后台异步重新加载（只对懒加载策略有效），默认为false即过期后同步加载，访问的请求需要等待加载完成
+     *
+     * 开启后过期的值最多会再保留一个有效周期，超过后仍同步加载，适用于可以接受短时间内读到旧数据，但不能接受过期时请求卡顿的场景
+     */
+    boolean staleWhileRevalidate() default false;
+
+    /**
+     * 方法抛出异常时，把异常缓存多少毫秒，在此期间相同key的访问直接抛出缓存的异常而不再执行方法，默认0不缓存（只对懒加载策略有效）
+     *
+     * 用于防止后端服务出问题时，大量请求反复执行出错的方法加重后端负担，每次抛出的是缓存的异常的副本；异步刷新失败时，也会至少等待这段时间（最少1s）才会再次尝试
+     */
+    long errorExpireMs() default 0;
+
+    /**
+     * 使用redis作为二级缓存（只对懒加载策略有效），需指定{@link LocalCacheRedisTier}的子类（必须是spring bean），默认不使用
+     *
+     * 开启后多机部署时同一个key只需要由一台机器执行方法，并可通过{@link LocalCacheAspect#invalidate(Class, String, Object...)}清除所有机器上的缓存
+     */
+    Class<? extends LocalCacheRedisTier> redisTier() default LocalCacheRedisTier.class;
+
     /**
      * 该缓存方法的描述，会在/stat/cache显示出来
      */
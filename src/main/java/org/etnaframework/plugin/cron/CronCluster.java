@@ -0,0 +1,455 @@
+package org.etnaframework.plugin.cron;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.etnaframework.core.logging.Log;
+import org.etnaframework.jedis.JedisConfig;
+import org.etnaframework.jedis.JedisScript;
+import org.slf4j.Logger;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * <pre>
+ * 集群互斥定时任务的分配，代替每个实例每次触发都去redis抢锁
+ *
+ * 1、每个实例定时通过一次lua调用上报心跳（写入有序集合，分数为心跳时间），同时清理超时的实例并取回所有存活的实例，
+ *    实例列表按集群名称区分（{@link #NODES_KEY_PREFIX}+集群名称），共用同一个redis的不同应用互不影响
+ * 2、每个实例上报本实例执行的任务列表（只在变化时上报全部，平时只上报摘要），其他实例发现摘要变化时才取回新的任务列表
+ * 3、任务按location一致性哈希（每个实例{@link #VIRTUAL_NODES}个虚拟节点）分配给存活的并且执行这个任务的实例，触发时不是分配给本实例的任务直接跳过，不访问redis
+ *    分配到的实例心跳超时时（宕机、网络断开），顺着哈希环交给下一个存活的实例，不用等它被清理；
+ *    还不知道任务列表的实例（刚加入、取任务列表失败）不会分配到任务，滚动发布时新旧版本的任务不同也不会把任务分配给没有这个任务的实例
+ * 4、分配到的实例用一次lua调用抢本次触发的锁（location+触发时间，SET NX），抢到的同时写入任务信息并取回上一次的任务信息
+ * 5、实例加入/退出时各实例看到的存活列表会有短暂的不一致，可能有两个实例都认为任务属于自己，
+ *    但每次触发的锁只有一个实例能抢到，所以不会重复执行，只是多一次lua调用
+ * 6、心跳和锁都依赖各实例的时间同步，这和以前的实现一样
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class CronCluster {
+
+    private static final Logger log = Log.getLogger();
+
+    /** 存活实例有序集合的key的前缀，后面是集群名称 */
+    public static final String NODES_KEY_PREFIX = "mutexTaskNodes:";
+
+    /** 每个实例在哈希环上的虚拟节点数，让任务分配得更均匀 */
+    static final int VIRTUAL_NODES = 64;
+
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    /** 任务列表的摘要 */
+    private static final HashFunction DIGEST = Hashing.murmur3_128();
+
+    // @formatter:off
+    /**
+     * 上报心跳和任务列表摘要，清理超时的实例，ARGV[6]为1时同时上报任务列表，否则只给任务列表续期
+     * 返回{所有存活的实例和最近一次心跳时间, 各实例的任务列表摘要, 任务列表是否已过期需要重新上报}
+     */
+    private static final JedisScript HEARTBEAT_SCRIPT = new JedisScript(
+        "local expired = redis.call('zrangebyscore', KEYS[1], '-inf', '(' .. ARGV[3]); " +
+        "for i = 1, #expired do " +
+        "   redis.call('hdel', KEYS[2], expired[i]); " +
+        "end; " +
+        "redis.call('zremrangebyscore', KEYS[1], '-inf', '(' .. ARGV[3]); " +
+        "redis.call('zadd', KEYS[1], ARGV[2], ARGV[1]); " +
+        "redis.call('hset', KEYS[2], ARGV[1], ARGV[5]); " +
+        "local lost = 0; " +
+        "if (ARGV[6] == '1') then " +
+        "   redis.call('set', KEYS[3], ARGV[5] .. '\\n' .. ARGV[7], 'PX', ARGV[4]); " +
+        "elseif (redis.call('pexpire', KEYS[3], ARGV[4]) == 0) then " +
+        "   lost = 1; " +
+        "end; " +
+        "redis.call('pexpire', KEYS[1], ARGV[4]); " +
+        "redis.call('pexpire', KEYS[2], ARGV[4]); " +
+        "return {redis.call('zrange', KEYS[1], 0, -1, 'withscores'), redis.call('hgetall', KEYS[2]), lost};");
+
+    /** 退出集群 */
+    private static final JedisScript LEAVE_SCRIPT = new JedisScript(
+        "redis.call('hdel', KEYS[2], ARGV[1]); " +
+        "redis.call('del', KEYS[3]); " +
+        "return redis.call('zrem', KEYS[1], ARGV[1]);");
+
+    /** 抢本次触发的锁，抢到的同时写入任务信息，返回{1, 上一次的任务信息}，没抢到返回{0, 抢到锁的实例} */
+    private static final JedisScript CLAIM_SCRIPT = new JedisScript(
+        "if (redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2])) then " +
+        "   local old = redis.call('get', KEYS[2]); " +
+        "   redis.call('set', KEYS[2], ARGV[3], 'PX', ARGV[4]); " +
+        "   return {1, old or ''}; " +
+        "end; " +
+        "return {0, redis.call('get', KEYS[1]) or ''};");
+    // @formatter:on
+
+    private final JedisConfig jedisConfig;
+
+    /** 存活实例有序集合的key */
+    private final String nodesKey;
+
+    /** 各实例任务列表摘要的hash的key */
+    private final String digestsKey;
+
+    /** 本实例的标识 */
+    private final String nodeId;
+
+    private final long heartbeatMs;
+
+    /** 超过这个时间没有心跳的实例视为已退出 */
+    private final long nodeTimeoutMs;
+
+    /** 哈希环，存活实例变化时重新生成 */
+    private volatile Ring ring;
+
+    /** 各实例最近一次心跳的时间 */
+    private volatile Map<String, Long> lastBeats = Collections.emptyMap();
+
+    /** 本实例执行的任务 */
+    private final Set<String> tasks = new ConcurrentSkipListSet<>();
+
+    /** 已经上报的任务列表的摘要，为空表示需要重新上报 */
+    private String reportedDigest = "";
+
+    /** 其他实例的任务列表摘要 */
+    private volatile Map<String, String> nodeDigests = Collections.emptyMap();
+
+    /** 摘要对应的任务列表，只保留存活实例在用的 */
+    private final Map<String, Set<String>> digestTasks = new ConcurrentHashMap<>();
+
+    private ScheduledFuture<?> heartbeatFuture;
+
+    private final LongAdder heartbeatFailCount = new LongAdder();
+
+    private final LongAdder claimCount = new LongAdder();
+
+    private final LongAdder claimedCount = new LongAdder();
+
+    private final LongAdder notOwnerCount = new LongAdder();
+
+    /**
+     * @param name 集群名称，同一个应用的各实例使用相同的名称，不同的应用使用不同的名称
+     * @param nodeId 本实例的标识
+     */
+    public CronCluster(JedisConfig jedisConfig, String name, String nodeId, long heartbeatMs, long nodeTimeoutMs) {
+        this.jedisConfig = jedisConfig;
+        this.nodesKey = NODES_KEY_PREFIX + name;
+        this.digestsKey = nodesKey + ":digest";
+        this.nodeId = nodeId;
+        this.heartbeatMs = heartbeatMs;
+        this.nodeTimeoutMs = nodeTimeoutMs;
+        this.ring = new Ring(Collections.singletonList(nodeId));
+    }
+
+    /**
+     * 登记本实例执行的任务，下一次心跳时上报，只有登记了任务的实例才会被分配到这个任务
+     */
+    public void register(String taskKey) {
+        tasks.add(taskKey);
+    }
+
+    /**
+     * 上报第一次心跳，然后定时上报
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        if (null != heartbeatFuture) {
+            return;
+        }
+        heartbeat();
+        heartbeatFuture = scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止心跳并退出集群，本实例的任务马上会被其他实例接管
+     */
+    public synchronized void leave() {
+        if (null != heartbeatFuture) {
+            heartbeatFuture.cancel(false);
+            heartbeatFuture = null;
+        }
+        try {
+            jedisConfig.getTemplateByKey(nodesKey)
+                       .execute(jedis -> {
+                           LEAVE_SCRIPT.eval(jedis, 3, nodesKey, digestsKey, tasksKeyOf(nodeId), nodeId);
+                       });
+            reportedDigest = "";
+        } catch (Throwable ex) {
+            log.warn("{} leave cron cluster failed", nodeId, ex);
+        }
+    }
+
+    private String tasksKeyOf(String node) {
+        return nodesKey + ":tasks:" + node;
+    }
+
+    /**
+     * 上报心跳并更新存活实例列表，redis出错时保留之前的列表（超时的实例在判断归属时会被跳过）
+     */
+    synchronized void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            String joined = String.join("\n", tasks);
+            String digest = DIGEST.hashString(joined, StandardCharsets.UTF_8)
+                                  .toString();
+            boolean report = !digest.equals(reportedDigest);
+            List<?> result = jedisConfig.getTemplateByKey(nodesKey)
+                                        .execute(jedis -> {
+                                            Object r = HEARTBEAT_SCRIPT.eval(jedis, 3, nodesKey, digestsKey, tasksKeyOf(nodeId), nodeId, String.valueOf(now),
+                                                String.valueOf(now - nodeTimeoutMs), String.valueOf(nodeTimeoutMs * 2), digest, report ? "1" : "0", report ? joined : "");
+                                            return (List<?>) r;
+                                        });
+            // 任务列表过期（如redis重启）时下一次心跳重新上报
+            reportedDigest = ((Number) result.get(2)).longValue() == 1 ? "" : digest;
+            updateDigests((List<?>) result.get(1));
+            List<?> list = (List<?>) result.get(0);
+            Map<String, Long> beats = new HashMap<>(list.size());
+            for (int i = 0; i + 1 < list.size(); i += 2) {
+                beats.put(String.valueOf(list.get(i)), (long) Double.parseDouble(String.valueOf(list.get(i + 1))));
+            }
+            beats.put(nodeId, now);
+            if (!beats.keySet()
+                      .equals(ring.nodeSet)) {
+                ring = new Ring(new ArrayList<>(beats.keySet()));
+                log.info("cron cluster nodes changed: {}", ring.nodeSet);
+            }
+            lastBeats = beats;
+        } catch (Throwable ex) {
+            heartbeatFailCount.increment();
+            log.warn("{} cron cluster heartbeat failed", nodeId, ex);
+        }
+    }
+
+    /**
+     * 更新其他实例的任务列表摘要，摘要没见过时取回对应的任务列表，取不到的实例暂时不参与分配
+     */
+    private void updateDigests(List<?> list) {
+        Map<String, String> digests = new HashMap<>(list.size());
+        for (int i = 0; i + 1 < list.size(); i += 2) {
+            String node = String.valueOf(list.get(i));
+            if (!nodeId.equals(node)) {
+                digests.put(node, String.valueOf(list.get(i + 1)));
+            }
+        }
+        List<String> unknown = new ArrayList<>();
+        for (Map.Entry<String, String> e : digests.entrySet()) {
+            if (!digestTasks.containsKey(e.getValue())) {
+                unknown.add(tasksKeyOf(e.getKey()));
+            }
+        }
+        if (!unknown.isEmpty()) {
+            List<String> values = jedisConfig.getTemplateByKey(nodesKey)
+                                             .execute(jedis -> {
+                                                 return jedis.mget(unknown.toArray(new String[0]));
+                                             });
+            for (String v : values) {
+                if (null != v) { // 第一行是摘要，任务列表可能在两次读取之间变了，以一起保存的摘要为准
+                    String[] lines = v.split("\n", -1);
+                    Set<String> set = new HashSet<>(Arrays.asList(lines)
+                                                          .subList(1, lines.length));
+                    set.remove("");
+                    digestTasks.put(lines[0], set);
+                }
+            }
+        }
+        digestTasks.keySet()
+                   .retainAll(digests.values());
+        nodeDigests = digests;
+    }
+
+    /**
+     * 实例是否执行这个任务，还不知道任务列表的实例视为不执行
+     */
+    private boolean hosts(String node, String taskKey) {
+        if (nodeId.equals(node)) {
+            return tasks.contains(taskKey);
+        }
+        String digest = nodeDigests.get(node);
+        Set<String> set = null == digest ? null : digestTasks.get(digest);
+        return null != set && set.contains(taskKey);
+    }
+
+    /**
+     * 任务当前分配给哪个实例，只在本地计算，分配到的实例心跳超时或不执行这个任务时顺着哈希环找下一个
+     */
+    public String getOwner(String taskKey) {
+        Ring r = ring;
+        Map<String, Long> beats = lastBeats;
+        long deadline = System.currentTimeMillis() - nodeTimeoutMs;
+        int start = r.indexOf(HASH.hashString(taskKey, StandardCharsets.UTF_8)
+                                  .asInt());
+        for (int i = 0; i < r.hashes.length; i++) {
+            String node = r.owners[(start + i) % r.hashes.length];
+            Long beat = beats.get(node);
+            if (null != beat && beat >= deadline && hosts(node, taskKey)) {
+                return node;
+            }
+        }
+        return nodeId; // 所有实例（包括自己）的心跳都超时了，说明连不上redis，或者没有其他实例执行这个任务，交给抢锁去判断
+    }
+
+    /**
+     * 任务当前是否分配给本实例
+     */
+    public boolean isOwner(String taskKey) {
+        boolean owner = nodeId.equals(getOwner(taskKey));
+        if (!owner) {
+            notOwnerCount.increment();
+        }
+        return owner;
+    }
+
+    /**
+     * 抢本次触发的锁，抢到的同时写入任务信息（一次lua调用）
+     *
+     * @param lockKey 本次触发的锁，每次触发不同
+     * @param lockTtlMs 锁的有效期，应该在下一次触发前过期
+     * @param infoKey 任务信息的key
+     * @param info 任务信息
+     * @param infoTtlMs 任务信息的有效期
+     */
+    public ClaimResult claim(String taskKey, String lockKey, long lockTtlMs, String infoKey, String info, long infoTtlMs) {
+        claimCount.increment();
+        List<?> list = jedisConfig.getTemplateByKey(taskKey)
+                                  .execute(jedis -> {
+                                      Object r = CLAIM_SCRIPT.eval(jedis, 2, lockKey, infoKey, nodeId, String.valueOf(Math.max(1, lockTtlMs)), info,
+                                          String.valueOf(Math.max(1, infoTtlMs)));
+                                      return (List<?>) r;
+                                  });
+        boolean claimed = ((Number) list.get(0)).longValue() == 1;
+        String value = String.valueOf(list.get(1));
+        // 抢锁操作因网络问题重试时，第一次可能已经成功了，这时锁的值是自己
+        ClaimResult result = claimed ? new ClaimResult(true, nodeId, value) : new ClaimResult(nodeId.equals(value), value, "");
+        if (result.claimed) {
+            claimedCount.increment();
+        }
+        return result;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 存活实例有序集合的key
+     */
+    public String getNodesKey() {
+        return nodesKey;
+    }
+
+    /**
+     * 当前认为存活的实例
+     */
+    public List<String> getNodes() {
+        return new ArrayList<>(ring.nodeSet);
+    }
+
+    public long getHeartbeatFailCount() {
+        return heartbeatFailCount.sum();
+    }
+
+    /**
+     * 执行抢锁的次数
+     */
+    public long getClaimCount() {
+        return claimCount.sum();
+    }
+
+    /**
+     * 抢到锁的次数
+     */
+    public long getClaimedCount() {
+        return claimedCount.sum();
+    }
+
+    /**
+     * 因为任务不属于本实例而跳过的次数，这些触发不需要访问redis
+     */
+    public long getNotOwnerCount() {
+        return notOwnerCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CronCluster[key=" + nodesKey + ", node=" + nodeId + ", tasks=" + tasks.size() + ", nodes=" + ring.nodeSet + ", claim=" + getClaimCount() + ", claimed=" + getClaimedCount() + ", notOwner=" + getNotOwnerCount()
+            + ", heartbeatFail=" + getHeartbeatFailCount() + "]";
+    }
+
+    /**
+     * 抢锁的结果
+     */
+    public static final class ClaimResult {
+
+        /** 是否由本实例执行 */
+        public final boolean claimed;
+
+        /** 抢到锁的实例 */
+        public final String holder;
+
+        /** 抢到锁时取回的上一次的任务信息，没有时为空字符串 */
+        public final String previousInfo;
+
+        ClaimResult(boolean claimed, String holder, String previousInfo) {
+            this.claimed = claimed;
+            this.holder = holder;
+            this.previousInfo = previousInfo;
+        }
+    }
+
+    /**
+     * 一致性哈希环，按哈希值排序的虚拟节点和对应的实例
+     */
+    private static final class Ring {
+
+        final TreeSet<String> nodeSet;
+
+        final int[] hashes;
+
+        final String[] owners;
+
+        Ring(List<String> nodes) {
+            this.nodeSet = new TreeSet<>(nodes);
+            long[] points = new long[nodeSet.size() * VIRTUAL_NODES];
+            String[] ids = nodeSet.toArray(new String[0]);
+            int n = 0;
+            for (int i = 0; i < ids.length; i++) {
+                for (int v = 0; v < VIRTUAL_NODES; v++) {
+                    int h = HASH.hashString(ids[i] + "#" + v, StandardCharsets.UTF_8)
+                                .asInt();
+                    // 高32位为哈希值，低32位为实例下标，排序后同时得到实例
+                    points[n++] = (long) h << 32 | i;
+                }
+            }
+            Arrays.sort(points);
+            this.hashes = new int[points.length];
+            this.owners = new String[points.length];
+            for (int i = 0; i < points.length; i++) {
+                hashes[i] = (int) (points[i] >> 32);
+                owners[i] = ids[(int) points[i]];
+            }
+        }
+
+        /**
+         * 第一个哈希值不小于h的虚拟节点，超过最后一个时回到开头
+         */
+        int indexOf(int h) {
+            int i = Arrays.binarySearch(hashes, h);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return i == hashes.length ? 0 : i;
+        }
+    }
+}
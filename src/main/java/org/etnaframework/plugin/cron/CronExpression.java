@@ -0,0 +1,311 @@
+package org.etnaframework.plugin.cron;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TimeZone;
+import org.etnaframework.core.util.StringTools;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+
+/**
+ * <pre>
+ * 预编译的cron表达式，语法和{@link CronSequenceGenerator}完全一致（秒 分 时 日 月 周，支持* ? , - / 以及JAN-DEC、SUN-SAT）
+ *
+ * 1、解析时每一列编译为一个位图（秒、分用long，日用long，时、月、周用int），判断是否匹配只需要一次位运算
+ * 2、计算下次触发时间时逐列找下一个匹配的值（numberOfTrailingZeros），不匹配时进位到上一列，
+ *    不像{@link CronSequenceGenerator}那样每次创建Calendar逐秒/逐天尝试，也没有对象分配（时区转换除外）
+ * 3、和{@link CronSequenceGenerator}一样，日和周两列需要同时匹配
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public final class CronExpression {
+
+    private static final String[] MONTHS = {
+        "JAN",
+        "FEB",
+        "MAR",
+        "APR",
+        "MAY",
+        "JUN",
+        "JUL",
+        "AUG",
+        "SEP",
+        "OCT",
+        "NOV",
+        "DEC"
+    };
+
+    private static final String[] DAYS_OF_WEEK = {
+        "SUN",
+        "MON",
+        "TUE",
+        "WED",
+        "THU",
+        "FRI",
+        "SAT"
+    };
+
+    /** 找不到匹配的时间时最多往后找多少年，2月29日加上指定星期几的组合一般28年出现一次，跨过不是闰年的整百年时间隔更长 */
+    private static final int MAX_SEARCH_YEARS = 100;
+
+    private final String expression;
+
+    private final ZoneId zone;
+
+    /** 第n位表示第n秒 */
+    private final long seconds;
+
+    private final long minutes;
+
+    private final int hours;
+
+    /** 第n位表示n号（1-31） */
+    private final long daysOfMonth;
+
+    /** 第n位表示n月（1-12） */
+    private final int months;
+
+    /** 第n位表示星期n（0-6，0为周日） */
+    private final int daysOfWeek;
+
+    public CronExpression(String expression) {
+        this(expression, TimeZone.getDefault());
+    }
+
+    public CronExpression(String expression, TimeZone timeZone) {
+        this.expression = expression;
+        this.zone = timeZone.toZoneId();
+        List<String> fields = StringTools.splitAndTrim(expression, " ");
+        if (fields.size() != 6) {
+            throw new IllegalArgumentException("Cron expression must consist of 6 fields (found " + fields.size() + " in \"" + expression + "\")");
+        }
+        this.seconds = toLong(parse(fields.get(0), 0, 59, null));
+        this.minutes = toLong(parse(fields.get(1), 0, 59, null));
+        this.hours = (int) toLong(parse(fields.get(2), 0, 23, null));
+        BitSet dom = parse(fields.get(3), 0, 31, null); // 和CronSequenceGenerator一样，*/n从0开始算
+        dom.clear(0);
+        this.daysOfMonth = toLong(dom);
+        this.months = (int) toLong(parse(fields.get(4), 1, 12, MONTHS));
+        BitSet dow = parse(fields.get(5), 0, 7, DAYS_OF_WEEK);
+        if (dow.get(7)) { // 7和0都表示周日
+            dow.set(0);
+            dow.clear(7);
+        }
+        this.daysOfWeek = (int) toLong(dow);
+    }
+
+    private BitSet parse(String field, int min, int max, String[] names) {
+        if (null != names) {
+            String upper = field.toUpperCase();
+            for (int i = 0; i < names.length; i++) {
+                // 月份从1开始，星期从0开始
+                upper = upper.replace(names[i], String.valueOf(i + min));
+            }
+            field = upper;
+        }
+        BitSet bits = new BitSet(max + 1);
+        for (String part : StringTools.splitAndTrim(field, ",")) {
+            int slash = part.indexOf('/');
+            String range = slash < 0 ? part : part.substring(0, slash);
+            int from;
+            int to;
+            if ("*".equals(range) || "?".equals(range)) {
+                from = min;
+                to = max;
+            } else {
+                int dash = range.indexOf('-');
+                from = toInt(range.substring(0, dash < 0 ? range.length() : dash), part);
+                to = dash < 0 ? (slash < 0 ? from : max) : toInt(range.substring(dash + 1), part); // a/n表示从a开始到最大值
+            }
+            if (from < min || to > max || from > to) {
+                throw new IllegalArgumentException("Range " + part + " exceeds [" + min + "," + max + "] or is inverted in cron expression \"" + expression + "\"");
+            }
+            int step = slash < 0 ? 1 : toInt(part.substring(slash + 1), part);
+            if (step <= 0) {
+                throw new IllegalArgumentException("Incrementer delta must be 1 or higher: " + part + " in cron expression \"" + expression + "\"");
+            }
+            for (int i = from; i <= to; i += step) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    private int toInt(String s, String part) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid value " + part + " in cron expression \"" + expression + "\"", ex);
+        }
+    }
+
+    private static long toLong(BitSet bits) {
+        long[] words = bits.toLongArray();
+        return words.length == 0 ? 0 : words[0];
+    }
+
+    /**
+     * 计算指定时间之后（不含，精确到秒）的下一次触发时间，返回毫秒时间戳，语义和{@link CronSequenceGenerator#next(java.util.Date)}一致
+     */
+    public long next(long timeMillis) {
+        long secondsSinceEpoch = Math.floorDiv(timeMillis, 1000L) + 1;
+        ZonedDateTime from = ZonedDateTime.ofInstant(Instant.ofEpochSecond(secondsSinceEpoch), zone);
+        LocalDateTime t = nextLocal(from.toLocalDateTime());
+        ZonedDateTime result = ZonedDateTime.ofLocal(t, zone, from.getOffset());
+        if (result.toEpochSecond() < secondsSinceEpoch) { // 夏令时回拨时本地时间会重复，取不早于起始时间的
+            t = nextLocal(from.toLocalDateTime()
+                              .plusSeconds(1));
+            result = ZonedDateTime.ofLocal(t, zone, from.getOffset());
+        }
+        return result.toEpochSecond() * 1000L;
+    }
+
+    /**
+     * 从start（含）开始找下一个匹配的本地时间，每一列不匹配时进位到上一列并把下面的列归零
+     */
+    private LocalDateTime nextLocal(LocalDateTime start) {
+        int year = start.getYear();
+        int month = start.getMonthValue();
+        int day = start.getDayOfMonth();
+        int hour = start.getHour();
+        int minute = start.getMinute();
+        int second = start.getSecond();
+        int maxYear = year + MAX_SEARCH_YEARS;
+        while (year <= maxYear) {
+            int m = nextBit(months, month, 12);
+            if (m < 0) {
+                year++;
+                month = 1;
+                day = 1;
+                hour = minute = second = 0;
+                continue;
+            }
+            if (m != month) {
+                month = m;
+                day = 1;
+                hour = minute = second = 0;
+            }
+            int d = nextDay(year, month, day);
+            if (d < 0) {
+                month++;
+                day = 1;
+                hour = minute = second = 0;
+                if (month > 12) {
+                    year++;
+                    month = 1;
+                }
+                continue;
+            }
+            if (d != day) {
+                day = d;
+                hour = minute = second = 0;
+            }
+            int h = nextBit(hours, hour, 23);
+            if (h < 0) {
+                day++;
+                hour = minute = second = 0;
+                continue; // 超过月底时nextDay会找不到，进位到下个月
+            }
+            if (h != hour) {
+                hour = h;
+                minute = second = 0;
+            }
+            int mi = nextBit(minutes, minute, 59);
+            if (mi < 0) {
+                hour++;
+                minute = second = 0;
+                continue;
+            }
+            if (mi != minute) {
+                minute = mi;
+                second = 0;
+            }
+            int s = nextBit(seconds, second, 59);
+            if (s < 0) {
+                minute++;
+                second = 0;
+                continue;
+            }
+            return LocalDateTime.of(year, month, day, hour, minute, s);
+        }
+        throw new IllegalStateException("Cron expression \"" + expression + "\" never matches after " + start);
+    }
+
+    /**
+     * 在当月从day（含）开始找同时匹配日和周两列的日期，找不到返回-1
+     */
+    private int nextDay(int year, int month, int day) {
+        int length = LocalDate.of(year, month, 1)
+                              .lengthOfMonth();
+        if (day > length) {
+            return -1;
+        }
+        int dow = LocalDate.of(year, month, day)
+                           .getDayOfWeek()
+                           .getValue() % 7;
+        for (int d = day; d <= length; d++, dow = dow == 6 ? 0 : dow + 1) {
+            if ((daysOfMonth & 1L << d) != 0 && (daysOfWeek & 1 << dow) != 0) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 找from（含）到max之间第一个置位的值，找不到返回-1
+     */
+    private static int nextBit(long bits, int from, int max) {
+        if (from > max) {
+            return -1;
+        }
+        long rest = bits & (-1L << from);
+        if (rest == 0) {
+            return -1;
+        }
+        int n = Long.numberOfTrailingZeros(rest);
+        return n > max ? -1 : n;
+    }
+
+    /**
+     * 判断指定时间（精确到秒）是否匹配
+     */
+    public boolean matches(long timeMillis) {
+        LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(timeMillis), zone);
+        return (seconds & 1L << t.getSecond()) != 0 && (minutes & 1L << t.getMinute()) != 0 && (hours & 1 << t.getHour()) != 0 && (daysOfMonth & 1L << t.getDayOfMonth()) != 0
+            && (months & 1 << t.getMonthValue()) != 0 && (daysOfWeek & 1 << t.getDayOfWeek()
+                                                                                 .getValue() % 7) != 0;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CronExpression)) {
+            return false;
+        }
+        CronExpression that = (CronExpression) o;
+        return seconds == that.seconds && minutes == that.minutes && hours == that.hours && daysOfMonth == that.daysOfMonth && months == that.months && daysOfWeek == that.daysOfWeek
+            && zone.equals(that.zone);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(seconds) * 31 + Long.hashCode(minutes) * 17 + hours * 13 + Long.hashCode(daysOfMonth) * 7 + months * 3 + daysOfWeek;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -3,8 +3,11 @@ package org.etnaframework.plugin.cron;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import org.etnaframework.plugin.cache.annotation.LocalCache;
 import org.etnaframework.core.spring.SpringContext;
 import org.etnaframework.core.util.DatetimeUtils;
@@ -15,11 +18,11 @@ import org.etnaframework.core.util.NetUtils;
 import org.etnaframework.core.util.RetryTools;
 import org.etnaframework.core.util.StringTools;
 import org.etnaframework.core.util.SystemInfo;
-import org.etnaframework.core.util.ThreadUtils;
 import org.etnaframework.core.web.DispatchFilter;
 import org.etnaframework.jedis.BaseJedisLock;
+import org.etnaframework.jedis.JedisConfig;
+import org.etnaframework.plugin.cron.CronCluster.ClaimResult;
 import org.springframework.aop.framework.Advised;
-import org.springframework.scheduling.support.CronSequenceGenerator;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
 /**
@@ -34,14 +37,35 @@ public class CronTaskMeta implements Runnable {
 
     public static final String mutexInfoPrefix = "mutexTaskInfo:";
 
-    /** 线程池引用：用于定时任务分发 */
-    private ScheduledExecutorService cronBoss;
+    /** {@link MisfirePolicy#CATCH_UP}最多补执行的次数 */
+    public static final int MAX_CATCH_UP = 100;
 
-    /** 线程池引用：用于实际执行定时任务 */
+    /** 时间轮引用：用于定时任务分发 */
+    private TimingWheel cronTimer;
+
+    /** 线程池引用：任务所在分组的线程池，用于实际执行定时任务 */
     private ExecutorService cronWorker;
 
-    /** 复用Spring的cron表达式解析组件 */
-    private CronSequenceGenerator sequenceGenerator;
+    /** 预编译的cron表达式 */
+    private CronExpression cronExpression;
+
+    /** 任务分组 */
+    private String group;
+
+    /** 错过触发时的处理方式 */
+    private MisfirePolicy misfirePolicy;
+
+    /** 是否已提交到线程池（排队或执行中），同一个任务同时只能有一个 */
+    private final AtomicBoolean active = new AtomicBoolean();
+
+    /** 错过了多少次需要补执行 */
+    private final AtomicInteger missed = new AtomicInteger();
+
+    /** 错过触发的次数 */
+    private final LongAdder misfireCount = new LongAdder();
+
+    /** 因线程池已满被拒绝的次数 */
+    private final LongAdder rejectCount = new LongAdder();
 
     /** 定时任务方法的位置 */
     private String location;
@@ -52,6 +76,9 @@ public class CronTaskMeta implements Runnable {
     /** 是否在多机部署时带有互斥锁（即同一个任务同一个执行器只有一个实例能执行），如果为null则表示本机执行（所有实例都执行） */
     private BaseJedisLock mutexLock;
 
+    /** 集群互斥任务在集群中的分配，只有分配给本实例的任务才去抢锁，本机任务或非生产环境为null */
+    private CronCluster cluster;
+
     /** 定时任务的说明 */
     private String descr;
 
@@ -73,16 +100,21 @@ public class CronTaskMeta implements Runnable {
     /** 定时任务下次开始时间点 */
     private Datetime nextStartTime;
 
+    /** 定时任务下下次开始时间点 */
+    private Datetime underNextStartTime;
+
     /** 下一次执行时，如发现上一次的任务还没有执行完，是否要发出告警信息 */
     private boolean reportUnfinishedOnNextStart;
 
     /** 定时任务执行完成之后，将定时任务的返回值通知到对应的调用模块，目前专用于{@link LocalCache}的定时加载机制 */
     private CronTaskCallback<Object> callback;
 
-    CronTaskMeta(ScheduledExecutorService cronBoss, ExecutorService cronWorker, Object bean, Method method, String cron, String descr, Class<? extends BaseJedisLock> mutex,
-        boolean reportUnfinishedOnNextStart, CronTaskCallback<Object> callback) {
-        this.cronBoss = cronBoss;
+    CronTaskMeta(TimingWheel cronTimer, ExecutorService cronWorker, Object bean, Method method, String cron, String descr, Class<? extends BaseJedisLock> mutex,
+        boolean reportUnfinishedOnNextStart, String group, MisfirePolicy misfirePolicy, CronTaskCallback<Object> callback) {
+        this.cronTimer = cronTimer;
         this.cronWorker = cronWorker;
+        this.group = group;
+        this.misfirePolicy = misfirePolicy;
 
         this.bean = bean;
         if (bean instanceof Advised) { // 如果是经过aspect代理的对象，则需要取到被代理的（真实的）对象，否则会出现$$EnhancerBySpringCGLIB$$26c5da53这样很长的类名后缀
@@ -107,7 +139,7 @@ public class CronTaskMeta implements Runnable {
         this.reportUnfinishedOnNextStart = reportUnfinishedOnNextStart;
         this.callback = callback;
         try {
-            this.sequenceGenerator = new CronSequenceGenerator(cron);
+            this.cronExpression = new CronExpression(cron);
         } catch (Throwable ex) {
             // 将报错信息翻译一下，让人看得更明白
             throw new IllegalArgumentException("定时任务" + location + "的cron配置" + cron + "解析失败", ex);
@@ -131,120 +163,195 @@ public class CronTaskMeta implements Runnable {
 
     @Override
     public void run() {
-        // boss线程负责任务调度，将下次执行的任务提交，然后在worker线程开始本次任务（预先提交是为了防止本次执行超时，导致下次任务不能按时触发）
+        // 时间轮线程负责任务调度，将下次执行的任务提交，然后在分组的线程池开始本次任务（预先提交是为了防止本次执行超时，导致下次任务不能按时触发）
         NextTimeInfo next = calcNextTime();
-        cronBoss.schedule(this, next.fromNowToNextTimeMs, TimeUnit.MILLISECONDS);
+        cronTimer.schedule(this, next.fromNowToNextTimeMs, TimeUnit.MILLISECONDS);
 
         // 如果服务器还没启动完成，先不执行定时任务，防止某些资源没初始化好，一运行就出错了
         if (!SpringContext.isContextInited()) {
             return;
         }
 
-        cronWorker.execute(() -> {
-
-            // 如果发现前一个任务还没执行完，发出告警之后本次就不再执行，防止出现任务堆积爆内存（但接下来的定时检查仍会继续）
-            if (running) {
-                if (reportUnfinishedOnNextStart) { // 只有配置了告警才会发出警报
-                    String content = StringTools.concatln(new Object[] {
-                        "时间=" + DatetimeUtils.format(next.now, Datetime.DF_yyyy_MM_dd_HHmmss_SSS),
-                        "位置=" + getLocation(),
-                        "说明=" + getDescr(),
-                        "cron=" + getCron(),
-                        "开始于=" + DatetimeUtils.format(lastStartTime, Datetime.DF_yyyy_MM_dd_HHmmss_SSS),
-                        "已执行=" + HumanReadableUtils.timeSpan(next.now.getTime() - lastStartTime.getTime())
-                    });
-                    DispatchFilter.sendMail("定时任务未能在触发周期内结束", content);
+        // 如果发现前一个任务还没执行完（或还在排队），本次不再提交，防止出现任务堆积爆内存，按misfire策略处理（但接下来的定时检查仍会继续）
+        if (!active.compareAndSet(false, true)) {
+            misfire(next);
+            return;
+        }
+        try {
+            cronWorker.execute(() -> {
+                boolean holding = true;
+                try {
+                    NextTimeInfo n = next;
+                    while (true) {
+                        if (misfirePolicy == MisfirePolicy.COALESCE) { // 本次执行已经包含了之前错过的
+                            missed.set(0);
+                        }
+                        execute(n);
+                        if (!takeMissed()) {
+                            // 释放执行权之后要再检查一次：释放前到达的触发看到任务还在执行，记为错过就返回了，这里不接着执行的话这次错过就丢了
+                            // 如果释放后新的触发已经抢到了执行权，就由它来处理错过的次数
+                            active.set(false);
+                            holding = false;
+                            if (missed.get() == 0 || !active.compareAndSet(false, true)) {
+                                break;
+                            }
+                            holding = true;
+                            if (!takeMissed()) { // 只有持有执行权的线程会减少错过的次数，上面检查过不为0，这里正常都能取到
+                                break;
+                            }
+                        }
+                        n = new NextTimeInfo(System.currentTimeMillis(), nextStartTime, underNextStartTime);
+                    }
+                } finally {
+                    if (holding) {
+                        active.set(false);
+                    }
                 }
+            });
+        } catch (RejectedExecutionException ex) {
+            active.set(false);
+            if (cronWorker.isShutdown()) { // 正在停机，不再处理
                 return;
             }
+            rejectCount.increment();
+            misfire(next);
+            String content = StringTools.concatln(new Object[] {
+                "时间=" + DatetimeUtils.format(next.now, Datetime.DF_yyyy_MM_dd_HHmmss_SSS),
+                "位置=" + getLocation(),
+                "说明=" + getDescr(),
+                "cron=" + getCron(),
+                "分组=" + getGroup(),
+                "misfire=" + getMisfirePolicy()
+            });
+            DispatchFilter.sendMail("定时任务分组" + getGroup() + "的线程池已满", content);
+        }
+    }
 
-            boolean obtainLock = false;
+    /**
+     * 错过触发时按misfire策略记录需要补执行的次数
+     */
+    private void misfire(NextTimeInfo next) {
+        misfireCount.increment();
+        switch (misfirePolicy) {
+        case COALESCE:
+            missed.set(1);
+            break;
+        case CATCH_UP:
+            missed.updateAndGet(v -> Math.min(v + 1, MAX_CATCH_UP));
+            break;
+        default:
+            if (running && reportUnfinishedOnNextStart) { // 只有配置了告警才会发出警报
+                String content = StringTools.concatln(new Object[] {
+                    "时间=" + DatetimeUtils.format(next.now, Datetime.DF_yyyy_MM_dd_HHmmss_SSS),
+                    "位置=" + getLocation(),
+                    "说明=" + getDescr(),
+                    "cron=" + getCron(),
+                    "开始于=" + DatetimeUtils.format(lastStartTime, Datetime.DF_yyyy_MM_dd_HHmmss_SSS),
+                    "已执行=" + HumanReadableUtils.timeSpan(next.now.getTime() - lastStartTime.getTime())
+                });
+                DispatchFilter.sendMail("定时任务未能在触发周期内结束", content);
+            }
+            break;
+        }
+    }
 
-            // 进入执行周期，首先标记开始执行
-            try {
-                this.lastStartTime = next.now;
-                this.running = true;
-                Object result = null;
-
-                if (null == mutexLock) { // 本机任务，直接执行
-                    result = invoke();
-                } else { // 集群互斥任务，只有生产环境才会执行（在CronTaskProcessor.init控制），抢到锁了才会真正执行
-
-                    // 1、查询任务信息，如果发现redis里面存的cron和本机的不一致，需发出告警，并试着用本机配置覆盖
-                    MutexTaskInfo info = readMutexInfo();
-
-                    if (null != info && !getCron().equals(info.cron)) {
-                        String content = StringTools.concatln(new Object[] {
-                            "时间=" + DatetimeUtils.now()
-                                                 .toString(Datetime.DF_yyyy_MM_dd_HHmmss_SSS),
-                            "位置=" + getLocation(),
-                            "说明=" + getDescr(),
-                            "cron本机配置=" + getCron(),
-                            "cron冲突配置=" + info.cron,
-                            "导致配置冲突者=" + info.hostname,
-                            "",
-                            "本机cron配置将会尝试覆盖冲突配置"
-                        });
-                        DispatchFilter.sendMail("位于" + getLocation() + "的cron配置存在冲突，请检查代码同步状态", content);
-                    }
+    /**
+     * 执行完一次后判断是否需要补执行
+     */
+    private boolean takeMissed() {
+        if (misfirePolicy == MisfirePolicy.COALESCE) {
+            return missed.getAndSet(0) > 0;
+        }
+        if (misfirePolicy == MisfirePolicy.CATCH_UP) {
+            return missed.getAndUpdate(v -> Math.max(v - 1, 0)) > 0;
+        }
+        return false;
+    }
 
-                    // 2、如果上次的任务是本机执行的，为了可以给其他实例机会，防止定时任务总是被固定的实例执行，稍稍做一点延迟
-                    String myIP = NetUtils.getLocalSampleIP();
-                    if (null != info && myIP.equals(info.ip)) {
-                        ThreadUtils.sleep(StringTools.randomInt(100, 300));
-                    }
+    /**
+     * 执行一次定时任务
+     */
+    private void execute(NextTimeInfo next) {
+        // 集群互斥任务，只有分配给本实例的任务才去抢锁，抢到了才会真正执行，其他实例直接跳过，不访问redis
+        if (null != mutexLock && !claim(next)) {
+            return;
+        }
 
-                    // 3、开始抢夺锁，以下一次开始时间的时间戳作为标记，以避免本次出现冲突
-                    String keyLock = mutexLockPrefix + getLocation() + ":" + DatetimeUtils.format(getNextStartTime(), Datetime.DF_yyyyMMddHHmmss);
-                    obtainLock = RetryTools.newTask(mutexLock.jedisConfig()
-                                                             .getMaxAttempts())
-                                           .include(JedisConnectionException.class)
-                                           .process(() -> mutexLock.jedisConfig()
-                                                                   .getTemplateByKey(location)
-                                                                   .string()
-                                                                   .setnx(keyLock, myIP, next.fromNowToNextTimeMs, TimeUnit.MILLISECONDS));
-                    if (obtainLock) {
-                        // 4A、抢到锁之后开始执行
-                        writeMutexInfo(next.fromNowToUnderNextTimeMs);
-                        result = invoke();
-                    } else {
-                        // 4B、如果没有抢到锁，也有可能是抢锁操作重试导致的，对比一下IP确认锁到底有没有被自己抢到
-                        String ip = RetryTools.newTask(mutexLock.jedisConfig()
-                                                                .getMaxAttempts())
-                                              .include(JedisConnectionException.class)
-                                              .process(() -> mutexLock.jedisConfig()
-                                                                      .getTemplateByKey(location)
-                                                                      .string()
-                                                                      .get(keyLock));
-                        if (myIP.equals(ip)) {
-                            writeMutexInfo(next.fromNowToUnderNextTimeMs);
-                            result = invoke();
-                        }
-                    }
-                }
-                // 如果配置了回调方法，就将返回值通知过去
-                if (null != callback) {
-                    callback.onCallback(result);
-                }
-            } catch (Throwable ex) {
+        // 进入执行周期，首先标记开始执行
+        try {
+            this.lastStartTime = next.now;
+            this.running = true;
+            Object result = invoke();
+            // 如果配置了回调方法，就将返回值通知过去
+            if (null != callback) {
+                callback.onCallback(result);
+            }
+        } catch (Throwable ex) {
+            String content = StringTools.concatln(new Object[] {
+                "时间=" + DatetimeUtils.now()
+                                     .toString(Datetime.DF_yyyy_MM_dd_HHmmss_SSS),
+                "位置=" + getLocation(),
+                "说明=" + getDescr(),
+                "cron=" + getCron(),
+                "开始于=" + DatetimeUtils.format(lastStartTime, Datetime.DF_yyyy_MM_dd_HHmmss_SSS),
+                StringTools.printTrace(ex, true, 20, 0)
+            });
+            DispatchFilter.sendMail("位于" + getLocation() + "的定时任务执行报错", content);
+        } finally { // 执行结束后标记执行结束
+            this.running = false;
+            this.lastCostMs = System.currentTimeMillis() - lastStartTime.getTime();
+        }
+    }
+
+    /**
+     * 集群互斥任务抢本次触发的锁，返回是否由本实例执行
+     */
+    private boolean claim(NextTimeInfo next) {
+        // 1、不是分配给本实例的任务直接跳过（集群互斥任务只有生产环境才会执行，在CronTaskProcessor.addCronTask控制）
+        if (null == cluster || !cluster.isOwner(getLocation())) {
+            return false;
+        }
+        try {
+            // 2、以下一次开始时间的时间戳作为标记抢锁，抢到的同时写入任务信息并取回上一次的任务信息，只需要一次lua调用
+            String keyLock = mutexLockPrefix + getLocation() + ":" + DatetimeUtils.format(getNextStartTime(), Datetime.DF_yyyyMMddHHmmss);
+            String keyInfo = mutexInfoPrefix + getLocation();
+            MutexTaskInfo mine = new MutexTaskInfo(this);
+            mine.lastStartTime = next.now;
+            String json = JsonObjectUtils.createJson(mine);
+            ClaimResult r = RetryTools.newTask(mutexLock.jedisConfig()
+                                                        .getMaxAttempts())
+                                      .include(JedisConnectionException.class)
+                                      .process(() -> cluster.claim(getLocation(), keyLock, next.fromNowToNextTimeMs, keyInfo, json, next.fromNowToUnderNextTimeMs));
+
+            // 3、如果发现redis里面存的cron和本机的不一致，需发出告警，本机配置已经覆盖了冲突配置
+            MutexTaskInfo info = r.claimed && StringTools.isNotEmpty(r.previousInfo) ? JsonObjectUtils.parseJson(r.previousInfo, MutexTaskInfo.class) : null;
+            if (null != info && !getCron().equals(info.cron)) {
                 String content = StringTools.concatln(new Object[] {
                     "时间=" + DatetimeUtils.now()
                                          .toString(Datetime.DF_yyyy_MM_dd_HHmmss_SSS),
                     "位置=" + getLocation(),
                     "说明=" + getDescr(),
-                    "cron=" + getCron(),
-                    "开始于=" + DatetimeUtils.format(lastStartTime, Datetime.DF_yyyy_MM_dd_HHmmss_SSS),
-                    StringTools.printTrace(ex, true, 20, 0)
+                    "cron本机配置=" + getCron(),
+                    "cron冲突配置=" + info.cron,
+                    "导致配置冲突者=" + info.hostname,
+                    "",
+                    "本机cron配置已经覆盖冲突配置"
                 });
-                DispatchFilter.sendMail("位于" + getLocation() + "的定时任务执行报错", content);
-            } finally { // 执行结束后标记执行结束
-                this.running = false;
-                this.lastCostMs = System.currentTimeMillis() - lastStartTime.getTime();
-                if (obtainLock) { // 抢到锁者才有资格回写任务信息
-                    writeMutexInfo(next.fromNowToUnderNextTimeMs);
-                }
+                DispatchFilter.sendMail("位于" + getLocation() + "的cron配置存在冲突，请检查代码同步状态", content);
             }
-        });
+            return r.claimed;
+        } catch (Throwable ex) {
+            String content = StringTools.concatln(new Object[] {
+                "时间=" + DatetimeUtils.now()
+                                     .toString(Datetime.DF_yyyy_MM_dd_HHmmss_SSS),
+                "位置=" + getLocation(),
+                "说明=" + getDescr(),
+                "cron=" + getCron(),
+                StringTools.printTrace(ex, true, 20, 0)
+            });
+            DispatchFilter.sendMail("位于" + getLocation() + "的集群定时任务抢锁失败", content);
+            return false;
+        }
     }
 
     public String getLocation() {
@@ -275,6 +382,28 @@ public class CronTaskMeta implements Runnable {
         return nextStartTime;
     }
 
+    public String getGroup() {
+        return group;
+    }
+
+    public MisfirePolicy getMisfirePolicy() {
+        return misfirePolicy;
+    }
+
+    /**
+     * 错过触发的次数
+     */
+    public long getMisfireCount() {
+        return misfireCount.sum();
+    }
+
+    /**
+     * 因分组的线程池已满被拒绝的次数
+     */
+    public long getRejectCount() {
+        return rejectCount.sum();
+    }
+
     public MutexTaskInfo readMutexInfo() {
         if (null != mutexLock) {
             String keyInfo = mutexInfoPrefix + getLocation();
@@ -290,18 +419,22 @@ public class CronTaskMeta implements Runnable {
         return null;
     }
 
-    private void writeMutexInfo(long ttl) {
-        if (null != mutexLock) {
-            String keyInfo = mutexInfoPrefix + getLocation();
-            RetryTools.newTask(mutexLock.jedisConfig()
-                                        .getMaxAttempts())
-                      .include(JedisConnectionException.class)
-                      .process(() -> mutexLock.jedisConfig()
-                                              .getTemplateByKey(location)
-                                              .string()
-                                              .set(keyInfo, JsonObjectUtils.createJson(new MutexTaskInfo(this)), ttl, TimeUnit.MILLISECONDS)
-                      );
-        }
+    /**
+     * 集群互斥任务使用的redis连接配置，本机任务返回null
+     */
+    JedisConfig getMutexJedisConfig() {
+        return null == mutexLock ? null : mutexLock.jedisConfig();
+    }
+
+    /**
+     * 加入集群，由{@link CronTaskProcessor}在生产环境为集群互斥任务设置
+     */
+    void setCluster(CronCluster cluster) {
+        this.cluster = cluster;
+    }
+
+    public CronCluster getCluster() {
+        return cluster;
     }
 
     /**
@@ -337,9 +470,9 @@ public class CronTaskMeta implements Runnable {
         long now = System.currentTimeMillis();
         long lastPrepareTs = Math.max(now, null != nextStartTime ? nextStartTime.getTime() : 0);
         // 下次触发时间
-        this.nextStartTime = new Datetime(sequenceGenerator.next(new Datetime(lastPrepareTs)));
+        this.nextStartTime = new Datetime(cronExpression.next(lastPrepareTs));
         // 下下次触发时间
-        Datetime underNextStartTime = new Datetime(sequenceGenerator.next(nextStartTime));
+        this.underNextStartTime = new Datetime(cronExpression.next(nextStartTime.getTime()));
         return new NextTimeInfo(now, nextStartTime, underNextStartTime);
     }
 
@@ -367,7 +500,7 @@ public class CronTaskMeta implements Runnable {
     }
 
     /**
-     * 互斥定时任务的执行情况，记录到redis备查
+     * 互斥定时任务的执行情况，抢到锁时记录到redis备查（执行结束后不再回写，耗时为该实例上一次执行的耗时）
      */
     public static class MutexTaskInfo {
 
@@ -2,21 +2,28 @@ package org.etnaframework.plugin.cron;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import org.etnaframework.core.spring.IgnoredPackages;
 import org.etnaframework.core.spring.SpringContext;
+import org.etnaframework.core.spring.annotation.Config;
 import org.etnaframework.core.spring.annotation.OnContextInited;
+import org.etnaframework.core.spring.annotation.OnJvmShutdown;
+import org.etnaframework.core.util.NetUtils;
 import org.etnaframework.core.util.ReflectionTools;
+import org.etnaframework.core.util.StringTools;
 import org.etnaframework.core.util.SystemInfo;
 import org.etnaframework.core.util.SystemInfo.RunEnv;
 import org.etnaframework.core.util.ThreadUtils;
 import org.etnaframework.core.util.ThreadUtils.NamedThreadFactory;
 import org.etnaframework.jedis.BaseJedisLock;
+import org.etnaframework.jedis.JedisConfig;
 import org.etnaframework.plugin.cache.annotation.LocalCache;
 import org.etnaframework.plugin.cron.annotation.Crontab;
 import org.springframework.aop.framework.Advised;
@@ -31,14 +38,40 @@ import org.springframework.stereotype.Service;
 @Service
 public final class CronTaskProcessor {
 
+    /** 未指定分组的定时任务所在的分组 */
+    public static final String DEFAULT_GROUP = "default";
+
     /** 本机所有的定时任务集合 */
     private static Set<CronTaskMeta> cronTasks = new LinkedHashSet<>();
 
-    /** 线程池：用于定时任务分发 */
-    private ScheduledExecutorService cronBoss = Executors.newScheduledThreadPool(SystemInfo.CORE_PROCESSOR_NUM, new NamedThreadFactory("Cron(Boss)", Thread.MAX_PRIORITY, true));
+    /** 每个任务分组的线程池最多线程数 */
+    @Config(value = "etna.cron.groupThreads", resetable = false)
+    private static int groupThreads = Math.max(4, SystemInfo.CORE_PROCESSOR_NUM);
+
+    /** 每个任务分组的线程池等待队列长度，队列满时新触发的任务按各自的{@link MisfirePolicy}处理 */
+    @Config(value = "etna.cron.groupQueueSize", resetable = false)
+    private static int groupQueueSize = 1024;
+
+    /** 集群互斥任务的集群名称，同一个应用的各实例使用相同的名称，为空时使用启动类的完整名称 */
+    @Config(value = "etna.cron.clusterName", resetable = false)
+    private static String clusterName = "";
+
+    /** 集群互斥任务的实例心跳间隔毫秒 */
+    @Config(value = "etna.cron.clusterHeartbeatMs", resetable = false)
+    private static long clusterHeartbeatMs = 1000;
+
+    /** 集群互斥任务的实例超过这个时间没有心跳即视为已退出，它的任务由其他实例接管 */
+    @Config(value = "etna.cron.clusterNodeTimeoutMs", resetable = false)
+    private static long clusterNodeTimeoutMs = 5000;
+
+    /** 时间轮：用于定时任务分发，精度10ms，4层共256^4个tick，约497天 */
+    private TimingWheel cronTimer = new TimingWheel("Cron(Timer)", 10, 256, 4);
 
-    /** 线程池：用于实际执行定时任务 */
-    private ExecutorService cronWorker = Executors.newCachedThreadPool(new NamedThreadFactory("Cron(Worker)", Thread.NORM_PRIORITY, true));
+    /** 线程池：每个任务分组一个，用于实际执行定时任务，线程数和队列都有上限 */
+    private Map<String, ThreadPoolExecutor> cronWorkers = new ConcurrentHashMap<>();
+
+    /** 集群互斥任务的分配：每个redis连接配置一个 */
+    private Map<JedisConfig, CronCluster> cronClusters = new ConcurrentHashMap<>();
 
     /**
      * 获取所有的归档的定时任务信息
@@ -53,10 +86,6 @@ public final class CronTaskProcessor {
     @OnContextInited
     protected void init() throws Throwable {
 
-        // 将专用线程池纳入监控，在/stat接口可查看状态
-        ThreadUtils.addThreadPool(cronBoss);
-        ThreadUtils.addThreadPool(cronWorker);
-
         for (Object bean : SpringContext.getBeansOfType(Object.class)
                                         .values()) {
             if (IgnoredPackages.filter(bean)) {
@@ -86,7 +115,7 @@ public final class CronTaskProcessor {
                     if (m.getParameterCount() > 0) {
                         throw new IllegalArgumentException(location + "不允许带有任何参数");
                     }
-                    addCronTask(bean, m, c.cron(), c.descr(), c.mutex(), c.reportUnfinishedOnNextStart(), o -> {
+                    addCronTask(bean, m, c.cron(), c.descr(), c.mutex(), c.reportUnfinishedOnNextStart(), c.group(), c.misfire(), o -> {
                     });
                 }
             }
@@ -94,22 +123,101 @@ public final class CronTaskProcessor {
     }
 
     /**
-     * 提交定时任务
+     * 提交定时任务，放在{@link #DEFAULT_GROUP}分组，错过触发时跳过
      *
      * @param mutex 是否在多机部署时带有互斥锁（即同一个任务同一个执行器只有一个实例能执行），如果为null则表示本机执行（所有实例都执行）
      * @param callback 定时任务执行完成之后，将定时任务的返回值通知到对应的调用模块，目前专用于{@link LocalCache}的定时加载机制
      */
     public CronTaskMeta addCronTask(Object bean, Method m, String cron, String descr, Class<? extends BaseJedisLock> mutex, boolean reportUnfinishedOnNextStart, CronTaskCallback<Object> callback) {
-        CronTaskMeta meta = new CronTaskMeta(cronBoss, cronWorker, bean, m, cron, descr, mutex, reportUnfinishedOnNextStart, callback);
+        return addCronTask(bean, m, cron, descr, mutex, reportUnfinishedOnNextStart, DEFAULT_GROUP, MisfirePolicy.SKIP, callback);
+    }
+
+    /**
+     * 提交定时任务
+     *
+     * @param mutex 是否在多机部署时带有互斥锁（即同一个任务同一个执行器只有一个实例能执行），如果为null则表示本机执行（所有实例都执行）
+     * @param group 任务分组，为空表示{@link #DEFAULT_GROUP}
+     * @param misfire 错过触发时的处理方式
+     * @param callback 定时任务执行完成之后，将定时任务的返回值通知到对应的调用模块，目前专用于{@link LocalCache}的定时加载机制
+     */
+    public CronTaskMeta addCronTask(Object bean, Method m, String cron, String descr, Class<? extends BaseJedisLock> mutex, boolean reportUnfinishedOnNextStart, String group,
+        MisfirePolicy misfire, CronTaskCallback<Object> callback) {
+        String g = StringTools.isEmpty(group) ? DEFAULT_GROUP : group;
+        CronTaskMeta meta = new CronTaskMeta(cronTimer, getCronWorker(g), bean, m, cron, descr, mutex, reportUnfinishedOnNextStart, g, misfire, callback);
         if (cronTasks.add(meta)) {
             // 在下次执行的时间点，提前将任务提交，然后每次当前任务开始前就预先提交下次的，这样就实现了持续执行
             // 单机定时任务直接放入执行，集群互斥定时任务只有生产环境才可以执行，防止本机测试对线上造成干扰
             if (meta.isSingleTask() || SystemInfo.RUN_ENV.equals(RunEnv.release)) {
-                cronBoss.schedule(meta, meta.calcNextTime().fromNowToNextTimeMs, TimeUnit.MILLISECONDS);
+                if (!meta.isSingleTask()) {
+                    CronCluster cluster = getCronCluster(meta.getMutexJedisConfig());
+                    cluster.register(meta.getLocation());
+                    meta.setCluster(cluster);
+                }
+                cronTimer.schedule(meta, meta.calcNextTime().fromNowToNextTimeMs, TimeUnit.MILLISECONDS);
             }
         } else {
             throw new IllegalArgumentException("不允许重复添加位于" + meta.getLocation() + "的定时任务");
         }
         return meta;
     }
+
+    /**
+     * 获取任务分组的线程池，第一次使用时创建，并纳入监控，在/stat接口可查看状态
+     */
+    private ThreadPoolExecutor getCronWorker(String group) {
+        return cronWorkers.computeIfAbsent(group, g -> {
+            ThreadPoolExecutor e = new ThreadPoolExecutor(groupThreads, groupThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(groupQueueSize), new NamedThreadFactory("Cron(" + g + ")",
+                Thread.NORM_PRIORITY, true));
+            e.allowCoreThreadTimeOut(true);
+            ThreadUtils.addThreadPool(e);
+            return e;
+        });
+    }
+
+    /**
+     * 获取集群互斥任务的分配，第一次使用时加入集群并开始定时上报心跳
+     */
+    private CronCluster getCronCluster(JedisConfig config) {
+        return cronClusters.computeIfAbsent(config, c -> {
+            String name = StringTools.isEmpty(clusterName) ? SystemInfo.COMMAND : clusterName;
+            CronCluster cluster = new CronCluster(c, name, NetUtils.getLocalSampleIP() + ":" + SystemInfo.PID, clusterHeartbeatMs, clusterNodeTimeoutMs);
+            cluster.start(ThreadUtils.getWatchdog());
+            return cluster;
+        });
+    }
+
+    /**
+     * 停机时停止时间轮不再触发任务，并关闭各分组的线程池，已经开始执行的任务会执行完
+     */
+    @OnJvmShutdown
+    protected void stopCronTasks() {
+        cronTimer.stop();
+        for (ThreadPoolExecutor e : cronWorkers.values()) {
+            e.shutdown();
+        }
+    }
+
+    /**
+     * 正常停机时退出集群，让其他实例马上接管本实例的任务，不用等心跳超时
+     */
+    @OnJvmShutdown
+    protected void leaveClusters() {
+        for (CronCluster cluster : cronClusters.values()) {
+            cluster.leave();
+        }
+    }
+
+    /**
+     * 获取集群互斥任务的分配情况
+     */
+    public Collection<CronCluster> getCronClusters() {
+        return cronClusters.values();
+    }
+
+    /**
+     * 获取定时任务使用的时间轮
+     */
+    public TimingWheel getCronTimer() {
+        return cronTimer;
+    }
 }
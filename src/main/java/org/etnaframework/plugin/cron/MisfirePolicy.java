@@ -0,0 +1,19 @@
+package org.etnaframework.plugin.cron;
+
+/**
+ * 定时任务错过触发时的处理方式，错过是指到了触发时间，上一次的任务还在执行/排队，或者任务分组的线程池已满
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public enum MisfirePolicy {
+
+    /** 跳过本次，等下一次触发（默认，和以前的处理方式一致） */
+    SKIP,
+
+    /** 错过的多次合并为一次，在上一次执行完之后立即补执行一次，适用于刷新缓存、同步数据等只关心最新状态的任务 */
+    COALESCE,
+
+    /** 错过几次就补执行几次（最多补{@link CronTaskMeta#MAX_CATCH_UP}次），在上一次执行完之后依次执行，适用于每次触发都必须处理的任务 */
+    CATCH_UP
+}
@@ -0,0 +1,316 @@
+package org.etnaframework.plugin.cron;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.etnaframework.core.logging.Log;
+import org.slf4j.Logger;
+
+/**
+ * <pre>
+ * 分层时间轮定时器，代替{@link java.util.concurrent.ScheduledThreadPoolExecutor}调度大量定时任务
+ *
+ * 1、ScheduledThreadPoolExecutor用一个加锁的二叉堆保存所有任务，提交和取出都是O(log n)并且要竞争同一把锁，任务数上万后开销明显
+ * 2、时间轮把时间按tick分成槽，每层wheelSize个槽，第0层一个槽是1个tick，第1层一个槽是wheelSize个tick，依此类推（和Linux内核的定时器一样）
+ *    提交任务时按到期时间直接放入对应的槽（O(1)），第0层的指针每走完一圈，就把上一层当前槽中的任务重新分配到下层（cascade）
+ * 3、只有一个线程推进时间轮和触发任务，其他线程提交任务时只放入无锁队列，由推进线程在下一个tick放入槽中，槽本身不需要加锁
+ * 4、到期的任务在推进线程中直接执行，所以任务必须很快结束（如只是把实际的工作提交给线程池），否则会推迟其他任务
+ * 5、精度为一个tick，任务最多会晚一个tick触发，不会提前触发
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class TimingWheel {
+
+    private static final Logger log = Log.getLogger();
+
+    private final String name;
+
+    private final long tickNanos;
+
+    /** 每层的槽数为2的bits次方 */
+    private final int bits;
+
+    private final int mask;
+
+    /** [层][槽]，每个槽是一个双向链表的头节点（哨兵） */
+    private final Timeout[][] wheels;
+
+    /** 所有层加起来能表示的最大tick数，超过的任务先放在最高层，到期时再重新计算 */
+    private final long maxTicks;
+
+    /** 等待放入时间轮的任务 */
+    private final ConcurrentLinkedQueue<Timeout> adds = new ConcurrentLinkedQueue<>();
+
+    private final long startNanos = System.nanoTime();
+
+    /** 下一个要处理的tick，只有推进线程访问 */
+    private long currentTick;
+
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final LongAdder expireCount = new LongAdder();
+
+    private final LongAdder cancelCount = new LongAdder();
+
+    /**
+     * @param tickMs 每个tick的毫秒数，即定时的精度
+     * @param wheelSize 每层的槽数，会向上取整为2的幂
+     * @param levels 层数，能表示的最长时间为tickMs*wheelSize^levels，超过的任务会在到达最高层的最后一个槽时重新放入
+     */
+    public TimingWheel(String name, long tickMs, int wheelSize, int levels) {
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.bits = 32 - Integer.numberOfLeadingZeros(Math.max(wheelSize, 2) - 1);
+        this.mask = (1 << bits) - 1;
+        if (bits * levels >= 62) {
+            throw new IllegalArgumentException("wheelSize^levels is too large");
+        }
+        this.maxTicks = 1L << (bits * levels);
+        this.wheels = new Timeout[levels][1 << bits];
+        for (Timeout[] wheel : wheels) {
+            for (int i = 0; i < wheel.length; i++) {
+                Timeout head = new Timeout(this, null, 0);
+                head.prev = head.next = head;
+                wheel[i] = head;
+            }
+        }
+        worker = new Thread(this::tickLoop, name);
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MAX_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * 提交任务，在delay之后由推进线程执行
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException(name + " is stopped");
+        }
+        long deadline = System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay));
+        // 向上取整，保证不会提前触发
+        Timeout t = new Timeout(this, task, (deadline + tickNanos - 1) / tickNanos);
+        pendingCount.incrementAndGet();
+        adds.add(t);
+        return t;
+    }
+
+    private void tickLoop() {
+        while (running) {
+            long now = System.nanoTime() - startNanos;
+            long due = currentTick * tickNanos;
+            if (now < due) {
+                LockSupport.parkNanos(this, due - now);
+                continue;
+            }
+            try {
+                transferAdds();
+                tick();
+            } catch (Throwable e) {
+                log.error("{} tick failed", name, e);
+            }
+        }
+    }
+
+    private void transferAdds() {
+        for (Timeout t; null != (t = adds.poll()); ) {
+            if (t.state == Timeout.CANCELLED) {
+                continue;
+            }
+            place(t);
+        }
+    }
+
+    /**
+     * 按到期tick放入对应层的槽：距离当前小于wheelSize的放第0层，小于wheelSize^2的放第1层，依此类推
+     */
+    private void place(Timeout t) {
+        long deadline = t.deadlineTick;
+        long delta = deadline - currentTick;
+        if (delta < 0) { // 已过期，放入马上要处理的槽
+            deadline = currentTick;
+            delta = 0;
+        } else if (delta >= maxTicks) {
+            deadline = currentTick + maxTicks - 1;
+            delta = maxTicks - 1;
+        }
+        int level = 0;
+        while (level < wheels.length - 1 && delta >= 1L << (bits * (level + 1))) {
+            level++;
+        }
+        t.link(wheels[level][(int) ((deadline >>> (bits * level)) & mask)]);
+    }
+
+    /**
+     * 处理currentTick：第0层转完一圈时先把上层当前槽中的任务重新分配，再执行第0层当前槽中的任务
+     */
+    private void tick() {
+        int index = (int) (currentTick & mask);
+        if (index == 0) {
+            for (int level = 1; level < wheels.length; level++) {
+                int idx = (int) ((currentTick >>> (bits * level)) & mask);
+                cascade(wheels[level][idx]);
+                if (idx != 0) {
+                    break;
+                }
+            }
+        }
+        Timeout head = wheels[0][index];
+        long tick = currentTick;
+        currentTick++;
+        for (Timeout t = head.next; t != head; t = head.next) {
+            t.unlink();
+            if (t.deadlineTick > tick) { // 超出最大范围被提前放入的任务，重新计算位置
+                place(t);
+                continue;
+            }
+            if (!t.expire()) {
+                continue;
+            }
+            pendingCount.decrementAndGet();
+            expireCount.increment();
+            try {
+                t.task.run();
+            } catch (Throwable e) {
+                log.error("{} run task {} failed", name, t.task, e);
+            }
+        }
+    }
+
+    private void cascade(Timeout head) {
+        for (Timeout t = head.next; t != head; t = head.next) {
+            t.unlink();
+            place(t);
+        }
+    }
+
+    /**
+     * 停止推进线程，未到期的任务不再执行
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 尚未到期也没有取消的任务数
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * 已到期执行的任务数
+     */
+    public long getExpireCount() {
+        return expireCount.sum();
+    }
+
+    /**
+     * 已取消的任务数
+     */
+    public long getCancelCount() {
+        return cancelCount.sum();
+    }
+
+    /**
+     * 推进线程落后于当前时间的tick数，持续较大说明到期的任务执行太慢
+     */
+    public long getLagTicks() {
+        return Math.max(0, (System.nanoTime() - startNanos) / tickNanos - currentTick);
+    }
+
+    @Override
+    public String toString() {
+        return name + "[pending=" + getPendingCount() + ", expired=" + getExpireCount() + ", cancelled=" + getCancelCount() + ", lagTicks=" + getLagTicks() + "]";
+    }
+
+    /**
+     * 提交到时间轮中的任务，可以取消
+     */
+    public static final class Timeout {
+
+        static final int WAITING = 0;
+
+        static final int CANCELLED = 1;
+
+        static final int EXPIRED = 2;
+
+        private final TimingWheel wheel;
+
+        private final Runnable task;
+
+        private final long deadlineTick;
+
+        private volatile int state;
+
+        /** 槽中的链表指针，只有推进线程访问 */
+        private Timeout prev;
+
+        private Timeout next;
+
+        Timeout(TimingWheel wheel, Runnable task, long deadlineTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        private void link(Timeout head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = next = null;
+        }
+
+        private synchronized boolean expire() {
+            if (state != WAITING) {
+                return false;
+            }
+            state = EXPIRED;
+            return true;
+        }
+
+        /**
+         * 取消任务，返回是否取消成功（已执行或已取消的返回false），取消的任务在到期时从时间轮中移除
+         */
+        public synchronized boolean cancel() {
+            if (state != WAITING) {
+                return false;
+            }
+            state = CANCELLED;
+            wheel.pendingCount.decrementAndGet();
+            wheel.cancelCount.increment();
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        public Runnable getTask() {
+            return task;
+        }
+    }
+}
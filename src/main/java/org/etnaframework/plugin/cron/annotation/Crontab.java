@@ -7,6 +7,9 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import org.etnaframework.core.util.SystemInfo.RunEnv;
 import org.etnaframework.jedis.BaseJedisLock;
+import org.etnaframework.plugin.cron.CronTaskMeta;
+import org.etnaframework.plugin.cron.CronTaskProcessor;
+import org.etnaframework.plugin.cron.MisfirePolicy;
 
 /**
  * 定时任务组件，加到想要定时执行的方法上就可以了，注意最小单位是秒
@@ -25,7 +28,7 @@ public @interface Crontab {
      * 例如 10 * * * * MON-FRI 表示 从周一到周五，每分钟的第10秒 执行
      *
      * 注意：
-     * 1、如果本次执行尚未结束，却到了下一次触发的时间点，这种情况会发出告警且不执行下次任务（集群互斥任务如果锁被其他实例抢到则仍会由其他实例执行）
+     * 1、如果本次执行尚未结束，却到了下一次触发的时间点，默认会发出告警且不执行下次任务（集群互斥任务如果被分配给了其他实例则仍会由其他实例执行），可通过{@link #misfire()}修改
      * 2、集群互斥任务如果同一个方法上cron周期跟其他执行的实例不同，在本机触发检查时会发出告警（参见{@link CronTaskMeta#run()}的实现）
      */
     String cron();
@@ -35,7 +38,7 @@ public @interface Crontab {
      *
      * 1、如果服务单机部署，则是否配置此项没有影响，定时任务会正常触发
      *
-     * 2、如果服务是多机部署的，设置了此项，则定时任务每次触发时只有一个实例会执行（谁先抢到谁执行，适用数据处理类任务）
+     * 2、如果服务是多机部署的，设置了此项，则定时任务每次触发时只有一个实例会执行（任务按一致性哈希分配给存活的实例，分配到的实例抢锁执行，适用数据处理类任务）
      * 如不设置此项，则定时任务会在每个实例上都触发，适用数据获取类任务，例如定时拉取配置文件
      *
      * 3、为了防止测试干扰，只有运行环境为{@link RunEnv#release}才会执行集群互斥定时任务
@@ -49,6 +52,16 @@ public @interface Crontab {
      */
     boolean reportUnfinishedOnNextStart() default true;
 
+    /**
+     * 任务分组，同组的任务共用一个有界的线程池，执行慢的分组不会影响其他分组，为空表示{@link CronTaskProcessor#DEFAULT_GROUP}
+     */
+    String group() default "";
+
+    /**
+     * 错过触发（上一次还没执行完、或分组的线程池已满）时的处理方式
+     */
+    MisfirePolicy misfire() default MisfirePolicy.SKIP;
+
     /**
      * 该定时任务的内容描述，会在/stat/cron接口显示出来
      */
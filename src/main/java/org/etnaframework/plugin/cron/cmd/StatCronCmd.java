@@ -13,9 +13,11 @@ import org.etnaframework.core.util.SystemInfo.RunEnv;
 import org.etnaframework.core.web.HttpEvent;
 import org.etnaframework.core.web.annotation.CmdPath;
 import org.etnaframework.core.web.cmd.HttpCmd;
+import org.etnaframework.plugin.cron.CronCluster;
 import org.etnaframework.plugin.cron.CronTaskMeta;
 import org.etnaframework.plugin.cron.CronTaskMeta.MutexTaskInfo;
 import org.etnaframework.plugin.cron.CronTaskProcessor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
 /**
@@ -29,6 +31,9 @@ import org.springframework.stereotype.Controller;
 @Controller
 public class StatCronCmd extends HttpCmd {
 
+    @Autowired
+    private CronTaskProcessor cronTaskProcessor;
+
     @CmdPath("/stat/cron")
     public void index(HttpEvent he) throws Throwable {
         StringBuilder info = new StringBuilder(SystemInfo.HOSTNAME);
@@ -37,12 +42,21 @@ public class StatCronCmd extends HttpCmd {
             .append(")\n\n");
         info.append("当多实例部署时（注意需要确保时间同步）：\n");
         info.append("【本机】每个实例都会同时执行任务，适用数据获取型任务，例如定时拉取配置信息\n");
-        info.append("【集群】各实例竞争锁，抢到者执行，即同时只有一个实例执行任务，适用数据处理型任务\n");
+        info.append("【集群】任务按一致性哈希分配给存活的实例，分配到的实例抢锁执行，即同时只有一个实例执行任务，适用数据处理型任务\n");
         info.append("　　　　为了防止开发/测试干扰线上环境，限制只有实例RunEnv=")
             .append(RunEnv.release)
             .append("时才有资格参与竞争（当前实例RunEnv=")
             .append(SystemInfo.RUN_ENV)
-            .append("）\n\n");
+            .append("）\n");
+        info.append("调度：")
+            .append(cronTaskProcessor.getCronTimer())
+            .append("\n");
+        for (CronCluster c : cronTaskProcessor.getCronClusters()) {
+            info.append("集群：")
+                .append(c)
+                .append("\n");
+        }
+        info.append("\n");
 
         int locationLength = 10;
         int cronLength = 12;
@@ -86,16 +100,18 @@ public class StatCronCmd extends HttpCmd {
                     m.isRunning() ? "running..." : HumanReadableUtils.timeSpan(m.getLastCostMs()),
                     null == m.getNextStartTime() ? "RunEnv=" + SystemInfo.RUN_ENV + " Disabled" : DatetimeUtils.format(m.getNextStartTime()),
                     m.getDescr(),
-                    ""
+                    m.getMisfireCount() > 0 ? "错过" + m.getMisfireCount() + "次(" + m.getMisfirePolicy() + ")" : ""
                 });
                 list.add(new StatCronOutput(msg, m.getNextStartTime()));
-            } else { // 从redis取任务信息
+            } else { // 从redis取任务信息，redis里只记录了开始执行时的信息，本机执行的以本机状态为准
+                boolean local = SystemInfo.HOSTNAME.equals(t.hostname) && NetUtils.getLocalSampleIP()
+                                                                                  .equals(t.ip);
                 String msg = StringTools.format(format, new Object[] {
                     t.location,
                     m.isSingleTask() ? "本机" : "集群",
                     m.getCron(),
                     null != t.lastStartTime ? DatetimeUtils.format(t.lastStartTime) : "-",
-                    t.running ? "running..." : HumanReadableUtils.timeSpan(t.lastCostMs),
+                    local && m.isRunning() ? "running..." : HumanReadableUtils.timeSpan(local ? m.getLastCostMs() : t.lastCostMs),
                     null == m.getNextStartTime() ? DatetimeUtils.format(t.nextStartTime) : DatetimeUtils.format(m.getNextStartTime()),
                     m.getDescr(),
                     "由" + t.hostname + "执行"
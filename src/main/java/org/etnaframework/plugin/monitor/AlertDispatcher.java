@@ -0,0 +1,615 @@
+package org.etnaframework.plugin.monitor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.etnaframework.core.logging.Log;
+import org.etnaframework.core.util.DatetimeUtils;
+import org.etnaframework.core.util.DingTalkRobotUtils;
+import org.etnaframework.core.util.HttpClientUtils.HttpResult;
+import org.etnaframework.core.util.RateLimiter;
+import org.etnaframework.core.util.StringTools;
+import org.slf4j.Logger;
+
+/**
+ * <pre>
+ * 异步发送告警，代替在出错的线程中直接调用钉钉机器人接口（接口慢或大量出错时会卡住业务线程，并发出大量重复的消息）
+ *
+ * 1、调用方只把告警放入有界队列，队列满时直接丢弃并计数，不会阻塞
+ * 2、单独的发送线程按指纹（标题中的数字替换为#，加上异常类名和抛出位置）合并告警：同类告警第一次立即发送，
+ *    之后合并窗口内重复的告警只计数，窗口结束时合并为一条摘要发送（标题带上次数，内容带上首次/最后一次时间，为最后一次的内容）
+ * 3、每个发送通道单独限流，超过频率的告警不丢弃，继续合并，稍后再发
+ * 4、每个发送通道有熔断：连续失败达到次数后暂停发送一段时间，期间告警继续合并，暂停结束后先试发一条，成功才恢复
+ * 5、提供队列积压、丢弃、合并、发送成功/失败等计数，用于监控告警本身是否正常
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class AlertDispatcher {
+
+    private static final Logger log = Log.getLogger();
+
+    /** 发送线程最长的等待时间，到时间后检查是否有需要发送的摘要 */
+    private static final long MAX_WAIT_MS = 1000;
+
+    /** 被限流时隔多久再尝试 */
+    private static final long RATE_LIMITED_RETRY_MS = 1000;
+
+    /** 发送失败时隔多久再重试 */
+    private static final long FAILED_RETRY_MS = 5000;
+
+    /** 每条告警（摘要）最多尝试发送的次数，超过后丢弃 */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /** 每个通道同时在合并中的告警种类上限，超过时新种类的告警会被丢弃 */
+    private static final int MAX_PENDING = 1024;
+
+    private final BlockingQueue<Alert> queue;
+
+    /** 合并窗口，单位毫秒 */
+    private final long coalesceWindowMs;
+
+    private final List<ChannelState> channels = new CopyOnWriteArrayList<>();
+
+    private final Thread sender;
+
+    private volatile boolean running = true;
+
+    private final LongAdder acceptCount = new LongAdder();
+
+    private final LongAdder dropCount = new LongAdder();
+
+    /** 各通道合并中尚未发出的告警条数，只有发送线程修改 */
+    private volatile int pendingCount;
+
+    /**
+     * @param queueSize 队列长度
+     * @param coalesceWindowMs 合并窗口，单位毫秒
+     */
+    public AlertDispatcher(int queueSize, long coalesceWindowMs) {
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.coalesceWindowMs = coalesceWindowMs;
+        sender = new Thread(this::sendLoop, "AlertDispatcher");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * 增加一个发送通道
+     *
+     * @param limiter 发送限流，以通道名为key，为null表示不限流
+     * @param breakerFailures 连续失败多少次后熔断
+     * @param breakerOpenMs 熔断后暂停发送的时间，单位毫秒
+     */
+    public AlertDispatcher addChannel(AlertChannel channel, RateLimiter limiter, int breakerFailures, long breakerOpenMs) {
+        channels.add(new ChannelState(channel, limiter, breakerFailures, breakerOpenMs));
+        return this;
+    }
+
+    /**
+     * 提交一条告警，不会阻塞，返回是否放入了队列（没有可用的通道、队列满时返回false）
+     *
+     * content会在调用时转换为字符串，调用方之后再修改不会影响发送的内容
+     */
+    public boolean dispatch(String title, CharSequence content, Throwable ex) {
+        if (!running || !hasEnabledChannel()) {
+            return false;
+        }
+        Alert a = new Alert(fingerprint(title, ex), title, null == content ? "" : content.toString(), System.currentTimeMillis());
+        if (queue.offer(a)) {
+            acceptCount.increment();
+            return true;
+        }
+        dropCount.increment();
+        return false;
+    }
+
+    private boolean hasEnabledChannel() {
+        for (ChannelState cs : channels) {
+            if (cs.channel.isEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 告警的指纹，指纹相同的告警会被合并，标题中的数字（如负载值、耗时）不参与比较
+     */
+    static String fingerprint(String title, Throwable ex) {
+        StringBuilder sb = new StringBuilder(64);
+        boolean digit = false;
+        for (int i = 0; null != title && i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (!digit) {
+                    sb.append('#');
+                }
+                digit = true;
+            } else {
+                sb.append(c);
+                digit = false;
+            }
+        }
+        if (null != ex) {
+            sb.append('|')
+              .append(ex.getClass()
+                        .getName());
+            StackTraceElement[] st = ex.getStackTrace();
+            if (st.length > 0) {
+                sb.append('@')
+                  .append(st[0]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void sendLoop() {
+        long wait = MAX_WAIT_MS;
+        while (running) {
+            try {
+                Alert a = queue.poll(wait, TimeUnit.MILLISECONDS);
+                while (null != a) {
+                    boolean first = false;
+                    for (ChannelState cs : channels) {
+                        first |= cs.merge(a);
+                    }
+                    if (first) { // 新种类的告警先发出去再合并后面的，否则积压时第一条也会被合并进摘要
+                        flush(false);
+                    }
+                    a = queue.poll();
+                }
+                wait = flush(false);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable e) {
+                log.error("dispatch alert failed", e);
+                wait = MAX_WAIT_MS;
+            }
+        }
+    }
+
+    /**
+     * 发送各通道中到期的告警，返回发送线程下次需要等待的时间
+     *
+     * @param force 为true时不等合并窗口结束，直接发送所有合并中的告警
+     */
+    private long flush(boolean force) {
+        long next = Long.MAX_VALUE;
+        int pending = 0;
+        for (ChannelState cs : channels) {
+            next = Math.min(next, cs.flush(force));
+            pending += cs.pendingAlerts;
+        }
+        pendingCount = pending;
+        return Math.max(1, Math.min(MAX_WAIT_MS, next - System.currentTimeMillis()));
+    }
+
+    /**
+     * 停止发送线程，队列中和合并中的告警会尽量发出（仍受限流和熔断的限制）
+     */
+    public void close() {
+        running = false;
+        sender.interrupt();
+        try {
+            sender.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+        }
+        if (sender.isAlive()) {
+            return;
+        }
+        Alert a;
+        while (null != (a = queue.poll())) {
+            for (ChannelState cs : channels) {
+                cs.merge(a);
+            }
+        }
+        flush(true);
+    }
+
+    /**
+     * 队列中等待处理的告警数
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 积压的告警数，包括队列中的和已合并但还没有发出的
+     */
+    public int getBacklog() {
+        return queue.size() + pendingCount;
+    }
+
+    /**
+     * 成功放入队列的告警数
+     */
+    public long getAcceptCount() {
+        return acceptCount.sum();
+    }
+
+    /**
+     * 丢弃的告警数，包括队列满、合并中的告警种类过多、多次发送失败被放弃的
+     */
+    public long getDropCount() {
+        return dropCount.sum();
+    }
+
+    /**
+     * 合并窗口，单位毫秒
+     */
+    public long getCoalesceWindowMs() {
+        return coalesceWindowMs;
+    }
+
+    /**
+     * 各通道的状态
+     */
+    public List<ChannelState> getChannels() {
+        return new ArrayList<>(channels);
+    }
+
+    /**
+     * 输出统计信息，用于/stat/alert查看
+     */
+    public String printStat() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("queue=")
+          .append(getQueueSize())
+          .append(", backlog=")
+          .append(getBacklog())
+          .append(", accept=")
+          .append(getAcceptCount())
+          .append(", drop=")
+          .append(getDropCount())
+          .append(", coalesceWindowMs=")
+          .append(coalesceWindowMs)
+          .append("\n\n");
+        String fmt = "%-12s %10s %10s %10s %12s %12s %8s\n";
+        sb.append(String.format(fmt, "channel", "sent", "fail", "coalesce", "rateLimited", "breakerOpen", "open"));
+        for (ChannelState cs : channels) {
+            sb.append(String.format(fmt, cs.getName(), cs.getSentCount(), cs.getFailCount(), cs.getCoalesceCount(), cs.getRateLimitedCount(), cs.getBreakerOpenCount(), cs.isCircuitOpen()));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("AlertDispatcher [backlog=").append(getBacklog())
+                                                                         .append(", accept=")
+                                                                         .append(getAcceptCount())
+                                                                         .append(", drop=")
+                                                                         .append(getDropCount());
+        for (ChannelState cs : channels) {
+            sb.append(", ")
+              .append(cs);
+        }
+        return sb.append("]")
+                 .toString();
+    }
+
+    /**
+     * 告警发送通道
+     */
+    public interface AlertChannel {
+
+        /**
+         * 通道名称，用于限流和统计
+         */
+        String getName();
+
+        /**
+         * 通道是否可用，如没有配置地址时返回false，告警不会进入该通道
+         */
+        boolean isEnabled();
+
+        /**
+         * 发送告警，返回是否发送成功，在发送线程中执行
+         */
+        boolean send(String title, String content);
+    }
+
+    /**
+     * 通过钉钉群机器人发送告警，地址每次发送时获取，配置修改后立即生效
+     */
+    public static class DingTalkChannel implements AlertChannel {
+
+        private final Supplier<String> robotUrl;
+
+        private final int timeoutMs;
+
+        /**
+         * @param timeoutMs 连接/读取的超时时间，单位毫秒
+         */
+        public DingTalkChannel(Supplier<String> robotUrl, int timeoutMs) {
+            this.robotUrl = robotUrl;
+            this.timeoutMs = timeoutMs;
+        }
+
+        @Override
+        public String getName() {
+            return "dingTalk";
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return StringTools.isNotEmpty(robotUrl.get());
+        }
+
+        @Override
+        public boolean send(String title, String content) {
+            HttpResult r = DingTalkRobotUtils.markdownGeneral(robotUrl.get(), title, content)
+                                             .timeout(timeoutMs)
+                                             .logOnErrorOnly()
+                                             .fetch();
+            if (r.getStatusCode() != 200) {
+                return false;
+            }
+            // 钉钉在限流、参数错误时也返回200，需要检查errcode
+            return r.getJson()
+                    .getInt("errcode", 0) == 0;
+        }
+    }
+
+    /**
+     * 单条告警
+     */
+    private static final class Alert {
+
+        final String fingerprint;
+
+        final String title;
+
+        final String content;
+
+        final long time;
+
+        Alert(String fingerprint, String title, String content, long time) {
+            this.fingerprint = fingerprint;
+            this.title = title;
+            this.content = content;
+            this.time = time;
+        }
+    }
+
+    /**
+     * 同一指纹合并中的告警
+     */
+    private static final class Pending {
+
+        /** 最近一次的标题和内容 */
+        String title;
+
+        String content;
+
+        /** 尚未发出的次数 */
+        int count;
+
+        /** 尚未发出的第一次和最后一次时间 */
+        long first;
+
+        long last;
+
+        /** 最早什么时候可以发送，上一次发送后要等合并窗口结束 */
+        long due;
+
+        /** 已尝试发送的次数 */
+        int attempts;
+
+        Pending(Alert a) {
+            add(a);
+            due = a.time;
+        }
+
+        void add(Alert a) {
+            if (count == 0) {
+                first = a.time;
+            }
+            title = a.title;
+            content = a.content;
+            count++;
+            last = a.time;
+        }
+    }
+
+    /**
+     * 发送通道的状态，包括合并中的告警、限流、熔断和计数，除计数外只有发送线程访问
+     */
+    public final class ChannelState {
+
+        private final AlertChannel channel;
+
+        private final RateLimiter limiter;
+
+        private final int breakerFailures;
+
+        private final long breakerOpenMs;
+
+        private final Map<String, Pending> pending = new LinkedHashMap<>();
+
+        private int pendingAlerts;
+
+        private int consecutiveFailures;
+
+        /** 熔断结束的时间 */
+        private volatile long openUntil;
+
+        private final LongAdder sentCount = new LongAdder();
+
+        private final LongAdder failCount = new LongAdder();
+
+        private final LongAdder coalesceCount = new LongAdder();
+
+        private final LongAdder rateLimitedCount = new LongAdder();
+
+        private final LongAdder breakerOpenCount = new LongAdder();
+
+        ChannelState(AlertChannel channel, RateLimiter limiter, int breakerFailures, long breakerOpenMs) {
+            this.channel = channel;
+            this.limiter = limiter;
+            this.breakerFailures = breakerFailures;
+            this.breakerOpenMs = breakerOpenMs;
+        }
+
+        /**
+         * 合并告警，返回是否是新种类的告警（需要立即发送）
+         */
+        boolean merge(Alert a) {
+            if (!channel.isEnabled()) {
+                return false;
+            }
+            Pending p = pending.get(a.fingerprint);
+            boolean first = null == p;
+            if (first) {
+                if (pending.size() >= MAX_PENDING) {
+                    dropCount.increment();
+                    return false;
+                }
+                pending.put(a.fingerprint, new Pending(a));
+            } else {
+                p.add(a);
+            }
+            pendingAlerts++;
+            return first;
+        }
+
+        /**
+         * 发送到期的告警，返回下一个到期的时间
+         */
+        long flush(boolean force) {
+            long next = Long.MAX_VALUE;
+            for (Iterator<Pending> it = pending.values()
+                                               .iterator(); it.hasNext(); ) {
+                Pending p = it.next();
+                long now = System.currentTimeMillis();
+                if (p.count == 0) { // 合并窗口内没有再出现，不再需要保留
+                    if (now >= p.due) {
+                        it.remove();
+                    } else {
+                        next = Math.min(next, p.due);
+                    }
+                    continue;
+                }
+                if (!force && now < p.due) {
+                    next = Math.min(next, p.due);
+                    continue;
+                }
+                if (now < openUntil) { // 熔断中，继续合并
+                    p.due = openUntil;
+                    next = Math.min(next, p.due);
+                    continue;
+                }
+                if (null != limiter && !limiter.acquire(channel.getName())) {
+                    rateLimitedCount.increment();
+                    p.due = now + RATE_LIMITED_RETRY_MS;
+                    next = Math.min(next, p.due);
+                    continue;
+                }
+                if (send(p)) {
+                    sentCount.increment();
+                    coalesceCount.add(p.count - 1);
+                    pendingAlerts -= p.count;
+                    p.count = 0;
+                    p.attempts = 0;
+                    p.due = System.currentTimeMillis() + coalesceWindowMs;
+                    consecutiveFailures = 0;
+                } else {
+                    failCount.increment();
+                    if (++consecutiveFailures >= breakerFailures) {
+                        openUntil = System.currentTimeMillis() + breakerOpenMs;
+                        breakerOpenCount.increment();
+                        log.warn("alert channel {} failed {} times, pause {}ms", channel.getName(), consecutiveFailures, breakerOpenMs);
+                    }
+                    if (++p.attempts >= MAX_ATTEMPTS) {
+                        log.warn("alert dropped after {} attempts: {}", p.attempts, p.title);
+                        dropCount.add(p.count);
+                        pendingAlerts -= p.count;
+                        it.remove();
+                        continue;
+                    }
+                    p.due = Math.max(System.currentTimeMillis() + FAILED_RETRY_MS, openUntil);
+                }
+                next = Math.min(next, p.due);
+            }
+            return next;
+        }
+
+        private boolean send(Pending p) {
+            String title = p.title;
+            String content = p.content;
+            if (p.count > 1) {
+                title = title + " (x" + p.count + ")";
+                content = "合并了" + p.count + "次告警，首次" + DatetimeUtils.format(p.first, "HH:mm:ss.SSS") + "，最后一次" + DatetimeUtils.format(p.last, "HH:mm:ss.SSS") + "\n" + content;
+            }
+            try {
+                return channel.send(title, content);
+            } catch (Throwable e) {
+                log.error("send alert by {} failed", channel.getName(), e);
+                return false;
+            }
+        }
+
+        public String getName() {
+            return channel.getName();
+        }
+
+        /**
+         * 是否处于熔断中
+         */
+        public boolean isCircuitOpen() {
+            return System.currentTimeMillis() < openUntil;
+        }
+
+        /**
+         * 发送成功的消息数（一条摘要算一条）
+         */
+        public long getSentCount() {
+            return sentCount.sum();
+        }
+
+        /**
+         * 发送失败的次数
+         */
+        public long getFailCount() {
+            return failCount.sum();
+        }
+
+        /**
+         * 合并到摘要中、没有单独发送的告警数
+         */
+        public long getCoalesceCount() {
+            return coalesceCount.sum();
+        }
+
+        /**
+         * 被限流推迟发送的次数
+         */
+        public long getRateLimitedCount() {
+            return rateLimitedCount.sum();
+        }
+
+        /**
+         * 熔断的次数
+         */
+        public long getBreakerOpenCount() {
+            return breakerOpenCount.sum();
+        }
+
+        @Override
+        public String toString() {
+            return channel.getName() + "[sent=" + getSentCount() + ", fail=" + getFailCount() + ", coalesce=" + getCoalesceCount() + ", rateLimited=" + getRateLimitedCount() + ", breakerOpen="
+                + getBreakerOpenCount() + (isCircuitOpen() ? ", OPEN" : "") + "]";
+        }
+    }
+}
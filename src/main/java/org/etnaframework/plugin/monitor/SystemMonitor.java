@@ -11,9 +11,11 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.etnaframework.core.logging.Log;
 import org.etnaframework.core.spring.annotation.Config;
 import org.etnaframework.core.spring.annotation.OnContextInited;
+import org.etnaframework.core.spring.annotation.OnJvmShutdown;
 import org.etnaframework.core.util.CollectionTools;
 import org.etnaframework.core.util.CommandService;
 import org.etnaframework.core.util.DatetimeUtils.Datetime;
+import org.etnaframework.core.util.RateLimiter;
 import org.etnaframework.core.util.StringTools;
 import org.etnaframework.core.util.SystemInfo;
 import org.etnaframework.core.util.SystemInfo.OsEnum;
@@ -21,6 +23,7 @@ import org.etnaframework.core.util.ThreadUtils;
 import org.etnaframework.core.util.ThreadUtils.BackgroundTaskExecutor;
 import org.etnaframework.core.util.ThreadUtils.OrderedTaskExecutor;
 import org.etnaframework.core.web.DispatchFilter;
+import org.etnaframework.plugin.monitor.AlertDispatcher.DingTalkChannel;
 import org.slf4j.Logger;
 import org.springframework.stereotype.Service;
 
@@ -39,6 +42,33 @@ public final class SystemMonitor {
     @Config("etna.monitor.dingTalkRobotUrl")
     private static String dingTalkRobotUrl;
 
+    /** 告警发送队列长度，队列满时新的告警会被丢弃并计数 */
+    @Config(value = "etna.monitor.alertQueueSize", resetable = false)
+    private static int alertQueueSize = 1024;
+
+    /** 相同告警的合并窗口秒数，同类告警第一次立即发送，窗口内重复的告警合并为一条摘要发送 */
+    @Config(value = "etna.monitor.alertCoalesceSec", resetable = false)
+    private static int alertCoalesceSec = 60;
+
+    /** 钉钉群机器人发送限流，格式同{@link RateLimiter#create(String)}，钉钉限制每个机器人每分钟最多发送20条 */
+    @Config(value = "etna.monitor.dingTalkRateLimit", resetable = false)
+    private static String dingTalkRateLimit = "20,60,TOKEN_BUCKET,16";
+
+    /** 钉钉群机器人请求的超时时间，单位毫秒 */
+    @Config(value = "etna.monitor.dingTalkTimeoutMs", resetable = false)
+    private static int dingTalkTimeoutMs = 5000;
+
+    /** 告警发送连续失败多少次后熔断 */
+    @Config(value = "etna.monitor.alertBreakerFailures", resetable = false)
+    private static int alertBreakerFailures = 5;
+
+    /** 熔断后暂停发送的秒数，期间的告警继续合并 */
+    @Config(value = "etna.monitor.alertBreakerOpenSec", resetable = false)
+    private static int alertBreakerOpenSec = 60;
+
+    /** 告警发送器，第一次发送告警时创建 */
+    private static volatile AlertDispatcher alertDispatcher;
+
     /** 系统负载监控间隔秒数，默认1分钟监控一次（因为是平均负载），<=0表示不监控 */
     @Config(value = "etna.monitor.loadMonitorCheckIntervalSec", resetable = false)
     private static int loadMonitorCheckIntervalSec = 60;
@@ -84,6 +114,35 @@ public final class SystemMonitor {
         return dingTalkRobotUrl;
     }
 
+    /**
+     * 获取告警发送器，第一次调用时按当前配置创建（在配置加载前发送的告警会使用默认配置）
+     */
+    public static AlertDispatcher getAlertDispatcher() {
+        AlertDispatcher d = alertDispatcher;
+        if (null == d) {
+            synchronized (SystemMonitor.class) {
+                d = alertDispatcher;
+                if (null == d) {
+                    d = new AlertDispatcher(alertQueueSize, alertCoalesceSec * 1000L);
+                    d.addChannel(new DingTalkChannel(SystemMonitor::getDingTalkRobotUrl, dingTalkTimeoutMs), RateLimiter.create(dingTalkRateLimit), alertBreakerFailures, alertBreakerOpenSec * 1000L);
+                    alertDispatcher = d;
+                }
+            }
+        }
+        return d;
+    }
+
+    /**
+     * JVM退出时关闭告警发送器，发送线程是daemon的，不关闭的话队列中的告警和合并窗口中的摘要都会丢失
+     */
+    @OnJvmShutdown
+    protected static void closeAlertDispatcher() {
+        AlertDispatcher d = alertDispatcher;
+        if (null != d) {
+            d.close();
+        }
+    }
+
     /**
      * 获取当前机器负载
      */
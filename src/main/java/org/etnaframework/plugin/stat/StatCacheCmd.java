@@ -4,6 +4,10 @@ import org.etnaframework.core.util.CacheManager;
 import org.etnaframework.core.web.HttpEvent;
 import org.etnaframework.core.web.annotation.CmdPath;
 import org.etnaframework.core.web.cmd.HttpCmd;
+import org.etnaframework.plugin.cache.LocalCacheAspect;
+import org.etnaframework.plugin.cache.LocalCacheAspect.CacheContainer;
+import org.etnaframework.plugin.cache.LocalCacheAspect.LazyCacheContainer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 /**
  * Created by Daniel on 2015/12/2.
@@ -12,9 +16,56 @@ import org.springframework.stereotype.Controller;
 @CmdPath("/stat/cache")
 public class StatCacheCmd extends HttpCmd {
 
+    @Autowired
+    private LocalCacheAspect localCacheAspect;
+
     @Override
     public void index(HttpEvent he) throws Throwable {
         auth(this, he);
-        he.writeText(CacheManager.printCacheInfo());
+        he.writeText(CacheManager.printCacheInfo() + "\n" + printLocalCacheInfo());
+    }
+
+    /**
+     * {@link org.etnaframework.plugin.cache.annotation.LocalCache}各方法的加载统计
+     */
+    private String printLocalCacheInfo() {
+        CacheContainer[] containers;
+        synchronized (localCacheAspect.getData()) {
+            containers = localCacheAspect.getData()
+                                         .values()
+                                         .toArray(new CacheContainer[0]);
+        }
+        int nameMaxLen = 10; // 找出最长的名称，用于显示时对齐数据
+        for (CacheContainer c : containers) {
+            if (c.getLocation()
+                 .length() > nameMaxLen) {
+                nameMaxLen = c.getLocation()
+                              .length();
+            }
+        }
+        String fmt = "%-" + nameMaxLen + "s %-10s %10s %10s %-10s %-10s %12s %12s %-10s %-10s %s\n";
+        StringBuilder tmp = new StringBuilder();
+        tmp.append(String.format(fmt, "@LocalCache", "request", "l1HitRate", "l2HitRate", "load", "loadError", "avgLoadMs", "maxLoadMs", "refresh", "staleHit", "descr"));
+        for (CacheContainer c : containers) {
+            String request = "-";
+            String l1HitRate = "-";
+            String l2HitRate = "-";
+            long refresh = 0;
+            long staleHit = 0;
+            if (c instanceof LazyCacheContainer) {
+                LazyCacheContainer lc = (LazyCacheContainer) c;
+                request = String.valueOf(lc.getRequestCount());
+                l1HitRate = String.format("%.2f%%", lc.getL1HitRate() * 100);
+                if (lc.hasRedisTier()) {
+                    l2HitRate = String.format("%.2f%%", lc.getL2HitRate() * 100);
+                }
+                refresh = lc.getRefreshCount();
+                staleHit = lc.getStaleHitCount();
+            }
+            tmp.append(String.format(fmt, c.getLocation(), request, l1HitRate, l2HitRate, c.getLoadCount(), c.getLoadErrorCount(), String.format("%.2f", c.getAverageLoadMs()),
+                String.format("%.2f", c.getMaxLoadMs()), refresh, staleHit, c.getAnno()
+                                                                            .descr()));
+        }
+        return tmp.toString();
     }
 }
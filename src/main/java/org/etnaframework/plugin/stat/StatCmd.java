@@ -7,17 +7,22 @@ import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import org.etnaframework.core.logging.AsyncAccessLogWriter;
 import org.etnaframework.core.logging.logback.FixSizeMemAppender;
 import org.etnaframework.core.logging.logback.FixSizeMemAppender.FixSizeLog;
+import org.etnaframework.core.util.HttpClientPool;
 import org.etnaframework.core.util.StringTools;
 import org.etnaframework.core.util.SystemInfo;
 import org.etnaframework.core.util.ThreadUtils;
+import org.etnaframework.core.web.DispatchFilter;
 import org.etnaframework.core.web.HttpEvent;
 import org.etnaframework.core.web.annotation.Cmd;
 import org.etnaframework.core.web.cmd.HttpCmd;
 import org.etnaframework.core.web.constant.CmdCategory;
 import org.etnaframework.core.web.mapper.CmdMappers;
+import org.etnaframework.core.web.mapper.CmdMappers.StageTimeSpanStat;
 import org.etnaframework.core.web.mapper.CmdMeta;
+import org.etnaframework.plugin.monitor.SystemMonitor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
@@ -75,6 +80,52 @@ public class StatCmd extends HttpCmd {
         he.writeText(sb);
     }
 
+    @Cmd(desc = "显示接口耗时分位数", category = CmdCategory.SYSTEM)
+    public void latency(HttpEvent he) throws Throwable {
+        auth(this, he);
+        String fmt = "%-60s %-12s %-30s %-30s %-30s\n";
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(fmt, "cmd", "times", "p50/p99/p999(1m)", "p50/p99/p999(5m)", "p50/p99/p999(1h)"));
+        List<CmdMeta> list = new ArrayList<CmdMeta>(cmdMappers.getReverseCmdAllSortedMap().keySet());
+        Collections.sort(list, new Comparator<CmdMeta>() {
+
+            public int compare(CmdMeta o1, CmdMeta o2) {
+                return Long.compare(o2.getStat().getAllNum(), o1.getStat().getAllNum());
+            }
+        });
+        for (CmdMeta cm : list) {
+            StageTimeSpanStat stat = cm.getStat();
+            if (stat.getAllNum() > 0) {
+                sb.append(String.format(fmt, cm.getName(), stat.getAllNum(), stat.getPercentiles(1), stat.getPercentiles(5), stat.getPercentiles(60)));
+            }
+        }
+        he.setAccessLogContent("[CMD Latency]");
+        he.writeText(sb);
+    }
+
+    @Cmd(desc = "显示HTTP客户端连接统计", category = CmdCategory.SYSTEM)
+    public void httpClient(HttpEvent he) throws Throwable {
+        auth(this, he);
+        he.setAccessLogContent("[HttpClient Stat]");
+        he.writeText(HttpClientPool.printStat());
+    }
+
+    @Cmd(desc = "显示异步访问日志写入统计", category = CmdCategory.SYSTEM)
+    public void accessLog(HttpEvent he) throws Throwable {
+        auth(this, he);
+        he.setAccessLogContent("[AccessLog Stat]");
+        AsyncAccessLogWriter w = DispatchFilter.getAccessLogWriter();
+        he.writeText(null == w ? "async access log writer is not configured" : w.printStat());
+    }
+
+    @Cmd(desc = "显示告警发送统计", category = CmdCategory.SYSTEM)
+    public void alert(HttpEvent he) throws Throwable {
+        auth(this, he);
+        he.setAccessLogContent("[Alert Stat]");
+        he.writeText(SystemMonitor.getAlertDispatcher()
+                                  .printStat());
+    }
+
     @Cmd(desc = "显示服务器接口列表", category = CmdCategory.SYSTEM)
     public void cmd(HttpEvent he) throws Throwable {
         boolean timesOrder = he.getBool("timesOrder", false);
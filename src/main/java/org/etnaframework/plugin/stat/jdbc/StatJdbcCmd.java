@@ -39,6 +39,22 @@ public class StatJdbcCmd extends HttpCmd {
         StatJdbcUtils.recordSwitch(statJdbcEnable);
     }
 
+    /**
+     * 统计归属方式，stack为按调用SQL的DAO方法所在的位置统计（默认），sql为按SQL指纹统计
+     */
+    @Config("etna.statJdbcAttribution")
+    public void setStatJdbcAttribution(String statJdbcAttribution) {
+        StatJdbcUtils.setAttribution(statJdbcAttribution);
+    }
+
+    /**
+     * 按调用位置统计时，每多少次调用才获取一次调用栈，默认为1即每次都获取
+     */
+    @Config("etna.statJdbcSampling")
+    public void setStatJdbcSampling(int statJdbcSampling) {
+        StatJdbcUtils.setSampling(statJdbcSampling);
+    }
+
     /**
      * 初始化,并返回带有当前时间戳的 StringBuilder
      */
@@ -76,12 +92,7 @@ public class StatJdbcCmd extends HttpCmd {
             // 保存一份副本，用于不受干扰地进行排序
             List<JdbcStat> statList = new ArrayList<JdbcStat>();
 
-            for (Entry<StackTraceElement, JdbcStat> e : StatJdbcUtils.getStat().entrySet()) {
-                statList.add(e.getValue());
-
-                // 下面为了排序，将StackTraceElement设置到 jdbcstat里去
-                e.getValue().setStackTraceElement(e.getKey());
-            }
+            statList.addAll(StatJdbcUtils.getStat().values());
             boolean returnflag = false;
             // 计算hit总数
             long countAll = 0;
@@ -116,7 +127,7 @@ public class StatJdbcCmd extends HttpCmd {
                     printHead = false;
                 }
                 sb.append(js.toHtmlString(String.format("%.2f%%", js.getAllNum() * 100f / countAll)));
-                sb.append(String.format(format, "", js.getStackTraceElement()));
+                sb.append(String.format(format, "", js.getSource()));
                 sb.append(String.format(format, "", js.getLastSql()));
                 sb.append("<tr><td colspan=\"8\">&nbsp;</td></tr>\n");
             }
@@ -1,14 +1,28 @@
 package org.etnaframework.plugin.stat.jdbc;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import org.etnaframework.core.logging.Log;
 import org.etnaframework.core.util.TimeSpanStat;
+import org.etnaframework.jdbc.SqlMeta;
 import org.slf4j.Logger;
 
 /**
+ * <pre>
  * 用于统计调用jdbcTemplate的方法的执行情况
  *
+ * 默认按调用SQL的DAO方法所在的位置统计，在java9以上使用StackWalker只遍历到DAO所在的栈帧，不再每次生成整个调用栈
+ * 可以设置取样间隔，只在部分调用时获取调用栈，也可以改为按SQL指纹统计，完全不需要获取调用栈
+ * </pre>
+ *
  * @author dragonlai
  * @since 2015.06.09
  */
@@ -27,6 +41,9 @@ public class StatJdbcUtils {
 
         private StackTraceElement stackTraceElement;
 
+        /** 统计的归属，按调用位置统计时为{@link StackTraceElement}，按SQL指纹统计时为指纹字符串 */
+        private Object source;
+
         public String getLastSql() {
             return lastSql;
         }
@@ -39,6 +56,17 @@ public class StatJdbcUtils {
             this.stackTraceElement = stackTraceElement;
         }
 
+        public Object getSource() {
+            return null == source ? stackTraceElement : source;
+        }
+
+        public void setSource(Object source) {
+            this.source = source;
+            if (source instanceof StackTraceElement) {
+                this.stackTraceElement = (StackTraceElement) source;
+            }
+        }
+
         @Override
         protected void warn(long end, long begin, Object arg) {
             log.error("SLOW_PROCESS:{}:{} [{}ms]\n", new Object[] {
@@ -55,14 +83,47 @@ public class StatJdbcUtils {
         }
     }
 
-    private static final ConcurrentHashMap<StackTraceElement, JdbcStat> stat;
+    /** 统计归属：按调用SQL的DAO方法所在的位置统计 */
+    public static final String ATTRIBUTION_STACK = "stack";
+
+    /** 统计归属：按SQL指纹（把SQL中的字符串、数字常量和in列表等替换为?）统计，不需要获取调用栈 */
+    public static final String ATTRIBUTION_SQL = "sql";
+
+    /** 找不到调用位置时使用的统计归属，ConcurrentHashMap不能以null为key */
+    private static final StackTraceElement UNKNOWN = new StackTraceElement("unknown", "unknown", null, -1);
+
+    /** 按SQL记录的最近一次取样得到的调用位置，最多保存的条数，超过后清空重来，防止拼接了常量的SQL太多导致内存泄漏 */
+    private static final int SITE_CACHE_MAX_SIZE = 10000;
+
+    private static final ConcurrentHashMap<Object, JdbcStat> stat;
+
+    /** 按SQL记录的最近一次取样得到的调用位置 */
+    private static final ConcurrentHashMap<String, StackTraceElement> siteBySql = new ConcurrentHashMap<String, StackTraceElement>();
+
+    /** 按类缓存是否需要在查找调用位置时跳过 */
+    private static final ClassValue<Boolean> ignoredClasses = new ClassValue<Boolean>() {
+
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return StatJdbcUtils.class.equals(type) || isIgnore(type.getName());
+        }
+    };
+
+    /** 在java9以上的运行环境中，使用StackWalker只遍历到第一个符合条件的栈帧，java8只能获取整个调用栈，为null */
+    private static final Function<Object, StackTraceElement> walker = createWalker();
 
     private static volatile boolean rswitch = true;
 
     private static volatile long startTime;
 
+    /** 是否按SQL指纹统计 */
+    private static volatile boolean bySql = false;
+
+    /** 按调用位置统计时，每多少次调用才获取一次调用栈，其余的使用同一条SQL最近一次取样得到的调用位置，为1表示每次都获取 */
+    private static volatile int sampling = 1;
+
     static {
-        stat = new ConcurrentHashMap<StackTraceElement, JdbcStat>();
+        stat = new ConcurrentHashMap<Object, JdbcStat>();
         startTime = System.currentTimeMillis();
     }
 
@@ -73,18 +134,37 @@ public class StatJdbcUtils {
         rswitch = rs;
     }
 
+    /**
+     * 设置统计归属方式，为{@link #ATTRIBUTION_STACK}或{@link #ATTRIBUTION_SQL}，切换时统计归零
+     */
+    static void setAttribution(String attribution) {
+        boolean sql = ATTRIBUTION_SQL.equalsIgnoreCase(attribution);
+        if (sql != bySql) {
+            bySql = sql;
+            reset();
+        }
+    }
+
+    /**
+     * 设置获取调用栈的取样间隔
+     */
+    static void setSampling(int n) {
+        sampling = Math.max(1, n);
+    }
+
     /**
      * 统计归零
      */
     synchronized static void reset() {
         stat.clear();
+        siteBySql.clear();
         startTime = System.currentTimeMillis();
     }
 
     /**
      * 获取统计信息
      */
-    static Map<StackTraceElement, JdbcStat> getStat() {
+    static Map<Object, JdbcStat> getStat() {
         return stat;
     }
 
@@ -97,11 +177,157 @@ public class StatJdbcUtils {
     }
 
     static boolean isIgnore(StackTraceElement ste) {
-        String clazz = ste.getClassName();
+        return isIgnore(ste.getClassName());
+    }
+
+    static boolean isIgnore(String clazz) {
         // 预计被排除的包名前缀，有此前缀的类不会被纳入统计
         return clazz.startsWith("org.etnaframework.jdbc.");
     }
 
+    /**
+     * 通过反射获取StackWalker（编译目标为java8，不能直接使用），获取失败时返回null
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, StackTraceElement> createWalker() {
+        try {
+            Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            Class<?> optionClass = Class.forName("java.lang.StackWalker$Option");
+            Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+            Object option = Enum.valueOf(optionClass.asSubclass(Enum.class), "RETAIN_CLASS_REFERENCE");
+            Object sw = walkerClass.getMethod("getInstance", optionClass).invoke(null, option);
+            Lookup lookup = MethodHandles.lookup(); // walk是caller-sensitive的方法，不能使用publicLookup
+            MethodHandle walk = lookup.findVirtual(walkerClass, "walk", MethodType.methodType(Object.class, Function.class)).bindTo(sw);
+            // 把参数都转为Object，以便使用invokeExact调用，避免每次调用时的类型适配
+            MethodHandle getDeclaringClass = lookup.findVirtual(frameClass, "getDeclaringClass", MethodType.methodType(Class.class))
+                .asType(MethodType.methodType(Class.class, Object.class));
+            MethodHandle toStackTraceElement = lookup.findVirtual(frameClass, "toStackTraceElement", MethodType.methodType(StackTraceElement.class))
+                .asType(MethodType.methodType(StackTraceElement.class, Object.class));
+            // 只遍历到第一个不需要跳过的栈帧为止，不会生成整个调用栈
+            Function<Stream<Object>, StackTraceElement> firstCaller = frames -> frames.filter(f -> {
+                try {
+                    return !ignoredClasses.get((Class<?>) getDeclaringClass.invokeExact(f));
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            }).findFirst().map(f -> {
+                try {
+                    return (StackTraceElement) toStackTraceElement.invokeExact(f);
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            }).orElse(null);
+            Function<Object, StackTraceElement> result = ignore -> {
+                try {
+                    return (StackTraceElement) (Object) walk.invokeExact(firstCaller);
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+            result.apply(null); // 先试一下，确保可用
+            return result;
+        } catch (Throwable e) { // java8没有StackWalker
+            return null;
+        }
+    }
+
+    /**
+     * 查找调用SQL的DAO方法所在的位置
+     */
+    private static StackTraceElement findCaller() {
+        if (null != walker) {
+            StackTraceElement trace = walker.apply(null);
+            return null == trace ? UNKNOWN : trace;
+        }
+        StackTraceElement[] ste = Thread.currentThread().getStackTrace();
+        // 统计主要是记录来自DAO的调用，下标0为getStackTrace本身，统计时会排除掉本类和jdbcTemplate所在的包
+        for (int index = 1; index < ste.length; index++) {
+            if (!isIgnore(ste[index]) && !StatJdbcUtils.class.getName().equals(ste[index].getClassName())) {
+                return ste[index];
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * 获取本次调用的统计归属
+     */
+    private static Object getSource(String sql) {
+        if (bySql) {
+            return SqlMeta.of(sql).getFingerprint();
+        }
+        int n = sampling;
+        if (n > 1) {
+            StackTraceElement site = siteBySql.get(sql);
+            if (null != site && ThreadLocalRandom.current().nextInt(n) != 0) {
+                return site;
+            }
+            site = findCaller();
+            if (siteBySql.size() >= SITE_CACHE_MAX_SIZE) {
+                siteBySql.clear();
+            }
+            siteBySql.put(sql, site);
+            return site;
+        }
+        return findCaller();
+    }
+
+    /**
+     * 生成SQL指纹，把字符串和数字常量替换为?，in列表和多行values合并为一个，多个空白字符合并为一个空格，并转为小写
+     */
+    public static String fingerprint(String sql) {
+        int len = sql.length();
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') { // 字符串常量，支持''和\'两种转义方式
+                int j = i + 1;
+                while (j < len) {
+                    char d = sql.charAt(j);
+                    if (d == '\\') {
+                        j += 2;
+                    } else if (d == c) {
+                        if (j + 1 < len && sql.charAt(j + 1) == c) {
+                            j += 2;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        j++;
+                    }
+                }
+                sb.append('?');
+                i = j;
+            } else if (Character.isDigit(c) && (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb.length() - 1)))) { // 数字常量，不包括字段名中的数字
+                int j = i + 1;
+                while (j < len && (Character.isLetterOrDigit(sql.charAt(j)) || sql.charAt(j) == '.')) {
+                    j++;
+                }
+                sb.append('?');
+                i = j - 1;
+            } else if (Character.isWhitespace(c)) {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        String fp = sb.toString().trim();
+        fp = IN_LIST.matcher(fp).replaceAll("?,...");
+        return REPEATED_GROUPS.matcher(fp).replaceAll("$1,...");
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '`';
+    }
+
+    /** 连续多个?组成的列表，如in (?,?,?) */
+    private static final Pattern IN_LIST = Pattern.compile("\\?(?: ?, ?\\?)+");
+
+    /** 连续多个相同的括号组，如values (?,?),(?,?) */
+    private static final Pattern REPEATED_GROUPS = Pattern.compile("(\\([^()]*\\))(?: ?, ?\\1)+");
+
     /**
      * 记录执行的SQL用于统计数量
      *
@@ -109,30 +335,17 @@ public class StatJdbcUtils {
      */
     public static void record(String sql, int count, long begin) {
         if (rswitch && count > 0) { // count必须为正整数
-            StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-            StackTraceElement trace = null;
-            // 统计主要是记录来自DAO的调用，通过试验发现，实际运行时stackTrace表中的元素
-            // 一般是从下标3或4开始是来自DAO的调用，统计从这里开始，统计时会排除掉jdbcTemplate所在的包
-            int index = 3;
-            for (; index < ste.length; index++) {
-                if (!isIgnore(ste[index])) {
-                    trace = ste[index];
-                    break;
-                }
-            }
-            JdbcStat js = stat.get(trace);
+            Object source = getSource(sql);
             long end = System.currentTimeMillis();
+            JdbcStat js = stat.get(source);
             if (null == js) {
-                synchronized (stat) {
-                    if (null == stat.get(trace)) {
-                        js = new JdbcStat("JdbcStat", log);
-                        js.record(end, begin, count, sql);
-                        stat.put(trace, js);
-                    }
-                }
-            } else {
-                js.record(end, begin, count, sql);
+                js = stat.computeIfAbsent(source, k -> {
+                    JdbcStat s = new JdbcStat("JdbcStat", log);
+                    s.setSource(k);
+                    return s;
+                });
             }
+            js.record(end, begin, count, sql);
         }
     }
 }
@@ -0,0 +1,97 @@
+package ch.qos.logback.classic;
+
+import java.io.ByteArrayOutputStream;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * {@link Logger}是否需要提前获取调用者信息的判断测试，appender变化后缓存的判断结果要失效
+ *
+ * {@link Logger#isCallerDataRequired()}是包内可见的，所以本测试放在同一个包下，不需要启动框架
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class TestLoggerCallerData extends Assert {
+
+    private final LoggerContext ctx = new LoggerContext();
+
+    private OutputStreamAppender<ILoggingEvent> appender(String pattern) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(ctx);
+        encoder.setPattern(pattern);
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(ctx);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(new ByteArrayOutputStream());
+        appender.start();
+        return appender;
+    }
+
+    /**
+     * logger上的appender和additivity变化时重新判断
+     */
+    @Test
+    public void testLoggerAppenders() {
+        Logger parent = ctx.getLogger("test");
+        Logger logger = ctx.getLogger("test.child");
+        assertFalse(logger.isCallerDataRequired());
+
+        logger.addAppender(appender("%date|%message%n"));
+        assertFalse(logger.isCallerDataRequired());
+
+        OutputStreamAppender<ILoggingEvent> line = appender("%line|%message%n");
+        parent.addAppender(line);
+        assertTrue(logger.isCallerDataRequired());
+
+        logger.setAdditive(false);
+        assertFalse(logger.isCallerDataRequired());
+        logger.setAdditive(true);
+        assertTrue(logger.isCallerDataRequired());
+
+        parent.detachAppender(line);
+        assertFalse(logger.isCallerDataRequired());
+    }
+
+    /**
+     * logger上已经挂了AsyncAppender，之后再往AsyncAppender下挂appender或摘掉，也要重新判断
+     */
+    @Test
+    public void testAsyncAppenderChildren() {
+        Logger logger = ctx.getLogger("test.async");
+        AsyncAppender async = newAsync(logger);
+        assertFalse(logger.isCallerDataRequired());
+
+        OutputStreamAppender<ILoggingEvent> method = appender("%method|%message%n");
+        async.addAppender(method);
+        assertTrue(logger.isCallerDataRequired());
+
+        async.detachAppender(method);
+        assertFalse(logger.isCallerDataRequired());
+
+        // AsyncAppender只能挂一个appender，摘掉后也不能再挂，换一个新的
+        logger.detachAndStopAllAppenders();
+        async = newAsync(logger);
+        async.addAppender(appender("%date|%message%n"));
+        assertFalse(logger.isCallerDataRequired());
+
+        logger.detachAndStopAllAppenders();
+        async = newAsync(logger);
+        async.addAppender(appender("%class|%message%n"));
+        assertTrue(logger.isCallerDataRequired());
+
+        async.detachAndStopAllAppenders();
+        assertFalse(logger.isCallerDataRequired());
+    }
+
+    private AsyncAppender newAsync(Logger logger) {
+        AsyncAppender async = new AsyncAppender();
+        async.setContext(ctx);
+        logger.addAppender(async);
+        return async;
+    }
+}
@@ -0,0 +1,162 @@
+package org.etnaframework.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.etnaframework.core.util.CacheWrapper.CacheWrapperLoader;
+import org.etnaframework.core.util.TimerWheel.Node;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * {@link TimerWheel}的过期和逐层下放测试，时间点由测试指定，不需要真的等待
+ *
+ * {@link TimerWheel}和{@link CacheWrapper}中的元素都是包内可见的，所以本测试放在同一个包下，不需要启动框架
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class TestTimerWheel extends Assert {
+
+    /** 起始时间点，和所有层的格子边界对齐 */
+    private static final long T0 = 1L << 40;
+
+    private final List<String> expired = new ArrayList<>();
+
+    private static Node<String, String> node(String key, long expireAt) {
+        return new Node<>(key, key, expireAt);
+    }
+
+    private void advance(TimerWheel<String, String> wheel, long now) {
+        wheel.advance(now, n -> expired.add(n.key));
+    }
+
+    /**
+     * 推进时只回收到期的元素，同一个格子里未到期的留到下次
+     */
+    @Test
+    public void testExpire() {
+        TimerWheel<String, String> wheel = new TimerWheel<>(T0);
+        wheel.schedule(node("a", T0 + 500));
+        wheel.schedule(node("b", T0 + 1500));
+        wheel.schedule(node("c", T0 + 3000));
+        Node<String, String> d = node("d", T0 + 600);
+        wheel.schedule(d);
+        wheel.deschedule(d);
+
+        advance(wheel, T0 + 400);
+        assertTrue(expired.isEmpty());
+        advance(wheel, T0 + 1100);
+        assertEquals("[a]", expired.toString());
+        advance(wheel, T0 + 1400); // 和b在同一个格子里，但b还没到期
+        assertEquals("[a]", expired.toString());
+        advance(wheel, T0 + 2100);
+        assertEquals("[a, b]", expired.toString());
+        advance(wheel, T0 + 2100); // 时间没有前进，不处理
+        advance(wheel, T0 + 3000); // 没有跨过格子边界，c虽然到期了但还没被回收，读取时会当作不存在
+        assertEquals("[a, b]", expired.toString());
+        advance(wheel, T0 + 3100);
+        assertEquals("[a, b, c]", expired.toString());
+    }
+
+    /**
+     * 放在高层的元素，在经过所在的格子时下放到更精确的低层，到期时才被回收，不会提前或遗漏
+     */
+    @Test
+    public void testCascade() {
+        TimerWheel<String, String> wheel = new TimerWheel<>(T0);
+        long minute = TimeUnit.MINUTES.toMillis(1);
+        long hour = TimeUnit.HOURS.toMillis(1);
+        long day = TimeUnit.DAYS.toMillis(1);
+        wheel.schedule(node("minute", T0 + 3 * minute + 5000)); // 第2层
+        wheel.schedule(node("hour", T0 + 2 * hour + 5000)); // 第3层
+        wheel.schedule(node("day", T0 + 3 * day + 5000)); // 第4层
+        wheel.schedule(node("week", T0 + 10 * day + 5000)); // 最高层
+
+        long[] steps = {
+            3 * minute,
+            3 * minute + 4000,
+            3 * minute + 6000,
+            2 * hour,
+            2 * hour + 4000,
+            2 * hour + 6000,
+            3 * day,
+            3 * day + 4000,
+            3 * day + 6000,
+            10 * day,
+            10 * day + 4000,
+            10 * day + 6000
+        };
+        String[] expects = {
+            "[]",
+            "[]",
+            "[minute]",
+            "[minute]",
+            "[minute]",
+            "[minute, hour]",
+            "[minute, hour]",
+            "[minute, hour]",
+            "[minute, hour, day]",
+            "[minute, hour, day]",
+            "[minute, hour, day]",
+            "[minute, hour, day, week]"
+        };
+        for (int i = 0; i < steps.length; i++) {
+            advance(wheel, T0 + steps[i]);
+            assertEquals("+" + steps[i] + "ms", expects[i], expired.toString());
+        }
+    }
+
+    /**
+     * 一次推进超过一圈时，所有格子都要处理
+     */
+    @Test
+    public void testAdvanceOverOneRound() {
+        TimerWheel<String, String> wheel = new TimerWheel<>(T0);
+        for (int i = 0; i < 100; i++) {
+            wheel.schedule(node("k" + i, T0 + i * 1000L));
+        }
+        advance(wheel, T0 + TimeUnit.HOURS.toMillis(5));
+        assertEquals(100, expired.size());
+    }
+
+    /**
+     * 已过期但还没被回收的元素，在Map视图中当作不存在
+     */
+    @Test
+    public void testMapViewSkipsExpired() throws Exception {
+        CacheWrapper<String, String> cache = new CacheWrapper<>("testTimerWheel", new CacheWrapperLoader<String, String>() {
+
+            @Override
+            public String load(String key) throws Exception {
+                return key + ":loaded";
+            }
+        }, null, 100, TimeUnit.HOURS.toMillis(1));
+        cache.put("live", "v");
+        long now = System.currentTimeMillis();
+        cache.cache.put("expired", node("expired", now - 1));
+        cache.cache.put("expired2", node("expired2", now - 1));
+
+        assertEquals(3, cache.cache.size());
+        assertEquals(1, cache.asMap()
+                             .size());
+        assertEquals("[live]", cache.asMap()
+                                    .keySet()
+                                    .toString());
+        assertFalse(cache.asMap()
+                         .containsKey("expired"));
+        assertNull(cache.asMap()
+                        .get("expired"));
+        assertNull(cache.asMap()
+                        .replace("expired", "x"));
+        assertNull(cache.asMap()
+                        .remove("expired"));
+        assertNull(cache.asMap()
+                        .putIfAbsent("expired2", "new"));
+        assertEquals("new", cache.asMap()
+                                 .get("expired2"));
+        assertEquals("v", cache.asMap()
+                               .putIfAbsent("live", "other"));
+        assertEquals("expired:loaded", cache.get("expired"));
+    }
+}
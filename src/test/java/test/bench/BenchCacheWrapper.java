@@ -0,0 +1,74 @@
+package test.bench;
+
+import org.etnaframework.core.util.CacheManager;
+import org.etnaframework.core.util.CacheWrapper;
+import org.etnaframework.core.util.CacheWrapper.CacheWrapperLoader;
+import org.etnaframework.core.util.CacheWrapper.Statics;
+
+/**
+ * <pre>
+ * {@link CacheWrapper}的put/get/过期回收吞吐量，分别测试1万、100万、1000万个元素
+ *
+ * 过期回收：所有元素设为1ms过期，等过期时间的随机量（最多10s）过去后，统计一次{@link CacheWrapper#cleanUp()}回收全部元素的耗时
+ * 1000万个元素需要较大的堆，请使用-Xmx4g以上运行，可通过参数指定只测试哪些数量，如：10000 1000000
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class BenchCacheWrapper {
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {
+            10000,
+            1000000,
+            10000000
+        };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int n : sizes) {
+            run(n);
+        }
+        System.exit(0);
+    }
+
+    private static void run(int n) throws Exception {
+        CacheWrapper<Integer, Integer> cache = CacheManager.build("bench" + n, new CacheWrapperLoader<Integer, Integer>() {
+
+            @Override
+            public Integer load(Integer key) throws Exception {
+                return key;
+            }
+        }, null, n, 60000);
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            cache.put(i, i);
+        }
+        long t1 = System.nanoTime();
+        long sum = 0;
+        for (int r = 0; r < 3; r++) {
+            for (int i = 0; i < n; i++) {
+                sum += cache.get(i);
+            }
+        }
+        long t2 = System.nanoTime();
+
+        for (int i = 0; i < n; i++) {
+            cache.put(i, i, 1);
+        }
+        Thread.sleep(10000 + 100);
+        long t3 = System.nanoTime();
+        cache.cleanUp();
+        long t4 = System.nanoTime();
+
+        Statics s = cache.getStatics();
+        System.out.printf("n=%-9d put=%8.1f ns/op  get=%8.1f ns/op  expire=%8.1f ns/op  size=%d expired=%d sum=%d%n", n, (t1 - t0) / (double) n, (t2 - t1) / (3.0 * n),
+            (t4 - t3) / (double) n, s.size, s.expireCount, sum);
+        cache.invaldateAll();
+    }
+}
@@ -0,0 +1,80 @@
+package test.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.etnaframework.core.web.mapper.RegexRouteTrie;
+import org.etnaframework.core.web.mapper.RegexRouteTrie.RouteMatch;
+
+/**
+ * 正则URL映射规则：逐个遍历匹配 vs {@link RegexRouteTrie}，分别在10/100/1000条规则下对比命中和未命中(404)的耗时
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class BenchCmdRouter {
+
+    private static final int ROUNDS = 200000;
+
+    public static void main(String[] args) {
+        for (int routes : new int[] {
+            10,
+            100,
+            1000
+        }) {
+            List<Pattern> patterns = new ArrayList<>(routes);
+            RegexRouteTrie<Integer> trie = new RegexRouteTrie<>();
+            for (int i = 0; i < routes; i++) {
+                Pattern p = Pattern.compile("^/api/module" + i + "/item/(\\d+)/(\\w+)$");
+                patterns.add(p);
+                trie.add(i, Collections.singletonList(p));
+            }
+            trie.build();
+
+            String[] uris = new String[64];
+            for (int i = 0; i < uris.length; i++) {
+                uris[i] = i % 4 == 0 ? "/api/notfound/" + i : "/api/module" + (i * 7919 % routes) + "/item/" + i + "/detail";
+            }
+            // 先预热，再计时
+            runLinear(patterns, uris, ROUNDS);
+            runTrie(trie, uris, ROUNDS);
+            long t0 = System.nanoTime();
+            long a = runLinear(patterns, uris, ROUNDS);
+            long t1 = System.nanoTime();
+            long b = runTrie(trie, uris, ROUNDS);
+            long t2 = System.nanoTime();
+            if (a != b) {
+                throw new IllegalStateException("两种方式的匹配结果不一致：" + a + " != " + b);
+            }
+            System.out.printf("routes=%5d  linear=%8.1f ns/op  trie=%8.1f ns/op%n", routes, (t1 - t0) / (double) ROUNDS, (t2 - t1) / (double) ROUNDS);
+        }
+    }
+
+    private static long runLinear(List<Pattern> patterns, String[] uris, int rounds) {
+        long hit = 0;
+        for (int r = 0; r < rounds; r++) {
+            String uri = uris[r & (uris.length - 1)];
+            for (int i = 0; i < patterns.size(); i++) {
+                Matcher m = patterns.get(i).matcher(uri);
+                if (m.matches()) {
+                    hit += i + m.group(1).length();
+                    break;
+                }
+            }
+        }
+        return hit;
+    }
+
+    private static long runTrie(RegexRouteTrie<Integer> trie, String[] uris, int rounds) {
+        long hit = 0;
+        for (int r = 0; r < rounds; r++) {
+            RouteMatch<Integer> m = trie.match(uris[r & (uris.length - 1)]);
+            if (null != m) {
+                hit += m.getTarget() + m.getMatcher().group(m.getGroupOffset() + 1).length();
+            }
+        }
+        return hit;
+    }
+}
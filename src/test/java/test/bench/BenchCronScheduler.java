@@ -0,0 +1,150 @@
+package test.bench;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.etnaframework.core.util.SystemInfo;
+import org.etnaframework.plugin.cron.CronExpression;
+import org.etnaframework.plugin.cron.TimingWheel;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+
+/**
+ * <pre>
+ * 定时任务调度的性能对比
+ *
+ * 1、计算下次触发时间：{@link CronSequenceGenerator}和{@link CronExpression}
+ * 2、调度10万个任务（多线程同时提交，延迟随机分布在0~2秒内）：原来的ScheduledThreadPoolExecutor和{@link TimingWheel}，
+ *    对比提交耗时、全部触发完的耗时、触发延迟的分布
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class BenchCronScheduler {
+
+    private static final int TASKS = 100000;
+
+    private static final int SUBMIT_THREADS = 8;
+
+    private static final long MAX_DELAY_MS = 2000;
+
+    private static final String[] EXPRESSIONS = {
+        "*/5 * * * * *",
+        "0 */10 * * * *",
+        "0 30 9-17/2 * * MON-FRI",
+        "0 0 2 1 * *"
+    };
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < 3; round++) { // 前两轮预热
+            System.out.println("round " + round);
+            benchNext();
+            benchSchedule("ScheduledThreadPoolExecutor", new StpeScheduler());
+            benchSchedule("TimingWheel", new WheelScheduler());
+        }
+    }
+
+    private static void benchNext() {
+        int loops = 200000;
+        for (String expr : EXPRESSIONS) {
+            CronSequenceGenerator gen = new CronSequenceGenerator(expr);
+            CronExpression cron = new CronExpression(expr);
+            long t = System.currentTimeMillis();
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < loops; i++) {
+                sink += gen.next(new Date(t + i * 1000L))
+                           .getTime();
+            }
+            long genNs = (System.nanoTime() - start) / loops;
+            start = System.nanoTime();
+            for (int i = 0; i < loops; i++) {
+                sink -= cron.next(t + i * 1000L);
+            }
+            long cronNs = (System.nanoTime() - start) / loops;
+            System.out.printf("  next %-26s CronSequenceGenerator %6d ns/op, CronExpression %6d ns/op%s%n", expr, genNs, cronNs, sink == 0 ? "" : " (MISMATCH)");
+        }
+    }
+
+    private static void benchSchedule(String name, Scheduler scheduler) throws InterruptedException {
+        long[] lateness = new long[TASKS];
+        CountDownLatch latch = new CountDownLatch(TASKS);
+        Random random = new Random(42);
+        long[] delays = new long[TASKS];
+        for (int i = 0; i < TASKS; i++) {
+            delays[i] = (long) (random.nextDouble() * MAX_DELAY_MS);
+        }
+        Thread[] threads = new Thread[SUBMIT_THREADS];
+        long start = System.nanoTime();
+        for (int t = 0; t < SUBMIT_THREADS; t++) {
+            int from = t;
+            threads[t] = new Thread(() -> {
+                for (int i = from; i < TASKS; i += SUBMIT_THREADS) {
+                    int idx = i;
+                    long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delays[i]);
+                    scheduler.schedule(() -> {
+                        lateness[idx] = System.nanoTime() - due;
+                        latch.countDown();
+                    }, delays[i]);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long submitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        latch.await();
+        long totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        scheduler.shutdown();
+        Arrays.sort(lateness);
+        System.out.printf("  %-28s submit %5d ms, all fired %5d ms, lateness p50 %6.2f ms, p99 %6.2f ms, max %6.2f ms%n", name, submitMs, totalMs, lateness[TASKS / 2] / 1e6,
+            lateness[TASKS * 99 / 100] / 1e6, lateness[TASKS - 1] / 1e6);
+    }
+
+    private interface Scheduler {
+
+        void schedule(Runnable task, long delayMs);
+
+        void shutdown();
+    }
+
+    /**
+     * 原来CronTaskProcessor的调度方式
+     */
+    private static class StpeScheduler implements Scheduler {
+
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(SystemInfo.CORE_PROCESSOR_NUM);
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 和CronTaskProcessor相同的时间轮配置
+     */
+    private static class WheelScheduler implements Scheduler {
+
+        final TimingWheel wheel = new TimingWheel("BenchWheel", 10, 256, 4);
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            wheel.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+            wheel.stop();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package test.bench;
+
+import java.lang.management.ManagementFactory;
+import org.etnaframework.core.logging.DeferredLogger;
+import org.etnaframework.core.util.DatetimeUtils;
+import org.etnaframework.core.util.DatetimeUtils.Datetime;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * <pre>
+ * 未开启debug时，几种debug日志写法的耗时和内存分配对比，日志内容和{@link org.etnaframework.plugin.cache.LocalCacheAspect}命中缓存时的相同
+ *
+ * 1、直接调用：每次都生成参数数组、装箱、格式化时间
+ * 2、先判断isDebugEnabled
+ * 3、{@link DeferredLogger}：参数在lambda中生成，lambda引用了局部变量时每次仍会生成lambda对象（JIT内联后可能被消除）
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class BenchDeferredLogging {
+
+    private static final int LOOPS = 10000000;
+
+    private static final Logger log = (Logger) LoggerFactory.getLogger(BenchDeferredLogging.class);
+
+    private static final DeferredLogger dlog = DeferredLogger.of(log);
+
+    public static void main(String[] args) {
+        log.setLevel(Level.INFO);
+        for (int round = 0; round < 3; round++) { // 前两轮预热
+            System.out.println("round " + round);
+            run("eager", BenchDeferredLogging::eager);
+            run("isDebugEnabled", BenchDeferredLogging::guarded);
+            run("DeferredLogger", BenchDeferredLogging::deferred);
+        }
+    }
+
+    private static void eager(long start, long expire, String key) {
+        log.debug("{}/{}ms/Expire@{}/{}/{}", new Object[] {
+            "ReadFromCache",
+            System.currentTimeMillis() - start,
+            expire > 0 ? DatetimeUtils.format(expire, Datetime.DF_HH_mm_ss_S) : "N/A",
+            "Bench.get",
+            key
+        });
+    }
+
+    private static void guarded(long start, long expire, String key) {
+        if (log.isDebugEnabled()) {
+            log.debug("{}/{}ms/Expire@{}/{}/{}", new Object[] {
+                "ReadFromCache",
+                System.currentTimeMillis() - start,
+                expire > 0 ? DatetimeUtils.format(expire, Datetime.DF_HH_mm_ss_S) : "N/A",
+                "Bench.get",
+                key
+            });
+        }
+    }
+
+    private static void deferred(long start, long expire, String key) {
+        dlog.debug("{}/{}ms/Expire@{}/{}/{}", () -> new Object[] {
+            "ReadFromCache",
+            System.currentTimeMillis() - start,
+            expire > 0 ? DatetimeUtils.format(expire, Datetime.DF_HH_mm_ss_S) : "N/A",
+            "Bench.get",
+            key
+        });
+    }
+
+    private static void run(String name, LogCall call) {
+        long expire = System.currentTimeMillis() + 60000;
+        long bytes = allocatedBytes();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < LOOPS; i++) {
+            call.log(t0, expire, "key");
+        }
+        long t1 = System.nanoTime();
+        bytes = allocatedBytes() - bytes;
+        System.out.printf("%-16s %8.2f ns/op %8.2f bytes/op%n", name, (t1 - t0) / (double) LOOPS, bytes / (double) LOOPS);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread()
+                                                                                                                       .getId());
+    }
+
+    private interface LogCall {
+
+        void log(long start, long expire, String key);
+    }
+}
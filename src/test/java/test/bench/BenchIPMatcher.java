@@ -0,0 +1,78 @@
+package test.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.etnaframework.core.util.IPMatcher;
+
+/**
+ * <pre>
+ * {@link IPMatcher}在不同规则数下的匹配耗时，分别测试10、100、1000、1万、10万条规则
+ *
+ * 规则为随机的/16到/32的CIDR，约1/10是拒绝规则，分别测试字符串形式和数值形式的IP，IPv4按高16位分桶后只在桶内二分，单次耗时应基本不变
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class BenchIPMatcher {
+
+    private static final int LOOKUPS = 5000000;
+
+    public static void main(String[] args) {
+        int[] sizes = {
+            10,
+            100,
+            1000,
+            10000,
+            100000
+        };
+        for (int n : sizes) {
+            run(n);
+        }
+    }
+
+    private static void run(int n) {
+        Random r = new Random(n);
+        List<String> rules = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int prefix = 16 + r.nextInt(17);
+            rules.add((r.nextInt(10) == 0 ? "!" : "") + toStr(r.nextInt()) + "/" + prefix);
+        }
+        long t0 = System.nanoTime();
+        IPMatcher m = IPMatcher.compile(rules);
+        long t1 = System.nanoTime();
+
+        int[] ips = new int[4096];
+        String[] strs = new String[ips.length];
+        for (int i = 0; i < ips.length; i++) {
+            ips[i] = r.nextInt();
+            strs[i] = toStr(ips[i]);
+        }
+        int hit = 0;
+        for (int round = 0; round < 2; round++) { // 第一轮预热
+            hit = 0;
+            long s0 = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (m.contains(strs[i & 4095])) {
+                    hit++;
+                }
+            }
+            long s1 = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (m.contains(ips[i & 4095])) {
+                    hit++;
+                }
+            }
+            long s2 = System.nanoTime();
+            if (round == 1) {
+                System.out.printf("rules=%-7d intervals=%-7d compile=%6d ms  string=%6.1f ns/op  int=%6.1f ns/op  hit=%d%n", n, m.getIntervalCount(), (t1 - t0) / 1000000,
+                    (s1 - s0) / (double) LOOKUPS, (s2 - s1) / (double) LOOKUPS, hit);
+            }
+        }
+    }
+
+    private static String toStr(int ip) {
+        return (ip >>> 24) + "." + (ip >>> 16 & 0xff) + "." + (ip >>> 8 & 0xff) + "." + (ip & 0xff);
+    }
+}
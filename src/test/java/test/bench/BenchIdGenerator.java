@@ -0,0 +1,164 @@
+package test.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import org.etnaframework.core.util.DatetimeUtils;
+import org.etnaframework.core.util.TimebasedIdGenerator;
+
+/**
+ * <pre>
+ * id生成的并发性能对比：原来加锁+冲撞时sleep的实现和{@link TimebasedIdGenerator}（一次CAS，借用后面的时间片）
+ *
+ * 1~64个线程同时生成，每项跑{@link #RUN_MS}毫秒，对比吞吐量和单次调用的最大耗时（冲撞时sleep造成的长尾）
+ * 分别测试yyyyMMddHHmmss+5位（每秒最多10万个，高并发时受生成能力限制）和yyMMddHHmmss+7位（每秒最多1000万个）两种配置
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class BenchIdGenerator {
+
+    private static final int[] THREADS = {
+        1,
+        2,
+        4,
+        8,
+        16,
+        32,
+        64
+    };
+
+    private static final long RUN_MS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < 2; round++) { // 第一轮预热
+            System.out.println("round " + round);
+            for (String pattern : new String[] {
+                "yyyyMMddHHmmss",
+                "yyMMddHHmmss"
+            }) {
+                int accuracyLen = TimebasedIdGenerator.LONG_MAX_LEN - pattern.length();
+                for (int threads : THREADS) {
+                    LockedIdGenerator locked = new LockedIdGenerator(accuracyLen, 2, pattern);
+                    TimebasedIdGenerator cas = new TimebasedIdGenerator(accuracyLen, 2, pattern);
+                    String a = bench(threads, locked::nextLongId);
+                    String b = bench(threads, cas::nextLongId);
+                    System.out.printf("  %-14s+%d threads=%2d  locked %s  |  cas %s (borrows %d, waits %d)%n", pattern, accuracyLen, threads, a, b, cas.getCollides(), cas.getWaits());
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    private static String bench(int threads, LongSupplier gen) throws InterruptedException {
+        LongAdder count = new LongAdder();
+        LongAccumulator maxNs = new LongAccumulator(Math::max, 0);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] deadline = new long[1];
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    long n = 0;
+                    long max = 0;
+                    long sink = 0;
+                    for (long now = System.nanoTime(); now < deadline[0]; ) {
+                        sink += gen.getAsLong();
+                        long end = System.nanoTime();
+                        max = Math.max(max, end - now);
+                        now = end;
+                        n++;
+                    }
+                    count.add(n + (sink == 42 ? 1 : 0));
+                    maxNs.accumulate(max);
+                } catch (InterruptedException ignore) {
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        deadline[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MS);
+        start.countDown();
+        done.await();
+        return String.format("%8.3f Mops/s max %7.2f ms", count.sum() / (RUN_MS * 1000.0), maxNs.get() / 1e6);
+    }
+
+    /**
+     * 原来的实现：加锁，每次格式化时间，同一时间片内冲撞时sleep（精度低于毫秒时）或自旋等待
+     */
+    private static class LockedIdGenerator {
+
+        final Lock lock = new ReentrantLock();
+
+        final long startMilli = System.currentTimeMillis();
+
+        final long startNano = System.nanoTime();
+
+        final long _accuracyDividend;
+
+        final long _accuracyMod;
+
+        final long _incrMod;
+
+        final int incrLen;
+
+        final String pattern;
+
+        final long sleepWhenCollide;
+
+        long gens;
+
+        volatile long lastId = -1;
+
+        LockedIdGenerator(int accuracyLen, int incrLen, String pattern) {
+            this.pattern = pattern;
+            this.incrLen = incrLen;
+            this._accuracyDividend = TimebasedIdGenerator.DECIMAL_SHIFT_BASE[9 - (accuracyLen - incrLen)];
+            this._accuracyMod = TimebasedIdGenerator.DECIMAL_SHIFT_BASE[accuracyLen - incrLen];
+            this._incrMod = TimebasedIdGenerator.DECIMAL_SHIFT_BASE[incrLen];
+            this.sleepWhenCollide = _accuracyMod < 1000 ? 1000 / _accuracyMod / 4 : 0;
+        }
+
+        long nextLongId() {
+            lock.lock();
+            gens++;
+            long incr = incrLen > 0 ? gens % _incrMod : 0;
+            boolean collide = incr == 0;
+            try {
+                while (true) {
+                    long pastNano = System.nanoTime() - startNano;
+                    long pastAccuracyTime = (pastNano / _accuracyDividend) % _accuracyMod;
+                    long newId = Long.parseLong(DatetimeUtils.format(startMilli + pastNano / 1000000, pattern)) * _accuracyMod * _incrMod + pastAccuracyTime * _incrMod;
+                    if (incrLen > 0) {
+                        if (collide && lastId == newId) {
+                            sleep();
+                            continue;
+                        }
+                        lastId = newId;
+                        return newId + incr;
+                    }
+                    if (lastId != newId) {
+                        lastId = newId;
+                        return newId;
+                    }
+                    sleep();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void sleep() {
+            try {
+                Thread.sleep(sleepWhenCollide);
+            } catch (InterruptedException ignore) {
+            }
+        }
+    }
+}
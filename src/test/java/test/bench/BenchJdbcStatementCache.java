@@ -0,0 +1,68 @@
+package test.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.etnaframework.jdbc.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * <pre>
+ * 短小的按主键查询：不缓存PreparedStatement vs 开启{@link JdbcTemplate#setStatementCacheSize(int)}，对比每次查询的耗时
+ *
+ * 需要在classpath中加入嵌入式数据库的驱动（如h2或derby）再运行，第一个参数为JDBC连接串，默认为jdbc:h2:mem:bench
+ * 使用单连接的数据源，模拟连接池每次借出同一个物理连接的情况
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class BenchJdbcStatementCache {
+
+    private static final int ROWS = 1000;
+
+    private static final int ROUNDS = 200000;
+
+    public static void main(String[] args) {
+        String url = args.length > 0 ? args[0] : "jdbc:h2:mem:bench";
+        SingleConnectionDataSource ds = new SingleConnectionDataSource(url, true);
+        try {
+            JdbcTemplate plain = new JdbcTemplate(ds);
+            plain.update("create table bench_user (id bigint primary key, name varchar(32), age int)");
+            List<Object[]> rows = new ArrayList<>(ROWS);
+            for (int i = 0; i < ROWS; i++) {
+                rows.add(new Object[] {
+                    (long) i,
+                    "user" + i,
+                    i % 100
+                });
+            }
+            plain.batchUpdate("insert into bench_user (id, name, age) values (?, ?, ?)", rows);
+
+            JdbcTemplate cached = new JdbcTemplate(ds);
+            cached.setStatementCacheSize(64);
+
+            // 先预热，再计时
+            run(plain, ROUNDS);
+            run(cached, ROUNDS);
+            long t0 = System.nanoTime();
+            long a = run(plain, ROUNDS);
+            long t1 = System.nanoTime();
+            long b = run(cached, ROUNDS);
+            long t2 = System.nanoTime();
+            if (a != b) {
+                throw new IllegalStateException("两种方式的查询结果不一致：" + a + " != " + b);
+            }
+            System.out.printf("point query  plain=%8.1f ns/op  cached=%8.1f ns/op%n", (t1 - t0) / (double) ROUNDS, (t2 - t1) / (double) ROUNDS);
+        } finally {
+            ds.destroy();
+        }
+    }
+
+    private static long run(JdbcTemplate jt, int rounds) {
+        long sum = 0;
+        for (int r = 0; r < rounds; r++) {
+            sum += jt.queryInt("select age from bench_user where id=?", (long) (r % ROWS));
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,103 @@
+package test.bench;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.etnaframework.core.util.ThreadUtils;
+import org.etnaframework.jedis.JedisLock;
+import org.etnaframework.jedis.JedisTemplate;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+/**
+ * <pre>
+ * 分布式锁的争用测试：大量线程争抢少量的锁，统计每秒加锁解锁的次数，以及订阅解锁广播占用的线程数和连接数
+ *
+ * 参数为host:port时连接已有的redis，否则把参数当作redis-server的路径（默认为redis-server），在空闲端口上启动一个临时的redis，测试完后关闭
+ * 连接池只有16个连接，用于验证等待锁的线程不会占满连接池
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class BenchJedisLock {
+
+    private static final int THREADS = 256;
+
+    private static final int KEYS = 16;
+
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) throws Exception {
+        String target = args.length > 0 ? args[0] : "redis-server";
+        String host = "127.0.0.1";
+        int port;
+        Process server = null;
+        if (target.contains(":")) {
+            host = target.substring(0, target.lastIndexOf(':'));
+            port = Integer.parseInt(target.substring(target.lastIndexOf(':') + 1));
+        } else {
+            port = freePort();
+            server = new ProcessBuilder(target, "--port", String.valueOf(port), "--save", "", "--appendonly", "no").inheritIO()
+                                                                                                                   .start();
+            ThreadUtils.sleep(500);
+        }
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(16);
+        JedisPool pool = new JedisPool(config, host, port);
+        try {
+            JedisTemplate jt = new JedisTemplate(pool);
+            run(jt, 10); // 预热
+            long t0 = System.nanoTime();
+            int count = run(jt, ROUNDS);
+            long t1 = System.nanoTime();
+            long subThreads = Thread.getAllStackTraces()
+                                    .keySet()
+                                    .stream()
+                                    .filter(t -> t.getName()
+                                                  .startsWith("JedisLock(Sub)"))
+                                    .count();
+            System.out.printf("threads=%d keys=%d locks=%d  %.0f locks/s  subscriber threads=%d  pool active=%d idle=%d%n", THREADS, KEYS, count,
+                count / ((t1 - t0) / 1e9), subThreads, pool.getNumActive(), pool.getNumIdle());
+        } finally {
+            pool.destroy();
+            if (null != server) {
+                server.destroy();
+            }
+        }
+    }
+
+    private static int run(JedisTemplate jt, int rounds) throws InterruptedException {
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            String key = "bench:" + (i % KEYS);
+            executor.execute(() -> {
+                try {
+                    for (int r = 0; r < rounds; r++) {
+                        try (JedisLock lock = jt.lock(key)) {
+                            count.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        return count.get();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+}
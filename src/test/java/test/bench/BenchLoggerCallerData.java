@@ -0,0 +1,116 @@
+package test.bench;
+
+import java.io.OutputStream;
+import org.slf4j.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.CallerData;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+
+/**
+ * <pre>
+ * 打日志时获取调用者信息的耗时对比，在100层深的调用栈中执行（接近处理http请求时的线程堆栈深度）
+ *
+ * 1、原来的方式：每次new Throwable()生成完整的线程堆栈，再从中找调用者
+ * 2、现在的方式：StackWalker遍历到调用者所在的帧就停止
+ * 3、实际打日志的吞吐量：输出格式不含调用者信息（%message）、含调用者信息（%class.%method %file:%line）
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class BenchLoggerCallerData {
+
+    private static final int STACK_DEPTH = 100;
+
+    private static final int LOOPS = 500000;
+
+    private static final String PLAIN_PATTERN = "%date{HH:mm:ss.SSS,GMT+8}|%message%n";
+
+    private static final String CALLER_PATTERN = "%date{HH:mm:ss.SSS,GMT+8}|%30.30(%class{30}.%method)|%-5level| %message \\(%file:%line\\) %-5(%thread)%n";
+
+    public static void main(String[] args) {
+        LoggerContext ctx = new LoggerContext();
+        Logger plain = createLogger(ctx, "plain", PLAIN_PATTERN);
+        Logger caller = createLogger(ctx, "caller", CALLER_PATTERN);
+        for (int round = 0; round < 2; round++) { // 第一轮预热
+            System.out.println("round " + round);
+            inDepth(STACK_DEPTH, () -> {
+                long t0 = System.nanoTime();
+                for (int i = 0; i < LOOPS; i++) {
+                    Facade.extract(ctx);
+                }
+                long t1 = System.nanoTime();
+                for (int i = 0; i < LOOPS; i++) {
+                    Facade.capture(ctx);
+                }
+                long t2 = System.nanoTime();
+                for (int i = 0; i < LOOPS; i++) {
+                    plain.info("hello {}", i);
+                }
+                long t3 = System.nanoTime();
+                for (int i = 0; i < LOOPS; i++) {
+                    caller.info("hello {}", i);
+                }
+                long t4 = System.nanoTime();
+                print("extract(new Throwable())", t1 - t0);
+                print("capture(StackWalker)", t2 - t1);
+                print("log.info %message", t3 - t2);
+                print("log.info %class.%method %line", t4 - t3);
+            });
+        }
+        ctx.stop();
+    }
+
+    private static Logger createLogger(LoggerContext ctx, String name, String pattern) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(ctx);
+        encoder.setPattern(pattern);
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(ctx);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(new OutputStream() {
+
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        appender.start();
+        ch.qos.logback.classic.Logger logger = ctx.getLogger(name);
+        logger.setAdditive(false);
+        logger.addAppender(appender);
+        return logger;
+    }
+
+    private static void inDepth(int depth, Runnable r) {
+        if (depth == 0) {
+            r.run();
+        } else {
+            inDepth(depth - 1, r);
+        }
+    }
+
+    /**
+     * 模拟Logger，调用者为调用它的方法
+     */
+    private static class Facade {
+
+        static StackTraceElement[] extract(LoggerContext ctx) {
+            return CallerData.extract(new Throwable(), Facade.class.getName(), ctx.getMaxCallerDataDepth(), ctx.getFrameworkPackages());
+        }
+
+        static StackTraceElement[] capture(LoggerContext ctx) {
+            return CallerData.capture(Facade.class.getName(), ctx.getMaxCallerDataDepth(), ctx.getFrameworkPackages());
+        }
+    }
+
+    private static void print(String name, long nanos) {
+        System.out.printf("%-32s %8d ns/op%n", name, nanos / LOOPS);
+    }
+}
@@ -0,0 +1,75 @@
+package test.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import org.etnaframework.core.util.RateLimiter;
+import org.etnaframework.core.util.RateLimiter.Algorithm;
+
+/**
+ * <pre>
+ * {@link RateLimiter}的多线程吞吐量测试，分别测试1、4、16、64个线程
+ *
+ * 热点：所有线程访问少量的key（16个），主要测试同一个key上的CAS争用
+ * 泛洪：每次访问都是不同的key（模拟大量伪造IP的攻击），主要测试插入、过期复用和淘汰，同时验证表中的key数不会超过capacity
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+public class BenchRateLimiter {
+
+    private static final int OPS_PER_THREAD = 2000000;
+
+    private static final int CAPACITY = 65536;
+
+    public static void main(String[] args) throws Exception {
+        int[] threads = {
+            1,
+            4,
+            16,
+            64
+        };
+        for (Algorithm algorithm : Algorithm.values()) {
+            for (int t : threads) {
+                run(algorithm, t, false);
+            }
+            for (int t : threads) {
+                run(algorithm, t, true);
+            }
+        }
+    }
+
+    private static void run(Algorithm algorithm, int threads, boolean flood) throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(algorithm, 1000, 1000, CAPACITY);
+        String[] hot = new String[16];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = "10.0.0." + i;
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread th = new Thread(() -> {
+                ThreadLocalRandom r = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int n = 0; n < OPS_PER_THREAD; n++) {
+                        limiter.acquire(flood ? Long.valueOf(r.nextLong()) : hot[n & 15]);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread()
+                          .interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            th.start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        long t1 = System.nanoTime();
+        long ops = (long) threads * OPS_PER_THREAD;
+        System.out.printf("%-14s %-5s threads=%-3d %12.0f ops/s  pass=%d reject=%d evict=%d size=%d/%d%n", algorithm, flood ? "flood" : "hot", threads, ops / ((t1 - t0) / 1e9),
+            limiter.getPassCount(), limiter.getRejectCount(), limiter.getEvictCount(), limiter.getSize(), limiter.getCapacity());
+    }
+}
@@ -0,0 +1,271 @@
+package test.cases;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.core.util.RateLimiter;
+import org.etnaframework.core.util.RateLimiter.Algorithm;
+import org.etnaframework.plugin.monitor.AlertDispatcher;
+import org.etnaframework.plugin.monitor.AlertDispatcher.ChannelState;
+import org.etnaframework.plugin.monitor.AlertDispatcher.DingTalkChannel;
+import org.junit.Test;
+import org.springframework.stereotype.Service;
+import com.sun.net.httpserver.HttpServer;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link AlertDispatcher}测试，用本地的HTTP服务模拟钉钉机器人接口
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestAlertDispatcher extends EtnaTestCase {
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    /**
+     * 模拟的钉钉机器人接口，记录收到的消息，可设置返回的状态码和响应延迟
+     */
+    private static class StubRobot implements AutoCloseable {
+
+        final HttpServer server;
+
+        final List<String> received = new CopyOnWriteArrayList<>();
+
+        volatile int status = 200;
+
+        volatile long delayMs;
+
+        StubRobot() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/robot/send", exchange -> {
+                try (InputStream in = exchange.getRequestBody()) {
+                    byte[] buf = new byte[8192];
+                    StringBuilder sb = new StringBuilder();
+                    for (int n; (n = in.read(buf)) > 0; ) {
+                        sb.append(new String(buf, 0, n, StandardCharsets.UTF_8));
+                    }
+                    received.add(sb.toString());
+                    if (delayMs > 0) {
+                        Thread.sleep(delayMs);
+                    }
+                } catch (InterruptedException ignore) {
+                }
+                byte[] resp = "{\"errcode\":0,\"errmsg\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(status, resp.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(resp);
+                }
+            });
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress()
+                                               .getPort() + "/robot/send";
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+
+    private static AlertDispatcher create(StubRobot robot, int queueSize, long coalesceWindowMs, RateLimiter limiter, int breakerFailures, long breakerOpenMs) {
+        String url = robot.url();
+        return new AlertDispatcher(queueSize, coalesceWindowMs).addChannel(new DingTalkChannel(() -> url, 2000), limiter, breakerFailures, breakerOpenMs);
+    }
+
+    private static void waitUntil(long timeoutMs, BooleanSupplier cond) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMs;
+        while (!cond.getAsBoolean() && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 合并窗口内的同类告警：第一条立即发送，其余合并为一条摘要；告警积压在队列中时也是如此
+     */
+    @Test
+    public void testCoalesce() throws Exception {
+        try (StubRobot robot = new StubRobot()) {
+            robot.delayMs = 300;
+            AlertDispatcher d = create(robot, 1024, 500, null, 5, 60000);
+            d.dispatch("busy", "x", null);
+            waitUntil(3000, () -> robot.received.size() >= 1); // 发送线程卡在这一条上，下面的告警都积压在队列中
+            Exception ex = new IllegalStateException("boom");
+            for (int i = 0; i < 50; i++) {
+                assertTrue(d.dispatch("ERROR:/api/order/" + i, "detail " + i, ex)); // 标题中的数字不影响合并
+            }
+            ChannelState cs = d.getChannels()
+                               .get(0);
+            waitUntil(5000, () -> cs.getSentCount() >= 3);
+            Thread.sleep(700); // 确认没有发出更多
+            assertEquals(3, robot.received.size());
+            assertTrue(robot.received.get(1)
+                                     .contains("detail 0"));
+            assertFalse(robot.received.get(1)
+                                      .contains("(x"));
+            assertTrue(robot.received.get(2)
+                                     .contains("(x49)"));
+            assertTrue(robot.received.get(2)
+                                     .contains("detail 49"));
+            assertEquals(3, cs.getSentCount());
+            assertEquals(48, cs.getCoalesceCount());
+            assertEquals(51, d.getAcceptCount());
+            assertEquals(0, d.getBacklog());
+            assertTrue(d.printStat()
+                        .contains("dingTalk"));
+            d.close();
+        }
+    }
+
+    /**
+     * 不同类的告警不合并
+     */
+    @Test
+    public void testDistinctFingerprints() throws Exception {
+        try (StubRobot robot = new StubRobot()) {
+            AlertDispatcher d = create(robot, 1024, 60000, null, 5, 60000);
+            d.dispatch("ERROR", "a", new IllegalStateException());
+            d.dispatch("ERROR", "b", new IllegalArgumentException());
+            d.dispatch("WARN", "c", null);
+            waitUntil(3000, () -> robot.received.size() >= 3);
+            assertEquals(3, robot.received.size());
+            d.close();
+        }
+    }
+
+    /**
+     * 接口很慢时调用方不阻塞，队列满后丢弃并计数
+     */
+    @Test
+    public void testNonBlockingAndBoundedQueue() throws Exception {
+        try (StubRobot robot = new StubRobot()) {
+            robot.delayMs = 1000;
+            AlertDispatcher d = create(robot, 8, 60000, null, 5, 60000);
+            d.dispatch("first", "x", null);
+            waitUntil(3000, () -> robot.received.size() >= 1); // 发送线程卡在第一条上
+            long start = System.currentTimeMillis();
+            int accepted = 0;
+            for (int i = 0; i < 100; i++) {
+                if (d.dispatch("alert", "x", new RuntimeException())) {
+                    accepted++;
+                }
+            }
+            assertTrue(System.currentTimeMillis() - start < 500);
+            assertEquals(8, accepted);
+            assertEquals(92, d.getDropCount());
+            assertTrue(d.getBacklog() >= 8);
+            d.close();
+        }
+    }
+
+    /**
+     * 超过限流的告警推迟发送，不丢弃
+     */
+    @Test
+    public void testRateLimit() throws Exception {
+        try (StubRobot robot = new StubRobot()) {
+            AlertDispatcher d = create(robot, 1024, 60000, new RateLimiter(Algorithm.TOKEN_BUCKET, 3, 60000, 16), 5, 60000);
+            for (int i = 0; i < 10; i++) {
+                d.dispatch("alert-" + (char) ('a' + i), "x", null);
+            }
+            ChannelState cs = d.getChannels()
+                               .get(0);
+            waitUntil(3000, () -> cs.getRateLimitedCount() > 0);
+            Thread.sleep(200);
+            assertEquals(3, robot.received.size());
+            assertEquals(3, cs.getSentCount());
+            assertTrue(cs.getRateLimitedCount() >= 7);
+            assertEquals(7, d.getBacklog());
+            assertEquals(0, d.getDropCount());
+            d.close();
+        }
+    }
+
+    /**
+     * 连续失败后熔断，熔断期间不再请求接口，恢复后合并发送期间的告警
+     */
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        try (StubRobot robot = new StubRobot()) {
+            robot.status = 500;
+            AlertDispatcher d = create(robot, 1024, 60000, null, 3, 1500);
+            for (int i = 0; i < 3; i++) {
+                d.dispatch("alert-" + (char) ('a' + i), "x", null);
+            }
+            ChannelState cs = d.getChannels()
+                               .get(0);
+            waitUntil(3000, cs::isCircuitOpen);
+            assertTrue(cs.isCircuitOpen());
+            assertEquals(3, cs.getFailCount());
+            assertEquals(1, cs.getBreakerOpenCount());
+
+            for (int i = 0; i < 20; i++) {
+                d.dispatch("alert-a", "y", null);
+            }
+            Thread.sleep(500);
+            assertEquals(3, robot.received.size()); // 熔断中没有请求
+
+            robot.status = 200;
+            waitUntil(10000, () -> cs.getSentCount() >= 3);
+            assertFalse(cs.isCircuitOpen());
+            assertEquals(3, cs.getSentCount());
+            assertTrue(robot.received.stream()
+                                     .anyMatch(s -> s.contains("(x21)")));
+            assertEquals(0, d.getBacklog());
+            d.close();
+        }
+    }
+
+    /**
+     * 关闭时不等合并窗口结束，合并中的摘要立即发出，关闭后不再接收告警
+     */
+    @Test
+    public void testCloseFlushesDigest() throws Exception {
+        try (StubRobot robot = new StubRobot()) {
+            AlertDispatcher d = create(robot, 1024, 60000, null, 5, 60000);
+            d.dispatch("alert", "first", null);
+            waitUntil(3000, () -> robot.received.size() >= 1);
+            d.dispatch("alert", "second", null);
+            d.dispatch("alert", "third", null);
+            waitUntil(3000, () -> d.getQueueSize() == 0);
+            Thread.sleep(200);
+            assertEquals(1, robot.received.size()); // 还在合并窗口内
+            assertEquals(2, d.getBacklog());
+
+            d.close();
+            assertEquals(2, robot.received.size());
+            assertTrue(robot.received.get(1)
+                                     .contains("(x2)"));
+            assertTrue(robot.received.get(1)
+                                     .contains("third"));
+            assertEquals(0, d.getBacklog());
+            assertFalse(d.dispatch("alert", "after close", null));
+        }
+    }
+
+    /**
+     * 没有配置钉钉地址时不入队
+     */
+    @Test
+    public void testDisabledChannel() throws Exception {
+        AlertDispatcher d = new AlertDispatcher(16, 60000).addChannel(new DingTalkChannel(() -> null, 2000), null, 5, 60000);
+        assertFalse(d.dispatch("alert", "x", null));
+        assertEquals(0, d.getAcceptCount());
+        assertEquals(0, d.getDropCount());
+        d.close();
+    }
+}
@@ -0,0 +1,103 @@
+package test.cases;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+import org.etnaframework.core.logging.AsyncAccessLogWriter;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.junit.Test;
+import org.springframework.stereotype.Service;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link AsyncAccessLogWriter}测试，输出和原来logback的访问日志配置逐字节一致，按天滚动
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestAsyncAccessLogWriter extends EtnaTestCase {
+
+    /** 原来logback访问日志的输出格式 */
+    private static final String PATTERN = "%date{HH:mm:ss.SSS,GMT+8}|%message%n";
+
+    private static final String[] MESSAGES = {
+        "GET /stat|200|12ms",
+        "中文内容|参数=值",
+        "",
+        "tab\tand|pipe",
+        "emoji 😀"
+    };
+
+    private File dir;
+
+    @Override
+    protected void cleanup() throws Throwable {
+        if (null != dir) {
+            File[] files = dir.listFiles();
+            if (null != files) {
+                for (File f : files) {
+                    f.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * 同样的时间和内容，和logback的PatternLayout输出的字节完全相同；跨过GMT+8的0点时，前一天的日志改名为带日期的文件
+     */
+    @Test
+    public void testSameOutputAsLogback() throws Exception {
+        dir = Files.createTempDirectory("accessLog")
+                   .toFile();
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        sdf.setTimeZone(TimeZone.getTimeZone("GMT+8"));
+        long midnight = sdf.parse("2026-01-02 00:00:00.000")
+                           .getTime();
+        long[] offsets = {
+            -86400000L,
+            -86399001L,
+            -86399000L,
+            -3600001L,
+            -59999L,
+            -1L
+        };
+
+        LoggerContext ctx = new LoggerContext();
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(ctx);
+        layout.setPattern(PATTERN);
+        layout.start();
+        ch.qos.logback.classic.Logger logger = ctx.getLogger("access");
+
+        AsyncAccessLogWriter writer = new AsyncAccessLogWriter(new File(dir, "access.log").getPath(), 16, true);
+        StringBuilder firstDay = new StringBuilder();
+        StringBuilder secondDay = new StringBuilder();
+        for (int i = 0; i < offsets.length + MESSAGES.length; i++) {
+            long time = i < offsets.length ? midnight + offsets[i] : midnight + i * 1001L;
+            String message = MESSAGES[i % MESSAGES.length];
+            LoggingEvent event = new LoggingEvent(getClass().getName(), logger, Level.INFO, message, null, null);
+            event.setTimeStamp(time);
+            (time < midnight ? firstDay : secondDay).append(layout.doLayout(event));
+            assertTrue(writer.append(time, message));
+        }
+        writer.close();
+
+        Charset cs = Charset.defaultCharset(); // 原来的encoder没有配置编码
+        assertArrayEquals(firstDay.toString()
+                                  .getBytes(cs), Files.readAllBytes(new File(dir, "access.2026-01-01.log").toPath()));
+        assertArrayEquals(secondDay.toString()
+                                   .getBytes(cs), Files.readAllBytes(new File(dir, "access.log").toPath()));
+        assertEquals(offsets.length + MESSAGES.length, writer.getWriteCount());
+        assertEquals(0, writer.getDropCount());
+    }
+}
@@ -0,0 +1,334 @@
+package test.cases;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.core.util.ThreadUtils;
+import org.etnaframework.jedis.JedisConfig;
+import org.etnaframework.plugin.cron.CronCluster;
+import org.etnaframework.plugin.cron.CronCluster.ClaimResult;
+import org.junit.Test;
+import org.springframework.stereotype.Service;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link CronCluster}测试，在同一个进程内模拟多个实例，需要本机运行redis
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestCronCluster extends EtnaTestCase {
+
+    /** redis的host */
+    private static String redisHost = "127.0.0.1";
+
+    /** redis的端口 */
+    private static int redisPort = 6379;
+
+    private static final String PREFIX = "testCronCluster:";
+
+    /** 集群名称 */
+    private static final String NAME = PREFIX + "app";
+
+    private static final int TASKS = 200;
+
+    private static final long HEARTBEAT_MS = 100;
+
+    private static final long NODE_TIMEOUT_MS = 500;
+
+    private static JedisConfig jedisConfig;
+
+    private static JedisConfig getJedisConfig() throws Exception {
+        if (null == jedisConfig) {
+            jedisConfig = new JedisConfig();
+            jedisConfig.setHost(redisHost);
+            jedisConfig.setPort(redisPort);
+            jedisConfig.setTimeoutMs(15 * 1000);
+            jedisConfig.setMaxTotal(100);
+            jedisConfig.setMaxIdle(10);
+            jedisConfig.setMaxWaitMs(15 * 1000);
+            jedisConfig.setDbNum(1);
+            jedisConfig.afterPropertiesSet();
+        }
+        return jedisConfig;
+    }
+
+    @Override
+    protected void cleanup() throws Throwable {
+        getJedisConfig().db(0)
+                        .execute(jedis -> {
+                            for (String key : jedis.keys(PREFIX + "*")) {
+                                jedis.del(key);
+                            }
+                            for (String key : jedis.keys(CronCluster.NODES_KEY_PREFIX + PREFIX + "*")) {
+                                jedis.del(key);
+                            }
+                        });
+    }
+
+    /**
+     * 在同一个进程内模拟的多个实例
+     */
+    private static class Cluster implements AutoCloseable {
+
+        final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+
+        final List<CronCluster> nodes = new ArrayList<>();
+
+        /** 每次触发被执行的次数 */
+        final Map<String, AtomicInteger> executed = new ConcurrentHashMap<>();
+
+        /** 区分不同用例的触发，防止上一个用例的锁还没过期 */
+        final long fireId = System.currentTimeMillis();
+
+        CronCluster startNode(String nodeId) throws Exception {
+            return startNode(nodeId, scheduler, 0, TASKS);
+        }
+
+        /**
+         * 启动一个执行task[from, to)的实例，心跳由指定的scheduler执行
+         */
+        CronCluster startNode(String nodeId, ScheduledExecutorService heartbeat, int from, int to) throws Exception {
+            CronCluster node = new CronCluster(getJedisConfig(), NAME, nodeId, HEARTBEAT_MS, NODE_TIMEOUT_MS);
+            for (int i = from; i < to; i++) {
+                node.register(PREFIX + "task" + i);
+            }
+            node.start(heartbeat);
+            nodes.add(node);
+            return node;
+        }
+
+        /**
+         * 模拟一次触发：每个实例只对分配给自己的任务抢锁，抢到了就执行
+         */
+        void fire(int seq) {
+            for (CronCluster node : nodes) {
+                for (int i = 0; i < TASKS; i++) {
+                    String task = PREFIX + "task" + i;
+                    if (node.isOwner(task)) {
+                        ClaimResult r = node.claim(task, task + ":lock:" + fireId + ":" + seq, 60000, task + ":info", node.getNodeId(), 60000);
+                        if (r.claimed) {
+                            executed.computeIfAbsent(task + "@" + seq, k -> new AtomicInteger())
+                                    .incrementAndGet();
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * 检查每次触发最多执行一次，返回被执行的触发数
+         */
+        int assertNoDuplicates(int seq) {
+            int count = 0;
+            for (int i = 0; i < TASKS; i++) {
+                AtomicInteger n = executed.get(PREFIX + "task" + i + "@" + seq);
+                if (null != n) {
+                    assertEquals("task" + i + "@" + seq, 1, n.get());
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws Exception {
+            for (CronCluster node : nodes) {
+                node.leave();
+            }
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 集群稳定时，每次触发恰好执行一次，每个任务只有一次抢锁，任务均匀分配到各实例
+     */
+    @Test
+    public void testEachFireClaimedOnce() throws Exception {
+        try (Cluster c = new Cluster()) {
+            for (int i = 0; i < 4; i++) {
+                c.startNode("node" + i);
+            }
+            ThreadUtils.sleep(HEARTBEAT_MS * 3); // 等所有实例都看到完整的实例列表
+            for (int seq = 0; seq < 5; seq++) {
+                c.fire(seq);
+                assertEquals(TASKS, c.assertNoDuplicates(seq));
+            }
+            long claims = 0;
+            for (CronCluster node : c.nodes) {
+                assertEquals(4, node.getNodes()
+                                    .size());
+                claims += node.getClaimCount();
+                // 200个任务分到4个实例，每个实例应该分到不少于1/8
+                assertTrue(node + " claimed " + node.getClaimedCount(), node.getClaimedCount() >= TASKS * 5 / 8);
+            }
+            assertEquals(TASKS * 5, claims);
+        }
+    }
+
+    /**
+     * 实例加入、正常退出、宕机时任务重新分配，任何时候都不会重复执行，重新分配完成后每次触发都会执行
+     */
+    @Test
+    public void testRebalance() throws Exception {
+        try (Cluster c = new Cluster()) {
+            for (int i = 0; i < 3; i++) {
+                c.startNode("node" + i);
+            }
+            ThreadUtils.sleep(HEARTBEAT_MS * 3);
+            int seq = 0;
+            c.fire(seq);
+            assertEquals(TASKS, c.assertNoDuplicates(seq++));
+
+            // 新实例加入，其他实例在下一次心跳前仍认为自己拥有分配给新实例的任务，会和新实例抢锁，但只有一个能抢到
+            CronCluster joined = c.startNode("node3");
+            c.fire(seq);
+            assertEquals(TASKS, c.assertNoDuplicates(seq++));
+            ThreadUtils.sleep(HEARTBEAT_MS * 3);
+            c.fire(seq);
+            assertEquals(TASKS, c.assertNoDuplicates(seq++));
+            assertTrue(joined.getClaimedCount() > 0);
+
+            // 正常退出，其他实例在下一次心跳后接管
+            CronCluster left = c.nodes.remove(0);
+            left.leave();
+            ThreadUtils.sleep(HEARTBEAT_MS * 3);
+            c.fire(seq);
+            assertEquals(TASKS, c.assertNoDuplicates(seq++));
+
+            // 宕机（不再心跳也没有退出），心跳超时后由哈希环上的下一个实例接管
+            ScheduledExecutorService crashedHeartbeat = Executors.newScheduledThreadPool(1);
+            CronCluster crashed = c.startNode("node4", crashedHeartbeat, 0, TASKS);
+            ThreadUtils.sleep(HEARTBEAT_MS * 3);
+            c.nodes.remove(crashed);
+            crashedHeartbeat.shutdownNow(); // 停止心跳，但仍留在实例列表中
+            ThreadUtils.sleep(HEARTBEAT_MS);
+            c.fire(seq);
+            assertTrue(c.assertNoDuplicates(seq++) < TASKS); // 心跳超时前分配给宕机实例的任务没有执行
+            ThreadUtils.sleep(NODE_TIMEOUT_MS + HEARTBEAT_MS * 2);
+            c.fire(seq);
+            assertEquals(TASKS, c.assertNoDuplicates(seq++));
+            for (CronCluster node : c.nodes) {
+                assertFalse(node.getNodes()
+                                .contains(crashed.getNodeId()));
+            }
+        }
+    }
+
+    /**
+     * 实例执行的任务不同（如滚动发布时新旧版本共存）时，任务只分配给执行它的实例；不同集群名称的实例互不影响
+     */
+    @Test
+    public void testDifferentTasks() throws Exception {
+        try (Cluster c = new Cluster()) {
+            CronCluster oldVersion = c.startNode("old", c.scheduler, 0, TASKS / 2); // 只有前一半任务
+            CronCluster newVersion = c.startNode("new", c.scheduler, TASKS / 4, TASKS); // 没有前1/4的任务
+            CronCluster other = new CronCluster(getJedisConfig(), PREFIX + "otherApp", "otherNode", HEARTBEAT_MS, NODE_TIMEOUT_MS);
+            other.register(PREFIX + "task0");
+            other.start(c.scheduler);
+            try {
+                ThreadUtils.sleep(HEARTBEAT_MS * 3);
+                assertEquals(2, oldVersion.getNodes()
+                                          .size());
+                assertEquals(1, other.getNodes()
+                                     .size());
+                for (int i = 0; i < TASKS; i++) {
+                    String task = PREFIX + "task" + i;
+                    String owner = oldVersion.getOwner(task);
+                    assertEquals(task, owner, newVersion.getOwner(task)); // 各实例的分配结果一致
+                    if (i < TASKS / 4) {
+                        assertEquals(task, "old", owner);
+                    } else if (i >= TASKS / 2) {
+                        assertEquals(task, "new", owner);
+                    }
+                }
+                // 每个实例只对自己有的任务判断归属，每次触发都恰好执行一次
+                for (int seq = 0; seq < 3; seq++) {
+                    for (int i = 0; i < TASKS; i++) {
+                        String task = PREFIX + "task" + i;
+                        for (CronCluster node : new CronCluster[] {
+                            oldVersion,
+                            newVersion
+                        }) {
+                            boolean hosted = node == oldVersion ? i < TASKS / 2 : i >= TASKS / 4;
+                            if (hosted && node.isOwner(task) && node.claim(task, task + ":lock:" + c.fireId + ":" + seq, 60000, task + ":info", node.getNodeId(), 60000).claimed) {
+                                c.executed.computeIfAbsent(task + "@" + seq, k -> new AtomicInteger())
+                                          .incrementAndGet();
+                            }
+                        }
+                    }
+                    assertEquals(TASKS, c.assertNoDuplicates(seq));
+                }
+                assertTrue(oldVersion.getClaimedCount() > 0);
+                assertTrue(newVersion.getClaimedCount() > 0);
+            } finally {
+                other.leave();
+            }
+        }
+    }
+
+    /**
+     * 多个实例同时抢同一次触发的锁，只有一个能抢到，并取回上一次的任务信息
+     */
+    @Test
+    public void testConcurrentClaim() throws Exception {
+        try (Cluster c = new Cluster()) {
+            for (int i = 0; i < 8; i++) {
+                c.startNode("node" + i);
+            }
+            String task = PREFIX + "concurrent";
+            for (int seq = 0; seq < 20; seq++) {
+                String lockKey = task + ":lock:" + c.fireId + ":" + seq;
+                CountDownLatch start = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(c.nodes.size());
+                Map<String, ClaimResult> results = new ConcurrentHashMap<>();
+                for (CronCluster node : c.nodes) {
+                    new Thread(() -> {
+                        try {
+                            start.await();
+                            results.put(node.getNodeId(), node.claim(task, lockKey, 60000, task + ":info", node.getNodeId(), 60000));
+                        } catch (InterruptedException ignore) {
+                        } finally {
+                            done.countDown();
+                        }
+                    }).start();
+                }
+                start.countDown();
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+                Map<Boolean, List<String>> byClaimed = new HashMap<>();
+                for (Map.Entry<String, ClaimResult> e : results.entrySet()) {
+                    byClaimed.computeIfAbsent(e.getValue().claimed, k -> new ArrayList<>())
+                             .add(e.getKey());
+                }
+                assertEquals(1, byClaimed.get(true)
+                                         .size());
+                String winner = byClaimed.get(true)
+                                         .get(0);
+                for (String loser : byClaimed.get(false)) {
+                    assertEquals(winner, results.get(loser).holder);
+                }
+                if (seq > 0) { // 抢到锁的实例取回了上一次写入的任务信息
+                    assertTrue(results.get(winner).previousInfo.startsWith("node"));
+                }
+                // 抢锁重试时第一次可能已经成功了，再抢一次仍算抢到
+                CronCluster w = c.nodes.stream()
+                                     .filter(n -> n.getNodeId()
+                                                   .equals(winner))
+                                     .findFirst()
+                                     .get();
+                assertTrue(w.claim(task, lockKey, 60000, task + ":info", winner, 60000).claimed);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package test.cases;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.plugin.cron.CronExpression;
+import org.junit.Test;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+import org.springframework.stereotype.Service;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link CronExpression}测试，计算结果需要和{@link CronSequenceGenerator}完全一致
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestCronExpression extends EtnaTestCase {
+
+    private static final String[] EXPRESSIONS = {
+        "* * * * * *",
+        "0 * * * * *",
+        "10 * * * * MON-FRI",
+        "*/5 * * * * ?",
+        "0 0/15 * * * *",
+        "0 0 2 * * *",
+        "0 30 9-17/2 * * MON,WED,FRI",
+        "0 0 0 1 * *",
+        "0 0 0 */5 * *",
+        "0 0 0 31 * *",
+        "0 0 12 29 FEB *",
+        "0 0 12 29 2 MON",
+        "0 0 0 28 * *",
+        "0 0 0 * JAN,jul SUN",
+        "0 0 0 * * 7",
+        "0 0 0 * * 0",
+        "15 10 3 1-7 * 1",
+        "0 0 23 ? * SAT",
+        "59 59 23 31 DEC ?",
+        "0 5/20 * * * *",
+        "1,2,3,58 * * * * *"
+    };
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    @Test
+    public void testSameAsCronSequenceGenerator() {
+        Random random = new Random(20261016L);
+        for (String zone : new String[] {
+            "GMT+8",
+            "UTC",
+            "America/New_York",
+            "Europe/London"
+        }) {
+            TimeZone tz = TimeZone.getTimeZone(zone);
+            for (String expr : EXPRESSIONS) {
+                CronExpression cron = new CronExpression(expr, tz);
+                CronSequenceGenerator gen = new CronSequenceGenerator(expr, tz);
+                long t = 1700000000000L + random.nextInt(1000);
+                for (int i = 0; i < 200; i++) {
+                    long expected;
+                    try {
+                        expected = gen.next(new Date(t))
+                                      .getTime();
+                        long actual = cron.next(t);
+                        if (tz.useDaylightTime()) { // 夏令时结束时本地时间重复的一小时，Calendar会取后一次，直接跳过了前一次
+                            assertTrue(expr + " @" + zone + " after " + new Date(t), actual > t && actual <= expected);
+                            expected = actual;
+                        } else {
+                            assertEquals(expr + " @" + zone + " after " + new Date(t), expected, actual);
+                        }
+                    } catch (IllegalArgumentException ex) { // CronSequenceGenerator最多往后找366天，找不到2月29日这样的时间
+                        expected = cron.next(t);
+                        assertTrue(expr + " @" + zone + " after " + new Date(t), expected > t);
+                    }
+                    if (tz.getOffset(expected) == tz.getOffset(expected - 3600000L)) { // 夏令时开始时跳过的一小时，会顺延到之后的时间，不匹配
+                        assertTrue(expr + " @" + zone + " at " + new Date(expected), cron.matches(expected));
+                    }
+                    // 下一次从随机的时间点开始，覆盖跨天、跨月、跨年、夏令时切换
+                    t = random.nextBoolean() ? expected : t + (long) (random.nextDouble() * 40 * 86400000L);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidExpressions() {
+        for (String expr : new String[] {
+            "* * * * *",
+            "60 * * * * *",
+            "* * 24 * * *",
+            "* * * 32 * *",
+            "* * * * 13 *",
+            "* * * * * 8",
+            "*/0 * * * * *",
+            "5-1 * * * * *",
+            "a * * * * *"
+        }) {
+            try {
+                new CronExpression(expr);
+                fail(expr + " should be invalid");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testNeverMatches() {
+        try {
+            new CronExpression("0 0 0 30 2 *").next(System.currentTimeMillis());
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
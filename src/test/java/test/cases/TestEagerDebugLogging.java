@@ -0,0 +1,154 @@
+package test.cases;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.etnaframework.core.logging.DeferredLogger;
+import org.etnaframework.core.logging.Log;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.junit.Test;
+import org.springframework.stereotype.Service;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.LineNumberAttribute;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import test.TestEtnaLaunch;
+
+/**
+ * <pre>
+ * 检查org.etnaframework中的debug/trace日志有没有在日志级别未开启时也计算参数的情况
+ *
+ * 直接分析编译后的字节码：在取得Logger和调用debug/trace之间，如果有分配内存（new、数组、字符串拼接、自动装箱）或调用其他方法，
+ * 并且在此之前没有调用过isDebugEnabled/isTraceEnabled，就认为参数是提前计算的，需要加判断或改用{@link DeferredLogger}
+ *
+ * 只在异常处理、启动或IO操作中执行的方法，参数的开销相比之下可以忽略，列在{@link #COLD_METHODS}中不做检查
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestEagerDebugLogging extends EtnaTestCase {
+
+    private static final String LOGGER_TYPE = "Lorg/slf4j/Logger;";
+
+    private static final Set<String> LOGGER_CLASSES = new HashSet<>(Arrays.asList("org.slf4j.Logger", "ch.qos.logback.classic.Logger"));
+
+    /** 不分配内存、开销可以忽略的方法，作为日志参数时不算提前计算 */
+    private static final Set<String> CHEAP_METHODS = new HashSet<>(Arrays.asList("java.lang.Object.getClass", "java.lang.Class.getName",
+        "java.lang.Class.getSimpleName", "java.lang.reflect.Method.getName", "java.lang.Thread.currentThread", "java.lang.Thread.getName"));
+
+    /** 不在热点路径上的方法 */
+    private static final Set<String> COLD_METHODS = new HashSet<>(Arrays.asList("org.etnaframework.core.util.JsonObjectUtils.parseJson",
+        "org.etnaframework.core.util.JsonObjectUtils.parseJsonArray", "org.etnaframework.core.util.MailTemplate.send", "org.etnaframework.core.util.FileUtils.copyFile",
+        "org.etnaframework.core.util.FileUtils.copyDir", "org.etnaframework.core.util.FileUtils.move", "org.etnaframework.core.spring.SpringContext.onContextInited",
+        "org.etnaframework.core.spring.SpringContext$3.run", "org.etnaframework.core.spring.ConfigBeanProcessor.onBeanInited",
+        "org.etnaframework.core.spring.ConfigAnnotationBeanPostProcessor$ConfigBeanSetter.setValue"));
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    @Test
+    public void testNoEagerDebugArguments() throws Exception {
+        File root = new File(Log.class.getProtectionDomain()
+                                      .getCodeSource()
+                                      .getLocation()
+                                      .toURI());
+        List<String> found = new ArrayList<>();
+        scan(new File(root, "org/etnaframework"), found);
+        assertTrue("debug/trace日志的参数没有判断日志级别就计算了：\n" + String.join("\n", found), found.isEmpty());
+    }
+
+    private void scan(File dir, List<String> found) throws IOException, BadBytecode {
+        File[] files = dir.listFiles();
+        if (null == files) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                scan(f, found);
+            } else if (f.getName()
+                        .endsWith(".class")) {
+                try (InputStream in = new FileInputStream(f)) {
+                    ClassFile cf = new ClassFile(new DataInputStream(in));
+                    for (Object m : cf.getMethods()) {
+                        check(cf, (MethodInfo) m, found);
+                    }
+                }
+            }
+        }
+    }
+
+    private void check(ClassFile cf, MethodInfo m, List<String> found) throws BadBytecode {
+        CodeAttribute code = m.getCodeAttribute();
+        if (null == code || COLD_METHODS.contains(cf.getName() + "." + m.getName())) {
+            return;
+        }
+        ConstPool cp = m.getConstPool();
+        LineNumberAttribute lines = (LineNumberAttribute) code.getAttribute(LineNumberAttribute.tag);
+        boolean guarded = false; // 之前是否判断过日志级别
+        boolean loaded = false; // 是否刚取得Logger，正在准备参数
+        boolean eager = false; // 准备参数时是否有分配内存或调用方法
+        for (CodeIterator it = code.iterator(); it.hasNext(); ) {
+            int pos = it.next();
+            int op = it.byteAt(pos);
+            switch (op) {
+            case Opcode.GETSTATIC:
+            case Opcode.GETFIELD:
+                if (LOGGER_TYPE.equals(cp.getFieldrefType(it.u16bitAt(pos + 1)))) {
+                    loaded = true;
+                    eager = false;
+                }
+                break;
+            case Opcode.INVOKEINTERFACE:
+            case Opcode.INVOKEVIRTUAL:
+            case Opcode.INVOKESTATIC:
+            case Opcode.INVOKESPECIAL:
+                int index = it.u16bitAt(pos + 1);
+                String owner = op == Opcode.INVOKEINTERFACE ? cp.getInterfaceMethodrefClassName(index) : cp.getMethodrefClassName(index);
+                String name = op == Opcode.INVOKEINTERFACE ? cp.getInterfaceMethodrefName(index) : cp.getMethodrefName(index);
+                String desc = op == Opcode.INVOKEINTERFACE ? cp.getInterfaceMethodrefType(index) : cp.getMethodrefType(index);
+                if (desc.endsWith(")" + LOGGER_TYPE)) { // 内部类访问外部类的log字段时，编译器生成的access$方法
+                    loaded = true;
+                    eager = false;
+                } else if (LOGGER_CLASSES.contains(owner)) {
+                    if (name.equals("isDebugEnabled") || name.equals("isTraceEnabled")) {
+                        guarded = true;
+                    } else if ((name.equals("debug") || name.equals("trace")) && loaded && eager && !guarded) {
+                        String site = cf.getName() + "." + m.getName() + "(" + cf.getSourceFile() + ":" + (null == lines ? -1 : lines.toLineNumber(pos)) + ")";
+                        if (!found.contains(site)) { // finally块会被编译成多份
+                            found.add(site);
+                        }
+                    }
+                    loaded = false;
+                } else if (!CHEAP_METHODS.contains(owner + "." + name)) {
+                    eager = true;
+                }
+                break;
+            case Opcode.NEW:
+            case Opcode.NEWARRAY:
+            case Opcode.ANEWARRAY:
+            case Opcode.MULTIANEWARRAY:
+            case Opcode.INVOKEDYNAMIC:
+                eager = true;
+                break;
+            default:
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package test.cases;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.core.util.HttpClientPool;
+import org.etnaframework.core.util.HttpClientPool.Route;
+import org.etnaframework.core.util.HttpClientUtils;
+import org.etnaframework.core.util.HttpClientUtils.HttpResult;
+import org.junit.Test;
+import org.springframework.stereotype.Service;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link HttpClientUtils}连接复用、并发限制、流式读取、异步请求的测试，使用内嵌的jetty作为服务端
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestHttpClientPool extends EtnaTestCase {
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    /**
+     * 内嵌的测试服务端，记录客户端连接使用的端口（同一个端口说明复用了连接）和同时处理的请求数
+     */
+    private static class TestServer extends AbstractHandler implements AutoCloseable {
+
+        final Server server = new Server(0);
+
+        final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+        final AtomicInteger concurrent = new AtomicInteger();
+
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        final AtomicInteger requests = new AtomicInteger();
+
+        TestServer() throws Exception {
+            server.setHandler(this);
+            server.start();
+        }
+
+        String url(String path) {
+            return "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + path;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+            baseRequest.setHandled(true);
+            requests.incrementAndGet();
+            clientPorts.add(request.getRemotePort());
+            int c = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(c, Math::max);
+            try {
+                int sleep = Integer.parseInt(request.getParameter("sleep") == null ? "0" : request.getParameter("sleep"));
+                if (sleep > 0) {
+                    Thread.sleep(sleep);
+                }
+                int size = Integer.parseInt(request.getParameter("size") == null ? "2" : request.getParameter("size"));
+                response.setContentType("text/plain;charset=UTF-8");
+                OutputStream out = response.getOutputStream();
+                if (null != request.getParameter("gzip")) {
+                    response.setHeader("Content-Encoding", "gzip");
+                    out = new GZIPOutputStream(out);
+                }
+                byte[] buf = new byte[size]; // 内容为size个字节的0123456789012...
+                for (int i = 0; i < size; i++) {
+                    buf[i] = (byte) ('0' + i % 10);
+                }
+                out.write(buf);
+                out.close();
+            } catch (InterruptedException ex) {
+                Thread.currentThread()
+                      .interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void close() throws Exception {
+            server.stop();
+        }
+    }
+
+    /**
+     * 默认复用连接，连续的请求都用同一个连接；不复用时每次都是新的连接
+     */
+    @Test
+    public void testKeepAlive() throws Exception {
+        try (TestServer server = new TestServer()) {
+            for (int i = 0; i < 20; i++) {
+                HttpResult hr = HttpClientUtils.get(server.url("/ok"))
+                                               .fetch();
+                assertEquals(200, hr.getStatusCode());
+                assertEquals("01", hr.getString());
+            }
+            assertEquals(1, server.clientPorts.size());
+
+            server.clientPorts.clear();
+            for (int i = 0; i < 5; i++) {
+                assertEquals(200, HttpClientUtils.get(server.url("/close"))
+                                                 .noKeepAlive()
+                                                 .fetch()
+                                                 .getStatusCode());
+            }
+            assertEquals(5, server.clientPorts.size());
+        }
+    }
+
+    /**
+     * 同一个目标地址的并发请求数不超过maxPerRoute，超出的排队等待
+     */
+    @Test
+    public void testMaxPerRoute() throws Exception {
+        int old = HttpClientPool.maxPerRoute;
+        HttpClientPool.maxPerRoute = 2; // 只对新出现的目标地址生效，每个用例的服务端端口都不同
+        try (TestServer server = new TestServer()) {
+            List<CompletableFuture<HttpResult>> list = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                list.add(HttpClientUtils.get(server.url("/slow?sleep=100"))
+                                        .fetchAsync());
+            }
+            for (CompletableFuture<HttpResult> f : list) {
+                assertEquals(200, f.get(30, TimeUnit.SECONDS)
+                                   .getStatusCode());
+            }
+            assertEquals(2, server.maxConcurrent.get());
+            Route route = HttpClientPool.getRoutes()
+                                        .stream()
+                                        .filter(r -> server.url("")
+                                                           .equals(r.getName()))
+                                        .findFirst()
+                                        .get();
+            assertEquals(8, route.getRequestCount());
+            assertEquals(2, route.getPeakActiveCount());
+            assertEquals(0, route.getActiveCount());
+            assertEquals(0, route.getFailedCount());
+            assertTrue(HttpClientPool.printStat()
+                                     .contains(route.getName()));
+        } finally {
+            HttpClientPool.maxPerRoute = old;
+        }
+    }
+
+    /**
+     * 流式读取，包括gzip压缩的内容，没有读完的剩余内容不多时会读掉，连接仍然可以复用
+     */
+    @Test
+    public void testStream() throws Throwable {
+        try (TestServer server = new TestServer()) {
+            for (String path : new String[] {
+                "/big?size=1000000",
+                "/big?size=1000000&gzip=1"
+            }) {
+                long total = HttpClientUtils.get(server.url(path))
+                                            .fetchStream((hr, body) -> {
+                                                assertEquals(200, hr.getStatusCode());
+                                                assertNull(hr.getBytes());
+                                                long n = 0;
+                                                byte[] buf = new byte[8192];
+                                                for (int r; (r = body.read(buf)) > 0; ) {
+                                                    n += r;
+                                                }
+                                                return n;
+                                            });
+                assertEquals(1000000, total);
+            }
+            // 只读了开头，剩余的内容在读掉的范围内，连接可以复用
+            server.clientPorts.clear();
+            for (int i = 0; i < 5; i++) {
+                int first = HttpClientUtils.get(server.url("/partial?size=10000"))
+                                           .fetchStream((hr, body) -> body.read());
+                assertEquals('0', first);
+            }
+            assertEquals(1, server.clientPorts.size());
+        }
+    }
+
+    /**
+     * 异步请求到达deadline时直接结束，不用等读取超时；已经超过deadline的请求不会发出
+     */
+    @Test
+    public void testDeadline() throws Exception {
+        try (TestServer server = new TestServer()) {
+            long start = System.currentTimeMillis();
+            HttpResult hr = HttpClientUtils.get(server.url("/slow?sleep=2000"))
+                                           .deadline(300, TimeUnit.MILLISECONDS)
+                                           .fetchAsync()
+                                           .get(5, TimeUnit.SECONDS);
+            long span = System.currentTimeMillis() - start;
+            assertEquals(0, hr.getStatusCode());
+            assertTrue("span=" + span, span >= 300 && span < 1000);
+
+            // 同步请求的读取超时被限制在剩余时间内
+            start = System.currentTimeMillis();
+            hr = HttpClientUtils.get(server.url("/slow?sleep=2000"))
+                                .deadline(300, TimeUnit.MILLISECONDS)
+                                .fetch();
+            span = System.currentTimeMillis() - start;
+            assertEquals(0, hr.getStatusCode());
+            assertTrue("span=" + span, span < 1000);
+
+            int before = server.requests.get();
+            hr = HttpClientUtils.get(server.url("/ok"))
+                                .deadlineAt(System.currentTimeMillis() - 1)
+                                .fetch();
+            assertEquals(0, hr.getStatusCode());
+            assertEquals(before, server.requests.get());
+        }
+    }
+
+    /**
+     * 异步请求的结果和同步请求一样
+     */
+    @Test
+    public void testFetchAsync() throws Exception {
+        try (TestServer server = new TestServer()) {
+            List<CompletableFuture<HttpResult>> list = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                list.add(HttpClientUtils.get(server.url("/ok?size=" + i))
+                                        .fetchAsync());
+            }
+            for (int i = 0; i < 20; i++) {
+                HttpResult hr = list.get(i)
+                                    .get(30, TimeUnit.SECONDS);
+                assertEquals(200, hr.getStatusCode());
+                assertEquals(i, hr.getString()
+                                   .length());
+            }
+        }
+    }
+}
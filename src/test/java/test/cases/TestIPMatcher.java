@@ -0,0 +1,82 @@
+package test.cases;
+
+import java.util.Arrays;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.core.util.IPMatcher;
+import org.junit.Test;
+import org.springframework.stereotype.Service;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link IPMatcher}的测试
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestIPMatcher extends EtnaTestCase {
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    /**
+     * 原有的规则格式
+     */
+    @Test
+    public void testLegacyRules() {
+        IPMatcher m = IPMatcher.compile(Arrays.asList("127.0.0.1", "172.*.*.*", "173.1.*.*", "174.0.0.*", "175.1.1.6", "192.168.1.1-24", "202.23.56.13-201.23.14.25",
+            "202.34.25.235-222.0.0.1", "1.*.1.1"));
+        assertTrue(m.contains("127.0.0.1"));
+        assertTrue(m.contains("172.5.6.4") && m.contains("172.0.0.1"));
+        assertTrue(m.contains("173.1.5.6"));
+        assertTrue(m.contains("174.0.0.255"));
+        assertTrue(m.contains("175.1.1.6"));
+        assertTrue(m.contains("192.168.1.23"));
+        assertFalse(m.contains("192.168.1.25"));
+        assertTrue(m.contains("205.255.255.255"));
+        assertFalse(m.contains("162.31.25.2"));
+        assertFalse(m.contains("202.23.56.20")); // 起点大于终点的规则无效
+        assertFalse(m.contains("1.2.1.1")); // 不支持中间的通配符
+        assertFalse(m.contains("localhost"));
+        assertFalse(m.contains("256.1.1.1"));
+        assertEquals(7, m.getRuleCount());
+    }
+
+    /**
+     * CIDR、拒绝规则和最长前缀匹配
+     */
+    @Test
+    public void testLongestPrefixMatch() {
+        IPMatcher m = IPMatcher.compile(Arrays.asList("10.0.0.0/8", "!10.1.0.0/16", "10.1.2.0/24", "!10.1.2.3", "*"));
+        assertTrue(m.contains("10.0.0.1"));
+        assertFalse(m.contains("10.1.0.1"));
+        assertTrue(m.contains("10.1.2.1"));
+        assertFalse(m.contains("10.1.2.3"));
+        assertTrue(m.contains("8.8.8.8")); // *允许所有
+        assertTrue(m.contains(0x0a010204));
+        assertFalse(m.contains(0x0a010203));
+
+        IPMatcher same = IPMatcher.compile(Arrays.asList("10.0.0.0/8", "!10.0.0.0/8"));
+        assertFalse(same.contains("10.0.0.1")); // 同样的范围拒绝优先
+    }
+
+    /**
+     * IPv6
+     */
+    @Test
+    public void testIPv6() {
+        IPMatcher m = IPMatcher.compile(Arrays.asList("2001:db8::/32", "!2001:db8:1::/48", "::1", "fe80::1-fe80::ff", "10.0.0.0/8"));
+        assertTrue(m.contains("2001:db8::1"));
+        assertTrue(m.contains("2001:0db8:ffff::1"));
+        assertFalse(m.contains("2001:db8:1::1"));
+        assertFalse(m.contains("2001:db9::1"));
+        assertTrue(m.contains("::1"));
+        assertTrue(m.contains("fe80::80"));
+        assertFalse(m.contains("fe80::100"));
+        assertTrue(m.contains("::ffff:10.1.1.1")); // 映射的IPv4地址按IPv4规则判断
+        assertFalse(m.contains("2001:db8::zz"));
+    }
+}
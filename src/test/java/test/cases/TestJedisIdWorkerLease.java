@@ -0,0 +1,144 @@
+package test.cases;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.core.util.ThreadUtils;
+import org.etnaframework.core.util.TimebasedIdGenerator;
+import org.etnaframework.jedis.JedisConfig;
+import org.etnaframework.jedis.JedisIdWorkerLease;
+import org.junit.Test;
+import org.springframework.stereotype.Service;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link JedisIdWorkerLease}测试，在同一个进程内模拟多个实例，需要本机运行redis
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestJedisIdWorkerLease extends EtnaTestCase {
+
+    /** redis的host */
+    private static String redisHost = "127.0.0.1";
+
+    /** redis的端口 */
+    private static int redisPort = 6379;
+
+    private static final String NAME = "testIdWorker";
+
+    private static final long LEASE_MS = 600;
+
+    private static JedisConfig jedisConfig;
+
+    private static JedisConfig getJedisConfig() throws Exception {
+        if (null == jedisConfig) {
+            jedisConfig = new JedisConfig();
+            jedisConfig.setHost(redisHost);
+            jedisConfig.setPort(redisPort);
+            jedisConfig.setTimeoutMs(15 * 1000);
+            jedisConfig.setMaxTotal(100);
+            jedisConfig.setMaxIdle(10);
+            jedisConfig.setMaxWaitMs(15 * 1000);
+            jedisConfig.setDbNum(1);
+            jedisConfig.afterPropertiesSet();
+        }
+        return jedisConfig;
+    }
+
+    @Override
+    protected void cleanup() throws Throwable {
+        getJedisConfig().db(0)
+                        .execute(jedis -> {
+                            for (String key : jedis.keys(JedisIdWorkerLease.KEY_PREFIX + NAME + ":*")) {
+                                jedis.del(key);
+                            }
+                        });
+    }
+
+    private static TimebasedIdGenerator newGenerator() {
+        return new TimebasedIdGenerator(3, 2, 1, 0, "yyyyMMddHHmmss"); // 1位实例编号，最多10个实例
+    }
+
+    /**
+     * 每个实例租到不同的编号，编号用完时不能再启动，归还后可以再租用
+     */
+    @Test
+    public void testAcquire() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        List<JedisIdWorkerLease> leases = new ArrayList<>();
+        try {
+            Set<Integer> ids = new HashSet<>();
+            for (int i = 0; i < 10; i++) {
+                JedisIdWorkerLease lease = new JedisIdWorkerLease(getJedisConfig(), NAME, newGenerator(), LEASE_MS);
+                lease.start(scheduler);
+                leases.add(lease);
+                ids.add(lease.getWorkerId());
+            }
+            assertEquals(10, ids.size());
+
+            JedisIdWorkerLease extra = new JedisIdWorkerLease(getJedisConfig(), NAME, newGenerator(), LEASE_MS);
+            try {
+                extra.start(scheduler);
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+
+            JedisIdWorkerLease released = leases.remove(0);
+            int freed = released.getWorkerId();
+            released.close();
+            assertEquals(-1, released.getWorkerId());
+            extra.start(scheduler);
+            leases.add(extra);
+            assertEquals(freed, extra.getWorkerId());
+        } finally {
+            for (JedisIdWorkerLease lease : leases) {
+                lease.close();
+            }
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 定时续期，生成器在租期之后仍然可用；归还后生成器不可用
+     */
+    @Test
+    public void testRenew() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        TimebasedIdGenerator gen = newGenerator();
+        JedisIdWorkerLease lease = new JedisIdWorkerLease(getJedisConfig(), NAME, gen, LEASE_MS);
+        try {
+            lease.start(scheduler);
+            assertEquals(lease.getWorkerId(), gen.getWorkerId());
+            ThreadUtils.sleep(LEASE_MS * 3);
+            assertTrue(gen.getWorkerValidUntil() > System.currentTimeMillis());
+            gen.nextLongId();
+
+            // 编号被删除（如redis上的key过期后被其他实例租用），续期时重新租用
+            getJedisConfig().db(0)
+                            .execute(jedis -> {
+                                jedis.set(JedisIdWorkerLease.KEY_PREFIX + NAME + ":" + lease.getWorkerId(), "other");
+                            });
+            int old = lease.getWorkerId();
+            ThreadUtils.sleep(LEASE_MS);
+            assertTrue(lease.getWorkerId() != old);
+            assertEquals(lease.getWorkerId(), gen.getWorkerId());
+            gen.nextLongId();
+        } finally {
+            lease.close();
+            scheduler.shutdownNow();
+        }
+        try {
+            gen.nextLongId();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -437,6 +437,92 @@ public class TestJedisLock extends EtnaTestCase {
         Assert.assertEquals(iterations, lockedCounter.get());
     }
 
+    /**
+     * 在另一个线程持有锁一段时间后解锁，锁的过期时间很长，返回解锁的时间点
+     */
+    private static Thread holdLock(JedisTemplate jedisTemplate, LockName name, CountDownLatch locked, CountDownLatch release, long[] unlockAt) {
+        Thread t = new Thread(() -> {
+            JedisLock lock = jedisTemplate.getLock(name.toString());
+            lock.lock(10, TimeUnit.SECONDS);
+            locked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            unlockAt[0] = System.currentTimeMillis();
+            lock.unlock();
+        });
+        t.start();
+        return t;
+    }
+
+    /**
+     * 断开所有模式订阅的连接，模拟解锁广播的订阅连接断开
+     */
+    private static void killPSubscribeClients(JedisTemplate jedisTemplate) {
+        jedisTemplate.execute(jedis -> {
+            for (String client : jedis.clientList()
+                                      .split("\n")) {
+                if (client.contains("cmd=psubscribe")) {
+                    for (String field : client.split(" ")) {
+                        if (field.startsWith("addr=")) {
+                            jedis.clientKill(field.substring("addr=".length()));
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    @Test
+    @TestDescr("测试解锁后等待的线程马上被广播唤醒，不用等锁过期")
+    public void testWakeOnUnlock() throws InterruptedException {
+        JedisTemplate jedisTemplate = getJedisTemplate();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        long[] unlockAt = new long[1];
+        Thread t = holdLock(jedisTemplate, LockName.testWakeOnUnlock, locked, release, unlockAt);
+        Assert.assertTrue(locked.await(1, TimeUnit.SECONDS));
+
+        ThreadUtils.getDefault()
+                   .execute(() -> {
+                       ThreadUtils.sleep(1000);
+                       release.countDown();
+                   });
+        JedisLock lock = jedisTemplate.getLock(LockName.testWakeOnUnlock.toString());
+        Assert.assertTrue(lock.tryLock(5, TimeUnit.SECONDS));
+        long time = System.currentTimeMillis() - unlockAt[0];
+        Assert.assertTrue(String.valueOf(time), time < 100);
+        lock.unlock();
+        t.join();
+    }
+
+    @Test
+    @TestDescr("测试订阅连接断开后等待的线程改为轮询，断开期间解锁也能及时获得锁")
+    public void testPollWhenSubscriptionLost() throws InterruptedException {
+        JedisTemplate jedisTemplate = getJedisTemplate();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        long[] unlockAt = new long[1];
+        Thread t = holdLock(jedisTemplate, LockName.testPollWhenSubscriptionLost, locked, release, unlockAt);
+        Assert.assertTrue(locked.await(1, TimeUnit.SECONDS));
+
+        ThreadUtils.getDefault()
+                   .execute(() -> {
+                       ThreadUtils.sleep(500); // 等待的线程已订阅成功
+                       killPSubscribeClients(jedisTemplate);
+                       ThreadUtils.sleep(100); // 订阅线程已发现断开，在重新订阅之前解锁，解锁广播会丢失
+                       release.countDown();
+                   });
+        JedisLock lock = jedisTemplate.getLock(LockName.testPollWhenSubscriptionLost.toString());
+        Assert.assertTrue(lock.tryLock(5, TimeUnit.SECONDS));
+        long time = System.currentTimeMillis() - unlockAt[0];
+        Assert.assertTrue(String.valueOf(time), time < 500);
+        lock.unlock();
+        t.join();
+    }
+
     private enum LockName {
         testTryLockWait,
         testForceUnlock,
@@ -452,6 +538,8 @@ public class TestJedisLock extends EtnaTestCase {
         testReentrancy,
         testConcurrency_SingleInstance,
         testConcurrencyLoop_MultiInstance,
-        testConcurrency_MultiInstance
+        testConcurrency_MultiInstance,
+        testWakeOnUnlock,
+        testPollWhenSubscriptionLost
     }
 }
@@ -0,0 +1,148 @@
+package test.cases;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.plugin.cache.LocalCacheAspect;
+import org.etnaframework.plugin.cache.LocalCacheAspect.LazyCacheContainer;
+import org.etnaframework.plugin.cache.LocalCacheAspect.TimerLoadCacheContainer;
+import org.etnaframework.plugin.cache.annotation.LocalCache;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import test.TestEtnaLaunch;
+
+/**
+ * <pre>
+ * {@link LocalCache}缓存命中时的内存分配，用ThreadMXBean统计当前线程分配的字节数
+ *
+ * 未开启debug时，命中缓存不应该再为日志生成参数数组、格式化时间，JIT可能偶尔有少量分配，按每次平均不到1字节判断
+ * 懒加载缓存内部的guava cache按LRU淘汰，每次读取会在recencyQueue中放一个节点，这部分不属于日志开销，单独测出来作为上限
+ * </pre>
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestLocalCacheAllocation extends EtnaTestCase {
+
+    private static final int WARMUP = 20000;
+
+    private static final int LOOPS = 100000;
+
+    /** 定时加载缓存命中时，平均每次允许的分配字节数 */
+    private static final double MAX_BYTES_PER_HIT = 1;
+
+    @Autowired
+    private LocalCacheAspect localCacheAspect;
+
+    /** 测试配置中org.etnaframework开启了debug，测试时需要临时关闭 */
+    private final Logger aspectLog = (Logger) LoggerFactory.getLogger(LocalCacheAspect.class);
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    public static class CachedService {
+
+        @LocalCache(expire = 1, timeUnit = TimeUnit.HOURS)
+        public String hello(String name) {
+            return "hello " + name;
+        }
+
+        @LocalCache(expire = 1, timeUnit = TimeUnit.HOURS)
+        public String timerLoad() {
+            return "hello";
+        }
+    }
+
+    @Test
+    public void testTimerLoadHitAllocatesNothing() throws Throwable {
+        Method method = CachedService.class.getMethod("timerLoad");
+        TimerLoadCacheContainer container = localCacheAspect.new TimerLoadCacheContainer(new CachedService(), method);
+        // get只在切面内部使用，不对外开放，这里通过反射调用，参数数组预先创建好，反射调用本身不会分配
+        Method get = TimerLoadCacheContainer.class.getDeclaredMethod("get", Object[].class);
+        get.setAccessible(true);
+        Object[] invokeArgs = {
+            new Object[0]
+        };
+        Level old = aspectLog.getLevel();
+        aspectLog.setLevel(Level.INFO);
+        try {
+            for (int i = 0; i < WARMUP; i++) {
+                get.invoke(container, invokeArgs);
+            }
+            long before = allocatedBytes();
+            for (int i = 0; i < LOOPS; i++) {
+                get.invoke(container, invokeArgs);
+            }
+            double perHit = (double) (allocatedBytes() - before - measureOverhead()) / LOOPS;
+            assertTrue(perHit + " bytes/hit", perHit < MAX_BYTES_PER_HIT);
+        } finally {
+            aspectLog.setLevel(old);
+        }
+    }
+
+    @Test
+    public void testLazyHitAllocatesOnlyGuavaBookkeeping() throws Throwable {
+        Method method = CachedService.class.getMethod("hello", String.class);
+        LazyCacheContainer container = localCacheAspect.new LazyCacheContainer(new CachedService(), method);
+        Object[] args = {
+            "etna"
+        };
+        long containerBytes;
+        Level old = aspectLog.getLevel();
+        aspectLog.setLevel(Level.INFO);
+        try {
+            for (int i = 0; i < WARMUP; i++) {
+                container.get(args);
+            }
+            long before = allocatedBytes();
+            for (int i = 0; i < LOOPS; i++) {
+                container.get(args);
+            }
+            containerBytes = allocatedBytes() - before;
+        } finally {
+            aspectLog.setLevel(old);
+        }
+
+        // 同样配置的guava cache直接读取的开销
+        Cache<String, Object> cache = CacheBuilder.newBuilder()
+                                                  .maximumSize(LocalCacheAspect.DEFAULT_MAX_CACHE_SIZE)
+                                                  .recordStats()
+                                                  .expireAfterWrite(1, TimeUnit.HOURS)
+                                                  .build();
+        cache.put("etna", "hello etna");
+        for (int i = 0; i < WARMUP; i++) {
+            cache.getIfPresent("etna");
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < LOOPS; i++) {
+            cache.getIfPresent("etna");
+        }
+        long guavaBytes = allocatedBytes() - before;
+        System.out.println("LazyCacheContainer " + containerBytes / LOOPS + " bytes/hit, guava " + guavaBytes / LOOPS + " bytes/hit");
+        assertTrue(containerBytes <= guavaBytes + 1024);
+    }
+
+    /**
+     * 两次调用{@link #allocatedBytes()}本身产生的分配
+     */
+    private static long measureOverhead() {
+        long before = allocatedBytes();
+        return allocatedBytes() - before;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread()
+                                                                                                                       .getId());
+    }
+}
@@ -0,0 +1,244 @@
+package test.cases;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.core.util.ThreadUtils;
+import org.etnaframework.jedis.JedisConfig;
+import org.etnaframework.plugin.cache.LocalCacheAspect;
+import org.etnaframework.plugin.cache.LocalCacheAspect.LazyCacheContainer;
+import org.etnaframework.plugin.cache.LocalCacheRedisTier;
+import org.etnaframework.plugin.cache.annotation.LocalCache;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link LocalCacheRedisTier}测试，同一个方法生成多个缓存容器来模拟多台机器，需要本机运行redis
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestLocalCacheRedisTier extends EtnaTestCase {
+
+    /** redis的host */
+    private static String redisHost = "127.0.0.1";
+
+    /** redis的端口 */
+    private static int redisPort = 6379;
+
+    private static JedisConfig jedisConfig;
+
+    private static JedisConfig getJedisConfig() throws Exception {
+        if (null == jedisConfig) {
+            jedisConfig = new JedisConfig();
+            jedisConfig.setHost(redisHost);
+            jedisConfig.setPort(redisPort);
+            jedisConfig.setTimeoutMs(15 * 1000);
+            jedisConfig.setMaxTotal(100);
+            jedisConfig.setMaxIdle(10);
+            jedisConfig.setMaxWaitMs(15 * 1000);
+            jedisConfig.setDbNum(1);
+            jedisConfig.afterPropertiesSet();
+        }
+        return jedisConfig;
+    }
+
+    @Autowired
+    private LocalCacheAspect localCacheAspect;
+
+    @Override
+    protected void cleanup() throws Throwable {
+        getJedisConfig().db(0)
+                        .execute(jedis -> {
+                            for (String key : jedis.keys("local_cache*" + CachedService.class.getName() + "*")) {
+                                jedis.del(key);
+                            }
+                        });
+    }
+
+    @Service
+    public static class TestRedisTier extends LocalCacheRedisTier {
+
+        @Override
+        public JedisConfig jedisConfig() {
+            try {
+                return getJedisConfig();
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    public static class CachedService {
+
+        final AtomicInteger loads = new AtomicInteger();
+
+        volatile int version = 1;
+
+        /** 执行方法时先通知测试线程，再等待测试线程放行 */
+        volatile CountDownLatch entered;
+
+        volatile CountDownLatch release;
+
+        @LocalCache(expire = 1, timeUnit = TimeUnit.HOURS, redisTier = TestRedisTier.class)
+        public String slow(String name) {
+            loads.incrementAndGet();
+            ThreadUtils.sleep(300);
+            return name + ":" + version;
+        }
+
+        @LocalCache(expire = 1, timeUnit = TimeUnit.HOURS, redisTier = TestRedisTier.class)
+        public String version(String name) {
+            return name + ":" + version;
+        }
+
+        @LocalCache(expire = 1, timeUnit = TimeUnit.HOURS, redisTier = TestRedisTier.class)
+        public String blocking(String name) throws InterruptedException {
+            String result = name + ":" + version;
+            if (null != entered) {
+                entered.countDown();
+                release.await();
+            }
+            return result;
+        }
+    }
+
+    private LazyCacheContainer newNode(CachedService service, String methodName) throws Exception {
+        Method method = CachedService.class.getMethod(methodName, String.class);
+        return localCacheAspect.new LazyCacheContainer(service, method);
+    }
+
+    private static String redisValue(LazyCacheContainer node, String key) throws Exception {
+        return getJedisConfig().db(0)
+                               .string()
+                               .get(LocalCacheRedisTier.KEY_PREFIX + node.getIdentity() + ":" + key);
+    }
+
+    /**
+     * 两台机器同时加载同一个key，只有抢到租约的执行方法，另一台等待后从redis读取
+     */
+    @Test
+    public void testSingleFlight() throws Throwable {
+        CachedService service = new CachedService();
+        LazyCacheContainer a = newNode(service, "slow");
+        LazyCacheContainer b = newNode(service, "slow");
+        Object[] args = {
+            "etna"
+        };
+        String[] results = new String[2];
+        CountDownLatch done = new CountDownLatch(2);
+        LazyCacheContainer[] nodes = {
+            a,
+            b
+        };
+        for (int i = 0; i < nodes.length; i++) {
+            int k = i;
+            new Thread(() -> {
+                try {
+                    results[k] = (String) nodes[k].get(args);
+                } catch (Throwable ex) {
+                    ex.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("etna:1", results[0]);
+        assertEquals("etna:1", results[1]);
+        assertEquals(1, service.loads.get());
+        assertEquals(1, a.getLoadCount() + b.getLoadCount());
+        assertEquals(0.5, (a.getL2HitRate() + b.getL2HitRate()) / 2, 0.01);
+    }
+
+    /**
+     * 其他机器清除缓存时，删除redis中的值并广播，本机收到广播后清除本地缓存
+     */
+    @Test
+    public void testInvalidateBroadcast() throws Throwable {
+        CachedService service = new CachedService();
+        LazyCacheContainer node = newNode(service, "version");
+        Object[] args = {
+            "etna"
+        };
+        assertEquals("etna:1", node.get(args));
+        String key = node.getCache()
+                         .asMap()
+                         .keySet()
+                         .iterator()
+                         .next();
+        assertNotNull(redisValue(node, key));
+        service.version = 2;
+        assertEquals("etna:1", node.get(args));
+
+        // 模拟其他机器清除缓存
+        getJedisConfig().db(0)
+                        .key()
+                        .del(LocalCacheRedisTier.KEY_PREFIX + node.getIdentity() + ":" + key);
+        getJedisConfig().db(0)
+                        .pubsub()
+                        .publish(LocalCacheRedisTier.INVALIDATE_CHANNEL, node.getIdentity() + "\n" + key);
+        for (int i = 0; i < 50 && node.getCache()
+                                      .size() > 0; i++) {
+            ThreadUtils.sleep(20);
+        }
+        assertEquals(0, node.getCache()
+                            .size());
+        assertEquals("etna:2", node.get(args));
+    }
+
+    /**
+     * 加载期间清除了缓存，加载完成后旧值不能再写入redis和本地缓存，其他机器加载到的是新值
+     */
+    @Test
+    public void testStaleWriteFenced() throws Throwable {
+        CachedService service = new CachedService();
+        Method method = CachedService.class.getMethod("blocking", String.class);
+        LazyCacheContainer a = newNode(service, "blocking");
+        Object[] args = {
+            "etna"
+        };
+        service.entered = new CountDownLatch(1);
+        service.release = new CountDownLatch(1);
+        String[] result = new String[1];
+        Thread loader = new Thread(() -> {
+            try {
+                result[0] = (String) a.get(args);
+            } catch (Throwable ex) {
+                ex.printStackTrace();
+            }
+        });
+        loader.start();
+        assertTrue(service.entered.await(5, TimeUnit.SECONDS));
+
+        service.version = 2;
+        localCacheAspect.getData()
+                        .put(method, a);
+        try {
+            localCacheAspect.invalidate(CachedService.class, "blocking", args);
+        } finally {
+            localCacheAspect.getData()
+                            .remove(method);
+        }
+        service.release.countDown();
+        loader.join(5000);
+        assertEquals("etna:1", result[0]); // 本次调用拿到的还是执行方法的结果
+        assertEquals(0, a.getCache()
+                         .size());
+        String key = "etna"; // 单个参数时key就是参数值
+        assertNull(redisValue(a, key));
+
+        service.entered = null;
+        LazyCacheContainer b = newNode(service, "blocking");
+        assertEquals("etna:2", b.get(args));
+        assertEquals("etna:2", a.get(args));
+        assertTrue(redisValue(b, key).endsWith("etna:2\""));
+    }
+}
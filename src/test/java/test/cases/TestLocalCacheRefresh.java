@@ -0,0 +1,206 @@
+package test.cases;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.core.util.ThreadUtils;
+import org.etnaframework.plugin.cache.LocalCacheAspect;
+import org.etnaframework.plugin.cache.LocalCacheAspect.LazyCacheContainer;
+import org.etnaframework.plugin.cache.annotation.LocalCache;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link LocalCache}的提前刷新、过期后先返回旧值、缓存异常测试
+ *
+ * 缓存的过期时间点按key对齐，不能直接控制，这里通过反射修改缓存元素的过期时间点来模拟即将过期和已过期
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestLocalCacheRefresh extends EtnaTestCase {
+
+    /** 方法执行的耗时，同步加载时请求需要等待这么久 */
+    private static final long LOAD_MS = 200;
+
+    private static final String KEY = "etna";
+
+    private static final Object[] ARGS = {
+        KEY
+    };
+
+    @Autowired
+    private LocalCacheAspect localCacheAspect;
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    public static class CachedService {
+
+        final AtomicInteger loads = new AtomicInteger();
+
+        /** 第几次执行开始抛异常，0表示不抛 */
+        volatile int failFrom;
+
+        private String load(String name) {
+            int n = loads.incrementAndGet();
+            ThreadUtils.sleep(LOAD_MS);
+            if (failFrom > 0 && n >= failFrom) {
+                throw new IllegalStateException(name + " failed " + n);
+            }
+            return name + ":" + n;
+        }
+
+        @LocalCache(expire = 1, timeUnit = TimeUnit.HOURS, refreshAheadPercent = 50)
+        public String refreshAhead(String name) {
+            return load(name);
+        }
+
+        @LocalCache(expire = 1, timeUnit = TimeUnit.HOURS, staleWhileRevalidate = true)
+        public String stale(String name) {
+            return load(name);
+        }
+
+        @LocalCache(expire = 1, timeUnit = TimeUnit.HOURS, errorExpireMs = 500)
+        public String error(String name) {
+            return load(name);
+        }
+    }
+
+    private LazyCacheContainer newContainer(CachedService service, String methodName) throws Exception {
+        Method method = CachedService.class.getMethod(methodName, String.class);
+        return localCacheAspect.new LazyCacheContainer(service, method);
+    }
+
+    /**
+     * 修改缓存元素的过期时间点
+     */
+    private static void setExpire(LazyCacheContainer container, long expire) throws Exception {
+        Object e = container.getCache()
+                            .getIfPresent(KEY);
+        Field f = e.getClass()
+                   .getDeclaredField("expire");
+        f.setAccessible(true);
+        f.setLong(e, expire);
+    }
+
+    /**
+     * 读取缓存，返回结果并确认没有等待方法执行
+     */
+    private static Object getWithoutWait(LazyCacheContainer container) throws Throwable {
+        long start = System.currentTimeMillis();
+        Object result = container.get(ARGS);
+        assertTrue(System.currentTimeMillis() - start < LOAD_MS / 2);
+        return result;
+    }
+
+    private static void waitLoads(CachedService service, int loads) {
+        for (int i = 0; i < 100 && service.loads.get() < loads; i++) {
+            ThreadUtils.sleep(20);
+        }
+        assertEquals(loads, service.loads.get());
+        ThreadUtils.sleep(LOAD_MS + 100); // 计数在方法开始时就加了，还需要等方法执行完、结果放入缓存
+    }
+
+    /**
+     * 即将过期时第一个请求触发后台刷新，所有请求都直接返回缓存的值，不需要等待
+     */
+    @Test
+    public void testRefreshAhead() throws Throwable {
+        CachedService service = new CachedService();
+        LazyCacheContainer container = newContainer(service, "refreshAhead");
+        assertEquals("etna:1", container.get(ARGS));
+
+        setExpire(container, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1)); // 进入提前刷新的时间窗口
+        for (int i = 0; i < 10; i++) {
+            assertEquals("etna:1", getWithoutWait(container));
+        }
+        waitLoads(service, 2);
+        setExpire(container, System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)); // 新值的过期时间点是从修改后的时间点往后算的，可能还在时间窗口内
+        assertEquals("etna:2", getWithoutWait(container));
+        assertEquals(1, container.getRefreshCount());
+    }
+
+    /**
+     * 后台刷新失败时保留旧值，没有配置errorExpireMs时也不会每个请求都触发一次刷新
+     */
+    @Test
+    public void testRefreshFailureBackoff() throws Throwable {
+        CachedService service = new CachedService();
+        LazyCacheContainer container = newContainer(service, "refreshAhead");
+        assertEquals("etna:1", container.get(ARGS));
+        service.failFrom = 2;
+
+        setExpire(container, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1));
+        assertEquals("etna:1", getWithoutWait(container));
+        waitLoads(service, 2);
+        long failedAt = System.currentTimeMillis();
+        while (System.currentTimeMillis() - failedAt < 500) {
+            assertEquals("etna:1", getWithoutWait(container));
+            ThreadUtils.sleep(5);
+        }
+        assertEquals(2, service.loads.get());
+        assertEquals(1, container.getRefreshCount());
+    }
+
+    /**
+     * 过期后先返回旧值，同时在后台刷新，刷新完成后返回新值
+     */
+    @Test
+    public void testStaleWhileRevalidate() throws Throwable {
+        CachedService service = new CachedService();
+        LazyCacheContainer container = newContainer(service, "stale");
+        assertEquals("etna:1", container.get(ARGS));
+
+        setExpire(container, System.currentTimeMillis() - 1);
+        assertEquals("etna:1", getWithoutWait(container));
+        assertEquals("etna:1", getWithoutWait(container));
+        assertEquals(2, container.getStaleHitCount());
+        waitLoads(service, 2);
+        assertEquals("etna:2", getWithoutWait(container));
+        assertEquals(1, container.getRefreshCount());
+    }
+
+    /**
+     * 方法抛出的异常缓存一段时间，期间不再执行方法，每次抛出的是异常的副本
+     */
+    @Test
+    public void testErrorCache() throws Throwable {
+        CachedService service = new CachedService();
+        service.failFrom = 1;
+        LazyCacheContainer container = newContainer(service, "error");
+        IllegalStateException first = null;
+        try {
+            container.get(ARGS);
+            fail();
+        } catch (IllegalStateException ex) {
+            first = ex;
+        }
+        IllegalStateException last = first;
+        for (int i = 0; i < 3; i++) {
+            try {
+                getWithoutWait(container);
+                fail();
+            } catch (IllegalStateException ex) {
+                assertNotSame(last, ex);
+                assertEquals(first.getMessage(), ex.getMessage());
+                assertEquals(0, ex.getSuppressed().length);
+                ex.addSuppressed(new RuntimeException("caller"));
+                last = ex;
+            }
+        }
+        assertEquals(1, service.loads.get());
+
+        ThreadUtils.sleep(600);
+        service.failFrom = 0;
+        assertEquals("etna:2", container.get(ARGS));
+    }
+}
@@ -0,0 +1,75 @@
+package test.cases;
+
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.core.util.RateLimiter;
+import org.etnaframework.core.util.RateLimiter.Algorithm;
+import org.etnaframework.core.util.ThreadUtils;
+import org.junit.Test;
+import org.springframework.stereotype.Service;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link RateLimiter}的测试
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestRateLimiter extends EtnaTestCase {
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    /**
+     * 令牌桶：一开始桶是满的，允许突发limit次，之后按速率补充
+     */
+    @Test
+    public void testTokenBucket() {
+        RateLimiter limiter = new RateLimiter(Algorithm.TOKEN_BUCKET, 5, 5000, 16);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.acquire("a"));
+        }
+        assertFalse(limiter.acquire("a"));
+        assertTrue(limiter.acquire("b")); // 不同的key分别计数
+        ThreadUtils.sleep(1100); // 每1s补充一个令牌
+        assertTrue(limiter.acquire("a"));
+        assertFalse(limiter.acquire("a"));
+        assertFalse(limiter.acquire("c", 6)); // 超过桶容量的一次性请求不允许
+    }
+
+    /**
+     * 滑动窗口：窗口交界处不会放过2倍的访问
+     */
+    @Test
+    public void testSlidingWindow() {
+        RateLimiter limiter = new RateLimiter(Algorithm.SLIDING_WINDOW, 10, 300, 16);
+        int pass = 0;
+        long end = System.currentTimeMillis() + 600;
+        while (System.currentTimeMillis() < end) {
+            if (limiter.acquire("a")) {
+                pass++;
+            }
+        }
+        // 600ms内最多放过约2个窗口的量，固定窗口在交界处最多可能放过3个窗口的量
+        assertTrue(pass <= 21);
+        assertTrue(pass >= 10);
+    }
+
+    /**
+     * 大量不同的key时，表中保存的key数不会超过capacity，最早的key会被淘汰
+     */
+    @Test
+    public void testCapacity() {
+        RateLimiter limiter = new RateLimiter(Algorithm.SLIDING_WINDOW, 1, 60000, 1024);
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(limiter.acquire(i));
+        }
+        assertEquals(1024, limiter.getCapacity());
+        assertTrue(limiter.getSize() <= 1024);
+        assertTrue(limiter.getEvictCount() > 0);
+        assertFalse(limiter.acquire(99999)); // 最近访问的key还在
+    }
+}
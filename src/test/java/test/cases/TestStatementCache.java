@@ -0,0 +1,166 @@
+package test.cases;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.jdbc.JdbcTemplate;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link JdbcTemplate#setStatementCacheSize(int)}缓存语句的复用，用代理对象模拟数据库连接，记录每次执行时语句的设置
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestStatementCache extends EtnaTestCase {
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    /**
+     * 模拟的数据库连接，每次查询返回一行1，记录生成的语句和每次执行时的queryTimeout、maxRows、fetchSize
+     */
+    private static class FakeDb {
+
+        final Set<Object> statements = new HashSet<>();
+
+        final List<String> executed = new ArrayList<>();
+
+        final Connection connection = proxy(Connection.class, (p, m, args) -> {
+            switch (m.getName()) {
+            case "prepareStatement":
+                PreparedStatement ps = statement();
+                statements.add(ps);
+                return ps;
+            case "getAutoCommit":
+                return true;
+            case "isWrapperFor":
+            case "isClosed":
+                return false;
+            default:
+                return defaultValue(m.getReturnType());
+            }
+        });
+
+        PreparedStatement statement() {
+            int[] settings = new int[3]; // queryTimeout, maxRows, fetchSize
+            return proxy(PreparedStatement.class, (p, m, args) -> {
+                switch (m.getName()) {
+                case "setQueryTimeout":
+                    settings[0] = (Integer) args[0];
+                    return null;
+                case "getQueryTimeout":
+                    return settings[0];
+                case "setMaxRows":
+                    settings[1] = (Integer) args[0];
+                    return null;
+                case "getMaxRows":
+                    return settings[1];
+                case "setFetchSize":
+                    settings[2] = (Integer) args[0];
+                    return null;
+                case "getFetchSize":
+                    return settings[2];
+                case "executeQuery":
+                    executed.add(settings[0] + "/" + settings[1] + "/" + settings[2]);
+                    return resultSet();
+                default:
+                    return defaultValue(m.getReturnType());
+                }
+            });
+        }
+
+        ResultSet resultSet() {
+            ResultSetMetaData rsmd = proxy(ResultSetMetaData.class, (p, m, args) -> "getColumnCount".equals(m.getName()) ? 1 : defaultValue(m.getReturnType()));
+            boolean[] read = {
+                false
+            };
+            return proxy(ResultSet.class, (p, m, args) -> {
+                switch (m.getName()) {
+                case "next":
+                    boolean has = !read[0];
+                    read[0] = true;
+                    return has;
+                case "getMetaData":
+                    return rsmd;
+                case "getObject":
+                    return 1;
+                case "getInt":
+                    return 1;
+                default:
+                    return defaultValue(m.getReturnType());
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> T proxy(Class<T> type, InvocationHandler h) {
+            return (T) Proxy.newProxyInstance(TestStatementCache.class.getClassLoader(), new Class<?>[] {
+                type
+            }, (p, m, args) -> {
+                if ("equals".equals(m.getName())) {
+                    return p == args[0];
+                }
+                if ("hashCode".equals(m.getName())) {
+                    return System.identityHashCode(p);
+                }
+                return h.invoke(p, m, args);
+            });
+        }
+
+        static Object defaultValue(Class<?> type) {
+            if (boolean.class.equals(type)) {
+                return false;
+            }
+            if (int.class.equals(type)) {
+                return 0;
+            }
+            if (long.class.equals(type)) {
+                return 0L;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 在带超时的事务中执行过的语句，放回缓存后再被使用时，queryTimeout等设置已恢复为原来的值
+     */
+    @Test
+    public void testSettingsResetOnReuse() throws Exception {
+        FakeDb db = new FakeDb();
+        SingleConnectionDataSource ds = new SingleConnectionDataSource(db.connection, true);
+        JdbcTemplate jt = new JdbcTemplate(ds);
+        jt.setStatementCacheSize(16);
+        String sql = "select 1 from t where id=?";
+
+        assertEquals(Integer.valueOf(1), jt.queryInt(sql, 1L));
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(ds));
+        tx.setTimeout(30);
+        tx.execute(status -> jt.queryInt(sql, 2L)); // Spring按事务剩余时间设置queryTimeout
+        assertEquals(Integer.valueOf(1), jt.queryInt(sql, 3L));
+
+        assertEquals(1, db.statements.size()); // 三次执行复用了同一个语句
+        assertEquals(3, db.executed.size());
+        assertEquals("0/0/0", db.executed.get(0));
+        assertTrue(db.executed.get(1), db.executed.get(1)
+                                                  .matches("(29|30)/0/0"));
+        assertEquals("0/0/0", db.executed.get(2)); // 没有带上一次的超时设置
+    }
+}
@@ -0,0 +1,203 @@
+package test.cases;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.core.util.DatetimeUtils;
+import org.etnaframework.core.util.TimebasedIdGenerator;
+import org.junit.Test;
+import org.springframework.stereotype.Service;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link TimebasedIdGenerator}测试
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestTimebasedIdGenerator extends EtnaTestCase {
+
+    private static final String PATTERN = "yyyyMMddHHmmss";
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    /**
+     * 可以手动调整时间的生成器
+     */
+    private static class ManualClockGenerator extends TimebasedIdGenerator {
+
+        final AtomicLong nanos = new AtomicLong(System.currentTimeMillis() / 1000 * 1000 * 1000000); // 从整秒开始
+
+        ManualClockGenerator(int accuracyLen, int incrLen) {
+            super(accuracyLen, incrLen, PATTERN);
+        }
+
+        @Override
+        protected long currentTimeNanos() {
+            return nanos.get();
+        }
+    }
+
+    /**
+     * id的格式：时间+秒以下部分+实例编号+序号
+     */
+    @Test
+    public void testFormat() throws Exception {
+        TimebasedIdGenerator gen = new TimebasedIdGenerator(3, 2, 2, 7, PATTERN);
+        long before = System.currentTimeMillis() / 1000 * 1000;
+        String id = gen.nextId();
+        long after = System.currentTimeMillis();
+        assertEquals(19, id.length()); // long的最大长度
+        long time = gen.parse(id)
+                       .getTime();
+        assertTrue(id, time >= before && time <= after);
+        assertEquals("07", id.substring(14 + 1, 14 + 1 + 2)); // 1位秒以下部分之后是2位实例编号，最后是2位序号
+        assertEquals(Long.parseLong(id), gen.getLastId());
+
+        // 时间格式按dateFormat输出
+        TimebasedIdGenerator shortGen = new TimebasedIdGenerator(3, 0, "yyMMddHHmmss");
+        String shortId = shortGen.nextId();
+        assertEquals(15, shortId.length());
+        assertEquals(DatetimeUtils.format(System.currentTimeMillis(), "yyMMdd"), shortId.substring(0, 6));
+
+        try {
+            new TimebasedIdGenerator(5, 2, 3, 0, PATTERN);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new TimebasedIdGenerator(3, 2, 2, 100, PATTERN);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * 多线程同时生成，不会重复，每个线程拿到的id递增
+     */
+    @Test
+    public void testConcurrentUnique() throws Exception {
+        TimebasedIdGenerator gen = new TimebasedIdGenerator(5, 2, PATTERN);
+        int threads = 8;
+        int perThread = 100000;
+        long[][] ids = new long[threads][perThread];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            long[] mine = ids[t];
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        mine[i] = gen.nextLongId();
+                    }
+                } catch (InterruptedException ignore) {
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long[] all = new long[threads * perThread];
+        for (int t = 0; t < threads; t++) {
+            for (int i = 1; i < perThread; i++) {
+                assertTrue(ids[t][i] > ids[t][i - 1]);
+            }
+            System.arraycopy(ids[t], 0, all, t * perThread, perThread);
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            assertTrue("duplicate id " + all[i], all[i] != all[i - 1]);
+        }
+        assertEquals(all.length, gen.getGens());
+    }
+
+    /**
+     * 时间片用完时借用后面的时间片，不会等待
+     */
+    @Test
+    public void testBorrow() throws Exception {
+        ManualClockGenerator gen = new ManualClockGenerator(1, 1); // 每秒1个时间片，每个时间片10个序号
+        gen.setMaxLeadMillis(10000);
+        long now = gen.nanos.get() / 1000000000 * 1000;
+        long last = 0;
+        for (int i = 0; i < 35; i++) {
+            long id = gen.nextLongId();
+            assertTrue(id > last);
+            last = id;
+        }
+        assertEquals(25, gen.getCollides());
+        assertEquals(now + 3000, gen.parse(last)
+                                    .getTime()); // 借用到了第4秒
+        assertEquals(3000, gen.getLeadMillis());
+
+        // 时间追上之后恢复正常
+        gen.nanos.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        long id = gen.nextLongId();
+        assertEquals(now + 5000, gen.parse(id)
+                                    .getTime());
+        assertEquals(0, gen.getLeadMillis());
+    }
+
+    /**
+     * 持续超出生成能力时，超前太多会等待时间追上
+     */
+    @Test
+    public void testMaxLead() throws Exception {
+        TimebasedIdGenerator gen = new TimebasedIdGenerator(1, 1, PATTERN); // 每秒1个时间片，每个时间片10个序号
+        long start = System.currentTimeMillis();
+        long last = 0;
+        for (int i = 0; i < 30; i++) { // 当前和下一秒可以直接生成，再后面就要等
+            long id = gen.nextLongId();
+            assertTrue(id > last);
+            last = id;
+            assertTrue(gen.parse(id)
+                          .getTime() <= System.currentTimeMillis() + TimebasedIdGenerator.DEFAULT_MAX_LEAD_MS);
+        }
+        assertTrue(gen.getWaits() > 0);
+        assertTrue(System.currentTimeMillis() - start < 3000); // 最多等到第3秒开始
+    }
+
+    /**
+     * 系统时间回拨时从上一个id继续生成，不会重复，也不需要等系统时间追上
+     */
+    @Test
+    public void testClockBackwards() throws Exception {
+        ManualClockGenerator gen = new ManualClockGenerator(3, 0);
+        long before = gen.nextLongId();
+        gen.nanos.addAndGet(-TimeUnit.SECONDS.toNanos(10));
+        long last = before;
+        for (int i = 0; i < 100; i++) {
+            long id = gen.nextLongId();
+            assertEquals(last + 1, id);
+            last = id;
+        }
+        gen.nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        assertTrue(gen.nextLongId() - before > 900); // 追上后按当前时间生成
+    }
+
+    /**
+     * 实例编号过期后不能再生成
+     */
+    @Test
+    public void testWorkerExpired() throws Exception {
+        TimebasedIdGenerator gen = new TimebasedIdGenerator(3, 2, 1, 3, PATTERN);
+        gen.setWorker(4, System.currentTimeMillis() + 60000);
+        assertEquals('4', gen.nextId()
+                             .charAt(14 + 1));
+        gen.setWorker(4, System.currentTimeMillis() - 1);
+        try {
+            gen.nextLongId();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
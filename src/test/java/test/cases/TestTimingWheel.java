@@ -0,0 +1,124 @@
+package test.cases;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.plugin.cron.TimingWheel;
+import org.etnaframework.plugin.cron.TimingWheel.Timeout;
+import org.junit.Test;
+import org.springframework.stereotype.Service;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link TimingWheel}测试，用很小的槽数让任务跨层、超出最大范围，覆盖cascade和重新放入的逻辑
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestTimingWheel extends EtnaTestCase {
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    /**
+     * 任务不会提前触发，延迟在可接受的范围内
+     */
+    @Test
+    public void testNeverEarly() throws Exception {
+        TimingWheel wheel = new TimingWheel("TestWheel", 1, 8, 2); // 最多64个tick，大部分任务需要cascade或重新放入
+        int n = 5000;
+        CountDownLatch latch = new CountDownLatch(n);
+        AtomicInteger early = new AtomicInteger();
+        AtomicLong maxLate = new AtomicLong();
+        Random random = new Random(1);
+        for (int i = 0; i < n; i++) {
+            long delay = random.nextInt(500);
+            long start = System.nanoTime();
+            wheel.schedule(() -> {
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (elapsed < delay) {
+                    early.incrementAndGet();
+                }
+                maxLate.accumulateAndGet(elapsed - delay, Math::max);
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        assertTrue("maxLate=" + maxLate.get(), maxLate.get() < 100);
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(n, wheel.getExpireCount());
+        wheel.stop();
+    }
+
+    /**
+     * 超出时间轮范围的任务
+     */
+    @Test
+    public void testBeyondRange() throws Exception {
+        TimingWheel wheel = new TimingWheel("TestWheel", 1, 4, 4); // 最多256个tick
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        AtomicLong elapsed = new AtomicLong();
+        wheel.schedule(() -> {
+            elapsed.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            latch.countDown();
+        }, 1000, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(3, TimeUnit.SECONDS));
+        assertTrue("elapsed=" + elapsed.get(), elapsed.get() >= 1000 && elapsed.get() < 1200);
+        wheel.stop();
+    }
+
+    /**
+     * 取消的任务不会执行
+     */
+    @Test
+    public void testCancel() throws Exception {
+        TimingWheel wheel = new TimingWheel("TestWheel", 1, 16, 3);
+        AtomicInteger fired = new AtomicInteger();
+        List<Timeout> list = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            list.add(wheel.schedule(fired::incrementAndGet, 200, TimeUnit.MILLISECONDS));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            assertTrue(list.get(i)
+                           .cancel());
+            assertFalse(list.get(i)
+                            .cancel());
+        }
+        assertEquals(50, wheel.getPendingCount());
+        Thread.sleep(500);
+        assertEquals(50, fired.get());
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(50, wheel.getCancelCount());
+        assertTrue(list.get(1)
+                       .isExpired());
+        assertFalse(list.get(1)
+                        .cancel());
+        wheel.stop();
+    }
+
+    /**
+     * 任务抛出异常不影响其他任务
+     */
+    @Test
+    public void testTaskException() throws Exception {
+        TimingWheel wheel = new TimingWheel("TestWheel", 1, 16, 3);
+        CountDownLatch latch = new CountDownLatch(1);
+        wheel.schedule(() -> {
+            throw new IllegalStateException("expected");
+        }, 10, TimeUnit.MILLISECONDS);
+        wheel.schedule(latch::countDown, 10, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        wheel.stop();
+    }
+}
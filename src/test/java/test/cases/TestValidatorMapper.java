@@ -0,0 +1,170 @@
+package test.cases;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.etnaframework.core.test.EtnaTestCase;
+import org.etnaframework.core.test.annotation.TestLauncherClass;
+import org.etnaframework.core.util.DatetimeUtils.Datetime;
+import org.etnaframework.core.util.JsonObjectUtils;
+import org.etnaframework.core.web.annotation.CmdReqParam;
+import org.etnaframework.core.web.exception.ParamInvalidValueException;
+import org.etnaframework.core.web.mapper.ValidatorMapper;
+import org.etnaframework.core.web.mapper.ValidatorMappers;
+import org.junit.Test;
+import org.springframework.stereotype.Service;
+import test.TestEtnaLaunch;
+
+/**
+ * {@link ValidatorMapper}测试，javassist生成的包装器和反射方式的包装器，赋值结果和校验失败时的提示信息完全一致
+ *
+ * @author BlackCat
+ * @since 2026-10-16
+ */
+@Service
+@TestLauncherClass(TestEtnaLaunch.class)
+public class TestValidatorMapper extends EtnaTestCase {
+
+    @Override
+    protected void cleanup() throws Throwable {
+    }
+
+    /**
+     * public类，使用javassist生成的包装器
+     */
+    public static class Form {
+
+        @CmdReqParam(name = "用户名", sample = "etna", minLength = 2, maxLength = 8, errmsg = "用户名长度为2-8")
+        public String username;
+
+        @CmdReqParam(name = "昵称", alias = "nick", sample = "etna", required = false, defaultValue = "anonymous")
+        public String nickname;
+
+        @CmdReqParam(name = "年龄", sample = "18", minLength = 1, maxLength = 150, errmsg = "年龄范围1-150")
+        public int age;
+
+        @CmdReqParam(name = "积分", sample = "100", required = false, defaultValue = "10", minLength = 0, maxLength = 1000)
+        public Long score;
+
+        @CmdReqParam(name = "比例", sample = "0.5", required = false, maxLength = 1)
+        public double ratio;
+
+        @CmdReqParam(name = "级别", sample = "1", required = false, maxLength = 2, errmsg = "级别最多2位")
+        public byte level;
+
+        @CmdReqParam(name = "生日", sample = "2000-01-01", required = false, maxLength = 10, errmsg = "生日格式错误")
+        public Datetime birthday;
+
+        @CmdReqParam(name = "是否启用", sample = "1", required = false)
+        public boolean enabled;
+
+        /** 没有注解的字段，不做校验，只转换类型 */
+        public Integer count;
+
+        private short flag;
+
+        public short getFlag() {
+            return flag;
+        }
+
+        public void setFlag(short flag) {
+            this.flag = flag;
+        }
+    }
+
+    /**
+     * 非public类，只能使用反射方式的包装器，字段和{@link Form}完全相同
+     */
+    static class HiddenForm extends Form {
+    }
+
+    private static Map<String, Object> params(Object... kv) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("username", "etna");
+        map.put("age", "18");
+        for (int i = 0; i < kv.length; i += 2) {
+            if (null == kv[i + 1]) {
+                map.remove(kv[i]);
+            } else {
+                map.put((String) kv[i], kv[i + 1]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 用包装器赋值，返回赋值后的bean或抛出的异常
+     */
+    private static String bind(Class<? extends Form> clazz, Map<String, Object> map, boolean isCheck) throws Exception {
+        Form bean = clazz.getDeclaredConstructor()
+                         .newInstance();
+        try {
+            ValidatorMappers.getValidatorMapper(clazz)
+                            .bind(bean, map, isCheck);
+        } catch (ParamInvalidValueException ex) {
+            return ex.getClass()
+                     .getSimpleName() + ":" + JsonObjectUtils.createJson(ex.getDataObject());
+        } catch (RuntimeException ex) {
+            return ex.getClass()
+                     .getName();
+        }
+        return JsonObjectUtils.createJson(bean);
+    }
+
+    private static void assertInvalid(String field, String msg, String result) {
+        assertTrue(result, result.startsWith(ParamInvalidValueException.class.getSimpleName() + ":"));
+        assertTrue(result, result.contains("\"field\":\"" + field + "\""));
+        assertTrue(result, result.contains("\"msg\":\"" + msg + "\""));
+    }
+
+    @Test
+    public void testGeneratedSameAsReflect() throws Exception {
+        assertTrue(ValidatorMappers.getValidatorMapper(Form.class)
+                                   .getClass()
+                                   .getName()
+                                   .contains("$$" + ValidatorMapper.class.getSimpleName()));
+        assertFalse(ValidatorMappers.getValidatorMapper(HiddenForm.class)
+                                    .getClass()
+                                    .getName()
+                                    .contains("$$" + ValidatorMapper.class.getSimpleName()));
+
+        List<Map<String, Object>> cases = new ArrayList<>();
+        cases.add(params()); // 默认值
+        cases.add(params("nick", "blackcat", "score", "999", "ratio", "0.25", "level", "12", "birthday", "2000-01-01", "enabled", "on", "count", "7", "flag", "3"));
+        cases.add(params("username", null)); // 必填
+        cases.add(params("username", "")); // 必填，空字符串
+        cases.add(params("username", "e")); // 最小长度
+        cases.add(params("username", "etnaframework")); // 最大长度
+        cases.add(params("age", "0")); // 数值范围
+        cases.add(params("age", "151"));
+        cases.add(params("age", "abc")); // 数值格式错误
+        cases.add(params("score", "1001")); // 不必填但超出范围
+        cases.add(params("ratio", "1.5")); // 没有errmsg
+        cases.add(params("level", "123")); // byte按字符串长度校验
+        cases.add(params("birthday", "2000-01-01 12:00:00")); // 日期按格式化后的长度校验
+        cases.add(params("enabled", "0"));
+        cases.add(params("count", "x")); // 没有注解的字段格式错误
+        cases.add(params("flag", "70000")); // setter赋值，超出short范围
+
+        for (Map<String, Object> map : cases) {
+            for (boolean isCheck : new boolean[] {
+                true,
+                false
+            }) {
+                String generated = bind(Form.class, map, isCheck);
+                String reflect = bind(HiddenForm.class, map, isCheck);
+                assertEquals(map + " isCheck=" + isCheck, reflect, generated);
+            }
+        }
+
+        // 校验失败时的提示信息
+        assertInvalid("username", "用户名长度为2-8", bind(Form.class, params("username", "e"), true));
+        assertInvalid("username", "用户名长度为2-8", bind(Form.class, params("username", null), true));
+        assertInvalid("age", "年龄范围1-150", bind(Form.class, params("age", "151"), true));
+        assertInvalid("level", "级别最多2位", bind(Form.class, params("level", "123"), true));
+        assertInvalid("birthday", "生日格式错误", bind(Form.class, params("birthday", "2000-01-01 12:00:00"), true));
+        assertInvalid("score", "", bind(Form.class, params("score", "1001"), true));
+        assertEquals(NumberFormatException.class.getName(), bind(Form.class, params("age", "abc"), true));
+    }
+}